@@ -0,0 +1,50 @@
+package com.axcelerate.homehub.benchmarks;
+
+import com.axcelerate.homehub.repository.HomeHubRepository;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reports the retained heap of a {@link HomeHubRepository} per registered and bound appliance.
+ * Slot {@code i} is named {@code slot<i>} and bound to {@code appliance<i>}, as in the JMH
+ * benchmarks. Heap is measured after repeated full GCs, so run with a fixed heap and a
+ * non-concurrent collector, e.g.
+ * {@code java -XX:+UseSerialGC -Xmx2g -cp benchmarks/target/benchmarks.jar com.axcelerate.homehub.benchmarks.FootprintReport}.
+ */
+public class FootprintReport {
+    private static final int[] BINDINGS = {10_000, 100_000, 1_000_000};
+
+    public static void main(String[] args) {
+        // load and initialise everything once so it does not count towards the first measurement
+        retained(BINDINGS[0]);
+        System.out.printf("%12s %14s %16s%n", "bindings", "retained MB", "bytes/binding");
+        for (var bindings : BINDINGS) {
+            var retained = retained(bindings);
+            System.out.printf("%12d %14.1f %16.1f%n", bindings, retained / 1_048_576.0, retained / (double) bindings);
+        }
+    }
+
+    private static long retained(int bindings) {
+        var before = usedHeap();
+        var repository = new HomeHubRepository();
+        // names are built here, as a request would, so whatever the repository keeps of them counts
+        for (int i = 0; i < bindings; i++) {
+            var applianceName = "appliance" + i;
+            repository.registerAppliance(applianceName);
+            repository.bindSlot("slot" + i, applianceName);
+        }
+        var retained = usedHeap() - before;
+        if (repository.getUsedSlots().size() != bindings) {
+            throw new IllegalStateException("Expected " + bindings + " bindings");
+        }
+        return retained;
+    }
+
+    private static long usedHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
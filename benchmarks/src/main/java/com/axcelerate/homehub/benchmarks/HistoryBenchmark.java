@@ -0,0 +1,97 @@
+package com.axcelerate.homehub.benchmarks;
+
+import com.axcelerate.homehub.dto.Appliance;
+import com.axcelerate.homehub.history.StatusHistory;
+import com.axcelerate.homehub.history.StatusUsage;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StatusHistory} recording and querying.
+ * <p>
+ * {@code updateWithHistory} is {@link RepositoryBenchmark#updateApplianceStatus} with the history
+ * listening, so the difference between the two is what recording adds to an operation.
+ * {@code usage} asks for the ON time of an appliance over the whole history of
+ * {@code changes} status changes.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RecordingHub {
+        @Param({"10", "1000", "100000"})
+        int bindings;
+
+        HomeHubRepositoryRegistry hubs;
+        StatusHistory history;
+        HomeHubRepository repository;
+        String[] slotIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            hubs = new HomeHubRepositoryRegistry();
+            history = new StatusHistory(hubs, Duration.ofDays(1), Duration.ofDays(35));
+            history.start();
+            repository = hubs.forHub("home");
+            slotIds = HubFixture.slotIds(bindings);
+            HubFixture.bindAll(repository, slotIds);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            history.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecordedAppliance {
+        @Param({"1000", "100000"})
+        int changes;
+
+        StatusHistory history;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            var hubs = new HomeHubRepositoryRegistry();
+            history = new StatusHistory(hubs, Duration.ofDays(1), Duration.ofDays(35));
+            history.start();
+            var repository = hubs.forHub("home");
+            repository.registerAppliance("heater");
+            repository.bindSlot("1", "heater");
+            for (int i = 0; i < changes; i++) {
+                repository.updateApplianceStatus("remote", "1", i & 1);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            history.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Remote {
+        final SplittableRandom random = new SplittableRandom(42);
+        int operation;
+    }
+
+    @Benchmark
+    public Appliance updateWithHistory(RecordingHub hub, Remote remote) {
+        return hub.repository.updateApplianceStatus("remote", hub.slotIds[remote.random.nextInt(hub.slotIds.length)],
+                remote.operation ^= 1);
+    }
+
+    @Benchmark
+    public StatusUsage usage(RecordedAppliance appliance) {
+        return appliance.history.getUsage("home", "heater", 0, Long.MAX_VALUE).orElseThrow();
+    }
+}
@@ -0,0 +1,28 @@
+package com.axcelerate.homehub.benchmarks;
+
+import com.axcelerate.homehub.repository.HomeHubRepository;
+
+/**
+ * Builds hubs with a given number of bound slots. Slot {@code i} is bound to appliance {@code i}
+ * and names are precomputed so benchmarks do not measure string building.
+ */
+final class HubFixture {
+    private HubFixture() {
+    }
+
+    static String[] slotIds(int bindings) {
+        var slotIds = new String[bindings];
+        for (int i = 0; i < bindings; i++) {
+            slotIds[i] = "slot" + i;
+        }
+        return slotIds;
+    }
+
+    static void bindAll(HomeHubRepository repository, String[] slotIds) {
+        for (int i = 0; i < slotIds.length; i++) {
+            var applianceName = "appliance" + i;
+            repository.registerAppliance(applianceName);
+            repository.bindSlot(slotIds[i], applianceName);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.axcelerate.homehub.benchmarks;
+
+import com.axcelerate.homehub.dto.Appliance;
+import com.axcelerate.homehub.enums.BindingOutcome;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link HomeHubRepository} hot paths on a hub holding {@code bindings} bound slots.
+ * <p>
+ * The {@code *Contended} benchmarks run four threads against one hub: {@code updateContended}
+ * spreads them over random slots with a remote each, {@code updateHotSlotContended} has all of
+ * them operate the same slot through the same remote.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class BoundHub {
+        @Param({"10", "1000", "100000", "1000000"})
+        int bindings;
+
+        HomeHubRepository repository;
+        String[] slotIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            repository = new HomeHubRepository();
+            slotIds = HubFixture.slotIds(bindings);
+            HubFixture.bindAll(repository, slotIds);
+        }
+    }
+
+    /**
+     * Registration and binding grow the hub, so it is rebuilt for every iteration.
+     */
+    @State(Scope.Benchmark)
+    public static class GrowingHub {
+        @Param({"10", "1000", "100000", "1000000"})
+        int bindings;
+
+        HomeHubRepository repository;
+        String[] slotIds;
+        final AtomicInteger next = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUpTrial() {
+            slotIds = HubFixture.slotIds(bindings);
+        }
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            repository = new HomeHubRepository();
+            HubFixture.bindAll(repository, slotIds);
+            next.set(bindings);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Remote {
+        private static final AtomicInteger REMOTES = new AtomicInteger();
+
+        final String remoteId = "remote" + REMOTES.getAndIncrement();
+        final SplittableRandom random = new SplittableRandom(remoteId.hashCode());
+        int operation;
+
+        String nextSlot(String[] slotIds) {
+            return slotIds[random.nextInt(slotIds.length)];
+        }
+
+        int nextOperation() {
+            return operation ^= 1;
+        }
+    }
+
+    @Benchmark
+    public boolean registerAppliance(GrowingHub hub) {
+        return hub.repository.registerAppliance("appliance" + hub.next.getAndIncrement());
+    }
+
+    @Benchmark
+    public BindingOutcome registerAndBind(GrowingHub hub) {
+        var id = hub.next.getAndIncrement();
+        var applianceName = "appliance" + id;
+        hub.repository.registerAppliance(applianceName);
+        return hub.repository.bindSlot("slot" + id, applianceName);
+    }
+
+    @Benchmark
+    public Appliance updateApplianceStatus(BoundHub hub, Remote remote) {
+        return hub.repository.updateApplianceStatus(remote.remoteId, remote.nextSlot(hub.slotIds), remote.nextOperation());
+    }
+
+    @Benchmark
+    public void updateThenUndo(BoundHub hub, Remote remote, Blackhole blackhole) {
+        blackhole.consume(hub.repository.updateApplianceStatus(remote.remoteId, remote.nextSlot(hub.slotIds), remote.nextOperation()));
+        blackhole.consume(hub.repository.undoPreviousAction(remote.remoteId));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Appliance updateContended(BoundHub hub, Remote remote) {
+        return hub.repository.updateApplianceStatus(remote.remoteId, remote.nextSlot(hub.slotIds), remote.nextOperation());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Appliance updateHotSlotContended(BoundHub hub, Remote remote) {
+        return hub.repository.updateApplianceStatus("shared", hub.slotIds[0], remote.nextOperation());
+    }
+}
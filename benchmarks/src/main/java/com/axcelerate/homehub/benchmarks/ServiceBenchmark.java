@@ -0,0 +1,86 @@
+package com.axcelerate.homehub.benchmarks;
+
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.metrics.HomeHubMetrics;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.MessageRenderer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.ResourceBundleMessageSource;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link HomeHubService#operateAppliance} end to end: hub lookup, status update, history, the
+ * response message and the operation timer, on a hub holding {@code bindings} bound slots.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Hub {
+        @Param({"10", "1000", "100000", "1000000"})
+        int bindings;
+
+        HomeHubService service;
+        String[] slotIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            var messageSource = new ResourceBundleMessageSource();
+            messageSource.setBasename("messages");
+            var hubs = new HomeHubRepositoryRegistry();
+            service = new HomeHubService(new MessageRenderer(messageSource, Locale.US), hubs,
+                    new HomeHubMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), hubs));
+            slotIds = HubFixture.slotIds(bindings);
+            HubFixture.bindAll(hubs.forHub(HomeHubService.DEFAULT_HUB), slotIds);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Remote {
+        private static final AtomicInteger REMOTES = new AtomicInteger();
+
+        final String remoteId = "remote" + REMOTES.getAndIncrement();
+        final SplittableRandom random = new SplittableRandom(remoteId.hashCode());
+        int operation;
+    }
+
+    @Benchmark
+    public RemoteOperationResponse operateAppliance(Hub hub, Remote remote) {
+        return operate(hub, remote);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public RemoteOperationResponse operateApplianceContended(Hub hub, Remote remote) {
+        return operate(hub, remote);
+    }
+
+    /**
+     * Operates a slot that is not bound, the path a misbehaving remote hammers.
+     */
+    @Benchmark
+    public Object rejectUnboundSlot(Hub hub, Remote remote) {
+        try {
+            return hub.service.operateAppliance(HomeHubService.DEFAULT_HUB, remote.remoteId, "unbound", remote.operation ^= 1);
+        } catch (BindException e) {
+            return e;
+        }
+    }
+
+    private static RemoteOperationResponse operate(Hub hub, Remote remote) {
+        var slotId = hub.slotIds[remote.random.nextInt(hub.slotIds.length)];
+        return hub.service.operateAppliance(HomeHubService.DEFAULT_HUB, remote.remoteId, slotId, remote.operation ^= 1);
+    }
+}
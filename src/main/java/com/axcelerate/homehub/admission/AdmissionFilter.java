@@ -0,0 +1,232 @@
+package com.axcelerate.homehub.admission;
+
+import com.axcelerate.homehub.exception.ErrorMessage;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.MessageRenderer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control in front of the remote endpoints of {@code HomeHubController}, so a stuck
+ * button cannot flood a hub or its appliances. Disabled by default; turn it on with
+ * {@code home-hub.admission.enabled=true}.
+ * <p>
+ * Operating a slot takes a token from the bucket of the slot ({@code home-hub.admission.slot.*})
+ * and then from the bucket of the remote ({@code home-hub.admission.remote.*}); a batch, a scene,
+ * undo and redo only take one from the remote. The slot goes first, so a button stuck on one slot
+ * exhausts that slot while the other buttons of the remote keep working. Requests without a
+ * {@code remoteId} are told apart by client address, so legacy clients do not share one bucket.
+ * Hub and slot ids are matched after URL decoding, as the controller sees them. Buckets are per hub and
+ * lock-free, see {@link RateLimiter}; buckets idle for {@code home-hub.admission.idle-timeout} are
+ * dropped. A request without a token is answered 429 with a {@code Retry-After} header right here,
+ * without reaching the controller, and counted by {@code home_hub.admission.rejected}.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "home-hub.admission", name = "enabled", havingValue = "true")
+public class AdmissionFilter extends OncePerRequestFilter {
+    static final String REJECTED = "home_hub.admission.rejected";
+
+    private static final String PREFIX = "/home-hub/";
+
+    private final MessageRenderer messages;
+    private final ObjectMapper objectMapper;
+    private final RateLimiter remotes;
+    private final RateLimiter slots;
+    private final Duration idleTimeout;
+    private final LongSupplier nanoTime;
+    private final Counter remoteRejected;
+    private final Counter slotRejected;
+    private ScheduledExecutorService evictor;
+
+    @Autowired
+    public AdmissionFilter(MeterRegistry meterRegistry, MessageRenderer messages, ObjectMapper objectMapper,
+                           @Value("${home-hub.admission.remote.rate:20}") double remoteRate,
+                           @Value("${home-hub.admission.remote.burst:40}") int remoteBurst,
+                           @Value("${home-hub.admission.slot.rate:5}") double slotRate,
+                           @Value("${home-hub.admission.slot.burst:10}") int slotBurst,
+                           @Value("${home-hub.admission.idle-timeout:PT1M}") Duration idleTimeout) {
+        this(meterRegistry, messages, objectMapper, new RateLimiter(remoteRate, remoteBurst, idleTimeout),
+                new RateLimiter(slotRate, slotBurst, idleTimeout), idleTimeout, System::nanoTime);
+    }
+
+    AdmissionFilter(MeterRegistry meterRegistry, MessageRenderer messages, ObjectMapper objectMapper,
+                    RateLimiter remotes, RateLimiter slots, Duration idleTimeout, LongSupplier nanoTime) {
+        if (idleTimeout.toMillis() < 1) {
+            throw new IllegalArgumentException("home-hub.admission.idle-timeout must be at least 1ms but was " + idleTimeout);
+        }
+        this.messages = messages;
+        this.objectMapper = objectMapper;
+        this.remotes = remotes;
+        this.slots = slots;
+        this.idleTimeout = idleTimeout;
+        this.nanoTime = nanoTime;
+        remoteRejected = counter(meterRegistry, "remote");
+        slotRejected = counter(meterRegistry, "slot");
+        gauge(meterRegistry, "remote", remotes);
+        gauge(meterRegistry, "slot", slots);
+    }
+
+    @PostConstruct
+    public void start() {
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "home-hub-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var period = idleTimeout.toMillis();
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+    }
+
+    /**
+     * Drops the buckets that have been full for the idle timeout.
+     */
+    void evictIdle() {
+        var now = nanoTime.getAsLong();
+        remotes.evictIdle(now);
+        slots.evictIdle(now);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        var segments = path.substring(PREFIX.length()).split("/");
+        var hubId = HomeHubService.DEFAULT_HUB;
+        var first = 0;
+        if (segments.length > 2 && segments[0].equals("hubs")) {
+            hubId = decode(segments[1]);
+            first = 2;
+        }
+        var remaining = segments.length - first;
+        String slotId = null;
+        if (remaining == 3 && segments[first].equals("remote")) {
+            // remote/{slotId}/{operation}
+            slotId = decode(segments[first + 1]);
+        } else if (!isRemoteCommand(segments, first, remaining)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        var remoteId = request.getParameter("remoteId");
+        var remoteKey = remoteId;
+        if (remoteId == null) {
+            remoteId = HomeHubService.DEFAULT_REMOTE;
+            remoteKey = remoteId + '\0' + request.getRemoteAddr();
+        }
+        var now = nanoTime.getAsLong();
+        if (slotId != null) {
+            var wait = slots.acquire(hubId + '\0' + slotId, now);
+            if (wait > 0) {
+                slotRejected.increment();
+                reject(response, "admission_slot_limited.message", slotId, wait);
+                return;
+            }
+        }
+        var wait = remotes.acquire(hubId + '\0' + remoteKey, now);
+        if (wait > 0) {
+            remoteRejected.increment();
+            reject(response, "admission_remote_limited.message", remoteId, wait);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Decodes a path segment the way Spring MVC decodes path variables, or returns it as it is if
+     * it is not validly encoded; the controller then rejects the request.
+     */
+    private static String decode(String segment) {
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        try {
+            return UriUtils.decode(segment, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return segment;
+        }
+    }
+
+    /**
+     * @return whether the path is remote/undo, remote/redo, remote/batch or scenes/{sceneName}
+     */
+    private static boolean isRemoteCommand(String[] segments, int first, int remaining) {
+        if (remaining != 2) {
+            return false;
+        }
+        if (segments[first].equals("scenes")) {
+            return true;
+        }
+        if (!segments[first].equals("remote")) {
+            return false;
+        }
+        var command = segments[first + 1];
+        return command.equals("undo") || command.equals("redo") || command.equals("batch");
+    }
+
+    private void reject(HttpServletResponse response, String code, String id, long waitNanos) throws IOException {
+        var retryAfter = String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+        var message = messages.render(code, id, retryAfter);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorMessage(HttpStatus.TOO_MANY_REQUESTS.value(), new Date(), message, message));
+    }
+
+    private static Counter counter(MeterRegistry registry, String scope) {
+        return Counter.builder(REJECTED)
+                .description("Requests answered 429 by admission control")
+                .tag("scope", scope)
+                .register(registry);
+    }
+
+    private static void gauge(MeterRegistry registry, String scope, RateLimiter limiter) {
+        Gauge.builder("home_hub.admission.buckets", limiter, RateLimiter::size)
+                .description("Token buckets held by admission control")
+                .tag("scope", scope)
+                .register(registry);
+    }
+}
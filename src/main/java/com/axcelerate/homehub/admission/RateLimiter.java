@@ -0,0 +1,71 @@
+package com.axcelerate.homehub.admission;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets of {@code rate} tokens per second holding up to {@code burst} tokens, one per key.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} following the generic cell rate algorithm: it holds
+ * the theoretical arrival time, the time at which the bucket would be full again. A request is
+ * admitted if taking a token leaves that time at most {@code burst} emission intervals ahead of
+ * now, and taking it is one compare-and-set, so buckets are lock-free and need no refill task.
+ * <p>
+ * A bucket that has been full for {@code idle} is the same as a new one and is dropped by
+ * {@link #evictIdle}. A request racing with its eviction may take its token from the dropped
+ * bucket, so at most one request per eviction is admitted beyond the limit.
+ */
+public final class RateLimiter {
+    private final long interval;
+    private final long tolerance;
+    private final long idle;
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    public RateLimiter(double rate, int burst, Duration idle) {
+        if (!(rate > 0) || burst < 1 || idle.isNegative()) {
+            throw new IllegalArgumentException("Rate and burst must be positive but were " + rate + " and " + burst);
+        }
+        this.interval = Math.max(1, Math.round(1_000_000_000 / rate));
+        this.tolerance = interval * burst;
+        this.idle = idle.toNanos();
+    }
+
+    /**
+     * Takes a token from the bucket of {@code key}.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+     */
+    public long acquire(String key, long now) {
+        var bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, ignored -> new AtomicLong(now));
+        }
+        while (true) {
+            var arrival = bucket.get();
+            // nanoTime values may wrap, so they are only compared by their difference
+            var next = (arrival - now > 0 ? arrival : now) + interval;
+            var wait = next - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of buckets dropped because they have been full for {@code idle}
+     */
+    public int evictIdle(long now) {
+        var before = buckets.size();
+        buckets.values().removeIf(bucket -> now - bucket.get() >= idle);
+        return before - buckets.size();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
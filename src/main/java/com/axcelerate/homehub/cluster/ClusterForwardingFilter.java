@@ -0,0 +1,195 @@
+package com.axcelerate.homehub.cluster;
+
+import com.axcelerate.homehub.exception.ErrorMessage;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.MessageRenderer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Set;
+
+/**
+ * Forwards requests for hubs owned by another node to that node and streams its response back,
+ * status, headers and body as they are, so a client can send any request to any node. Server-sent
+ * events are flushed as they arrive.
+ * <p>
+ * Runs before every other filter, so admission control and metrics apply on the owning node only.
+ * Requests forwarded by another node are always served here. A {@link ClusterMembership#FORWARDED_BY}
+ * header that does not come from a member is dropped, so clients cannot use it to skip forwarding
+ * or to stop a membership change from being sent on. If the owner cannot be reached the request
+ * is answered 503.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "home-hub.cluster", name = "enabled", havingValue = "true")
+public class ClusterForwardingFilter extends OncePerRequestFilter {
+    private static final String PREFIX = "/home-hub/";
+    private static final String HUBS = "hubs/";
+    private static final String CLUSTER = "cluster";
+
+    /**
+     * Hop-by-hop headers and those {@link java.net.http.HttpClient} sets itself.
+     */
+    private static final Set<String> SKIPPED_HEADERS = Set.of("connection", "content-length", "expect", "host",
+            "keep-alive", "proxy-connection", "te", "trailer", "transfer-encoding", "upgrade", "http2-settings");
+
+    private final ClusterMembership membership;
+    private final MessageRenderer messages;
+    private final ObjectMapper objectMapper;
+
+    public ClusterForwardingFilter(ClusterMembership membership, MessageRenderer messages, ObjectMapper objectMapper) {
+        this.membership = membership;
+        this.messages = messages;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var forwardedBy = request.getHeader(ClusterMembership.FORWARDED_BY);
+        if (forwardedBy != null) {
+            if (membership.isForwardedByMember(forwardedBy, request.getRemoteAddr())) {
+                chain.doFilter(request, response);
+                return;
+            }
+            request = withoutForwardedBy(request);
+        }
+        var hubId = hubId(request.getRequestURI().substring(request.getContextPath().length()));
+        var ownerUrl = hubId == null ? null : membership.ownerUrl(hubId);
+        if (ownerUrl == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        var query = request.getQueryString();
+        var target = ownerUrl + request.getRequestURI() + (query == null ? "" : "?" + query);
+        var body = request.getInputStream().readAllBytes();
+        var forwarded = HttpRequest.newBuilder(URI.create(target))
+                .timeout(membership.timeout())
+                .method(request.getMethod(), body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (var name : Collections.list(request.getHeaderNames())) {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase())) {
+                for (var value : Collections.list(request.getHeaders(name))) {
+                    forwarded.header(name, value);
+                }
+            }
+        }
+        forwarded.header(ClusterMembership.FORWARDED_BY, membership.getNodeId());
+        HttpResponse<InputStream> owned;
+        try {
+            owned = membership.client().send(forwarded.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            log.warn("Forwarding {} {} to {} failed: {}", request.getMethod(), request.getRequestURI(), ownerUrl, e.toString());
+            unavailable(response, hubId, ownerUrl);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unavailable(response, hubId, ownerUrl);
+            return;
+        }
+        response.setStatus(owned.statusCode());
+        owned.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":") && !SKIPPED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        try (var in = owned.body()) {
+            var out = response.getOutputStream();
+            var buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param path the request path as sent, still URL-encoded
+     * @return the hub a {@code /home-hub/} path addresses, decoded as the controller sees it, or
+     * {@code null} for cluster requests and other paths
+     */
+    static String hubId(String path) {
+        if (!path.startsWith(PREFIX)) {
+            return null;
+        }
+        var rest = path.substring(PREFIX.length());
+        if (rest.equals(CLUSTER) || rest.startsWith(CLUSTER + "/")) {
+            return null;
+        }
+        if (!rest.startsWith(HUBS)) {
+            return HomeHubService.DEFAULT_HUB;
+        }
+        var end = rest.indexOf('/', HUBS.length());
+        if (end < 0) {
+            return null;
+        }
+        var hubId = rest.substring(HUBS.length(), end);
+        try {
+            return UriUtils.decode(hubId, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // not validly encoded; served here and rejected like any bad path
+            return null;
+        }
+    }
+
+    private static HttpServletRequest withoutForwardedBy(HttpServletRequest request) {
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public String getHeader(String name) {
+                return isForwardedBy(name) ? null : super.getHeader(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaders(String name) {
+                return isForwardedBy(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaderNames() {
+                var names = Collections.list(super.getHeaderNames());
+                names.removeIf(ClusterForwardingFilter::isForwardedBy);
+                return Collections.enumeration(names);
+            }
+        };
+    }
+
+    private static boolean isForwardedBy(String name) {
+        return ClusterMembership.FORWARDED_BY.equalsIgnoreCase(name);
+    }
+
+    private void unavailable(HttpServletResponse response, String hubId, String ownerUrl) throws IOException {
+        var message = messages.render("cluster_node_unavailable.message", hubId, ownerUrl);
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorMessage(HttpStatus.SERVICE_UNAVAILABLE.value(), new Date(), message, message));
+    }
+}
@@ -0,0 +1,365 @@
+package com.axcelerate.homehub.cluster;
+
+import com.axcelerate.homehub.dto.ApplianceStatusEvent;
+import com.axcelerate.homehub.dto.HubTransfer;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.service.MessageRenderer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Which node of the cluster owns which hub. Clustering is off by default; turn it on with
+ * {@code home-hub.cluster.enabled=true}.
+ * <p>
+ * Hubs, not slots, are the unit of sharding: a hub's undo history spans its slots, so all of them
+ * have to live on one node. Hub ids are placed on a {@link HashRing} of the members, each node
+ * being {@code home-hub.cluster.virtual-nodes} points on it, and every node computes the same
+ * owner from the same member list. Requests for hubs owned elsewhere are forwarded by the
+ * {@link ClusterForwardingFilter}.
+ * <p>
+ * {@link #changeMembers} installs a new member list and sends it to every old and new member, so
+ * one call reconfigures the cluster. Each node then hands off the hubs it no longer owns: their
+ * writes are suspended, so requests that were already past the forwarding filter get a 503 and
+ * are forwarded when retried, their appliances, bindings with statuses, and scenes are sent to the
+ * new owner, which merges them without overwriting anything written to it meanwhile, and the hub
+ * is dropped locally. A hub whose handoff fails takes writes again, stays here and is retried on
+ * the next membership change. A hub another node owns is never created here, so a request that
+ * slips past the filter after its hub left gets a 503 too, instead of an empty hub. Undo history,
+ * schedules and device dispatch state are not moved, and a node that is gone takes its hubs with
+ * it unless persistence is on.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "home-hub.cluster", name = "enabled", havingValue = "true")
+public class ClusterMembership {
+    /**
+     * Marks a request sent by another node, which is always served locally so it cannot loop. It
+     * is only believed if it names a member and comes from an address that member's URL resolves
+     * to, see {@link #isForwardedByMember}.
+     */
+    public static final String FORWARDED_BY = "X-Home-Hub-Forwarded-By";
+
+    private static final String MEMBERS_PATH = "/home-hub/cluster/members";
+    private static final String HUBS_PATH = "/home-hub/cluster/hubs/";
+
+    private final HomeHubRepositoryRegistry hubs;
+    private final MessageRenderer messages;
+    private final ObjectMapper objectMapper;
+    private final String nodeId;
+    private final int virtualNodes;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final ReentrantLock changes = new ReentrantLock();
+    private volatile View view;
+
+    /**
+     * @param addresses the addresses of every other member, resolved from its URL when the view is installed
+     */
+    private record View(Map<String, String> members, HashRing ring, Map<String, Set<InetAddress>> addresses) {
+    }
+
+    @Autowired
+    public ClusterMembership(HomeHubRepositoryRegistry hubs, MessageRenderer messages, ObjectMapper objectMapper,
+                             @Value("${home-hub.cluster.node-id:}") String nodeId,
+                             @Value("${home-hub.cluster.members:}") String members,
+                             @Value("${home-hub.cluster.virtual-nodes:128}") int virtualNodes,
+                             @Value("${home-hub.cluster.timeout:PT5S}") Duration timeout) {
+        if (nodeId.isBlank() || virtualNodes < 1) {
+            throw new IllegalArgumentException("home-hub.cluster.node-id must be set and virtual-nodes be at least 1");
+        }
+        this.hubs = hubs;
+        this.messages = messages;
+        this.objectMapper = objectMapper;
+        this.nodeId = nodeId;
+        this.virtualNodes = virtualNodes;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        view = view(parseMembers(members));
+        hubs.setOwnedElsewhere(hubId -> ownerUrl(hubId) != null);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the base URL of every member by node id; this node's may be empty
+     */
+    public Map<String, String> getMembers() {
+        return view.members;
+    }
+
+    /**
+     * @return the base URL of the node owning the hub, or {@code null} if this node owns it
+     */
+    public String ownerUrl(String hubId) {
+        var current = view;
+        var owner = current.ring.owner(hubId);
+        return owner.equals(nodeId) ? null : current.members.get(owner);
+    }
+
+    /**
+     * Whether a request marked {@link #FORWARDED_BY} {@code forwardedBy} can have come from that
+     * member: it has to come from an address the member's URL resolved to. A loopback address
+     * matches any member on this machine, so members sharing a host can vouch for each other.
+     *
+     * @param remoteAddr the IP address the request came from
+     */
+    public boolean isForwardedByMember(String forwardedBy, String remoteAddr) {
+        var addresses = view.addresses.get(forwardedBy);
+        if (addresses == null || addresses.isEmpty()) {
+            return false;
+        }
+        InetAddress remote;
+        try {
+            // an IP literal, so no lookup
+            remote = InetAddress.getByName(remoteAddr);
+        } catch (UnknownHostException e) {
+            return false;
+        }
+        return addresses.contains(remote)
+                || remote.isLoopbackAddress() && addresses.stream().anyMatch(InetAddress::isLoopbackAddress);
+    }
+
+    /**
+     * @return the hubs held by this node, sorted
+     */
+    public List<String> getLocalHubIds() {
+        var hubIds = new ArrayList<>(hubs.getHubIds());
+        Collections.sort(hubIds);
+        return hubIds;
+    }
+
+    HttpClient client() {
+        return client;
+    }
+
+    Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Installs {@code members}, sends them on to the other old and new members unless they came
+     * from one, and hands off the hubs this node no longer owns.
+     *
+     * @param members the base URL of every node by node id
+     * @param propagate whether to send the members to the other nodes
+     */
+    public void changeMembers(Map<String, String> members, boolean propagate) {
+        var next = view(validate(members));
+        changes.lock();
+        try {
+            var previous = view;
+            view = next;
+            if (propagate) {
+                var others = new LinkedHashSet<String>();
+                others.addAll(previous.members.keySet());
+                others.addAll(next.members.keySet());
+                others.remove(nodeId);
+                for (var other : others) {
+                    var url = next.members.getOrDefault(other, previous.members.get(other));
+                    send(url + MEMBERS_PATH, "PUT", next.members, "members to node " + other);
+                }
+            }
+            rebalance();
+        } finally {
+            changes.unlock();
+        }
+    }
+
+    /**
+     * Hands off every local hub that another node owns. Passes repeat until one finds no hub it
+     * has not tried yet, which catches hubs created just before the current view was installed.
+     *
+     * @return the number of hubs handed off
+     */
+    public int rebalance() {
+        var moved = 0;
+        var tried = new HashSet<String>();
+        var pass = List.copyOf(hubs.getHubIds());
+        while (!pass.isEmpty()) {
+            for (var hubId : pass) {
+                tried.add(hubId);
+                var ownerUrl = ownerUrl(hubId);
+                var hub = hubs.findHub(hubId).orElse(null);
+                if (ownerUrl == null || hub == null) {
+                    continue;
+                }
+                hub.suspendWrites();
+                var url = ownerUrl + HUBS_PATH + UriUtils.encodePathSegment(hubId, StandardCharsets.UTF_8);
+                if (send(url, "PUT", export(hubId, hub), "hub " + hubId)) {
+                    hubs.removeHub(hubId);
+                    moved++;
+                } else {
+                    hub.resumeWrites();
+                }
+            }
+            pass = hubs.getHubIds().stream().filter(hubId -> !tried.contains(hubId)).toList();
+        }
+        if (moved > 0) {
+            log.info("Node {} handed off {} hubs", nodeId, moved);
+        }
+        return moved;
+    }
+
+    /**
+     * Merges a hub handed off by another node. Appliances, bindings and scenes that already exist
+     * here, because requests reached this node first, are kept as they are. Appliances and
+     * bindings are merged as changes, so listeners see them and persistence logs them before the
+     * sender is told to drop its copy.
+     */
+    public void accept(HubTransfer transfer) {
+        var hub = hubs.forHub(transfer.getHubId());
+        if (transfer.getAppliances() != null) {
+            transfer.getAppliances().forEach(hub::registerAppliance);
+        }
+        if (transfer.getBindings() != null) {
+            for (var binding : transfer.getBindings()) {
+                hub.mergeBinding(binding.getSlotId(), binding.getAppliance(), binding.getStatus());
+            }
+        }
+        if (transfer.getScenes() != null) {
+            transfer.getScenes().forEach((sceneName, operations) -> {
+                if (hub.findScene(sceneName).isEmpty()) {
+                    hub.saveScene(sceneName, operations);
+                }
+            });
+        }
+    }
+
+    private HubTransfer export(String hubId, HomeHubRepository hub) {
+        var bindings = new ArrayList<ApplianceStatusEvent>();
+        hub.forEachBinding((slotId, applianceName, status) -> bindings.add(new ApplianceStatusEvent(slotId, applianceName, status)));
+        return new HubTransfer(hubId, List.copyOf(hub.getRegisteredAppliances()), bindings, hub.getScenes());
+    }
+
+    private boolean send(String url, String method, Object body, String what) {
+        try {
+            var request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header(FORWARDED_BY, nodeId)
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+            var status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status / 100 == 2) {
+                return true;
+            }
+            log.warn("Sending {} to {} failed with status {}", what, url, status);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("Sending {} to {} failed", what, url, e);
+        } catch (IOException e) {
+            log.warn("Sending {} to {} failed: {}", what, url, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private View view(Map<String, String> members) {
+        var addresses = new HashMap<String, Set<InetAddress>>();
+        for (var member : members.entrySet()) {
+            if (!member.getKey().equals(nodeId) && !member.getValue().isEmpty()) {
+                addresses.put(member.getKey(), resolve(member.getValue()));
+            }
+        }
+        return new View(Collections.unmodifiableMap(members), new HashRing(members.keySet(), virtualNodes), addresses);
+    }
+
+    /**
+     * @return the addresses the host of {@code url} resolves to, none if it does not resolve
+     */
+    private static Set<InetAddress> resolve(String url) {
+        try {
+            return Set.of(InetAddress.getAllByName(URI.create(url).getHost()));
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            log.warn("Cannot resolve cluster member {}, requests it forwards are not trusted: {}", url, e.toString());
+            return Set.of();
+        }
+    }
+
+    /**
+     * Parses {@code id=url,id=url}; an empty list means this node alone.
+     */
+    private Map<String, String> parseMembers(String members) {
+        var parsed = new LinkedHashMap<String, String>();
+        for (var member : members.split(",")) {
+            if (member.isBlank()) {
+                continue;
+            }
+            var separator = member.indexOf('=');
+            if (separator < 0) {
+                parsed.put(member.trim(), "");
+            } else {
+                parsed.put(member.substring(0, separator).trim(), member.substring(separator + 1).trim());
+            }
+        }
+        if (parsed.isEmpty()) {
+            parsed.put(nodeId, "");
+        }
+        return validate(parsed);
+    }
+
+    /**
+     * @return the members with trailing slashes removed from their URLs
+     */
+    private Map<String, String> validate(Map<String, String> members) {
+        if (members == null || members.isEmpty()) {
+            throw invalidMember("");
+        }
+        var validated = new LinkedHashMap<String, String>();
+        for (var member : members.entrySet()) {
+            var id = member.getKey();
+            var url = member.getValue() == null ? "" : member.getValue().trim();
+            if (id == null || id.isBlank()) {
+                throw invalidMember(String.valueOf(id));
+            }
+            if (url.isEmpty() ? !id.equals(nodeId) : !url.startsWith("http://") && !url.startsWith("https://")) {
+                throw invalidMember(id);
+            }
+            while (url.endsWith("/")) {
+                url = url.substring(0, url.length() - 1);
+            }
+            validated.put(id, url);
+        }
+        return validated;
+    }
+
+    private BindException invalidMember(String id) {
+        return new BindException(HttpStatus.BAD_REQUEST, messages.render("cluster_member_invalid.message", id));
+    }
+}
@@ -0,0 +1,83 @@
+package com.axcelerate.homehub.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring assigning keys to nodes.
+ * <p>
+ * Every node is placed on a 64-bit ring at {@code virtualNodes} pseudo-random points, and a key
+ * belongs to the node of the first point at or after the key's hash, wrapping around. Adding or
+ * removing a node therefore only moves the keys between its points and their predecessors, about
+ * {@code 1/N} of all keys, and the virtual nodes spread each node's share evenly over the ring.
+ * <p>
+ * The points are kept in a sorted {@code long[]} with a parallel array of owners, so a lookup is a
+ * hash and a binary search without allocation. Immutable; a membership change builds a new ring.
+ */
+public final class HashRing {
+    private final long[] points;
+    private final String[] owners;
+    private final Set<String> nodes;
+
+    public HashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one node and one virtual node per node");
+        }
+        var sorted = List.copyOf(new TreeSet<>(nodeIds));
+        nodes = Set.copyOf(sorted);
+        var entries = new long[sorted.size() * virtualNodes][];
+        var count = 0;
+        for (int node = 0; node < sorted.size(); node++) {
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                entries[count++] = new long[]{hash(sorted.get(node) + '#' + replica), node};
+            }
+        }
+        // ties, which are vanishingly rare, go to the smaller node id so every node builds the same ring
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        points = new long[count];
+        owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = entries[i][0];
+            owners[i] = sorted.get((int) entries[i][1]);
+        }
+    }
+
+    /**
+     * @return the id of the node owning {@code key}
+     */
+    public String owner(String key) {
+        var index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0;
+            }
+        }
+        return owners[index];
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finished with the MurmurHash3 mixer so that similar keys
+     * such as {@code hub1} and {@code hub2} land far apart.
+     */
+    static long hash(String key) {
+        var hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,21 @@
+package com.axcelerate.homehub.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Serves the WebFlux edition, enabled with {@code spring.main.web-application-type=reactive}, on
+ * Netty. Tomcat is also on the classpath for the servlet edition and Spring Boot would otherwise
+ * prefer it; Netty serves every connection from a small fixed set of event loop threads.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,34 @@
+package com.axcelerate.homehub.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Serves requests on virtual threads instead of Tomcat's platform worker pool. Enabled with
+ * {@code home-hub.threads.virtual=true}.
+ * <p>
+ * Every request gets its own virtual thread, so a request blocked on a device call no longer
+ * holds one of a small number of worker threads. Async MVC work (SSE, streaming responses) runs
+ * on virtual threads as well.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "home-hub.threads", name = "virtual", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
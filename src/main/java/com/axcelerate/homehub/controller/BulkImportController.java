@@ -0,0 +1,85 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.service.BulkImportService;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+@RestController
+@RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BulkImportController {
+    static final String NDJSON = "application/x-ndjson";
+    static final String CSV = "text/csv";
+
+    @Autowired
+    BulkImportService service;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @PostMapping(value = {"/bulk/appliances", "/hubs/{hubId}/bulk/appliances"}, consumes = {CSV, NDJSON, MediaType.TEXT_PLAIN_VALUE})
+    @Operation(summary = "This endpoint is used to register many appliances at once. The body is one appliance name per line (CSV) " +
+            "or one {\"name\":...} object per line (NDJSON). The response holds a result per line")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream processed, see the per line results")
+    })
+    public void importAppliances(@PathVariable(value = "hubId", required = false) String hubId,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        startResponse(response);
+        try (var out = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            service.importAppliances(hub(hubId), reader(request), isNdjson(request), out);
+        }
+    }
+
+    @PostMapping(value = {"/bulk/bindings", "/hubs/{hubId}/bulk/bindings"}, consumes = {CSV, NDJSON, MediaType.TEXT_PLAIN_VALUE})
+    @Operation(summary = "This endpoint is used to bind many remote slots at once. The body is one slotId,applianceName pair per line (CSV) " +
+            "or one {\"slotId\":...,\"applianceName\":...} object per line (NDJSON). The response holds a result per line")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream processed, see the per line results")
+    })
+    public void importBindings(@PathVariable(value = "hubId", required = false) String hubId,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        startResponse(response);
+        try (var out = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            service.importBindings(hub(hubId), reader(request), isNdjson(request), out);
+        }
+    }
+
+    private static void startResponse(HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    }
+
+    private static BufferedReader reader(HttpServletRequest request) throws IOException {
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        return request.getReader();
+    }
+
+    private static boolean isNdjson(HttpServletRequest request) {
+        var contentType = request.getContentType();
+        return contentType != null && contentType.startsWith(NDJSON);
+    }
+
+    private static String hub(String hubId) {
+        return hubId == null ? HomeHubService.DEFAULT_HUB : hubId;
+    }
+}
@@ -0,0 +1,83 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.cluster.ClusterMembership;
+import com.axcelerate.homehub.dto.ClusterResponse;
+import com.axcelerate.homehub.dto.HubTransfer;
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.service.MessageRenderer;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "home-hub.cluster", name = "enabled", havingValue = "true")
+public class ClusterController {
+    @Autowired
+    ClusterMembership membership;
+
+    @Autowired
+    MessageRenderer messages;
+
+    @GetMapping("/cluster")
+    @Operation(summary = "This endpoint returns the members of the cluster as this node sees them and the hubs it holds")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Node id, members and local hubs",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ClusterResponse.class)))
+
+    })
+    public ResponseEntity<ClusterResponse> getCluster() {
+        return new ResponseEntity<>(response(), HttpStatus.OK);
+    }
+
+    @PutMapping("/cluster/members")
+    @Operation(summary = "This endpoint is used to change the members of the cluster. The body maps node ids to base URLs; "
+            + "the members are sent on to every node and hubs are handed off to their new owners")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Members changed and hubs handed off",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ClusterResponse.class))),
+            @ApiResponse(responseCode = "400", description = "A member has no valid URL")
+
+    })
+    public ResponseEntity<ClusterResponse> changeMembers(@RequestBody Map<String, String> members,
+                                                         @RequestHeader(value = ClusterMembership.FORWARDED_BY, required = false) String forwardedBy) {
+        membership.changeMembers(members, forwardedBy == null);
+        return new ResponseEntity<>(response(), HttpStatus.OK);
+    }
+
+    @PutMapping("/cluster/hubs/{hubId}")
+    @Operation(summary = "This endpoint is used by the nodes to hand off a hub to its new owner")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Hub merged into this node",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class)))
+
+    })
+    public ResponseEntity<RemoteOperationResponse> acceptHub(@PathVariable("hubId") String hubId,
+                                                             @RequestBody HubTransfer transfer) {
+        transfer.setHubId(hubId);
+        membership.accept(transfer);
+        return new ResponseEntity<>(new RemoteOperationResponse(HttpStatus.OK,
+                messages.render("cluster_hub_received.message", hubId, membership.getNodeId())), HttpStatus.OK);
+    }
+
+    private ClusterResponse response() {
+        return new ClusterResponse(HttpStatus.OK, membership.getNodeId(), membership.getMembers(), membership.getLocalHubIds());
+    }
+}
@@ -0,0 +1,51 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.dispatch.CommandDispatcher;
+import com.axcelerate.homehub.dto.DeviceStateResponse;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.MessageRenderer;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "home-hub.dispatch", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class DeviceStateController {
+    @Autowired
+    CommandDispatcher dispatcher;
+
+    @Autowired
+    MessageRenderer messages;
+
+    @GetMapping({"/remote/{slotId}/device", "/hubs/{hubId}/remote/{slotId}/device"})
+    @Operation(summary = "This endpoint is used to compare the status the hub wants an appliance in with the status the appliance last acknowledged")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Desired and acknowledged status of the appliance; pending is true until they match",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DeviceStateResponse.class))),
+            @ApiResponse(responseCode = "404", description = "No status has been set for the slot yet",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DeviceStateResponse.class)))
+
+    })
+    public ResponseEntity<DeviceStateResponse> getDeviceState(@PathVariable(value = "hubId", required = false) String hubId,
+                                                              @PathVariable("slotId") String slotId) {
+        var response = dispatcher.getState(hubId == null ? HomeHubService.DEFAULT_HUB : hubId, slotId)
+                .map(state -> new DeviceStateResponse(HttpStatus.OK, state.slotId(), state.applianceName(), state.desired(),
+                        state.acknowledged(), state.pending(), state.attempts(), state.lastError()))
+                .orElseGet(() -> new DeviceStateResponse(HttpStatus.NOT_FOUND, slotId, null, null, null, false, 0,
+                        messages.render("device_state_unknown.message", slotId)));
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+}
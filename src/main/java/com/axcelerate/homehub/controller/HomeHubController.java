@@ -1,41 +1,124 @@
 package com.axcelerate.homehub.controller;
 
 import com.axcelerate.homehub.dto.ApplianceRegisterResponse;
+import com.axcelerate.homehub.dto.ApplianceSlotResponse;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
+import com.axcelerate.homehub.dto.GroupResponse;
 import com.axcelerate.homehub.dto.RemoteOperationResponse;
 import com.axcelerate.homehub.dto.RemoteSlotBindingResponse;
+import com.axcelerate.homehub.dto.ScheduleRequest;
+import com.axcelerate.homehub.dto.ScheduleResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.enums.ApplianceStatus;
 import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.IdempotencyCache;
+import com.axcelerate.homehub.service.ScheduleService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.util.List;
 
 @RestController
 @Validated
 @RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class HomeHubController {
     @Autowired
     HomeHubService service;
 
-    @GetMapping("remote/slots")
-    @Operation(summary = "This endpoint is used to list bound slots of a remote")
+    @Autowired
+    ScheduleService scheduleService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @GetMapping({"remote/slots", "hubs/{hubId}/remote/slots"})
+    @Operation(summary = "This endpoint is used to list bound slots of a remote. Send the ETag of a previous answer as If-None-Match to get 304 " +
+            "while nothing changed")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Bound slots, comma separated, in the order they were bound"),
+            @ApiResponse(responseCode = "304", description = "The hub has not changed since the ETag given as If-None-Match")
+    })
+    public ResponseEntity<String> getUsedSlots(@PathVariable(value = "hubId", required = false) String hubId, WebRequest request) {
+        var slots = service.getSlotList(hub(hubId));
+        if (request.checkNotModified(slots.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(slots.etag()).body(slots.body());
+    }
 
-    public ResponseEntity<String> getUsedSlots() {
-        return new ResponseEntity<>(service.listAllSlots().stream().collect(Collectors.joining(",")), HttpStatus.OK);
+    @GetMapping(value = {"remote/state", "hubs/{hubId}/remote/state"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "This endpoint is used to get every binding of a hub with its status and the hub's version. Send the ETag of a previous " +
+            "answer as If-None-Match to get 304 while nothing changed, or pass the version to /remote/changes to get only what changed")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All bindings, the version they are at, and full=true"),
+            @ApiResponse(responseCode = "304", description = "The hub has not changed since the ETag given as If-None-Match")
+    })
+    public ResponseEntity<byte[]> getHubState(@PathVariable(value = "hubId", required = false) String hubId, WebRequest request) {
+        var state = service.getHubState(hub(hubId));
+        if (request.checkNotModified(state.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(state.etag()).contentType(MediaType.APPLICATION_JSON).body(state.body());
+    }
+
+    @GetMapping(value = {"remote/changes", "hubs/{hubId}/remote/changes"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "This endpoint is used to get the bindings made or changed after a version of /remote/state or a previous call, " +
+            "with their current status. If the changes are no longer known the full state is returned, with full=true")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Changed bindings and the version they bring the caller up to")
+    })
+    public ResponseEntity<byte[]> getChanges(@PathVariable(value = "hubId", required = false) String hubId,
+                                             @RequestParam("since") long since) {
+        var changes = service.getChangesSince(hub(hubId), since);
+        return ResponseEntity.ok().eTag(changes.etag()).contentType(MediaType.APPLICATION_JSON).body(changes.body());
     }
 
-    @PostMapping("/remote/{slotId}/appliance/{applianceName}")
+    @GetMapping(value = {"remote/bindings", "hubs/{hubId}/remote/bindings"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "This endpoint is used to page through the bound slots of a remote with their appliance and status. Filter by status (ON/OFF) " +
+            "and appliance name prefix, and pass the nextCursor of a page as cursor to get the next page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One page of bindings, nextCursor is null on the last page"),
+            @ApiResponse(responseCode = "400", description = "The limit is out of range or the cursor is not valid")
+    })
+    public void listBindings(@PathVariable(value = "hubId", required = false) String hubId,
+                             @RequestParam(value = "status", required = false) ApplianceStatus status,
+                             @RequestParam(value = "prefix", required = false) String prefix,
+                             @RequestParam(value = "cursor", required = false) String cursor,
+                             @RequestParam(value = "limit", defaultValue = "" + HomeHubService.DEFAULT_PAGE_SIZE) int limit,
+                             HttpServletResponse response) throws IOException {
+        service.validateBindingsPage(cursor, limit);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        // closing the servlet stream would commit the response, so a failure while writing
+        // leaves it open for the exception handler
+        var out = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        service.listBindings(hub(hubId), status, prefix, cursor, limit, out);
+        out.close();
+    }
+
+    @PostMapping({"/remote/{slotId}/appliance/{applianceName}", "/hubs/{hubId}/remote/{slotId}/appliance/{applianceName}"})
     @Operation(summary = "This endpoint is used to bind an appliance with a remote slot. Be noted prior to binding the appliance please register it")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Appliance turned ON/OFF",
@@ -45,30 +128,230 @@ public class HomeHubController {
 
     })
     public ResponseEntity<RemoteSlotBindingResponse> bindRemoteSlotToAppliance(
+            @PathVariable(value = "hubId", required = false) String hubId,
             @PathVariable("slotId") @NotBlank() @Size(min = 1, message = "To bind appliance with remote slot the slotID is required with at least 1 character") String slotId,
-            @PathVariable("applianceName") @NotBlank() @Size(min = 1, message = "To bind appliance with remote slot the appliance name is required with at least 1 character") String applianceName
+            @PathVariable("applianceName") @NotBlank() @Size(min = 1, message = "To bind appliance with remote slot the appliance name is required with at least 1 character") String applianceName,
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey
     ) {
-        var response = service.bindRemoteSlotToAppliance(slotId, applianceName);
+        var response = service.bindRemoteSlotToAppliance(hub(hubId), slotId, applianceName, idempotencyKey);
         return new ResponseEntity<>(response, response.getBindingStatus());
     }
 
-    @PostMapping("/remote/{slotId}/{operation}")
+    @GetMapping({"/appliances/{applianceName}/slot", "/hubs/{hubId}/appliances/{applianceName}/slot"})
+    @Operation(summary = "This endpoint is used to find the remote slot an appliance is bound to")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Remote slot bound to the appliance",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceSlotResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Appliance is not bound to any remote slot",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceSlotResponse.class)))
+
+    })
+    public ResponseEntity<ApplianceSlotResponse> getApplianceSlot(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                  @PathVariable("applianceName") String applianceName) {
+        var response = service.findSlotForAppliance(hub(hubId), applianceName);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @PostMapping({"/remote/{slotId}/{operation}", "/hubs/{hubId}/remote/{slotId}/{operation}"})
     @Operation(summary = "This endpoint is used to operate an appliance. SlotId is slot from remote and operation is 0/1")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Appliance turned ON/OFF",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class))),
             @ApiResponse(responseCode = "400", description = "Slot is not bound to any appliance. Please bind the slot first",
-                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class)))
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class))),
+            @ApiResponse(responseCode = "429", description = "The remote or the slot is sending too many commands, retry after Retry-After seconds")
+
+    })
+    public ResponseEntity<RemoteOperationResponse> operateAppliance(@PathVariable(value = "hubId", required = false) String hubId,
+                                                   @PathVariable("slotId")  String slotId,
+                                                   @PathVariable("operation") @Min(0) @Max(1)  int operation,
+                                                   @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId,
+                                                   @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        var response = service.operateAppliance(hub(hubId), remoteId, slotId, operation, idempotencyKey);
+        return new ResponseEntity<>(response, response.getOperationStatus());
+    }
+
+    @PostMapping({"/remote/batch", "/hubs/{hubId}/remote/batch"})
+    @Operation(summary = "This endpoint is used to operate many appliances in one request. The body is a list of slotId/operation pairs")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All appliances turned ON/OFF",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = BatchOperationResponse.class))),
+            @ApiResponse(responseCode = "207", description = "Some slots are not bound to any appliance, see the per slot results",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = BatchOperationResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The batch is empty or contains an operation other than 0/1")
+
+    })
+    public ResponseEntity<BatchOperationResponse> operateAppliances(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                    @RequestBody List<SlotOperation> operations,
+                                                                    @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        var response = service.operateAppliances(hub(hubId), remoteId, operations);
+        return new ResponseEntity<>(response, response.getOperationStatus());
+    }
+
+    @PutMapping({"/scenes/{sceneName}", "/hubs/{hubId}/scenes/{sceneName}"})
+    @Operation(summary = "This endpoint is used to save a named scene, a list of slotId/operation pairs that can be run in one call")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Scene saved",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The scene is empty or contains an operation other than 0/1"),
+            @ApiResponse(responseCode = "404", description = "The hub does not exist")
+
+    })
+    public ResponseEntity<RemoteOperationResponse> saveScene(@PathVariable(value = "hubId", required = false) String hubId,
+                                                             @PathVariable("sceneName") String sceneName,
+                                                             @RequestBody List<SlotOperation> operations) {
+        var response = service.saveScene(hub(hubId), sceneName, operations);
+        return new ResponseEntity<>(response, response.getOperationStatus());
+    }
+
+    @PostMapping({"/scenes/{sceneName}", "/hubs/{hubId}/scenes/{sceneName}"})
+    @Operation(summary = "This endpoint is used to run a saved scene")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All appliances of the scene turned ON/OFF",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = BatchOperationResponse.class))),
+            @ApiResponse(responseCode = "207", description = "Some slots of the scene are not bound to any appliance",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = BatchOperationResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Scene does not exist")
+
+    })
+    public ResponseEntity<BatchOperationResponse> runScene(@PathVariable(value = "hubId", required = false) String hubId,
+                                                           @PathVariable("sceneName") String sceneName,
+                                                           @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        var response = service.runScene(hub(hubId), remoteId, sceneName);
+        return new ResponseEntity<>(response, response.getOperationStatus());
+    }
+
+    @PutMapping({"/groups/{groupName}", "/hubs/{hubId}/groups/{groupName}"})
+    @Operation(summary = "This endpoint is used to create a group of appliances, e.g. a room, at the top or below the group given as parent")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Group created",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "200", description = "Group already exists under the same parent",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The parent group does not exist"),
+            @ApiResponse(responseCode = "404", description = "The hub does not exist"),
+            @ApiResponse(responseCode = "409", description = "Group already exists under another parent")
 
     })
-    public ResponseEntity<RemoteOperationResponse> operateAppliance(@PathVariable("slotId")  String slotId,
-                                                   @PathVariable("operation") @Min(0) @Max(1)  int operation) {
-        var response = service.operateAppliance(slotId, operation);
+    public ResponseEntity<GroupResponse> createGroup(@PathVariable(value = "hubId", required = false) String hubId,
+                                                     @PathVariable("groupName") String groupName,
+                                                     @RequestParam(value = "parent", required = false) String parent) {
+        var response = service.createGroup(hub(hubId), groupName, parent);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @GetMapping({"/groups/{groupName}", "/hubs/{hubId}/groups/{groupName}"})
+    @Operation(summary = "This endpoint is used to show a group with its subgroups, its appliances, and how many appliances in it and below it are ON")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The group",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Group does not exist")
+
+    })
+    public ResponseEntity<GroupResponse> getGroup(@PathVariable(value = "hubId", required = false) String hubId,
+                                                  @PathVariable("groupName") String groupName) {
+        var response = service.getGroup(hub(hubId), groupName);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @PutMapping({"/groups/{groupName}/appliances/{applianceName}", "/hubs/{hubId}/groups/{groupName}/appliances/{applianceName}"})
+    @Operation(summary = "This endpoint is used to put a registered appliance into a group. An appliance is in one group at most, so it leaves its previous group")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Appliance added to the group",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The group does not exist or the appliance is not registered")
+
+    })
+    public ResponseEntity<GroupResponse> addToGroup(@PathVariable(value = "hubId", required = false) String hubId,
+                                                    @PathVariable("groupName") String groupName,
+                                                    @PathVariable("applianceName") String applianceName) {
+        var response = service.addToGroup(hub(hubId), groupName, applianceName);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @DeleteMapping({"/groups/{groupName}/appliances/{applianceName}", "/hubs/{hubId}/groups/{groupName}/appliances/{applianceName}"})
+    @Operation(summary = "This endpoint is used to take an appliance out of a group")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Appliance removed from the group",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The group does not exist or the appliance is not in it")
+
+    })
+    public ResponseEntity<GroupResponse> removeFromGroup(@PathVariable(value = "hubId", required = false) String hubId,
+                                                         @PathVariable("groupName") String groupName,
+                                                         @PathVariable("applianceName") String applianceName) {
+        var response = service.removeFromGroup(hub(hubId), groupName, applianceName);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @PostMapping({"/groups/{groupName}/{operation}", "/hubs/{hubId}/groups/{groupName}/{operation}"})
+    @Operation(summary = "This endpoint is used to operate every bound appliance in a group and the groups below it. Operation is 0/1")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Appliances of the group turned ON/OFF",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The group does not exist or the operation is not 0/1")
+
+    })
+    public ResponseEntity<GroupResponse> operateGroup(@PathVariable(value = "hubId", required = false) String hubId,
+                                                      @PathVariable("groupName") String groupName,
+                                                      @PathVariable("operation") @Min(0) @Max(1) int operation) {
+        var response = service.operateGroup(hub(hubId), groupName, operation);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @PostMapping({"/groups/{groupName}/undo", "/hubs/{hubId}/groups/{groupName}/undo"})
+    @Operation(summary = "This endpoint is used to undo the previous operation of a group, restoring the status each of its appliances had. " +
+            "Repeated calls step further back")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Appliances of the group restored",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GroupResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The group does not exist or has no operation to undo")
+
+    })
+    public ResponseEntity<GroupResponse> undoGroupOperation(@PathVariable(value = "hubId", required = false) String hubId,
+                                                            @PathVariable("groupName") String groupName) {
+        var response = service.undoGroupOperation(hub(hubId), groupName);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @PostMapping({"/remote/schedules", "/hubs/{hubId}/remote/schedules"})
+    @Operation(summary = "This endpoint is used to operate an appliance later. Give either at, a time of day (06:00) or ISO-8601 date-time, " +
+            "or after, an ISO-8601 duration (PT30M). A time of day can repeat daily. The operation is validated like a remote's when it fires")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Schedule created",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ScheduleResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The operation is not 0/1 or the time is missing, invalid or in the past")
+
+    })
+    public ResponseEntity<ScheduleResponse> createSchedule(@PathVariable(value = "hubId", required = false) String hubId,
+                                                           @RequestBody ScheduleRequest request,
+                                                           @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        var response = scheduleService.createSchedule(hub(hubId), remoteId, request);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @GetMapping({"/remote/schedules", "/hubs/{hubId}/remote/schedules"})
+    @Operation(summary = "This endpoint is used to list the pending schedules of a hub, the next to fire first")
+    public ResponseEntity<List<ScheduleResponse>> listSchedules(@PathVariable(value = "hubId", required = false) String hubId) {
+        return new ResponseEntity<>(scheduleService.listSchedules(hub(hubId)), HttpStatus.OK);
+    }
+
+    @DeleteMapping({"/remote/schedules/{scheduleId}", "/hubs/{hubId}/remote/schedules/{scheduleId}"})
+    @Operation(summary = "This endpoint is used to cancel a pending schedule")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Schedule cancelled",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Schedule does not exist")
+
+    })
+    public ResponseEntity<RemoteOperationResponse> cancelSchedule(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                  @PathVariable("scheduleId") String scheduleId) {
+        var response = scheduleService.cancelSchedule(hub(hubId), scheduleId);
         return new ResponseEntity<>(response, response.getOperationStatus());
     }
 
-    @PostMapping("/remote/undo")
-    @Operation(summary = "This endpoint is used to undo a previous operation")
+    @PostMapping({"/remote/undo", "/hubs/{hubId}/remote/undo"})
+    @Operation(summary = "This endpoint is used to undo the previous operation of a remote. Repeated calls step further back in the remote's history")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Appliance turned ON/OFF",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class))),
@@ -76,13 +359,29 @@ public class HomeHubController {
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class)))
 
     })
-    public ResponseEntity<RemoteOperationResponse> undo() {
-        var response = service.undoOperation();
+    public ResponseEntity<RemoteOperationResponse> undo(@PathVariable(value = "hubId", required = false) String hubId,
+                                                        @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        var response = service.undoOperation(hub(hubId), remoteId);
+        return new ResponseEntity<>(response, response.getOperationStatus());
+    }
+
+    @PostMapping({"/remote/redo", "/hubs/{hubId}/remote/redo"})
+    @Operation(summary = "This endpoint is used to redo the most recently undone operation of a remote")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Appliance turned ON/OFF",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class))),
+            @ApiResponse(responseCode = "400", description = "No undone action found to redo",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RemoteOperationResponse.class)))
+
+    })
+    public ResponseEntity<RemoteOperationResponse> redo(@PathVariable(value = "hubId", required = false) String hubId,
+                                                        @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        var response = service.redoOperation(hub(hubId), remoteId);
         return new ResponseEntity<>(response, response.getOperationStatus());
     }
 
 
-    @PostMapping("/appliances/{applianceName}")
+    @PostMapping({"/appliances/{applianceName}", "/hubs/{hubId}/appliances/{applianceName}"})
     @Operation(summary = "This endpoint is used to register a device/appliance with Home Hub server. Once a device is registered we can\n" +
             " Bind the device with a slot from remote and use it")
     @ApiResponses(value = {
@@ -92,8 +391,17 @@ public class HomeHubController {
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceRegisterResponse.class)))
 
     })
-    public ResponseEntity<ApplianceRegisterResponse> registerAppliance(@PathVariable("applianceName") String applianceName) {
-        var response = service.registerAppliance(applianceName);
+    public ResponseEntity<ApplianceRegisterResponse> registerAppliance(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                       @PathVariable("applianceName") String applianceName,
+                                                                       @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        var response = service.registerAppliance(hub(hubId), applianceName, idempotencyKey);
         return new ResponseEntity(response, response.getHttpStatus());
     }
+
+    /**
+     * Routes without a {@code hubId} segment predate multi-hub support and address the default hub.
+     */
+    private static String hub(String hubId) {
+        return hubId == null ? HomeHubService.DEFAULT_HUB : hubId;
+    }
 }
@@ -0,0 +1,184 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.dto.ApplianceRegisterResponse;
+import com.axcelerate.homehub.dto.ApplianceSlotResponse;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.dto.RemoteSlotBindingResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.push.EventSink;
+import com.axcelerate.homehub.push.StatusChangePublisher;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.IdempotencyCache;
+import com.axcelerate.homehub.service.ReactiveHomeHubService;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * WebFlux edition of {@link HomeHubController} and {@link StatusEventController}, active when the
+ * application runs with {@code spring.main.web-application-type=reactive}. Routes, request
+ * parameters and response bodies are the same as in the servlet edition.
+ * <p>
+ * This edition is frozen at the endpoints below; newer features (groups, schedules, state and
+ * change feeds, ETags, admission control, clustering) are served by the servlet edition only.
+ */
+@RestController
+@Validated
+@RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveHomeHubController {
+    @Autowired
+    ReactiveHomeHubService service;
+
+    @Autowired
+    StatusChangePublisher publisher;
+
+    @Value("${home-hub.push.timeout:PT30M}")
+    Duration timeout;
+
+    @Value("${home-hub.push.buffer-size:256}")
+    int bufferSize;
+
+    @GetMapping({"remote/slots", "hubs/{hubId}/remote/slots"})
+    @Operation(summary = "This endpoint is used to list bound slots of a remote")
+    public Mono<ResponseEntity<String>> getUsedSlots(@PathVariable(value = "hubId", required = false) String hubId) {
+        return service.listAllSlots(hub(hubId)).map(slots -> new ResponseEntity<>(String.join(",", slots), HttpStatus.OK));
+    }
+
+    @GetMapping(value = {"remote/bindings", "hubs/{hubId}/remote/bindings"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "This endpoint is used to page through the bound slots of a remote with their appliance and status. Filter by status (ON/OFF) " +
+            "and appliance name prefix, and pass the nextCursor of a page as cursor to get the next page")
+    public Mono<ResponseEntity<byte[]>> listBindings(@PathVariable(value = "hubId", required = false) String hubId,
+                                                     @RequestParam(value = "status", required = false) ApplianceStatus status,
+                                                     @RequestParam(value = "prefix", required = false) String prefix,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "limit", defaultValue = "" + HomeHubService.DEFAULT_PAGE_SIZE) int limit) {
+        return service.listBindings(hub(hubId), status, prefix, cursor, limit)
+                .map(page -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(page));
+    }
+
+    @PostMapping({"/remote/{slotId}/appliance/{applianceName}", "/hubs/{hubId}/remote/{slotId}/appliance/{applianceName}"})
+    @Operation(summary = "This endpoint is used to bind an appliance with a remote slot. Be noted prior to binding the appliance please register it")
+    public Mono<ResponseEntity<RemoteSlotBindingResponse>> bindRemoteSlotToAppliance(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                                     @PathVariable("slotId") String slotId,
+                                                                                     @PathVariable("applianceName") String applianceName,
+                                                                                     @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        return service.bindRemoteSlotToAppliance(hub(hubId), slotId, applianceName, idempotencyKey)
+                .map(response -> new ResponseEntity<>(response, response.getBindingStatus()));
+    }
+
+    @GetMapping({"/appliances/{applianceName}/slot", "/hubs/{hubId}/appliances/{applianceName}/slot"})
+    @Operation(summary = "This endpoint is used to find the remote slot an appliance is bound to")
+    public Mono<ResponseEntity<ApplianceSlotResponse>> getApplianceSlot(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                        @PathVariable("applianceName") String applianceName) {
+        return service.findSlotForAppliance(hub(hubId), applianceName)
+                .map(response -> new ResponseEntity<>(response, response.getHttpStatus()));
+    }
+
+    @PostMapping({"/remote/{slotId}/{operation}", "/hubs/{hubId}/remote/{slotId}/{operation}"})
+    @Operation(summary = "This endpoint is used to operate an appliance. SlotId is slot from remote and operation is 0/1")
+    public Mono<ResponseEntity<RemoteOperationResponse>> operateAppliance(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                          @PathVariable("slotId") String slotId,
+                                                                          @PathVariable("operation") @Min(0) @Max(1) int operation,
+                                                                          @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId,
+                                                                          @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        return service.operateAppliance(hub(hubId), remoteId, slotId, operation, idempotencyKey)
+                .map(response -> new ResponseEntity<>(response, response.getOperationStatus()));
+    }
+
+    @PostMapping({"/remote/batch", "/hubs/{hubId}/remote/batch"})
+    @Operation(summary = "This endpoint is used to operate many appliances in one request. The body is a list of slotId/operation pairs")
+    public Mono<ResponseEntity<BatchOperationResponse>> operateAppliances(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                          @RequestBody List<SlotOperation> operations,
+                                                                          @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        return service.operateAppliances(hub(hubId), remoteId, operations)
+                .map(response -> new ResponseEntity<>(response, response.getOperationStatus()));
+    }
+
+    @PutMapping({"/scenes/{sceneName}", "/hubs/{hubId}/scenes/{sceneName}"})
+    @Operation(summary = "This endpoint is used to save a named scene, a list of slotId/operation pairs that can be run in one call")
+    public Mono<ResponseEntity<RemoteOperationResponse>> saveScene(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                   @PathVariable("sceneName") String sceneName,
+                                                                   @RequestBody List<SlotOperation> operations) {
+        return service.saveScene(hub(hubId), sceneName, operations)
+                .map(response -> new ResponseEntity<>(response, response.getOperationStatus()));
+    }
+
+    @PostMapping({"/scenes/{sceneName}", "/hubs/{hubId}/scenes/{sceneName}"})
+    @Operation(summary = "This endpoint is used to run a saved scene")
+    public Mono<ResponseEntity<BatchOperationResponse>> runScene(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                 @PathVariable("sceneName") String sceneName,
+                                                                 @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        return service.runScene(hub(hubId), remoteId, sceneName)
+                .map(response -> new ResponseEntity<>(response, response.getOperationStatus()));
+    }
+
+    @PostMapping({"/remote/undo", "/hubs/{hubId}/remote/undo"})
+    @Operation(summary = "This endpoint is used to undo the previous operation of a remote. Repeated calls step further back in the remote's history")
+    public Mono<ResponseEntity<RemoteOperationResponse>> undo(@PathVariable(value = "hubId", required = false) String hubId,
+                                                              @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        return service.undoOperation(hub(hubId), remoteId)
+                .map(response -> new ResponseEntity<>(response, response.getOperationStatus()));
+    }
+
+    @PostMapping({"/remote/redo", "/hubs/{hubId}/remote/redo"})
+    @Operation(summary = "This endpoint is used to redo the most recently undone operation of a remote")
+    public Mono<ResponseEntity<RemoteOperationResponse>> redo(@PathVariable(value = "hubId", required = false) String hubId,
+                                                              @RequestParam(value = "remoteId", defaultValue = HomeHubService.DEFAULT_REMOTE) String remoteId) {
+        return service.redoOperation(hub(hubId), remoteId)
+                .map(response -> new ResponseEntity<>(response, response.getOperationStatus()));
+    }
+
+    @PostMapping({"/appliances/{applianceName}", "/hubs/{hubId}/appliances/{applianceName}"})
+    @Operation(summary = "This endpoint is used to register a device/appliance with Home Hub server. Once a device is registered we can\n" +
+            " Bind the device with a slot from remote and use it")
+    public Mono<ResponseEntity<ApplianceRegisterResponse>> registerAppliance(@PathVariable(value = "hubId", required = false) String hubId,
+                                                                             @PathVariable("applianceName") String applianceName,
+                                                                             @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        return service.registerAppliance(hub(hubId), applianceName, idempotencyKey)
+                .map(response -> new ResponseEntity<>(response, response.getHttpStatus()));
+    }
+
+    @GetMapping(value = {"/events", "/hubs/{hubId}/events"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "This endpoint streams appliance status changes as Server-Sent Events. Rapid changes of one slot are " +
+            "coalesced into its latest status; a resync event means changes were dropped and the full state should be re-read")
+    public Flux<ServerSentEvent<Object>> streamStatusChanges(@PathVariable(value = "hubId", required = false) String hubId) {
+        Flux<ServerSentEvent<Object>> events = Flux.create(emitter -> {
+            var sink = new EventSink() {
+                @Override
+                public void send(String eventName, Object data) {
+                    emitter.next(ServerSentEvent.builder(data).event(eventName).build());
+                }
+
+                @Override
+                public void close() {
+                    emitter.complete();
+                }
+            };
+            emitter.onDispose(publisher.subscribe(hub(hubId), sink)::run);
+        }, FluxSink.OverflowStrategy.BUFFER);
+        // A client that stops reading is disconnected once bufferSize events are waiting for it
+        return events.onBackpressureBuffer(bufferSize).take(timeout);
+    }
+
+    private static String hub(String hubId) {
+        return hubId == null ? HomeHubService.DEFAULT_HUB : hubId;
+    }
+}
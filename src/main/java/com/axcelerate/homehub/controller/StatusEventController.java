@@ -0,0 +1,52 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.push.EventSink;
+import com.axcelerate.homehub.push.StatusChangePublisher;
+import com.axcelerate.homehub.service.HomeHubService;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StatusEventController {
+    @Autowired
+    StatusChangePublisher publisher;
+
+    @Value("${home-hub.push.timeout:PT30M}")
+    Duration timeout;
+
+    @GetMapping(value = {"/events", "/hubs/{hubId}/events"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "This endpoint streams appliance status changes as Server-Sent Events. Rapid changes of one slot are " +
+            "coalesced into its latest status; a resync event means changes were dropped and the full state should be re-read")
+    public SseEmitter streamStatusChanges(@PathVariable(value = "hubId", required = false) String hubId) {
+        var emitter = new SseEmitter(timeout.toMillis());
+        var sink = new EventSink() {
+            @Override
+            public void send(String eventName, Object data) throws IOException {
+                emitter.send(SseEmitter.event().name(eventName).data(data, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        };
+        var subscription = publisher.subscribe(hubId == null ? HomeHubService.DEFAULT_HUB : hubId, sink);
+        emitter.onCompletion(subscription);
+        emitter.onTimeout(subscription);
+        emitter.onError(error -> subscription.run());
+        return emitter;
+    }
+}
@@ -0,0 +1,71 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.dto.ApplianceHistoryResponse;
+import com.axcelerate.homehub.dto.ApplianceUsageResponse;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.StatusHistoryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/home-hub")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "home-hub.history", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class StatusHistoryController {
+    @Autowired
+    StatusHistoryService service;
+
+    @GetMapping({"/appliances/{applianceName}/usage", "/hubs/{hubId}/appliances/{applianceName}/usage"})
+    @Operation(summary = "This endpoint returns how long an appliance was ON and how often it was switched between from and to, "
+            + "ISO-8601 instants defaulting to the last 7 days")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "ON duration, toggles and the status at the end of the range",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceUsageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The range is not valid"),
+            @ApiResponse(responseCode = "404", description = "No status change of the appliance has been recorded",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceUsageResponse.class)))
+
+    })
+    public ResponseEntity<ApplianceUsageResponse> getUsage(@PathVariable(value = "hubId", required = false) String hubId,
+                                                           @PathVariable("applianceName") String applianceName,
+                                                           @RequestParam(value = "from", required = false) String from,
+                                                           @RequestParam(value = "to", required = false) String to) {
+        var response = service.getUsage(hub(hubId), applianceName, from, to);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    @GetMapping({"/appliances/{applianceName}/history", "/hubs/{hubId}/appliances/{applianceName}/history"})
+    @Operation(summary = "This endpoint returns the status changes of an appliance between from and to, oldest first, at most limit of them")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Status changes in the range",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceHistoryResponse.class))),
+            @ApiResponse(responseCode = "400", description = "The range or the limit is not valid"),
+            @ApiResponse(responseCode = "404", description = "No status change of the appliance has been recorded",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ApplianceHistoryResponse.class)))
+
+    })
+    public ResponseEntity<ApplianceHistoryResponse> getHistory(@PathVariable(value = "hubId", required = false) String hubId,
+                                                               @PathVariable("applianceName") String applianceName,
+                                                               @RequestParam(value = "from", required = false) String from,
+                                                               @RequestParam(value = "to", required = false) String to,
+                                                               @RequestParam(value = "limit", defaultValue = "" + HomeHubService.DEFAULT_PAGE_SIZE) int limit) {
+        var response = service.getHistory(hub(hubId), applianceName, from, to, limit);
+        return new ResponseEntity<>(response, response.getHttpStatus());
+    }
+
+    private static String hub(String hubId) {
+        return hubId == null ? HomeHubService.DEFAULT_HUB : hubId;
+    }
+}
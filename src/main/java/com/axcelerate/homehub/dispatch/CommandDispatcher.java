@@ -0,0 +1,250 @@
+package com.axcelerate.homehub.dispatch;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.repository.HubChangeListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends every status change, including undo and redo, to the appliance through the
+ * {@link DeviceDriver}. Enabled by default; turn it off with {@code home-hub.dispatch.enabled=false}.
+ * <p>
+ * The repository calls {@link #statusChanged} on the operating thread, which only records the new
+ * desired status in the {@link DeviceChannel} of the slot and queues the channel if it is idle.
+ * While a slot waits or its command is on its way, further changes overwrite the desired status,
+ * so rapid toggles cost one command, and none at all if they end where the appliance already is.
+ * A dispatch thread drains the ready queue into batches of up to {@code batch-size} commands and
+ * keeps at most {@code max-in-flight} batches at the driver. A batch that fails or is not
+ * acknowledged within {@code timeout} is retried per slot with exponential backoff starting at
+ * {@code retry-backoff}, and dropped after {@code max-attempts} failures in a row; the next status
+ * change of the slot tries again.
+ * <p>
+ * The desired and acknowledged status of each slot is available from {@link #getState}. The
+ * channels of a hub are dropped when the hub is removed from the registry.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "home-hub.dispatch", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CommandDispatcher implements HubChangeListener {
+    static final String COMMANDS = "home_hub.dispatch.commands";
+
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final HomeHubRepositoryRegistry hubs;
+    private final DeviceDriver driver;
+    private final int batchSize;
+    private final Semaphore inFlight;
+    private final Duration timeout;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final ConcurrentMap<String, ConcurrentMap<String, DeviceChannel>> channels = new ConcurrentHashMap<>();
+    private final Queue<DeviceChannel> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Counter acknowledged;
+    private final Counter superseded;
+    private final Counter retried;
+    private final Counter abandoned;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public CommandDispatcher(HomeHubRepositoryRegistry hubs, DeviceDriver driver, MeterRegistry meterRegistry,
+                             @Value("${home-hub.dispatch.batch-size:64}") int batchSize,
+                             @Value("${home-hub.dispatch.max-in-flight:16}") int maxInFlight,
+                             @Value("${home-hub.dispatch.timeout:PT2S}") Duration timeout,
+                             @Value("${home-hub.dispatch.max-attempts:5}") int maxAttempts,
+                             @Value("${home-hub.dispatch.retry-backoff:PT0.1S}") Duration retryBackoff) {
+        if (batchSize < 1 || maxInFlight < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("home-hub.dispatch.batch-size, max-in-flight and max-attempts must be at least 1");
+        }
+        this.hubs = hubs;
+        this.driver = driver;
+        this.batchSize = batchSize;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeout = timeout;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        sent = counter(meterRegistry, "sent");
+        coalesced = counter(meterRegistry, "coalesced");
+        acknowledged = counter(meterRegistry, "acknowledged");
+        superseded = counter(meterRegistry, "superseded");
+        retried = counter(meterRegistry, "retried");
+        abandoned = counter(meterRegistry, "abandoned");
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "home-hub-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        hubs.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        hubs.removeListener(this);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public Optional<DeviceState> getState(String hubId, String slotId) {
+        var hubChannels = channels.get(hubId);
+        var channel = hubChannels == null ? null : hubChannels.get(slotId);
+        return channel == null ? Optional.empty() : Optional.of(channel.state());
+    }
+
+    @Override
+    public void statusChanged(String hubId, String slotId, String applianceName, ApplianceStatus status) {
+        var hubChannels = channels.get(hubId);
+        if (hubChannels == null) {
+            hubChannels = channels.computeIfAbsent(hubId, id -> new ConcurrentHashMap<>());
+        }
+        var channel = hubChannels.get(slotId);
+        if (channel == null) {
+            channel = hubChannels.computeIfAbsent(slotId, id -> new DeviceChannel(hubId, id, applianceName));
+        }
+        if (channel.desire(status)) {
+            ready.offer(channel);
+            scheduleDrain();
+        } else {
+            coalesced.increment();
+        }
+    }
+
+    @Override
+    public void hubRemoved(String hubId) {
+        var hubChannels = channels.remove(hubId);
+        if (hubChannels != null) {
+            hubChannels.values().forEach(DeviceChannel::remove);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // stopping
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!ready.isEmpty() && inFlight.tryAcquire()) {
+                var batch = new ArrayList<DeviceChannel>();
+                var commands = new ArrayList<DeviceCommand>();
+                DeviceChannel channel;
+                while (commands.size() < batchSize && (channel = ready.poll()) != null) {
+                    var command = channel.take();
+                    if (command == null) {
+                        coalesced.increment();
+                    } else {
+                        batch.add(channel);
+                        commands.add(command);
+                    }
+                }
+                if (commands.isEmpty()) {
+                    inFlight.release();
+                } else {
+                    send(batch, commands);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        if (!ready.isEmpty() && inFlight.availablePermits() > 0) {
+            scheduleDrain();
+        }
+    }
+
+    private void send(List<DeviceChannel> batch, List<DeviceCommand> commands) {
+        sent.increment(commands.size());
+        CompletableFuture<Void> acknowledgement;
+        try {
+            acknowledgement = driver.send(commands).copy();
+        } catch (RuntimeException e) {
+            acknowledgement = CompletableFuture.failedFuture(e);
+        }
+        acknowledgement.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((ignored, error) -> completed(batch, commands, error));
+    }
+
+    private void completed(List<DeviceChannel> batch, List<DeviceCommand> commands, Throwable error) {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        for (int i = 0; i < batch.size(); i++) {
+            var channel = batch.get(i);
+            var command = commands.get(i);
+            switch (channel.completed(command, cause, maxAttempts)) {
+                case ACKNOWLEDGED -> acknowledged.increment();
+                case SUPERSEDED -> {
+                    superseded.increment();
+                    ready.offer(channel);
+                }
+                case RETRY -> {
+                    retried.increment();
+                    scheduleRetry(channel);
+                }
+                case ABANDONED -> {
+                    abandoned.increment();
+                    log.warn("Gave up switching {} of hub {} {} after {} attempts: {}", command.applianceName(),
+                            command.hubId(), command.status(), maxAttempts, cause.toString());
+                }
+                case REMOVED -> {
+                    // its hub now lives elsewhere, whose dispatcher sends the latest status
+                }
+            }
+        }
+        inFlight.release();
+        scheduleDrain();
+    }
+
+    private void scheduleRetry(DeviceChannel channel) {
+        var shift = Math.min(channel.state().attempts() - 1, MAX_BACKOFF_SHIFT);
+        try {
+            scheduler.schedule(() -> {
+                channel.retry();
+                ready.offer(channel);
+                scheduleDrain();
+            }, retryBackoff.toNanos() << shift, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopping
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String outcome) {
+        return Counter.builder(COMMANDS)
+                .description("Appliance commands by what became of them")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,167 @@
+package com.axcelerate.homehub.dispatch;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The command queue of one slot. It holds only the latest desired status, so rapid changes
+ * collapse into one command (last write wins) and the queue is bounded at one entry. A channel is
+ * in at most one of three places: on the ready queue of the dispatcher, in a batch on its way to
+ * the driver, or waiting for a retry.
+ * <p>
+ * {@link #desire} runs on the operate path while the repository holds the slot's stripe, so the
+ * channel is guarded by a {@link ReentrantLock} rather than a monitor, which would pin a virtual
+ * thread to its carrier while it waits for a dispatch thread.
+ */
+final class DeviceChannel {
+    enum Outcome {
+        /**
+         * The appliance acknowledged the latest desired status.
+         */
+        ACKNOWLEDGED,
+        /**
+         * The status changed while the command was on its way; the channel has to be queued again.
+         */
+        SUPERSEDED,
+        /**
+         * The command failed and has to be retried after a backoff.
+         */
+        RETRY,
+        /**
+         * The command failed {@code max-attempts} times in a row and was dropped.
+         */
+        ABANDONED,
+        /**
+         * The hub was removed while the command was on its way; the channel is dropped.
+         */
+        REMOVED
+    }
+
+    private final String hubId;
+    private final String slotId;
+    private final String applianceName;
+    private final ReentrantLock lock = new ReentrantLock();
+    private ApplianceStatus desired;
+    private ApplianceStatus acknowledged;
+    private long sequence;
+    private boolean queued;
+    private boolean sending;
+    private boolean retrying;
+    private boolean removed;
+    private int attempts;
+    private String lastError;
+
+    DeviceChannel(String hubId, String slotId, String applianceName) {
+        this.hubId = hubId;
+        this.slotId = slotId;
+        this.applianceName = applianceName;
+    }
+
+    /**
+     * @return whether the channel has to be put on the ready queue
+     */
+    boolean desire(ApplianceStatus status) {
+        lock.lock();
+        try {
+            desired = status;
+            sequence++;
+            if (queued || sending || retrying) {
+                return false;
+            }
+            // an idle channel acknowledged its last command or abandoned it; either way a new one starts afresh
+            attempts = 0;
+            queued = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the channel off the ready queue.
+     *
+     * @return the command to send, or {@code null} if the appliance already acknowledged the desired status
+     */
+    DeviceCommand take() {
+        lock.lock();
+        try {
+            queued = false;
+            if (desired == acknowledged || removed) {
+                attempts = 0;
+                return null;
+            }
+            sending = true;
+            return new DeviceCommand(hubId, slotId, applianceName, desired, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Outcome completed(DeviceCommand command, Throwable error, int maxAttempts) {
+        lock.lock();
+        try {
+            sending = false;
+            if (removed) {
+                return Outcome.REMOVED;
+            }
+            if (error == null) {
+                acknowledged = command.status();
+                attempts = 0;
+                lastError = null;
+            } else {
+                attempts++;
+                lastError = error.toString();
+            }
+            if (command.sequence() != sequence) {
+                queued = true;
+                return Outcome.SUPERSEDED;
+            }
+            if (error == null) {
+                return Outcome.ACKNOWLEDGED;
+            }
+            if (attempts < maxAttempts) {
+                retrying = true;
+                return Outcome.RETRY;
+            }
+            return Outcome.ABANDONED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the backoff of a {@link Outcome#RETRY}; the channel has to be put on the ready queue.
+     */
+    void retry() {
+        lock.lock();
+        try {
+            retrying = false;
+            queued = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the channel once its hub is gone: a command on its way is not retried, and a queued
+     * one is not sent.
+     */
+    void remove() {
+        lock.lock();
+        try {
+            removed = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    DeviceState state() {
+        lock.lock();
+        try {
+            return new DeviceState(hubId, slotId, applianceName, desired, acknowledged, desired != acknowledged, attempts, lastError);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
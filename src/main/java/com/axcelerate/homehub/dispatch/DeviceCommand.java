@@ -0,0 +1,12 @@
+package com.axcelerate.homehub.dispatch;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+/**
+ * Asks the appliance bound to {@code slotId} of hub {@code hubId} to switch to {@code status}.
+ * <p>
+ * {@code sequence} grows with every status change of the slot, so a driver that sees commands for
+ * one slot out of order can drop those older than one it already applied.
+ */
+public record DeviceCommand(String hubId, String slotId, String applianceName, ApplianceStatus status, long sequence) {
+}
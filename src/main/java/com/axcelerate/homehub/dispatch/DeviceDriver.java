@@ -0,0 +1,18 @@
+package com.axcelerate.homehub.dispatch;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delivers commands to physical appliances. The driver bean is chosen with
+ * {@code home-hub.dispatch.driver}; {@link SimulatedDeviceDriver} ships with the hub.
+ */
+public interface DeviceDriver {
+    /**
+     * Sends a batch holding at most one command per slot; the commands may belong to different hubs.
+     * Must not block: the returned future completes once every appliance of the batch acknowledged
+     * its command, or exceptionally if any did not. Timeouts and retries are applied by the
+     * {@link CommandDispatcher}.
+     */
+    CompletableFuture<Void> send(List<DeviceCommand> commands);
+}
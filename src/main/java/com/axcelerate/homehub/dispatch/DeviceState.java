@@ -0,0 +1,15 @@
+package com.axcelerate.homehub.dispatch;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+/**
+ * What the hub wants an appliance to be and what the appliance last acknowledged.
+ *
+ * @param acknowledged {@code null} until the appliance acknowledged a command
+ * @param pending      whether the appliance has not acknowledged the desired status yet
+ * @param attempts     failed attempts in a row, reset when a command is acknowledged
+ * @param lastError    the error of the last failed attempt, {@code null} after an acknowledgement
+ */
+public record DeviceState(String hubId, String slotId, String applianceName, ApplianceStatus desired,
+                          ApplianceStatus acknowledged, boolean pending, int attempts, String lastError) {
+}
@@ -0,0 +1,88 @@
+package com.axcelerate.homehub.dispatch;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for real appliances, so the dispatch pipeline can be run and load-tested offline.
+ * Selected with {@code home-hub.dispatch.driver=simulated}, the default.
+ * <p>
+ * A batch is acknowledged after {@code home-hub.dispatch.simulated.latency}, or fails with the
+ * probability {@code home-hub.dispatch.simulated.failure-rate}. The status each simulated
+ * appliance was last switched to can be read back with {@link #getStatus}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "home-hub.dispatch", name = "driver", havingValue = "simulated", matchIfMissing = true)
+public class SimulatedDeviceDriver implements DeviceDriver {
+    private final Duration latency;
+    private final double failureRate;
+    private final ConcurrentMap<String, ConcurrentMap<String, Device>> devices = new ConcurrentHashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+
+    @Autowired
+    public SimulatedDeviceDriver(@Value("${home-hub.dispatch.simulated.latency:PT0.005S}") Duration latency,
+                                 @Value("${home-hub.dispatch.simulated.failure-rate:0.0}") double failureRate) {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("home-hub.dispatch.simulated.failure-rate must be between 0 and 1 but was " + failureRate);
+        }
+        this.latency = latency;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public CompletableFuture<Void> send(List<DeviceCommand> commands) {
+        batches.incrementAndGet();
+        if (latency.isZero()) {
+            try {
+                apply(commands);
+                return CompletableFuture.completedFuture(null);
+            } catch (CompletionException e) {
+                return CompletableFuture.failedFuture(e.getCause());
+            }
+        }
+        return CompletableFuture.runAsync(() -> apply(commands),
+                CompletableFuture.delayedExecutor(latency.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    public Optional<ApplianceStatus> getStatus(String hubId, String slotId) {
+        var hubDevices = devices.get(hubId);
+        var device = hubDevices == null ? null : hubDevices.get(slotId);
+        return device == null ? Optional.empty() : Optional.of(device.status);
+    }
+
+    /**
+     * @return the number of batches sent so far, failed ones included
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    private void apply(List<DeviceCommand> commands) {
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new CompletionException(new IOException("Simulated appliance did not acknowledge"));
+        }
+        for (var command : commands) {
+            devices.computeIfAbsent(command.hubId(), id -> new ConcurrentHashMap<>())
+                    .merge(command.slotId(), new Device(command.status(), command.sequence()),
+                            (current, next) -> next.sequence > current.sequence ? next : current);
+        }
+    }
+
+    private record Device(ApplianceStatus status, long sequence) {
+    }
+}
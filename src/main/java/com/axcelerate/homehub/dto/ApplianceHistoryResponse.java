@@ -0,0 +1,21 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApplianceHistoryResponse {
+    private HttpStatus httpStatus;
+    private String appliance;
+    private Instant from;
+    private Instant to;
+    private List<StatusChange> changes;
+    private String message;
+}
@@ -0,0 +1,15 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApplianceSlotResponse {
+    private HttpStatus httpStatus;
+    private String appliance;
+    private String slotId;
+}
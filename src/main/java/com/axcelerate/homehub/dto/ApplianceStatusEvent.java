@@ -0,0 +1,15 @@
+package com.axcelerate.homehub.dto;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApplianceStatusEvent {
+    private String slotId;
+    private String appliance;
+    private ApplianceStatus status;
+}
@@ -0,0 +1,25 @@
+package com.axcelerate.homehub.dto;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApplianceUsageResponse {
+    private HttpStatus httpStatus;
+    private String appliance;
+    private Instant from;
+    private Instant to;
+    private Duration onDuration;
+    private int toggles;
+    private int changes;
+    private ApplianceStatus status;
+    private String message;
+}
@@ -0,0 +1,18 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchOperationResponse {
+    private HttpStatus operationStatus;
+    private int succeeded;
+    private int failed;
+    private List<SlotOperationResult> results;
+}
@@ -0,0 +1,19 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClusterResponse {
+    private HttpStatus httpStatus;
+    private String nodeId;
+    private Map<String, String> members;
+    private List<String> hubIds;
+}
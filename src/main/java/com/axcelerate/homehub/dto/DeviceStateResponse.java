@@ -0,0 +1,21 @@
+package com.axcelerate.homehub.dto;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeviceStateResponse {
+    private HttpStatus httpStatus;
+    private String slotId;
+    private String appliance;
+    private ApplianceStatus desiredStatus;
+    private ApplianceStatus acknowledgedStatus;
+    private boolean pending;
+    private int attempts;
+    private String message;
+}
@@ -0,0 +1,22 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GroupResponse {
+    private HttpStatus httpStatus;
+    private String name;
+    private String parent;
+    private List<String> groups;
+    private List<String> appliances;
+    private int applianceCount;
+    private int onCount;
+    private String message;
+}
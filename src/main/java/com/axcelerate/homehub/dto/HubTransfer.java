@@ -0,0 +1,18 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HubTransfer {
+    private String hubId;
+    private List<String> appliances;
+    private List<ApplianceStatusEvent> bindings;
+    private Map<String, List<SlotOperation>> scenes;
+}
@@ -0,0 +1,21 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Operates {@code slotId} either {@code at} a time of day ({@code 06:00}) or date-time
+ * ({@code 2024-01-01T06:00:00Z}), or {@code after} a duration ({@code PT30M}). Only a time of day
+ * can repeat {@code daily}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScheduleRequest {
+    private String slotId;
+    private int operation;
+    private String at;
+    private String after;
+    private boolean daily;
+}
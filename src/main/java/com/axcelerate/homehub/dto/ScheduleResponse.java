@@ -0,0 +1,21 @@
+package com.axcelerate.homehub.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScheduleResponse {
+    private HttpStatus httpStatus;
+    private String scheduleId;
+    private String slotId;
+    private int operation;
+    private Instant fireAt;
+    private boolean daily;
+    private String remoteId;
+}
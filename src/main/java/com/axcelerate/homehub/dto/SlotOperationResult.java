@@ -0,0 +1,18 @@
+package com.axcelerate.homehub.dto;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SlotOperationResult {
+    private String slotId;
+    private String appliance;
+    private ApplianceStatus status;
+    private String error;
+}
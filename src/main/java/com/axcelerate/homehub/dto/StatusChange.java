@@ -0,0 +1,16 @@
+package com.axcelerate.homehub.dto;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatusChange {
+    private Instant time;
+    private ApplianceStatus status;
+}
@@ -0,0 +1,5 @@
+package com.axcelerate.homehub.enums;
+
+public enum BindingOutcome {
+    BOUND, APPLIANCE_ALREADY_BOUND, SLOT_ALREADY_USED, APPLIANCE_NOT_REGISTERED
+}
@@ -0,0 +1,5 @@
+package com.axcelerate.homehub.enums;
+
+public enum GroupOutcome {
+    CREATED, ALREADY_EXISTS, PARENT_NOT_FOUND, PARENT_CONFLICT, ADDED, REMOVED, GROUP_NOT_FOUND, APPLIANCE_NOT_REGISTERED, NOT_A_MEMBER
+}
@@ -0,0 +1,5 @@
+package com.axcelerate.homehub.enums;
+
+public enum HubOperation {
+    REGISTER, BIND, OPERATE, BATCH, UNDO, REDO, LIST, GROUP
+}
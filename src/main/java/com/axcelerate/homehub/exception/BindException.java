@@ -1,16 +1,10 @@
 package com.axcelerate.homehub.exception;
 
-import lombok.Data;
 import org.springframework.http.HttpStatus;
 
-@Data
-public class BindException extends RuntimeException {
-    private HttpStatus status;
-    private String message;
+public class BindException extends HomeHubException {
 
     public BindException(HttpStatus status, String message) {
-        super(message);
-        this.status = status;
-        this.message = message;
+        super(status, message);
     }
 }
@@ -0,0 +1,43 @@
+package com.axcelerate.homehub.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expected business error of the home hub, e.g. operating an unbound slot.
+ * <p>
+ * These errors are answers to bad requests, not bugs, so they carry no stack trace and cannot
+ * hold suppressed exceptions. That makes them cheap to create and safe to share: the service
+ * reuses one instance for a repeated rejection. The error body is cached on the instance and
+ * rebuilt at most once a second, so {@link ErrorMessage#getTimestamp()} has second resolution.
+ */
+public abstract class HomeHubException extends RuntimeException {
+    private final HttpStatus status;
+    private volatile ErrorResponse errorResponse;
+
+    protected HomeHubException(HttpStatus status, String message) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public ResponseEntity<ErrorMessage> toResponseEntity() {
+        var second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        var response = errorResponse;
+        if (response == null || response.second() != second) {
+            var body = new ErrorMessage(status.value(), new Date(TimeUnit.SECONDS.toMillis(second)), getMessage(), getLocalizedMessage());
+            response = new ErrorResponse(second, new ResponseEntity<>(body, status));
+            errorResponse = response;
+        }
+        return response.entity();
+    }
+
+    private record ErrorResponse(long second, ResponseEntity<ErrorMessage> entity) {
+    }
+}
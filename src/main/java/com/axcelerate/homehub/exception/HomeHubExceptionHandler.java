@@ -1,6 +1,12 @@
 package com.axcelerate.homehub.exception;
 
 
+import com.axcelerate.homehub.persistence.LogFullException;
+import com.axcelerate.homehub.repository.HubMovingException;
+import com.axcelerate.homehub.service.MessageRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -10,11 +16,35 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 import java.util.Date;
 
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class HomeHubExceptionHandler extends ResponseEntityExceptionHandler {
-    @ExceptionHandler(value = {BindException.class, ApplianceNotRegisteredException.class, ApplianceAlreadyRegisteredException.class,
-        NoLastOperationException.class})
-    public ResponseEntity<ErrorMessage> homeHubExceptionHandler(RuntimeException ex) {
-        var errorMsg = new ErrorMessage(400, new Date(), ex.getMessage(), ex.getLocalizedMessage());
-        return new ResponseEntity<>(errorMsg, HttpStatus.BAD_REQUEST);
+    @Autowired
+    MessageRenderer messages;
+
+    @ExceptionHandler(HomeHubException.class)
+    public ResponseEntity<ErrorMessage> homeHubExceptionHandler(HomeHubException ex) {
+        return ex.toResponseEntity();
+    }
+
+    /**
+     * The hub is being handed off; once that is done the cluster forwards a retry to its new owner.
+     */
+    @ExceptionHandler(HubMovingException.class)
+    public ResponseEntity<ErrorMessage> hubMovingExceptionHandler(HubMovingException ex) {
+        return serviceUnavailable(messages.render("cluster_hub_moving.message", ex.getHubId()));
+    }
+
+    /**
+     * The write-ahead log is behind; the change was not applied and can be sent again shortly.
+     */
+    @ExceptionHandler(LogFullException.class)
+    public ResponseEntity<ErrorMessage> logFullExceptionHandler(LogFullException ex) {
+        return serviceUnavailable(messages.render("persistence_busy.message"));
+    }
+
+    private static ResponseEntity<ErrorMessage> serviceUnavailable(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorMessage(HttpStatus.SERVICE_UNAVAILABLE.value(), new Date(), message, message));
     }
 }
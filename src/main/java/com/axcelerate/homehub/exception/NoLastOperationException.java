@@ -1,16 +1,14 @@
 package com.axcelerate.homehub.exception;
 
-import lombok.Data;
 import org.springframework.http.HttpStatus;
 
-@Data
-public class NoLastOperationException extends RuntimeException {
-    HttpStatus operationStatus;
-    private String message;
+public class NoLastOperationException extends HomeHubException {
 
     public NoLastOperationException(HttpStatus status, String message) {
-        super(message);
-        this.message = message;
-        this.operationStatus = status;
+        super(status, message);
+    }
+
+    public HttpStatus getOperationStatus() {
+        return getStatus();
     }
 }
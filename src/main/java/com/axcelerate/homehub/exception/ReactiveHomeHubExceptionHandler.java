@@ -0,0 +1,20 @@
+package com.axcelerate.homehub.exception;
+
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+
+/**
+ * WebFlux counterpart of {@link HomeHubExceptionHandler}, producing the same error body.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveHomeHubExceptionHandler extends ResponseEntityExceptionHandler {
+    @ExceptionHandler(HomeHubException.class)
+    public ResponseEntity<ErrorMessage> homeHubExceptionHandler(HomeHubException ex) {
+        return ex.toResponseEntity();
+    }
+}
@@ -0,0 +1,224 @@
+package com.axcelerate.homehub.frame;
+
+import com.axcelerate.homehub.dto.Appliance;
+import com.axcelerate.homehub.exception.HomeHubException;
+import com.axcelerate.homehub.persistence.LogFullException;
+import com.axcelerate.homehub.repository.HubMovingException;
+import com.axcelerate.homehub.service.HomeHubService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Decodes request frames, runs them on the {@link HomeHubService} and encodes the response frames.
+ * <p>
+ * Every frame starts with its length as an unsigned 16 bit integer, not counting the length
+ * itself, followed by the opcode (one byte) and a request id (two bytes) that the response echoes.
+ * Requests then carry a session (two bytes) that the remote picks anew each time it boots, e.g.
+ * at random, since a rebooted remote starts counting request ids again.
+ * <p>
+ * Strings are an unsigned byte length followed by UTF-8, and an empty hub or remote id stands
+ * for the default one. All numbers are big-endian.
+ * <pre>
+ * OPERATE  0x01 hub remote slot operation(1)   -&gt; status(2) applianceStatus(1) applianceName
+ * UNDO     0x02 hub remote                     -&gt; status(2) applianceStatus(1) applianceName
+ * REDO     0x03 hub remote                     -&gt; status(2) applianceStatus(1) applianceName
+ * BIND     0x04 hub slot applianceName         -&gt; status(2)
+ * REGISTER 0x05 hub applianceName              -&gt; status(2)
+ * VERSION  0x06 hub                            -&gt; status(2) version(8)
+ * </pre>
+ * The status is the HTTP status the same request gets over HTTP; error responses have no body. A
+ * hub that another cluster node owns is answered 421, as frames are not forwarded, and a hub that
+ * is being handed off, or whose change cannot be logged yet, 503.
+ * <p>
+ * Every frame but VERSION changes the hub, so those are deduplicated by sender, session and
+ * request id: a remote resending a request whose response was lost gets the original outcome,
+ * while the same request id from the same remote after a reboot is a new request.
+ * <p>
+ * Not thread safe: each receiving thread has its own handler and buffers.
+ */
+@Slf4j
+final class FrameHandler {
+    static final int OPERATE = 0x01;
+    static final int UNDO = 0x02;
+    static final int REDO = 0x03;
+    static final int BIND = 0x04;
+    static final int REGISTER = 0x05;
+    static final int VERSION = 0x06;
+
+    private static final int HEADER = 3;
+    /**
+     * The response header and the session.
+     */
+    private static final int REQUEST_HEADER = HEADER + 2;
+    private static final int MAX_STRING = 255;
+    /**
+     * Length, opcode, request id, status and the largest body.
+     */
+    static final int MAX_RESPONSE = 2 + HEADER + 2 + 1 + 1 + MAX_STRING;
+    /**
+     * Misdirected Request, which {@link HttpStatus} does not know.
+     */
+    static final int MISDIRECTED = 421;
+
+    private final HomeHubService service;
+    private final Predicate<String> ownedElsewhere;
+    private final byte[] scratch = new byte[MAX_STRING];
+
+    FrameHandler(HomeHubService service, Predicate<String> ownedElsewhere) {
+        this.service = service;
+        this.ownedElsewhere = ownedElsewhere;
+    }
+
+    /**
+     * Answers the frame at the position of {@code in} into {@code out} and moves {@code in} past it.
+     *
+     * @param sender identifies the remote for deduplicating retries
+     * @return whether a frame was read; {@code false} once the rest of {@code in} is not a whole frame
+     */
+    boolean handle(ByteBuffer in, ByteBuffer out, String sender) {
+        if (in.remaining() < 2) {
+            return false;
+        }
+        var length = Short.toUnsignedInt(in.getShort());
+        if (length < REQUEST_HEADER || length > in.remaining()) {
+            in.position(in.limit());
+            return false;
+        }
+        var end = in.position() + length;
+        var limit = in.limit();
+        var opcode = Byte.toUnsignedInt(in.get());
+        var requestId = Short.toUnsignedInt(in.getShort());
+        var session = Short.toUnsignedInt(in.getShort());
+        var start = out.position();
+        out.position(start + 2);
+        out.put((byte) opcode).putShort((short) requestId);
+        in.limit(end);
+        try {
+            respond(opcode, in, out, sender + "#" + session + "#" + requestId);
+        } catch (HomeHubException e) {
+            error(out, start, e.getStatus().value());
+        } catch (OwnedElsewhereException e) {
+            error(out, start, MISDIRECTED);
+        } catch (HubMovingException | LogFullException e) {
+            error(out, start, HttpStatus.SERVICE_UNAVAILABLE.value());
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            error(out, start, HttpStatus.BAD_REQUEST.value());
+        } catch (RuntimeException e) {
+            log.error("Frame {} from {} failed", opcode, sender, e);
+            error(out, start, HttpStatus.INTERNAL_SERVER_ERROR.value());
+        } finally {
+            in.limit(limit).position(end);
+        }
+        out.putShort(start, (short) (out.position() - start - 2));
+        return true;
+    }
+
+    private void respond(int opcode, ByteBuffer in, ByteBuffer out, String idempotencyKey) {
+        switch (opcode) {
+            case OPERATE -> {
+                var hubId = hub(in);
+                var remoteId = remote(in);
+                var slotId = name(in);
+                var operation = Byte.toUnsignedInt(in.get());
+                ensureConsumed(in);
+                appliance(out, service.switchAppliance(hubId, remoteId, slotId, operation, idempotencyKey));
+            }
+            case UNDO -> {
+                var hubId = hub(in);
+                var remoteId = remote(in);
+                ensureConsumed(in);
+                appliance(out, service.undoSwitch(hubId, remoteId, idempotencyKey));
+            }
+            case REDO -> {
+                var hubId = hub(in);
+                var remoteId = remote(in);
+                ensureConsumed(in);
+                appliance(out, service.redoSwitch(hubId, remoteId, idempotencyKey));
+            }
+            case BIND -> {
+                var hubId = hub(in);
+                var slotId = name(in);
+                var applianceName = name(in);
+                ensureConsumed(in);
+                out.putShort((short) service.bindRemoteSlotToAppliance(hubId, slotId, applianceName, idempotencyKey)
+                        .getBindingStatus().value());
+            }
+            case REGISTER -> {
+                var hubId = hub(in);
+                var applianceName = name(in);
+                ensureConsumed(in);
+                out.putShort((short) service.registerAppliance(hubId, applianceName, idempotencyKey).getHttpStatus().value());
+            }
+            case VERSION -> {
+                var hubId = hub(in);
+                ensureConsumed(in);
+                out.putShort((short) HttpStatus.OK.value()).putLong(service.getVersion(hubId));
+            }
+            default -> throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    private static void appliance(ByteBuffer out, Appliance appliance) {
+        out.putShort((short) HttpStatus.OK.value());
+        out.put((byte) appliance.getStatus().ordinal());
+        var name = appliance.getName().getBytes(StandardCharsets.UTF_8);
+        // a name too long for a string is left out rather than cut inside a character
+        var length = name.length > MAX_STRING ? 0 : name.length;
+        out.put((byte) length).put(name, 0, length);
+    }
+
+    private static void error(ByteBuffer out, int start, int status) {
+        out.position(start + 2 + HEADER);
+        out.putShort((short) status);
+    }
+
+    private String hub(ByteBuffer in) {
+        var hubId = string(in);
+        if (hubId.isEmpty()) {
+            hubId = HomeHubService.DEFAULT_HUB;
+        }
+        if (ownedElsewhere.test(hubId)) {
+            throw OwnedElsewhereException.INSTANCE;
+        }
+        return hubId;
+    }
+
+    private String remote(ByteBuffer in) {
+        var remoteId = string(in);
+        return remoteId.isEmpty() ? HomeHubService.DEFAULT_REMOTE : remoteId;
+    }
+
+    private String name(ByteBuffer in) {
+        var name = string(in);
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Empty slot or appliance name");
+        }
+        return name;
+    }
+
+    private String string(ByteBuffer in) {
+        var length = Byte.toUnsignedInt(in.get());
+        in.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void ensureConsumed(ByteBuffer in) {
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("Frame longer than its fields");
+        }
+    }
+
+    private static final class OwnedElsewhereException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private static final OwnedElsewhereException INSTANCE = new OwnedElsewhereException();
+
+        private OwnedElsewhereException() {
+            super(null, null, false, false);
+        }
+    }
+}
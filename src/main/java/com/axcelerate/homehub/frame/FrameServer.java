@@ -0,0 +1,149 @@
+package com.axcelerate.homehub.frame;
+
+import com.axcelerate.homehub.cluster.ClusterMembership;
+import com.axcelerate.homehub.service.HomeHubService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Serves the binary frames of {@link FrameHandler} over UDP, for remotes too small for HTTP and
+ * JSON. Disabled by default; turn it on with {@code home-hub.frame.enabled=true}. It listens on
+ * {@code home-hub.frame.address}, loopback unless configured otherwise, and {@code home-hub.frame.port}.
+ * <p>
+ * A datagram carries one or more frames, which are answered in order in one datagram, or more if
+ * the answers do not fit. Each of the {@code home-hub.frame.threads} threads receives on the same
+ * channel into its own direct buffers, which it keeps for its lifetime, so a round trip allocates
+ * nothing but the decoded strings. Admission control applies to HTTP only.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "home-hub.frame", name = "enabled", havingValue = "true")
+public class FrameServer {
+    static final int MAX_DATAGRAM = 8_192;
+
+    private final HomeHubService service;
+    private final Predicate<String> ownedElsewhere;
+    private final InetSocketAddress address;
+    private final int threads;
+    private final List<Thread> receivers = new ArrayList<>();
+    private DatagramChannel channel;
+
+    @Autowired
+    public FrameServer(HomeHubService service, ObjectProvider<ClusterMembership> membership,
+                       @Value("${home-hub.frame.address:127.0.0.1}") String address,
+                       @Value("${home-hub.frame.port:7070}") int port,
+                       @Value("${home-hub.frame.threads:2}") int threads) {
+        this(service, hubId -> {
+            var cluster = membership.getIfAvailable();
+            return cluster != null && cluster.ownerUrl(hubId) != null;
+        }, new InetSocketAddress(address, port), threads);
+    }
+
+    FrameServer(HomeHubService service, Predicate<String> ownedElsewhere, InetSocketAddress address, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("home-hub.frame.threads must be at least 1 but was " + threads);
+        }
+        this.service = service;
+        this.ownedElsewhere = ownedElsewhere;
+        this.address = address;
+        this.threads = threads;
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            channel = DatagramChannel.open().bind(address);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen for frames on " + address, e);
+        }
+        for (int i = 0; i < threads; i++) {
+            var thread = new Thread(this::receive, "home-hub-frame-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            receivers.add(thread);
+        }
+        log.info("Listening for frames on {}", getLocalAddress());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Closing the frame channel failed", e);
+        }
+        for (var thread : receivers) {
+            try {
+                thread.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the address frames are received on, with the actual port if {@code home-hub.frame.port} was 0
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void receive() {
+        var handler = new FrameHandler(service, ownedElsewhere);
+        var in = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        var out = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        while (channel.isOpen()) {
+            try {
+                in.clear();
+                var sender = channel.receive(in);
+                in.flip();
+                out.clear();
+                var senderId = sender.toString();
+                while (handler.handle(in, out, senderId)) {
+                    if (out.remaining() < FrameHandler.MAX_RESPONSE) {
+                        send(out, sender);
+                    }
+                }
+                if (out.position() > 0) {
+                    send(out, sender);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // a sender that went away must not stop the others from being answered
+                log.warn("Answering frames failed: {}", e.toString());
+            }
+        }
+    }
+
+    private void send(ByteBuffer out, SocketAddress target) throws IOException {
+        out.flip();
+        channel.send(out, target);
+        out.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package com.axcelerate.homehub.history;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+/**
+ * An immutable, compressed run of up to {@link #CAPACITY} status changes of one appliance.
+ * <p>
+ * The data is stored as two columns. Times are kept as the differences to the previous change,
+ * LEB128 varints, so changes seconds apart take two or three bytes. Statuses are one bit per
+ * change. The header holds the time range of the block, its first and last status, and the ON
+ * time and toggles between its own changes. A query can therefore use a block that lies inside
+ * its range without decoding it, and skip a block outside its range by looking only at the times.
+ */
+final class StatusBlock {
+    static final int CAPACITY = 256;
+
+    final long firstTime;
+    final long lastTime;
+    final int count;
+    final boolean firstOn;
+    final boolean lastOn;
+    /**
+     * Milliseconds spent ON between the first and the last change of the block.
+     */
+    final long onMillis;
+    /**
+     * Changes to a different status than the one before, not counting the first change.
+     */
+    final int toggles;
+    private final byte[] deltas;
+    private final long[] statuses;
+
+    interface Visitor {
+        void visit(long time, boolean on);
+    }
+
+    private StatusBlock(long firstTime, long lastTime, int count, boolean firstOn, boolean lastOn, long onMillis,
+                        int toggles, byte[] deltas, long[] statuses) {
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+        this.count = count;
+        this.firstOn = firstOn;
+        this.lastOn = lastOn;
+        this.onMillis = onMillis;
+        this.toggles = toggles;
+        this.deltas = deltas;
+        this.statuses = statuses;
+    }
+
+    /**
+     * @param times ascending change times in epoch milliseconds
+     * @param statuses bit {@code i} set if change {@code i} was to ON
+     */
+    static StatusBlock encode(long[] times, long[] statuses, int count) {
+        var buffer = new byte[count * 10];
+        var length = 0;
+        var onMillis = 0L;
+        var toggles = 0;
+        for (int i = 1; i < count; i++) {
+            var delta = times[i] - times[i - 1];
+            if (isOn(statuses, i - 1)) {
+                onMillis += delta;
+            }
+            if (isOn(statuses, i) != isOn(statuses, i - 1)) {
+                toggles++;
+            }
+            while ((delta & ~0x7FL) != 0) {
+                buffer[length++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            buffer[length++] = (byte) delta;
+        }
+        var deltas = new byte[length];
+        System.arraycopy(buffer, 0, deltas, 0, length);
+        var words = new long[(count + 63) >>> 6];
+        System.arraycopy(statuses, 0, words, 0, words.length);
+        if ((count & 63) != 0) {
+            words[words.length - 1] &= (1L << count) - 1;
+        }
+        return new StatusBlock(times[0], times[count - 1], count, isOn(statuses, 0), isOn(statuses, count - 1),
+                onMillis, toggles, deltas, words);
+    }
+
+    /**
+     * Decodes the changes in time order.
+     */
+    void forEach(Visitor visitor) {
+        var time = firstTime;
+        var position = 0;
+        visitor.visit(time, isOn(statuses, 0));
+        for (int i = 1; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = deltas[position++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            time += delta;
+            visitor.visit(time, isOn(statuses, i));
+        }
+    }
+
+    /**
+     * @return the heap the block's columns take, in bytes
+     */
+    int encodedSize() {
+        return deltas.length + statuses.length * Long.BYTES;
+    }
+
+    static ApplianceStatus status(boolean on) {
+        return on ? ApplianceStatus.ON : ApplianceStatus.OFF;
+    }
+
+    static boolean isOn(long[] statuses, int index) {
+        return (statuses[index >>> 6] & 1L << index) != 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.axcelerate.homehub.history;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.repository.HubChangeListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of every status change, including undo and redo, for questions like "how long
+ * was the heater ON this week". Enabled by default; turn it off with
+ * {@code home-hub.history.enabled=false}.
+ * <p>
+ * Each appliance of each hub has its own {@link StatusSeries}, which doubles as its time index:
+ * changes are stored in time order in compressed, columnar {@link StatusBlock}s that never span
+ * two partitions of {@code home-hub.history.partition}. The repository calls
+ * {@link #statusChanged} on the operating thread, which only writes the time and status into the
+ * uncompressed head of the series. Partitions older than {@code home-hub.history.retention} are
+ * dropped by a background thread. History lives in memory only.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "home-hub.history", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class StatusHistory implements HubChangeListener {
+    private final HomeHubRepositoryRegistry hubs;
+    private final Clock clock;
+    private final long partitionMillis;
+    private final Duration retention;
+    private final ConcurrentMap<String, ConcurrentMap<String, StatusSeries>> series = new ConcurrentHashMap<>();
+    private ScheduledExecutorService compactor;
+
+    @Autowired
+    public StatusHistory(HomeHubRepositoryRegistry hubs,
+                         @Value("${home-hub.history.partition:P1D}") Duration partition,
+                         @Value("${home-hub.history.retention:P35D}") Duration retention) {
+        this(hubs, partition, retention, Clock.systemUTC());
+    }
+
+    StatusHistory(HomeHubRepositoryRegistry hubs, Duration partition, Duration retention, Clock clock) {
+        if (partition.toMillis() < 1 || retention.compareTo(partition) < 0) {
+            throw new IllegalArgumentException("home-hub.history.partition must be at least 1ms and retention at least one partition");
+        }
+        this.hubs = hubs;
+        this.clock = clock;
+        this.partitionMillis = partition.toMillis();
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void start() {
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "home-hub-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var period = Math.min(partitionMillis, TimeUnit.HOURS.toMillis(1));
+        compactor.scheduleWithFixedDelay(this::dropExpiredQuietly, period, period, TimeUnit.MILLISECONDS);
+        hubs.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        hubs.removeListener(this);
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void statusChanged(String hubId, String slotId, String applianceName, ApplianceStatus status) {
+        var hubSeries = series.get(hubId);
+        if (hubSeries == null) {
+            hubSeries = series.computeIfAbsent(hubId, id -> new ConcurrentHashMap<>());
+        }
+        var appliance = hubSeries.get(applianceName);
+        if (appliance == null) {
+            appliance = hubSeries.computeIfAbsent(applianceName, name -> new StatusSeries(partitionMillis));
+        }
+        appliance.append(clock.millis(), status);
+    }
+
+    /**
+     * @return ON time and toggles of the appliance in {@code (from, to]}, or empty if no change of it was recorded
+     */
+    public Optional<StatusUsage> getUsage(String hubId, String applianceName, long from, long to) {
+        return snapshot(hubId, applianceName).map(snapshot -> snapshot.usage(from, to));
+    }
+
+    /**
+     * @return up to {@code limit} changes of the appliance in {@code (from, to]}, oldest first, or
+     * empty if no change of it was recorded
+     */
+    public Optional<List<StatusTransition>> getTransitions(String hubId, String applianceName, long from, long to, int limit) {
+        return snapshot(hubId, applianceName).map(snapshot -> snapshot.transitions(from, to, limit));
+    }
+
+    /**
+     * Drops the partitions that are older than the retention.
+     *
+     * @return the number of changes dropped
+     */
+    int dropExpired() {
+        // keep whole partitions: a block is dropped once its partition has fully expired
+        var cutoff = Math.floorDiv(clock.millis() - retention.toMillis(), partitionMillis) * partitionMillis;
+        var dropped = 0;
+        for (var hubSeries : series.values()) {
+            for (var appliance : hubSeries.values()) {
+                dropped += appliance.dropBefore(cutoff);
+            }
+        }
+        return dropped;
+    }
+
+    private void dropExpiredQuietly() {
+        try {
+            var dropped = dropExpired();
+            if (dropped > 0) {
+                log.info("Dropped {} expired status changes", dropped);
+            }
+        } catch (RuntimeException e) {
+            log.error("Dropping expired status changes failed", e);
+        }
+    }
+
+    private Optional<StatusSeries.Snapshot> snapshot(String hubId, String applianceName) {
+        var hubSeries = series.get(hubId);
+        var appliance = hubSeries == null ? null : hubSeries.get(applianceName);
+        if (appliance == null) {
+            return Optional.empty();
+        }
+        var snapshot = appliance.snapshot();
+        return snapshot.isEmpty() ? Optional.empty() : Optional.of(snapshot);
+    }
+}
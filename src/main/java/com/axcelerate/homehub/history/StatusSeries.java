@@ -0,0 +1,295 @@
+package com.axcelerate.homehub.history;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The status changes of one appliance: sealed {@link StatusBlock}s in time order, plus a head of
+ * up to {@link StatusBlock#CAPACITY} uncompressed changes that is sealed when it is full or when
+ * a change falls into the next time partition, so no block spans two partitions.
+ * <p>
+ * Appending writes a time and a bit into the head's arrays, which start small and double up to
+ * {@link StatusBlock#CAPACITY}; sealing compresses the head once every {@link StatusBlock#CAPACITY}
+ * changes. Dropping old partitions keeps the last dropped
+ * change as a baseline, so the status at the start of any later range is still known.
+ * Appends and snapshots hold the series' lock, a {@link ReentrantLock} since appends run on the
+ * operate path under the repository's locks; queries run on a snapshot without it.
+ */
+final class StatusSeries {
+    private final long partitionMillis;
+    private static final int INITIAL_HEAD = 4;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long[] headTimes = new long[INITIAL_HEAD];
+    private final long[] headStatuses = new long[StatusBlock.CAPACITY / Long.SIZE];
+    private int headCount;
+    private StatusBlock[] blocks = new StatusBlock[4];
+    private int blockCount;
+    private boolean hasBaseline;
+    private long baselineTime;
+    private boolean baselineOn;
+
+    StatusSeries(long partitionMillis) {
+        this.partitionMillis = partitionMillis;
+    }
+
+    /**
+     * Records a change at {@code time}; a time before the previous change, e.g. after the clock
+     * was set back, is recorded at the time of the previous change.
+     */
+    void append(long time, ApplianceStatus status) {
+        lock.lock();
+        try {
+            if (headCount > 0) {
+                var previous = headTimes[headCount - 1];
+                time = Math.max(time, previous);
+                if (headCount == StatusBlock.CAPACITY
+                        || Math.floorDiv(time, partitionMillis) != Math.floorDiv(headTimes[0], partitionMillis)) {
+                    seal();
+                }
+            } else if (blockCount > 0) {
+                time = Math.max(time, blocks[blockCount - 1].lastTime);
+            } else if (hasBaseline) {
+                time = Math.max(time, baselineTime);
+            }
+            if (headCount == headTimes.length) {
+                headTimes = Arrays.copyOf(headTimes, headCount * 2);
+            }
+            headTimes[headCount] = time;
+            var word = headCount >>> 6;
+            if (status == ApplianceStatus.ON) {
+                headStatuses[word] |= 1L << headCount;
+            } else {
+                headStatuses[word] &= ~(1L << headCount);
+            }
+            headCount++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the blocks whose last change is before {@code cutoff}.
+     *
+     * @return the number of changes dropped
+     */
+    int dropBefore(long cutoff) {
+        lock.lock();
+        try {
+            var dropped = 0;
+            var keep = 0;
+            while (keep < blockCount && blocks[keep].lastTime < cutoff) {
+                dropped += blocks[keep].count;
+                keep++;
+            }
+            if (keep == 0) {
+                return 0;
+            }
+            hasBaseline = true;
+            baselineTime = blocks[keep - 1].lastTime;
+            baselineOn = blocks[keep - 1].lastOn;
+            blocks = Arrays.copyOfRange(blocks, keep, Math.max(keep + 4, blockCount));
+            blockCount -= keep;
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Snapshot snapshot() {
+        lock.lock();
+        try {
+            var head = headCount == 0 ? null : StatusBlock.encode(headTimes, headStatuses, headCount);
+            var count = blockCount + (head == null ? 0 : 1);
+            var copy = Arrays.copyOf(blocks, Math.max(count, 1));
+            if (head != null) {
+                copy[blockCount] = head;
+            }
+            return new Snapshot(copy, count, hasBaseline, baselineTime, baselineOn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            var size = headCount;
+            for (int i = 0; i < blockCount; i++) {
+                size += blocks[i].count;
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the heap taken by the sealed blocks' columns, in bytes
+     */
+    long encodedSize() {
+        lock.lock();
+        try {
+            var size = 0L;
+            for (int i = 0; i < blockCount; i++) {
+                size += blocks[i].encodedSize();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void seal() {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        blocks[blockCount++] = StatusBlock.encode(headTimes, headStatuses, headCount);
+        headCount = 0;
+    }
+
+    /**
+     * The series at one point in time; the head is included as a last, unsealed block.
+     */
+    static final class Snapshot {
+        private final StatusBlock[] blocks;
+        private final int count;
+        private final boolean hasBaseline;
+        private final long baselineTime;
+        private final boolean baselineOn;
+
+        private Snapshot(StatusBlock[] blocks, int count, boolean hasBaseline, long baselineTime, boolean baselineOn) {
+            this.blocks = blocks;
+            this.count = count;
+            this.hasBaseline = hasBaseline;
+            this.baselineTime = baselineTime;
+            this.baselineOn = baselineOn;
+        }
+
+        boolean isEmpty() {
+            return count == 0 && !hasBaseline;
+        }
+
+        /**
+         * ON time and toggles in {@code (from, to]}. Blocks before the range are skipped by a
+         * binary search, blocks inside it are summed from their headers, and only the blocks
+         * at the two ends of the range are decoded.
+         */
+        StatusUsage usage(long from, long to) {
+            var fold = new UsageFold(from, to);
+            var first = firstEndingAfter(from);
+            if (first > 0) {
+                fold.start(blocks[first - 1].lastTime, blocks[first - 1].lastOn);
+            } else if (hasBaseline) {
+                fold.start(baselineTime, baselineOn);
+            }
+            for (int i = first; i < count && blocks[i].firstTime <= to; i++) {
+                var block = blocks[i];
+                if (block.firstTime > from && block.lastTime <= to) {
+                    fold.add(block);
+                } else {
+                    block.forEach(fold);
+                }
+            }
+            return fold.finish();
+        }
+
+        /**
+         * @return up to {@code limit} changes in {@code (from, to]}, oldest first
+         */
+        List<StatusTransition> transitions(long from, long to, int limit) {
+            var transitions = new ArrayList<StatusTransition>();
+            for (int i = firstEndingAfter(from); i < count && blocks[i].firstTime <= to && transitions.size() < limit; i++) {
+                blocks[i].forEach((time, on) -> {
+                    if (time > from && time <= to && transitions.size() < limit) {
+                        transitions.add(new StatusTransition(time, StatusBlock.status(on)));
+                    }
+                });
+            }
+            return transitions;
+        }
+
+        /**
+         * @return the index of the first block with a change after {@code time}
+         */
+        private int firstEndingAfter(long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                var middle = (low + high) >>> 1;
+                if (blocks[middle].lastTime <= time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Walks the changes of a range in time order, tracking the status in effect.
+     */
+    private static final class UsageFold implements StatusBlock.Visitor {
+        private final long from;
+        private final long to;
+        private boolean known;
+        private long time;
+        private boolean on;
+        private long onMillis;
+        private int toggles;
+        private int changes;
+
+        private UsageFold(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void start(long time, boolean on) {
+            known = true;
+            this.time = time;
+            this.on = on;
+        }
+
+        @Override
+        public void visit(long changeTime, boolean changeOn) {
+            if (changeTime <= from) {
+                start(changeTime, changeOn);
+            } else if (changeTime <= to) {
+                if (known) {
+                    if (on) {
+                        onMillis += changeTime - Math.max(time, from);
+                    }
+                    if (on != changeOn) {
+                        toggles++;
+                    }
+                }
+                changes++;
+                start(changeTime, changeOn);
+            }
+        }
+
+        /**
+         * Adds a block lying entirely within the range without decoding it.
+         */
+        void add(StatusBlock block) {
+            visit(block.firstTime, block.firstOn);
+            onMillis += block.onMillis;
+            toggles += block.toggles;
+            changes += block.count - 1;
+            start(block.lastTime, block.lastOn);
+        }
+
+        StatusUsage finish() {
+            if (known && on) {
+                onMillis += to - Math.max(time, from);
+            }
+            return new StatusUsage(onMillis, toggles, changes, known ? StatusBlock.status(on) : null);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.axcelerate.homehub.history;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+/**
+ * @param time epoch milliseconds of the change
+ */
+public record StatusTransition(long time, ApplianceStatus status) {
+}
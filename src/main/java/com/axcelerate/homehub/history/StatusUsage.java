@@ -0,0 +1,14 @@
+package com.axcelerate.homehub.history;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+/**
+ * What an appliance did in a time range.
+ *
+ * @param onMillis milliseconds the appliance was ON
+ * @param toggles changes to a different status than the one in effect
+ * @param changes status changes recorded, including repeats of the status in effect
+ * @param status the status at the end of the range, {@code null} if none was recorded by then
+ */
+public record StatusUsage(long onMillis, int toggles, int changes, ApplianceStatus status) {
+}
@@ -0,0 +1,138 @@
+package com.axcelerate.homehub.metrics;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.enums.HubOperation;
+import com.axcelerate.homehub.exception.ApplianceAlreadyRegisteredException;
+import com.axcelerate.homehub.exception.ApplianceNotRegisteredException;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.exception.HomeHubException;
+import com.axcelerate.homehub.exception.NoLastOperationException;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Latency and outcome of every {@link HubOperation}, plus gauges of what the hubs hold.
+ * <p>
+ * Each operation is timed by a {@code home_hub.operations} timer tagged with the {@code operation},
+ * its {@code outcome} ({@code success}, {@code rejected} for a {@link HomeHubException}, {@code error}
+ * otherwise) and the {@code error} type. Every combination is registered up front and kept in an
+ * array, so recording is an index lookup and a {@link Timer#record(long, TimeUnit)}: no tags are
+ * built and nothing is allocated per call. The success timers publish the buckets of a Prometheus
+ * histogram, so quantiles are computed by the server ({@code histogram_quantile}); failures leave
+ * them out to keep the number of series down. Percentiles computed in the process from HDR
+ * histograms can be turned on with {@code home-hub.metrics.percentiles}, at the cost of about
+ * 0.3 microseconds per operation.
+ * <p>
+ * The gauges sum over all hubs when they are scraped; the counts they read are maintained by the
+ * repositories, so a scrape does not scan any slot table.
+ */
+@Component
+public class HomeHubMetrics {
+    static final String OPERATIONS = "home_hub.operations";
+
+    private static final List<Class<? extends HomeHubException>> REJECTIONS = List.of(
+            ApplianceAlreadyRegisteredException.class,
+            ApplianceNotRegisteredException.class,
+            BindException.class,
+            NoLastOperationException.class);
+    private static final int SUCCESS = 0;
+    private static final int ERROR = REJECTIONS.size() + 1;
+
+    /**
+     * {@code timers[operation][SUCCESS]}, then one timer per {@link #REJECTIONS} type, then {@link #ERROR}.
+     */
+    private final Timer[][] timers;
+
+    public HomeHubMetrics(MeterRegistry registry, HomeHubRepositoryRegistry hubs) {
+        this(registry, hubs, new double[0]);
+    }
+
+    /**
+     * @param percentiles the percentiles to publish for every timer, e.g. {@code 0.5,0.99}, or none
+     */
+    @Autowired
+    public HomeHubMetrics(MeterRegistry registry, HomeHubRepositoryRegistry hubs,
+                          @Value("${home-hub.metrics.percentiles:}") double[] percentiles) {
+        var operations = HubOperation.values();
+        timers = new Timer[operations.length][ERROR + 1];
+        for (var operation : operations) {
+            var row = timers[operation.ordinal()];
+            row[SUCCESS] = timer(registry, operation, "success", "none", percentiles);
+            for (int i = 0; i < REJECTIONS.size(); i++) {
+                row[i + 1] = timer(registry, operation, "rejected", REJECTIONS.get(i).getSimpleName(), percentiles);
+            }
+            row[ERROR] = timer(registry, operation, "error", "other", percentiles);
+        }
+        Gauge.builder("home_hub.hubs", hubs, registryOfHubs -> registryOfHubs.getHubIds().size())
+                .description("Hubs holding state")
+                .register(registry);
+        gauge(registry, hubs, "home_hub.appliances.registered", "Registered appliances", HomeHubRepository::getRegisteredApplianceCount);
+        gauge(registry, hubs, "home_hub.slots.bound", "Bound remote slots", HomeHubRepository::getBoundSlotCount);
+        gauge(registry, hubs, "home_hub.slots.on", "Bound remote slots whose appliance is ON",
+                repository -> repository.countWithStatus(ApplianceStatus.ON));
+    }
+
+    /**
+     * @return the start time to pass to {@link #succeeded} or {@link #failed}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void succeeded(HubOperation operation, long start) {
+        timers[operation.ordinal()][SUCCESS].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void failed(HubOperation operation, Throwable error, long start) {
+        timers[operation.ordinal()][errorIndex(error)].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static int errorIndex(Throwable error) {
+        if (error instanceof HomeHubException) {
+            for (int i = 0; i < REJECTIONS.size(); i++) {
+                if (REJECTIONS.get(i) == error.getClass()) {
+                    return i + 1;
+                }
+            }
+        }
+        return ERROR;
+    }
+
+    private static Timer timer(MeterRegistry registry, HubOperation operation, String outcome, String error, double[] percentiles) {
+        return Timer.builder(OPERATIONS)
+                .description("Latency of home hub operations")
+                .tag("operation", operation.name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .tag("error", error)
+                .publishPercentiles(percentiles)
+                .publishPercentileHistogram("none".equals(error))
+                .minimumExpectedValue(Duration.ofNanos(500))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    private static void gauge(MeterRegistry registry, HomeHubRepositoryRegistry hubs, String name, String description,
+                              ToDoubleFunction<HomeHubRepository> count) {
+        Gauge.builder(name, hubs, registryOfHubs -> {
+                    var total = 0.0;
+                    for (var repository : registryOfHubs.getHubs()) {
+                        total += count.applyAsDouble(repository);
+                    }
+                    return total;
+                })
+                .description(description)
+                .register(registry);
+    }
+}
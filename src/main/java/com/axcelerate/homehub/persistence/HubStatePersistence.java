@@ -0,0 +1,184 @@
+package com.axcelerate.homehub.persistence;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.repository.HubChangeListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes hub state survive restarts. Enabled with {@code home-hub.persistence.enabled=true}.
+ * <p>
+ * Every registration, binding and status change (including undo and redo), and the removal of a
+ * hub handed off to another node, is appended to a {@link WriteAheadLog} just before it is
+ * applied, while the hub is locked. Appending never waits: if the log writer has fallen
+ * {@code queue-capacity} records behind, the change is rejected with a {@link LogFullException},
+ * answered 503, instead of holding the hub's locks until there is room. Every
+ * {@code snapshot-interval} the log is rolled to a new generation
+ * {@code N} and a snapshot {@code N} of all hubs is written. A change that was in flight while
+ * the log rolled may be in generation {@code N - 1} yet missing from the snapshot, so recovery
+ * loads the latest snapshot {@code N} and replays logs {@code N - 1} onwards; older files are
+ * deleted once the snapshot is on disk. Undo/redo history is not persisted.
+ * <p>
+ * Recovery runs while the application context starts, before the web server accepts requests.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "home-hub.persistence", name = "enabled", havingValue = "true")
+public class HubStatePersistence implements HubChangeListener {
+    private final HomeHubRepositoryRegistry hubs;
+    private final Path directory;
+    private final Duration snapshotInterval;
+    private final int mapChunkSize;
+    private final int queueCapacity;
+    private final boolean fsync;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+    private WriteAheadLog writeAheadLog;
+
+    public HubStatePersistence(HomeHubRepositoryRegistry hubs,
+                               @Value("${home-hub.persistence.directory:data}") Path directory,
+                               @Value("${home-hub.persistence.snapshot-interval:PT5M}") Duration snapshotInterval,
+                               @Value("${home-hub.persistence.map-chunk-size:16777216}") int mapChunkSize,
+                               @Value("${home-hub.persistence.queue-capacity:65536}") int queueCapacity,
+                               @Value("${home-hub.persistence.fsync:true}") boolean fsync) {
+        this.hubs = hubs;
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.mapChunkSize = mapChunkSize;
+        this.queueCapacity = queueCapacity;
+        this.fsync = fsync;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        var lastGeneration = recover();
+        writeAheadLog = new WriteAheadLog(directory, lastGeneration + 1, mapChunkSize, queueCapacity, fsync);
+        // first, so no other listener sees a change the log rejects
+        hubs.addVetoingListener(this);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "home-hub-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var intervalMillis = snapshotInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        hubs.removeListener(this);
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+        }
+    }
+
+    /**
+     * Rolls the log, writes a snapshot for the new generation and deletes files it supersedes.
+     *
+     * @return the generation of the snapshot
+     */
+    public long snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            var generation = writeAheadLog.roll();
+            SnapshotStore.write(directory, generation, hubs);
+            for (var old : SnapshotStore.generations(directory)) {
+                if (old < generation) {
+                    Files.deleteIfExists(SnapshotStore.file(directory, old));
+                }
+            }
+            for (var old : WriteAheadLog.generations(directory)) {
+                if (old < generation - 1) {
+                    Files.deleteIfExists(WriteAheadLog.file(directory, old));
+                }
+            }
+            return generation;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public void applianceRegistered(String hubId, String applianceName) {
+        writeAheadLog.append(LogRecord.register(hubId, applianceName));
+    }
+
+    @Override
+    public void slotBound(String hubId, String slotId, String applianceName) {
+        writeAheadLog.append(LogRecord.bind(hubId, slotId, applianceName));
+    }
+
+    @Override
+    public void statusChanged(String hubId, String slotId, String applianceName, ApplianceStatus status) {
+        writeAheadLog.append(LogRecord.status(hubId, slotId, status));
+    }
+
+    @Override
+    public void hubRemoved(String hubId) {
+        writeAheadLog.append(LogRecord.remove(hubId));
+    }
+
+    /**
+     * @return the highest generation found on disk, or 0 if there is none
+     */
+    private long recover() throws IOException {
+        var started = System.nanoTime();
+        var snapshots = SnapshotStore.generations(directory);
+        var logs = WriteAheadLog.generations(directory);
+        var snapshotGeneration = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+        if (snapshotGeneration > 0) {
+            SnapshotStore.load(SnapshotStore.file(directory, snapshotGeneration), hubs);
+        }
+        long replayed = 0;
+        for (var generation : logs) {
+            if (generation >= snapshotGeneration - 1) {
+                replayed += WriteAheadLog.replay(WriteAheadLog.file(directory, generation), this::apply);
+            }
+        }
+        log.info("Recovered hub state from snapshot {} and {} log records in {} ms", snapshotGeneration, replayed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        var lastLog = logs.isEmpty() ? 0 : logs.get(logs.size() - 1);
+        return Math.max(snapshotGeneration, lastLog);
+    }
+
+    private void apply(LogRecord record) {
+        if (record.type() == LogRecord.Type.REMOVE) {
+            hubs.removeHub(record.hubId());
+            return;
+        }
+        var repository = hubs.restoreHub(record.hubId());
+        switch (record.type()) {
+            case REGISTER -> repository.restoreAppliance(record.applianceName());
+            case BIND -> repository.restoreBinding(record.slotId(), record.applianceName(), ApplianceStatus.OFF);
+            case STATUS -> repository.restoreStatus(record.slotId(), record.status());
+            default -> throw new IllegalStateException("Unexpected record " + record.type());
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Could not write hub snapshot", e);
+        }
+    }
+}
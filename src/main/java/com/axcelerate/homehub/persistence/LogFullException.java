@@ -0,0 +1,15 @@
+package com.axcelerate.homehub.persistence;
+
+/**
+ * A change that could not be logged because the write-ahead log is full. The change was not
+ * applied; sent again once the writer has caught up, it is.
+ */
+public class LogFullException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static final LogFullException INSTANCE = new LogFullException();
+
+    private LogFullException() {
+        super("Write-ahead log is full", null, false, false);
+    }
+}
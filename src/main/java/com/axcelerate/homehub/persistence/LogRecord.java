@@ -0,0 +1,93 @@
+package com.axcelerate.homehub.persistence;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One state change in the write-ahead log. Every record sets state rather than describing a
+ * delta, so replaying a record that is already reflected in a snapshot is harmless.
+ * <p>
+ * Encoded as {@code type, hubId, slotId, applianceName, status}, where strings are an unsigned
+ * short length followed by UTF-8 bytes and unused fields are written as empty strings.
+ */
+record LogRecord(Type type, String hubId, String slotId, String applianceName, ApplianceStatus status) {
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final ApplianceStatus[] STATUSES = ApplianceStatus.values();
+
+    enum Type {
+        REGISTER, BIND, STATUS, REMOVE
+    }
+
+    static LogRecord register(String hubId, String applianceName) {
+        return new LogRecord(Type.REGISTER, hubId, "", applianceName, ApplianceStatus.OFF);
+    }
+
+    static LogRecord bind(String hubId, String slotId, String applianceName) {
+        return new LogRecord(Type.BIND, hubId, slotId, applianceName, ApplianceStatus.OFF);
+    }
+
+    static LogRecord status(String hubId, String slotId, ApplianceStatus status) {
+        return new LogRecord(Type.STATUS, hubId, slotId, "", status);
+    }
+
+    static LogRecord remove(String hubId) {
+        return new LogRecord(Type.REMOVE, hubId, "", "", ApplianceStatus.OFF);
+    }
+
+    void encode(ByteBuffer out) {
+        out.put((byte) type.ordinal());
+        putString(out, hubId);
+        putString(out, slotId);
+        putString(out, applianceName);
+        out.put((byte) status.ordinal());
+    }
+
+    static LogRecord decode(DataInputStream in) throws IOException {
+        var type = Type.values()[in.readUnsignedByte()];
+        var hubId = readString(in);
+        var slotId = readString(in);
+        var applianceName = readString(in);
+        var status = STATUSES[in.readUnsignedByte()];
+        return new LogRecord(type, hubId, slotId, applianceName, status);
+    }
+
+    /**
+     * @return whether every string fits its length field; checked before a record is queued,
+     * so the writer thread never meets one it cannot encode
+     */
+    boolean fits() {
+        return fits(hubId) && fits(slotId) && fits(applianceName);
+    }
+
+    private static boolean fits(String value) {
+        // a UTF-8 char takes at most 3 bytes, so only long strings need encoding to tell
+        return value.length() * 3 <= MAX_STRING_BYTES || value.getBytes(StandardCharsets.UTF_8).length <= MAX_STRING_BYTES;
+    }
+
+    /**
+     * Upper bound of the encoded size, used to size buffers before encoding.
+     */
+    int maxEncodedSize() {
+        return 2 + 3 * 2 + 3 * (hubId.length() + slotId.length() + applianceName.length());
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Value is too long to be logged: " + bytes.length + " bytes");
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.axcelerate.homehub.persistence;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes compact binary snapshots of every hub.
+ * <p>
+ * A snapshot is a header ({@code magic, generation}) followed by tagged entries: a hub id, then
+ * that hub's registered appliances and bindings, and finally an end tag and a CRC32 of everything
+ * before it. Snapshots are written to a temporary file and moved into place, so a crash while
+ * writing never leaves a partial snapshot behind.
+ */
+final class SnapshotStore {
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int MAGIC = 0x48484231;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte END = 0;
+    private static final byte HUB = 1;
+    private static final byte APPLIANCE = 2;
+    private static final byte BINDING = 3;
+    private static final ApplianceStatus[] STATUSES = ApplianceStatus.values();
+
+    private SnapshotStore() {
+    }
+
+    static Path file(Path directory, long generation) {
+        return directory.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    static List<Long> generations(Path directory) throws IOException {
+        return generations(directory, PREFIX, SUFFIX);
+    }
+
+    static void write(Path directory, long generation, HomeHubRepositoryRegistry hubs) throws IOException {
+        var target = file(directory, generation);
+        var temporary = directory.resolve(target.getFileName() + ".tmp");
+        var checksum = new CRC32();
+        try (var out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE), checksum))) {
+            out.writeInt(MAGIC);
+            out.writeLong(generation);
+            for (var hubId : hubs.getHubIds()) {
+                var repository = hubs.findHub(hubId).orElseThrow();
+                out.writeByte(HUB);
+                out.writeUTF(hubId);
+                repository.forEachRegisteredAppliance(applianceName -> {
+                    out.writeByte(APPLIANCE);
+                    out.writeUTF(applianceName);
+                });
+                repository.forEachBinding((slotId, applianceName, status) -> {
+                    out.writeByte(BINDING);
+                    out.writeUTF(slotId);
+                    out.writeUTF(applianceName);
+                    out.writeByte(status.ordinal());
+                });
+            }
+            out.writeByte(END);
+            out.writeInt((int) checksum.getValue());
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot into the registry through the repositories' restore methods.
+     *
+     * @throws IOException if the file cannot be read or fails its integrity checks
+     */
+    static void load(Path file, HomeHubRepositoryRegistry hubs) throws IOException {
+        var checksum = new CRC32();
+        try (var in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), checksum))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a home hub snapshot: " + file);
+            }
+            in.readLong();
+            HomeHubRepository repository = null;
+            while (true) {
+                var tag = in.readByte();
+                if (tag == END) {
+                    break;
+                } else if (tag == HUB) {
+                    repository = hubs.restoreHub(in.readUTF());
+                } else if (tag == APPLIANCE && repository != null) {
+                    repository.restoreAppliance(in.readUTF());
+                } else if (tag == BINDING && repository != null) {
+                    repository.restoreBinding(in.readUTF(), in.readUTF(), STATUSES[in.readUnsignedByte()]);
+                } else {
+                    throw new IOException("Corrupt snapshot " + file + ": unexpected tag " + tag);
+                }
+            }
+            var expected = (int) checksum.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Corrupt snapshot " + file + ": checksum mismatch");
+            }
+        }
+    }
+
+    static List<Long> generations(Path directory, String prefix, String suffix) throws IOException {
+        var generations = new ArrayList<Long>();
+        try (var files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (var file : files) {
+                var name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+}
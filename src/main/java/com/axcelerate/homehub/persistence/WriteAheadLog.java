@@ -0,0 +1,303 @@
+package com.axcelerate.homehub.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of {@link LogRecord}s written through memory-mapped files.
+ * <p>
+ * Callers only enqueue records; a single writer thread drains the queue in batches, copies each
+ * batch into the mapped region and forces it to disk once per batch (group commit). The log is
+ * split into generations, one file each, so that files older than the latest snapshot can be
+ * deleted. Within a file every record is framed as {@code length, crc32, payload}; a zero length
+ * marks the end of the written data and a bad checksum marks a torn write, and replay stops at
+ * either.
+ * <p>
+ * Records are appended while the repository holds its locks, so appending never waits: a full
+ * queue fails the append with a {@link LogFullException}, and once the writer has failed it
+ * records the failure and appends fail with it.
+ */
+class WriteAheadLog implements Closeable {
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int MAX_BATCH = 4_096;
+    private static final int FRAME_HEADER = 8;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Path directory;
+    private final int chunkSize;
+    private final boolean fsync;
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(1_024);
+    private volatile long generation;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedOffset;
+    private volatile IOException failure;
+
+    private record Roll(CompletableFuture<Long> done) {
+    }
+
+    private record Stop(CompletableFuture<Void> done) {
+    }
+
+    WriteAheadLog(Path directory, long generation, int chunkSize, int queueCapacity, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.fsync = fsync;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        open(generation);
+        this.writer = new Thread(this::run, "home-hub-wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    static Path file(Path directory, long generation) {
+        return directory.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    /**
+     * @return the generations of all log files in the directory, oldest first
+     */
+    static List<Long> generations(Path directory) throws IOException {
+        return SnapshotStore.generations(directory, PREFIX, SUFFIX);
+    }
+
+    /**
+     * Queues a record for the writer thread without waiting.
+     *
+     * @throws IllegalArgumentException if a string of the record is too long to be logged
+     * @throws LogFullException if the writer is behind and the queue is full
+     * @throws IllegalStateException if the log failed
+     */
+    void append(LogRecord record) {
+        if (!record.fits()) {
+            throw new IllegalArgumentException("Value is too long to be logged, the limit is " + LogRecord.MAX_STRING_BYTES + " bytes");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Write-ahead log is no longer writable", failure);
+        }
+        if (!queue.offer(record)) {
+            throw LogFullException.INSTANCE;
+        }
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * Closes the current generation after everything queued so far and starts the next one.
+     *
+     * @return the new generation
+     */
+    long roll() throws IOException {
+        var done = new CompletableFuture<Long>();
+        enqueueControl(new Roll(done));
+        return await(done);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!writer.isAlive()) {
+            return;
+        }
+        var done = new CompletableFuture<Void>();
+        enqueueControl(new Stop(done));
+        await(done);
+    }
+
+    /**
+     * Reads a log file front to back, stopping at the end of the written data or the first torn record.
+     *
+     * @return the number of records replayed
+     */
+    static long replay(Path file, Consumer<LogRecord> consumer) throws IOException {
+        var crc = new CRC32();
+        long count = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            var payload = new byte[1_024];
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    if (length <= 0) {
+                        return count;
+                    }
+                    checksum = in.readInt();
+                    if (payload.length < length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    return count;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return count;
+                }
+                consumer.accept(LogRecord.decode(new DataInputStream(new ByteArrayInputStream(payload, 0, length))));
+                count++;
+            }
+        }
+    }
+
+    private void run() {
+        var batch = new ArrayList<Object>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (var item : batch) {
+                    if (item instanceof LogRecord record) {
+                        write(record);
+                    } else if (item instanceof Roll roll) {
+                        force();
+                        closeChannel();
+                        open(generation + 1);
+                        roll.done().complete(generation);
+                    } else if (item instanceof Stop stop) {
+                        force();
+                        closeChannel();
+                        stop.done().complete(null);
+                        return;
+                    }
+                }
+                force();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            fail(batch, e);
+        } catch (RuntimeException | Error e) {
+            fail(batch, new IOException("Write-ahead log writer failed", e));
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(batch, new IOException("Write-ahead log writer was interrupted", e));
+        }
+    }
+
+    private void fail(List<Object> batch, IOException e) {
+        failure = e;
+        failPending(batch, e);
+    }
+
+    private void write(LogRecord record) throws IOException {
+        var maxSize = record.maxEncodedSize();
+        if (scratch.capacity() < maxSize) {
+            scratch = ByteBuffer.allocate(Math.max(maxSize, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        record.encode(scratch);
+        scratch.flip();
+        crc.reset();
+        crc.update(scratch.array(), 0, scratch.limit());
+        var frameSize = FRAME_HEADER + scratch.limit();
+        if (mapped.remaining() < frameSize + Integer.BYTES) {
+            remap(frameSize + Integer.BYTES);
+        }
+        mapped.putInt(scratch.limit());
+        mapped.putInt((int) crc.getValue());
+        mapped.put(scratch);
+    }
+
+    /**
+     * Maps the next region of the file starting right after the last written record, so records
+     * stay contiguous across regions.
+     */
+    private void remap(int needed) throws IOException {
+        force();
+        mappedOffset += mapped.position();
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, mappedOffset, Math.max(chunkSize, needed));
+    }
+
+    private void open(long newGeneration) throws IOException {
+        channel = FileChannel.open(file(directory, newGeneration),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mappedOffset = 0;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+        generation = newGeneration;
+    }
+
+    private void force() {
+        if (fsync) {
+            mapped.force();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        channel.close();
+    }
+
+    private void enqueueControl(Object control) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            while (!queue.offer(control, POLL_NANOS, TimeUnit.NANOSECONDS)) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the write-ahead log", e);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> done) throws IOException {
+        try {
+            while (true) {
+                try {
+                    return done.get(POLL_NANOS, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // queued after the writer failed and drained the queue, so nothing completes it
+                    if (failure != null && !writer.isAlive()) {
+                        throw failure;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the write-ahead log", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Write-ahead log failed", e.getCause());
+        }
+    }
+
+    private void failPending(List<Object> batch, IOException e) {
+        var pending = new ArrayList<>(batch);
+        queue.drainTo(pending);
+        for (var item : pending) {
+            if (item instanceof Roll roll) {
+                roll.done().completeExceptionally(e);
+            } else if (item instanceof Stop stop) {
+                stop.done().completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.axcelerate.homehub.push;
+
+import java.io.IOException;
+
+/**
+ * Transport a {@link StatusSubscriber} delivers to, e.g. an SSE connection.
+ */
+public interface EventSink {
+    void send(String eventName, Object data) throws IOException;
+
+    void close();
+}
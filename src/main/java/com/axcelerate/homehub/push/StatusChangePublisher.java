@@ -0,0 +1,142 @@
+package com.axcelerate.homehub.push;
+
+import com.axcelerate.homehub.dto.ApplianceStatusEvent;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.repository.HubChangeListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes appliance status changes to the subscribers of each hub.
+ * <p>
+ * The repository calls {@link #statusChanged} on the operating thread; all this does is hand the
+ * event to the buffer of each subscriber of that hub. Sending happens on a small delivery pool.
+ * Sends are blocking, so a client that stops reading would keep a delivery thread; a watchdog
+ * drops any subscriber whose send takes longer than {@code home-hub.push.write-timeout} and
+ * interrupts the send, which frees the thread for the other subscribers.
+ */
+@Component
+public class StatusChangePublisher implements HubChangeListener {
+    private final HomeHubRepositoryRegistry hubs;
+    private final int bufferSize;
+    private final ExecutorService executor;
+    private final Duration writeTimeout;
+    private final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(new DeliveryThreadFactory("home-hub-push-watchdog"));
+    private final ConcurrentMap<String, Set<StatusSubscriber>> subscribers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StatusChangePublisher(HomeHubRepositoryRegistry hubs,
+                                 @Value("${home-hub.push.buffer-size:256}") int bufferSize,
+                                 @Value("${home-hub.push.threads:2}") int threads,
+                                 @Value("${home-hub.push.write-timeout:PT10S}") Duration writeTimeout) {
+        this(hubs, bufferSize, Executors.newFixedThreadPool(threads, new DeliveryThreadFactory("home-hub-push")), writeTimeout);
+    }
+
+    StatusChangePublisher(HomeHubRepositoryRegistry hubs, int bufferSize, ExecutorService executor) {
+        this(hubs, bufferSize, executor, Duration.ofSeconds(10));
+    }
+
+    StatusChangePublisher(HomeHubRepositoryRegistry hubs, int bufferSize, ExecutorService executor, Duration writeTimeout) {
+        if (writeTimeout.isNegative() || writeTimeout.isZero()) {
+            throw new IllegalArgumentException("home-hub.push.write-timeout must be positive but was " + writeTimeout);
+        }
+        this.hubs = hubs;
+        this.bufferSize = bufferSize;
+        this.executor = executor;
+        this.writeTimeout = writeTimeout;
+    }
+
+    @PostConstruct
+    public void start() {
+        hubs.addListener(this);
+        var period = Math.max(10, writeTimeout.toMillis() / 4);
+        watchdog.scheduleWithFixedDelay(this::dropStalledSubscribers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        hubs.removeListener(this);
+        watchdog.shutdown();
+        subscribers.values().forEach(hubSubscribers -> hubSubscribers.forEach(StatusSubscriber::close));
+        executor.shutdown();
+    }
+
+    /**
+     * @return a handle that ends the subscription; ending it also closes the sink
+     */
+    public Runnable subscribe(String hubId, EventSink sink) {
+        var subscriber = new StatusSubscriber(hubId, sink, bufferSize, executor, this::unsubscribe);
+        subscribers.compute(hubId, (id, hubSubscribers) -> {
+            var updated = hubSubscribers == null ? ConcurrentHashMap.<StatusSubscriber>newKeySet() : hubSubscribers;
+            updated.add(subscriber);
+            return updated;
+        });
+        return subscriber::close;
+    }
+
+    public int getSubscriberCount(String hubId) {
+        var hubSubscribers = subscribers.get(hubId);
+        return hubSubscribers == null ? 0 : hubSubscribers.size();
+    }
+
+    @Override
+    public void statusChanged(String hubId, String slotId, String applianceName, ApplianceStatus status) {
+        var hubSubscribers = subscribers.get(hubId);
+        if (hubSubscribers == null || hubSubscribers.isEmpty()) {
+            return;
+        }
+        var event = new ApplianceStatusEvent(slotId, applianceName, status);
+        for (var subscriber : hubSubscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private void dropStalledSubscribers() {
+        var now = System.nanoTime();
+        var timeout = writeTimeout.toNanos();
+        for (var hubSubscribers : subscribers.values()) {
+            for (var subscriber : hubSubscribers) {
+                subscriber.expireStalledSend(now, timeout);
+            }
+        }
+    }
+
+    private void unsubscribe(StatusSubscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.hubId(), (hubId, hubSubscribers) -> {
+            hubSubscribers.remove(subscriber);
+            return hubSubscribers.isEmpty() ? null : hubSubscribers;
+        });
+    }
+
+    private static final class DeliveryThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DeliveryThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            var thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
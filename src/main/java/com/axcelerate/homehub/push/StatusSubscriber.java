@@ -0,0 +1,155 @@
+package com.axcelerate.homehub.push;
+
+import com.axcelerate.homehub.dto.ApplianceStatusEvent;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * One dashboard or panel subscribed to a hub.
+ * <p>
+ * Pending events are kept per slot, so rapid flips of one slot collapse into its latest status
+ * and the buffer never holds more than {@code capacity} events. When a change for a new slot
+ * arrives while the buffer is full it is dropped and the subscriber is told to {@code resync}
+ * (re-read the full state) on the next delivery. Delivery runs on the shared executor with at
+ * most one task per subscriber and never delays the thread that changed the status. A send that
+ * blocks longer than the write timeout is interrupted and the subscriber closed, so a client that
+ * stopped reading holds a delivery thread for at most that long.
+ */
+class StatusSubscriber {
+    static final String STATUS_EVENT = "status";
+    static final String RESYNC_EVENT = "resync";
+
+    private final String hubId;
+    private final EventSink sink;
+    private final int capacity;
+    private final Executor executor;
+    private final Consumer<StatusSubscriber> onClose;
+    private final ConcurrentMap<String, ApplianceStatusEvent> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean overflowed = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /**
+     * Guards the thread blocked in {@link EventSink#send} and since when. A lock rather than a
+     * monitor, so a virtual thread waiting for it does not pin its carrier.
+     */
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private Thread sendingThread;
+    private long sendStarted;
+    private boolean sendExpired;
+
+    StatusSubscriber(String hubId, EventSink sink, int capacity, Executor executor, Consumer<StatusSubscriber> onClose) {
+        this.hubId = hubId;
+        this.sink = sink;
+        this.capacity = capacity;
+        this.executor = executor;
+        this.onClose = onClose;
+    }
+
+    String hubId() {
+        return hubId;
+    }
+
+    void offer(ApplianceStatusEvent event) {
+        if (closed.get()) {
+            return;
+        }
+        if (pending.size() >= capacity && !pending.containsKey(event.getSlotId())) {
+            overflowed.set(true);
+        } else {
+            pending.put(event.getSlotId(), event);
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::deliver);
+        }
+    }
+
+    /**
+     * Unsubscribes before closing the sink, so a closed sink is never still counted as a subscriber.
+     */
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            pending.clear();
+            onClose.accept(this);
+            sink.close();
+        }
+    }
+
+    /**
+     * Drops this subscriber if a send has been blocked for longer than {@code timeoutNanos}. The
+     * sink is closed by the delivering thread once the interrupted send returns: a sink may lock
+     * out close() while a send is in progress, and the caller must not wait for that.
+     */
+    void expireStalledSend(long now, long timeoutNanos) {
+        sendLock.lock();
+        try {
+            if (sendingThread == null || sendExpired || now - sendStarted < timeoutNanos) {
+                return;
+            }
+            sendExpired = true;
+            sendingThread.interrupt();
+        } finally {
+            sendLock.unlock();
+        }
+        pending.clear();
+        onClose.accept(this);
+    }
+
+    private void deliver() {
+        try {
+            while (!closed.get() && (overflowed.get() || !pending.isEmpty())) {
+                if (overflowed.getAndSet(false)) {
+                    send(RESYNC_EVENT, hubId);
+                }
+                for (var slotId : pending.keySet()) {
+                    var event = pending.remove(slotId);
+                    if (event != null) {
+                        send(STATUS_EVENT, event);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            return;
+        } finally {
+            scheduled.set(false);
+        }
+        if (!closed.get() && (overflowed.get() || !pending.isEmpty()) && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::deliver);
+        }
+    }
+
+    private void send(String eventName, Object data) throws IOException {
+        sendLock.lock();
+        try {
+            sendingThread = Thread.currentThread();
+            sendStarted = System.nanoTime();
+        } finally {
+            sendLock.unlock();
+        }
+        try {
+            sink.send(eventName, data);
+        } finally {
+            boolean expired;
+            sendLock.lock();
+            try {
+                sendingThread = null;
+                expired = sendExpired;
+                if (expired) {
+                    // the interrupt was meant for this send only, not for the pool thread's next task
+                    Thread.interrupted();
+                }
+            } finally {
+                sendLock.unlock();
+            }
+            if (expired) {
+                close();
+            }
+        }
+    }
+}
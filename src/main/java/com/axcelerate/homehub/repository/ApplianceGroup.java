@@ -0,0 +1,155 @@
+package com.axcelerate.homehub.repository;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A named group of appliances, such as a room, in a tree of groups. An appliance is a direct member
+ * of at most one group, and a group also holds every appliance of the groups below it. The parent
+ * of a group is fixed when it is created.
+ * <p>
+ * {@link #on} counts the bound appliances in the group and the groups below it that are ON. Every
+ * status change of a member adds to or subtracts from it and the counts of the groups above, so
+ * reading it costs no scan. Members, children and {@link #applianceCount} are guarded by the write
+ * lock of the owning {@link HomeHubRepository}; the undo stack is guarded by {@link #lock}, which
+ * is held while a group operation or its undo is applied.
+ */
+final class ApplianceGroup {
+    private static final ApplianceStatus[] STATUSES = ApplianceStatus.values();
+
+    final String name;
+    final ApplianceGroup parent;
+    final ReentrantLock lock = new ReentrantLock();
+    final AtomicInteger on = new AtomicInteger();
+    /**
+     * Registered appliances in the group and the groups below it.
+     */
+    int applianceCount;
+
+    private final List<ApplianceGroup> children = new ArrayList<>();
+    private int[] members = new int[4];
+    private int memberCount;
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+
+    /**
+     * The slots a group operation changed and the statuses they had before.
+     */
+    private record Change(int[] slots, byte[] previousStatuses) {
+    }
+
+    ApplianceGroup(String name, ApplianceGroup parent) {
+        this.name = name;
+        this.parent = parent;
+        if (parent != null) {
+            parent.children.add(this);
+        }
+    }
+
+    /**
+     * @return the position of the appliance among the direct members
+     */
+    int addMember(int appliance) {
+        if (memberCount == members.length) {
+            members = Arrays.copyOf(members, memberCount * 2);
+        }
+        members[memberCount] = appliance;
+        return memberCount++;
+    }
+
+    /**
+     * Removes the member at {@code position} by moving the last member into its place.
+     *
+     * @return the appliance moved to {@code position}, or {@code -1} if the removed member was the last
+     */
+    int removeMember(int position) {
+        var last = --memberCount;
+        if (position == last) {
+            return -1;
+        }
+        members[position] = members[last];
+        return members[position];
+    }
+
+    /**
+     * Adds {@code appliances} and {@code on} to this group and every group above it.
+     */
+    void adjust(int appliances, int on) {
+        for (var group = this; group != null; group = group.parent) {
+            group.applianceCount += appliances;
+            if (on != 0) {
+                group.on.addAndGet(on);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code on} to the ON count of this group and every group above it.
+     */
+    void countOn(int on) {
+        for (var group = this; group != null; group = group.parent) {
+            group.on.addAndGet(on);
+        }
+    }
+
+    /**
+     * Visits the direct members of this group and of every group below it.
+     */
+    void forEachMember(MemberVisitor visitor) {
+        for (int i = 0; i < memberCount; i++) {
+            visitor.visit(members[i]);
+        }
+        for (var child : children) {
+            child.forEachMember(visitor);
+        }
+    }
+
+    int[] members() {
+        return Arrays.copyOf(members, memberCount);
+    }
+
+    List<String> childNames() {
+        return children.stream().map(child -> child.name).toList();
+    }
+
+    /**
+     * Pushes a group operation on the undo stack, dropping the oldest beyond {@code depth}.
+     */
+    void record(int[] slots, byte[] previousStatuses, int depth) {
+        changes.push(new Change(slots, previousStatuses));
+        if (changes.size() > depth) {
+            changes.removeLast();
+        }
+    }
+
+    /**
+     * Pops the most recent group operation and hands each slot it changed to {@code restore}.
+     *
+     * @return the number of slots restored, or {@code -1} if there is nothing to undo
+     */
+    int undo(SlotRestorer restore) {
+        var change = changes.poll();
+        if (change == null) {
+            return -1;
+        }
+        for (int i = 0; i < change.slots().length; i++) {
+            restore.restore(change.slots()[i], STATUSES[change.previousStatuses()[i]]);
+        }
+        return change.slots().length;
+    }
+
+    @FunctionalInterface
+    interface MemberVisitor {
+        void visit(int appliance);
+    }
+
+    @FunctionalInterface
+    interface SlotRestorer {
+        void restore(int slot, ApplianceStatus status);
+    }
+}
@@ -0,0 +1,59 @@
+package com.axcelerate.homehub.repository;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * The slots changed by the most recent {@link #CAPACITY} versions of a hub, in a ring indexed by
+ * version, so a client that has seen version N can be sent only what changed since.
+ * <p>
+ * Changes of different slots are recorded concurrently, so version N+1 may be recorded before
+ * version N. Each entry is stamped with its version after its slot is written; a reader stops at
+ * the first entry whose stamp is not yet there and reports the version before it, so no change is
+ * ever skipped. Only the newer half of the ring is read, which leaves the older half for changes
+ * still being recorded.
+ */
+final class ChangeJournal {
+    static final int CAPACITY = 1_024;
+
+    private final long start;
+    private final int[] slots = new int[CAPACITY];
+    private final AtomicLongArray versions = new AtomicLongArray(CAPACITY);
+
+    /**
+     * @param start the version the journal starts after; later versions must all be recorded
+     */
+    ChangeJournal(long start) {
+        this.start = start;
+    }
+
+    void record(long version, int slot) {
+        var index = (int) version & (CAPACITY - 1);
+        slots[index] = slot;
+        versions.set(index, version);
+    }
+
+    /**
+     * Hands the slots changed in {@code (since, current]} to {@code slot}, possibly more than once.
+     *
+     * @return the version the slots handed over lead up to, or {@code -1} if {@code since} is older
+     * than the journal can answer for
+     */
+    long changesSince(long since, long current, IntConsumer slot) {
+        if (since < start || since > current || current - since > CAPACITY / 2) {
+            return -1;
+        }
+        var version = since;
+        while (version < current) {
+            var index = (int) (version + 1) & (CAPACITY - 1);
+            var stamp = versions.get(index);
+            if (stamp != version + 1) {
+                // not recorded yet, or, with more than half the ring in flight, already overwritten
+                return stamp < version + 1 ? version : -1;
+            }
+            slot.accept(slots[index]);
+            version++;
+        }
+        return version;
+    }
+}
@@ -0,0 +1,16 @@
+package com.axcelerate.homehub.repository;
+
+import java.util.List;
+
+/**
+ * A group at one point in time.
+ *
+ * @param parent         the group above, or {@code null} for a top-level group
+ * @param groups         the groups directly below
+ * @param appliances     the direct members
+ * @param applianceCount the appliances in the group and every group below it
+ * @param onCount        those of them that are bound and ON
+ */
+public record GroupSnapshot(String name, String parent, List<String> groups, List<String> appliances,
+                            int applianceCount, int onCount) {
+}
@@ -1,52 +1,1079 @@
 package com.axcelerate.homehub.repository;
 
 import com.axcelerate.homehub.dto.Appliance;
+import com.axcelerate.homehub.dto.SlotOperation;
 import com.axcelerate.homehub.enums.ApplianceStatus;
-import org.springframework.stereotype.Repository;
+import com.axcelerate.homehub.enums.BindingOutcome;
+import com.axcelerate.homehub.enums.GroupOutcome;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
-@Repository
+/**
+ * In-memory store of the registered appliances and remote slot bindings of one hub. Instances are
+ * handed out per hub by {@link HomeHubRepositoryRegistry}.
+ * <p>
+ * Hubs hold up to millions of bindings, so the state is kept in primitive arrays rather than maps
+ * of objects. Slot ids and appliance names are interned by two {@link NameDictionary dictionaries}
+ * into dense {@code int} ids; a slot is interned when it is bound and bindings are never removed,
+ * so every slot id is bound. {@code slotAppliances} and {@code applianceSlots} link the two id
+ * spaces, {@code registered} holds one bit per appliance and the statuses are packed into bits of
+ * fixed-size chunks. A binding costs the characters of both names plus about 50 bytes, instead of
+ * the ~230 bytes of map entries, strings and {@link Appliance} instances it used to take.
+ * <p>
+ * Registering and binding take the write lock of a {@link StampedLock}; lookups read optimistically
+ * and only take the read lock if a write got in the way. Status changes do not touch the lock: a
+ * binding never changes once made, so the status bits of a slot are guarded by one of
+ * {@link #STRIPES} striped locks instead, and written with atomic operations since neighbouring
+ * slots share a word. Listeners are called while the lock guarding the change is held, so the
+ * events of a slot reach them in order. {@link Appliance} instances are created on the way out.
+ * <p>
+ * Undo/redo is tracked per remote in an {@link OperationHistory} ring buffer. A remote's history
+ * is locked while an operation on it is applied, so records always match the order in which that
+ * remote's changes hit the status bits. Remote ids come from clients, so a hub keeps the histories
+ * of at most {@code maxRemotes} remotes; beyond that the least recently used ones are dropped.
+ * <p>
+ * Appliances can be put into a tree of {@link ApplianceGroup groups}, e.g. rooms. Each group keeps
+ * its members and a count of those that are ON, which a status change updates while the slot's
+ * stripe is locked, so group queries and group operations never walk all the bindings.
+ * <p>
+ * Every binding and every change of a status moves the hub to a new {@link #getVersion() version}.
+ * Once a client asks what changed since a version, a {@link ChangeJournal} of the recent versions
+ * is kept, so clients that poll can be sent only the bindings that changed.
+ * <p>
+ * While a hub is handed off to another node its writes are {@link #suspendWrites() suspended}:
+ * every change checks for that inside the critical section it is made in and fails with a
+ * {@link HubMovingException}, so the state sent to the new owner is the final one.
+ */
 public class HomeHubRepository {
-    private final Set<String> applianceRegistry = new HashSet<>();
-    private final Map<String, Appliance> bindings = new HashMap<>();
-    private static String lastOperatedSlot=null;
+    public static final int DEFAULT_HISTORY_DEPTH = 16;
+    public static final int DEFAULT_MAX_REMOTES = 1_024;
+
+    private static final ApplianceStatus[] STATUSES = ApplianceStatus.values();
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Bits per status, rounded up to a power of two so a status never straddles two words.
+     */
+    private static final int STATUS_BITS = Integer.highestOneBit(
+            Math.max(1, 32 - Integer.numberOfLeadingZeros(STATUSES.length - 1)) * 2 - 1);
+    private static final long STATUS_MASK = (1L << STATUS_BITS) - 1;
+    private static final int SLOTS_PER_WORD_SHIFT = 6 - Integer.numberOfTrailingZeros(STATUS_BITS);
+    /**
+     * The lowest bit of every status in a word.
+     */
+    private static final long STATUS_LOW_BITS = Long.divideUnsigned(-1L, STATUS_MASK);
+    private static final int CHUNK_WORDS = 128;
+    private static final int SLOTS_PER_CHUNK_SHIFT = SLOTS_PER_WORD_SHIFT + Integer.numberOfTrailingZeros(CHUNK_WORDS);
+    private static final int STRIPES = 64;
+
+    private final StampedLock lock = new StampedLock();
+    private final NameDictionary slots = new NameDictionary();
+    private final NameDictionary appliances = new NameDictionary();
+    private int[] slotAppliances = new int[16];
+    private int[] applianceSlots = new int[16];
+    private long[] registered = new long[1];
+    private long[][] statusChunks = new long[1][];
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private int registeredCount;
+    private final AtomicLongArray statusCounts = new AtomicLongArray(STATUSES.length);
+    /**
+     * Starts at a random multiple of 2^32 below 2^52, so versions stay exact in JavaScript and a
+     * version of a hub that was dropped and re-created is almost surely not taken for a version
+     * of the new one.
+     */
+    private final AtomicLong version = new AtomicLong((long) ThreadLocalRandom.current().nextInt(1 << 20) << 32);
+    /**
+     * Created by the first {@link #forEachChangeSince} and written under the lock guarding each change.
+     */
+    private volatile ChangeJournal journal;
+    private volatile boolean writesSuspended;
+
+    private final ConcurrentMap<String, OperationHistory> histories = new ConcurrentHashMap<>();
+    private final ReentrantLock evictingHistories = new ReentrantLock();
+    private final ConcurrentMap<String, List<SlotOperation>> scenes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ApplianceGroup> groups = new ConcurrentHashMap<>();
+    /**
+     * The group of each appliance and its position among the group's members, allocated with the
+     * first membership so hubs without groups pay nothing. Written under the write lock and, for a
+     * bound appliance, its slot's stripe.
+     */
+    private ApplianceGroup[] applianceGroups;
+    private int[] groupPositions;
+    private final String hubId;
+    private final int historyDepth;
+    private final int maxRemotes;
+    private final HubChangeListener listener;
+
+    public HomeHubRepository() {
+        this(DEFAULT_HISTORY_DEPTH);
+    }
+
+    public HomeHubRepository(int historyDepth) {
+        this(null, historyDepth, HubChangeListener.NONE);
+    }
+
+    public HomeHubRepository(String hubId, int historyDepth, HubChangeListener listener) {
+        this(hubId, historyDepth, DEFAULT_MAX_REMOTES, listener);
+    }
+
+    public HomeHubRepository(String hubId, int historyDepth, int maxRemotes, HubChangeListener listener) {
+        if (maxRemotes < 1) {
+            throw new IllegalArgumentException("At least one remote must be remembered but the limit was " + maxRemotes);
+        }
+        this.hubId = hubId;
+        this.historyDepth = historyDepth;
+        this.maxRemotes = maxRemotes;
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Receives the bindings of a hub, see {@link #forEachBinding}.
+     */
+    @FunctionalInterface
+    public interface BindingVisitor<E extends Exception> {
+        void visit(String slotId, String applianceName, ApplianceStatus status) throws E;
+    }
+
+    /**
+     * Receives the registered appliances of a hub, see {@link #forEachRegisteredAppliance}.
+     */
+    @FunctionalInterface
+    public interface ApplianceVisitor<E extends Exception> {
+        void visit(String applianceName) throws E;
+    }
+
     public boolean isApplianceRegistered(String  applianceName) {
-        return applianceRegistry.contains(applianceName);
+        return read(() -> isRegistered(appliances.find(applianceName)));
+    }
+
+    /**
+     * @return {@code true} if the appliance was registered by this call, {@code false} if it was already registered
+     */
+    public boolean registerAppliance(String applianceName) {
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            return register(applianceName);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Registers the appliances in one critical section, in order.
+     *
+     * @param applianceNames the names to register; {@code null} entries are skipped
+     * @return for each name whether it was newly registered
+     */
+    public boolean[] registerAppliances(String[] applianceNames, int count) {
+        var added = new boolean[count];
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            for (int i = 0; i < count; i++) {
+                added[i] = applianceNames[i] != null && register(applianceNames[i]);
+            }
+            return added;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
-    public void registerAppliance(String applianceName) {
-        applianceRegistry.add(applianceName);
+
+    private boolean register(String applianceName) {
+        var appliance = internAppliance(applianceName);
+        if (isRegistered(appliance)) {
+            return false;
+        }
+        // before the change, so a listener that rejects it leaves the hub as it was
+        listener.applianceRegistered(hubId, applianceName);
+        registered[appliance >>> 6] |= 1L << appliance;
+        registeredCount++;
+        return true;
     }
 
     public boolean isSlotAvailable(String slotId) {
-        return !bindings.containsKey(slotId);
+        return read(() -> slots.find(slotId) < 0);
     }
 
     public boolean isApplianceAlreadyBound(String applianceName) {
-        return bindings.containsValue(applianceName);
+        return read(() -> slotOf(appliances.find(applianceName)) >= 0);
+    }
 
+    public Optional<String> findSlotForAppliance(String applianceName) {
+        return Optional.ofNullable(read(() -> {
+            var slot = slotOf(appliances.find(applianceName));
+            return slot < 0 ? null : slots.name(slot);
+        }));
     }
 
-    public void bindSlot(String slotId, String applianceName) {
-        bindings.put(slotId, new Appliance(applianceName, ApplianceStatus.OFF));
+    /**
+     * Checks the appliance before the slot, so an appliance that is bound elsewhere is reported as
+     * such even if the slot is taken too.
+     */
+    public BindingOutcome bindSlot(String slotId, String applianceName) {
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            return bind(slotId, applianceName, appliances.find(applianceName));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
-    public Appliance updateApplianceStatus(String slotId, int operation) {
-        lastOperatedSlot = slotId;
-        bindings.get(slotId).setStatus(ApplianceStatus.values()[operation]);
-        return bindings.get(slotId);
 
+    /**
+     * Binds the slots in one critical section, in order. Unlike {@link #bindSlot}, the appliance
+     * must be registered, which is checked under the same lock.
+     *
+     * @param slotIds the slots to bind; entries that are {@code null} are skipped
+     * @return for each slot how binding it ended, or {@code null} where it was skipped
+     */
+    public BindingOutcome[] bindSlots(String[] slotIds, String[] applianceNames, int count) {
+        var outcomes = new BindingOutcome[count];
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            for (int i = 0; i < count; i++) {
+                if (slotIds[i] == null) {
+                    continue;
+                }
+                var appliance = appliances.find(applianceNames[i]);
+                outcomes[i] = isRegistered(appliance) ? bind(slotIds[i], applianceNames[i], appliance)
+                        : BindingOutcome.APPLIANCE_NOT_REGISTERED;
+            }
+            return outcomes;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
+    private BindingOutcome bind(String slotId, String applianceName, int appliance) {
+        if (slotOf(appliance) >= 0) {
+            return BindingOutcome.APPLIANCE_ALREADY_BOUND;
+        }
+        if (slots.find(slotId) >= 0) {
+            return BindingOutcome.SLOT_ALREADY_USED;
+        }
+        listener.slotBound(hubId, slotId, applianceName);
+        link(slotId, appliance < 0 ? internAppliance(applianceName) : appliance, ApplianceStatus.OFF);
+        return BindingOutcome.BOUND;
+    }
+
+    /**
+     * @return the appliance with its new status, or {@code null} if the slot is not bound
+     */
+    public Appliance updateApplianceStatus(String remoteId, String slotId, int operation) {
+        checkWritable();
+        var status = STATUSES[operation];
+        var binding = read(() -> binding(slots.find(slotId), slotId));
+        if (binding == null) {
+            return null;
+        }
+        var history = histories.get(remoteId);
+        if (history == null) {
+            history = histories.computeIfAbsent(remoteId, id -> new OperationHistory(historyDepth));
+            if (histories.size() > maxRemotes) {
+                evictHistories();
+            }
+        }
+        history.lock.lock();
+        try {
+            history.lastUsed = System.nanoTime();
+            return setStatus(binding, status, history, true);
+        } finally {
+            history.lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the bound slot ids
+     */
     public Set<String> getUsedSlots() {
-        return bindings.keySet();
+        var view = read(slots::view);
+        var used = HashSet.<String>newHashSet(view.size());
+        for (int slot = 0; slot < view.size(); slot++) {
+            used.add(view.name(slot));
+        }
+        return Collections.unmodifiableSet(used);
+    }
+
+    /**
+     * Restores the status the remote's most recent operation replaced.
+     *
+     * @return the appliance with its restored status, or {@code null} if there is nothing to undo
+     */
+    public Appliance undoPreviousAction(String remoteId) {
+        checkWritable();
+        var history = histories.get(remoteId);
+        if (history == null) {
+            return null;
+        }
+        history.lock.lock();
+        try {
+            history.lastUsed = System.nanoTime();
+            var index = history.undo();
+            return index < 0 ? null : setStatus(history.slotId(index), history.previousStatus(index));
+        } finally {
+            history.lock.unlock();
+        }
+    }
+
+    /**
+     * Re-applies the remote's most recently undone operation.
+     *
+     * @return the appliance with its re-applied status, or {@code null} if there is nothing to redo
+     */
+    public Appliance redoAction(String remoteId) {
+        checkWritable();
+        var history = histories.get(remoteId);
+        if (history == null) {
+            return null;
+        }
+        history.lock.lock();
+        try {
+            history.lastUsed = System.nanoTime();
+            var index = history.redo();
+            return index < 0 ? null : setStatus(history.slotId(index), history.newStatus(index));
+        } finally {
+            history.lock.unlock();
+        }
     }
 
-    public Appliance  undoPreviousAction() {
+    /**
+     * @return the number of remotes whose history is kept
+     */
+    int rememberedRemotes() {
+        return histories.size();
+    }
+
+    /**
+     * Drops the least recently used histories down to seven eighths of {@code maxRemotes}, so
+     * the scan is paid once per many new remotes. A remote operating while its history is
+     * dropped may lose that one record.
+     */
+    private void evictHistories() {
+        if (!evictingHistories.tryLock()) {
+            return;
+        }
+        try {
+            var excess = histories.size() - maxRemotes * 7L / 8;
+            if (excess <= 0) {
+                return;
+            }
+            histories.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                    .limit(excess)
+                    .forEach(entry -> histories.remove(entry.getKey(), entry.getValue()));
+        } finally {
+            evictingHistories.unlock();
+        }
+    }
+
+    /**
+     * Stores a named set of slot operations, replacing any scene with the same name.
+     */
+    public void saveScene(String sceneName, List<SlotOperation> operations) {
+        var copy = operations.stream()
+                .map(operation -> new SlotOperation(operation.getSlotId(), operation.getOperation()))
+                .toList();
+        // scenes have their own map; the read lock only keeps a suspension from passing the check
+        var stamp = lock.readLock();
+        try {
+            checkWritable();
+            scenes.put(sceneName, copy);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Optional<List<SlotOperation>> findScene(String sceneName) {
+        return Optional.ofNullable(scenes.get(sceneName));
+    }
+
+    /**
+     * @return a snapshot of the saved scenes, by name
+     */
+    public Map<String, List<SlotOperation>> getScenes() {
+        return Map.copyOf(scenes);
+    }
+
+    /**
+     * Creates a group below {@code parentName}, or at the top if it is {@code null}. Creating a
+     * group again under the same parent changes nothing.
+     */
+    public GroupOutcome createGroup(String groupName, String parentName) {
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            var parent = parentName == null ? null : groups.get(parentName);
+            if (parentName != null && parent == null) {
+                return GroupOutcome.PARENT_NOT_FOUND;
+            }
+            var existing = groups.get(groupName);
+            if (existing != null) {
+                return existing.parent == parent ? GroupOutcome.ALREADY_EXISTS : GroupOutcome.PARENT_CONFLICT;
+            }
+            groups.put(groupName, new ApplianceGroup(groupName, parent));
+            return GroupOutcome.CREATED;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean hasGroup(String groupName) {
+        return groups.containsKey(groupName);
+    }
+
+    /**
+     * Makes a registered appliance a direct member of the group, moving it out of its previous group.
+     */
+    public GroupOutcome addToGroup(String groupName, String applianceName) {
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            var group = groups.get(groupName);
+            if (group == null) {
+                return GroupOutcome.GROUP_NOT_FOUND;
+            }
+            var appliance = appliances.find(applianceName);
+            if (!isRegistered(appliance)) {
+                return GroupOutcome.APPLIANCE_NOT_REGISTERED;
+            }
+            if (applianceGroups == null) {
+                applianceGroups = new ApplianceGroup[applianceSlots.length];
+                groupPositions = new int[applianceSlots.length];
+            }
+            if (applianceGroups[appliance] != group) {
+                moveToGroup(appliance, group);
+            }
+            return GroupOutcome.ADDED;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public GroupOutcome removeFromGroup(String groupName, String applianceName) {
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            var group = groups.get(groupName);
+            if (group == null) {
+                return GroupOutcome.GROUP_NOT_FOUND;
+            }
+            var appliance = appliances.find(applianceName);
+            if (groupOf(appliance) != group) {
+                return GroupOutcome.NOT_A_MEMBER;
+            }
+            moveToGroup(appliance, null);
+            return GroupOutcome.REMOVED;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Optional<GroupSnapshot> findGroup(String groupName) {
+        var stamp = lock.readLock();
+        try {
+            var group = groups.get(groupName);
+            if (group == null) {
+                return Optional.empty();
+            }
+            var members = group.members();
+            var names = new ArrayList<String>(members.length);
+            for (var appliance : members) {
+                names.add(appliances.name(appliance));
+            }
+            return Optional.of(new GroupSnapshot(group.name, group.parent == null ? null : group.parent.name,
+                    group.childNames(), names, group.applianceCount, group.on.get()));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Sets every bound appliance in the group and the groups below it to the status of
+     * {@code operation}, and records the statuses it replaced so the group can undo it as one step.
+     *
+     * @return the number of appliances whose status changed, or {@code -1} if there is no such group
+     */
+    public int operateGroup(String groupName, int operation) {
+        checkWritable();
+        var status = STATUSES[operation];
+        var group = groups.get(groupName);
+        if (group == null) {
+            return -1;
+        }
+        group.lock.lock();
+        try {
+            var bindings = new ArrayList<Binding>();
+            var stamp = lock.readLock();
+            try {
+                group.forEachMember(appliance -> {
+                    var slot = slotOf(appliance);
+                    if (slot >= 0) {
+                        bindings.add(new Binding(slot, slots.name(slot), appliances.name(appliance), appliance));
+                    }
+                });
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            var changed = new int[bindings.size()];
+            var previousStatuses = new byte[bindings.size()];
+            var count = 0;
+            for (var binding : bindings) {
+                var previous = swapStatus(binding, status, null, true);
+                if (previous != status) {
+                    changed[count] = binding.slot();
+                    previousStatuses[count++] = (byte) previous.ordinal();
+                }
+            }
+            group.record(Arrays.copyOf(changed, count), Arrays.copyOf(previousStatuses, count), historyDepth);
+            return count;
+        } finally {
+            group.lock.unlock();
+        }
+    }
+
+    /**
+     * Restores the statuses the group's most recent group operation replaced.
+     *
+     * @return the number of appliances restored, or {@code -1} if there is no such group or nothing to undo
+     */
+    public int undoGroupOperation(String groupName) {
+        checkWritable();
+        var group = groups.get(groupName);
+        if (group == null) {
+            return -1;
+        }
+        group.lock.lock();
+        try {
+            return group.undo(this::setStatus);
+        } finally {
+            group.lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the registered appliance names
+     */
+    public Set<String> getRegisteredAppliances() {
+        var names = new HashSet<String>();
+        forEachRegisteredAppliance(names::add);
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return a snapshot of the bindings, by slot id
+     */
+    public Map<String, Appliance> getBindings() {
+        var bindings = new HashMap<String, Appliance>();
+        forEachBinding((slotId, applianceName, status) -> bindings.put(slotId, new Appliance(applianceName, status)));
+        return Collections.unmodifiableMap(bindings);
+    }
+
+    public int getRegisteredApplianceCount() {
+        return read(() -> registeredCount);
+    }
+
+    public int getBoundSlotCount() {
+        return read(slots::size);
+    }
 
-        var lastOperatedAppliance = bindings.get(lastOperatedSlot);
-        return updateApplianceStatus(lastOperatedSlot, lastOperatedAppliance.getStatus().ordinal() == 0 ? 1 : 0);
+    /**
+     * Kept up to date by every status change, so it costs no scan.
+     */
+    public long countWithStatus(ApplianceStatus status) {
+        return statusCounts.get(status.ordinal());
     }
-    public static String getLastOperatedSlot() {
-        return lastOperatedSlot;
+
+    /**
+     * @return a number that grows with every binding and status change, and with nothing else
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Visits the bindings made or changed after version {@code since}, each once, with its current
+     * status. The first call only starts the journal, so it, and any call for a version more than
+     * half a {@link ChangeJournal#CAPACITY journal} behind, tells the caller to read the full state.
+     *
+     * @return the version the visited bindings bring the caller up to, or {@code -1} if the changes
+     * since {@code since} are not known and the full state has to be read instead
+     */
+    public <E extends Exception> long forEachChangeSince(long since, BindingVisitor<E> visitor) throws E {
+        var current = version.get();
+        if (since == current) {
+            return current;
+        }
+        var journal = this.journal;
+        if (journal == null) {
+            startJournal();
+            return -1;
+        }
+        var changed = new int[ChangeJournal.CAPACITY / 2];
+        var count = new int[1];
+        var reached = journal.changesSince(since, current, slot -> changed[count[0]++] = slot);
+        if (reached < 0) {
+            return -1;
+        }
+        Arrays.sort(changed, 0, count[0]);
+        for (int i = 0; i < count[0]; i++) {
+            var slot = changed[i];
+            if (i > 0 && slot == changed[i - 1]) {
+                continue;
+            }
+            var binding = read(() -> binding(slot, null));
+            visitor.visit(binding.slotId(), binding.applianceName(), status(slot));
+        }
+        return reached;
+    }
+
+    /**
+     * Walks the bindings in the order they were made, without building a copy of them. Bindings
+     * made during the walk may or may not be visited; statuses are read as the walk gets to them.
+     */
+    public <E extends Exception> void forEachBinding(BindingVisitor<E> visitor) throws E {
+        forEachBinding(0, Integer.MAX_VALUE, null, null, visitor);
+    }
+
+    /**
+     * Walks up to {@code limit} bindings in the order they were made, starting at position
+     * {@code cursor}. Bindings are never removed, so a position keeps pointing at the same binding
+     * and a walk can be continued from the returned cursor at any later time.
+     * <p>
+     * With a {@code status}, the status bits are scanned a word at a time and only matching slots are
+     * resolved, so a walk over a mostly-OFF hub for ON slots skips 64 slots per step. Appliance
+     * names are compared with {@code appliancePrefix} without decoding them.
+     *
+     * @param status          only visit bindings with this status, or {@code null} for all
+     * @param appliancePrefix only visit bindings whose appliance name starts with this, or {@code null} for all
+     * @return the cursor to continue from, or {@code -1} if the walk reached the last binding
+     */
+    public <E extends Exception> int forEachBinding(int cursor, int limit, ApplianceStatus status, String appliancePrefix,
+                                                    BindingVisitor<E> visitor) throws E {
+        var stamp = lock.readLock();
+        NameDictionary.View slotNames;
+        NameDictionary.View applianceNames;
+        int[] slotAppliances;
+        try {
+            slotNames = slots.view();
+            applianceNames = appliances.view();
+            slotAppliances = this.slotAppliances;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        var size = slotNames.size();
+        var visited = 0;
+        for (int slot = Math.max(cursor, 0); slot < size; slot++) {
+            if (status != null && (slot = nextWithStatus(slot, size, status)) == size) {
+                break;
+            }
+            if (visited == limit) {
+                return slot;
+            }
+            var appliance = slotAppliances[slot];
+            if (appliancePrefix == null || applianceNames.startsWith(appliance, appliancePrefix)) {
+                visitor.visit(slotNames.name(slot), applianceNames.name(appliance), status != null ? status : status(slot));
+                visited++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Walks the registered appliances in the order they were first seen, without building a copy
+     * of them. Registrations made during the walk may or may not be visited.
+     */
+    public <E extends Exception> void forEachRegisteredAppliance(ApplianceVisitor<E> visitor) throws E {
+        var stamp = lock.readLock();
+        NameDictionary.View applianceNames;
+        long[] registered;
+        try {
+            applianceNames = appliances.view();
+            registered = this.registered.clone();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        for (int appliance = 0; appliance < applianceNames.size(); appliance++) {
+            if ((registered[appliance >>> 6] & 1L << appliance) != 0) {
+                visitor.visit(applianceNames.name(appliance));
+            }
+        }
+    }
+
+    /**
+     * Re-creates a registration while recovering persisted state. Listeners are not notified.
+     */
+    public void restoreAppliance(String applianceName) {
+        var stamp = lock.writeLock();
+        try {
+            var appliance = internAppliance(applianceName);
+            if (!isRegistered(appliance)) {
+                registered[appliance >>> 6] |= 1L << appliance;
+                registeredCount++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Re-creates a binding while recovering persisted state, keeping an existing binding of the slot.
+     * Listeners are not notified and no undo history is recorded.
+     */
+    public void restoreBinding(String slotId, String applianceName, ApplianceStatus status) {
+        var stamp = lock.writeLock();
+        try {
+            if (slots.find(slotId) < 0) {
+                link(slotId, internAppliance(applianceName), status);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Merges a binding handed off by another node, with its status, unless the slot or the
+     * appliance is bound already. Unlike {@link #restoreBinding}, listeners are notified, so the
+     * merged binding is persisted like one made here. No undo history is recorded.
+     *
+     * @return whether the binding was merged
+     */
+    public boolean mergeBinding(String slotId, String applianceName, ApplianceStatus status) {
+        var stamp = lock.writeLock();
+        try {
+            checkWritable();
+            var appliance = appliances.find(applianceName);
+            if (slotOf(appliance) >= 0 || slots.find(slotId) >= 0) {
+                return false;
+            }
+            listener.slotBound(hubId, slotId, applianceName);
+            if (status != ApplianceStatus.OFF) {
+                listener.statusChanged(hubId, slotId, applianceName, status);
+            }
+            link(slotId, appliance < 0 ? internAppliance(applianceName) : appliance, status);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Re-applies a status while recovering persisted state. Listeners are not notified and no undo
+     * history is recorded.
+     */
+    public void restoreStatus(String slotId, ApplianceStatus status) {
+        var binding = read(() -> binding(slots.find(slotId), slotId));
+        if (binding != null) {
+            setStatus(binding, status, null, false);
+        }
+    }
+
+    /**
+     * A bound slot, resolved to its names.
+     */
+    private record Binding(int slot, String slotId, String applianceName, int appliance) {
+    }
+
+    private Appliance setStatus(int slot, ApplianceStatus status) {
+        return setStatus(read(() -> binding(slot, null)), status, null, true);
+    }
+
+    private Appliance setStatus(Binding binding, ApplianceStatus status, OperationHistory history, boolean notify) {
+        swapStatus(binding, status, history, notify);
+        return new Appliance(binding.applianceName(), status);
+    }
+
+    /**
+     * @return the status {@code status} replaced
+     */
+    private ApplianceStatus swapStatus(Binding binding, ApplianceStatus status, OperationHistory history, boolean notify) {
+        var slot = binding.slot();
+        var stripe = stripes[slot & (STRIPES - 1)];
+        stripe.lock();
+        try {
+            checkWritable();
+            var previous = status(slot);
+            if (history != null) {
+                history.record(slot, previous, status);
+            }
+            if (notify) {
+                listener.statusChanged(hubId, binding.slotId(), binding.applianceName(), status);
+            }
+            var shift = (slot & ((1 << SLOTS_PER_WORD_SHIFT) - 1)) * STATUS_BITS;
+            WORDS.getAndBitwiseXor(statusChunk(slot), wordIndex(slot), (long) (previous.ordinal() ^ status.ordinal()) << shift);
+            if (previous != status) {
+                changed(slot);
+                statusCounts.decrementAndGet(previous.ordinal());
+                statusCounts.incrementAndGet(status.ordinal());
+                var group = groupOf(binding.appliance());
+                if (group != null && (previous == ApplianceStatus.ON || status == ApplianceStatus.ON)) {
+                    group.countOn(status == ApplianceStatus.ON ? 1 : -1);
+                }
+            }
+            return previous;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private ApplianceStatus status(int slot) {
+        var word = (long) WORDS.getVolatile(statusChunk(slot), wordIndex(slot));
+        var shift = (slot & ((1 << SLOTS_PER_WORD_SHIFT) - 1)) * STATUS_BITS;
+        return STATUSES[(int) (word >>> shift & STATUS_MASK)];
+    }
+
+    /**
+     * @return the first slot from {@code from} with {@code status}, or {@code size} if there is none
+     */
+    private int nextWithStatus(int from, int size, ApplianceStatus status) {
+        var pattern = STATUS_LOW_BITS * status.ordinal();
+        var slotsPerWord = 1 << SLOTS_PER_WORD_SHIFT;
+        for (int slot = from; slot < size; slot = (slot | (slotsPerWord - 1)) + 1) {
+            var field = slot & (slotsPerWord - 1);
+            // a status matches if its bits xor the pattern are all zero; fold them into the status' lowest bit
+            var differences = (long) WORDS.getVolatile(statusChunk(slot), wordIndex(slot)) ^ pattern;
+            for (int shift = 1; shift < STATUS_BITS; shift <<= 1) {
+                differences |= differences >>> shift;
+            }
+            var matches = ~differences & STATUS_LOW_BITS & (-1L << field * STATUS_BITS);
+            if (matches != 0) {
+                return Math.min(slot - field + Long.numberOfTrailingZeros(matches) / STATUS_BITS, size);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Only called for bound slots, whose chunk is allocated before the binding becomes visible.
+     */
+    private long[] statusChunk(int slot) {
+        return statusChunks[slot >>> SLOTS_PER_CHUNK_SHIFT];
+    }
+
+    private static int wordIndex(int slot) {
+        return (slot >>> SLOTS_PER_WORD_SHIFT) & (CHUNK_WORDS - 1);
+    }
+
+    /**
+     * @param slotId the name of {@code slot} if the caller has it, or {@code null} to look it up
+     * @return the binding of {@code slot}, or {@code null} if there is none
+     */
+    private Binding binding(int slot, String slotId) {
+        var slotAppliances = this.slotAppliances;
+        if (slot < 0 || slot >= slotAppliances.length) {
+            return null;
+        }
+        var appliance = slotAppliances[slot];
+        var applianceName = appliances.name(appliance);
+        return applianceName == null ? null : new Binding(slot, slotId != null ? slotId : slots.name(slot), applianceName, appliance);
+    }
+
+    private boolean isRegistered(int appliance) {
+        var registered = this.registered;
+        return appliance >= 0 && appliance >>> 6 < registered.length && (registered[appliance >>> 6] & 1L << appliance) != 0;
+    }
+
+    /**
+     * @return the slot bound to {@code appliance}, or {@code -1} if there is none
+     */
+    private int slotOf(int appliance) {
+        var applianceSlots = this.applianceSlots;
+        return appliance >= 0 && appliance < applianceSlots.length ? applianceSlots[appliance] : -1;
+    }
+
+    /**
+     * @return the group {@code appliance} is a direct member of, or {@code null} if it is in none
+     */
+    private ApplianceGroup groupOf(int appliance) {
+        var applianceGroups = this.applianceGroups;
+        return applianceGroups != null && appliance >= 0 && appliance < applianceGroups.length ? applianceGroups[appliance] : null;
+    }
+
+    /**
+     * Moves {@code appliance} from its group, if any, into {@code group}, or into none if it is
+     * {@code null}. Called with the write lock held; the slot's stripe is locked so that no status
+     * change of the appliance is counted in the wrong group.
+     */
+    private void moveToGroup(int appliance, ApplianceGroup group) {
+        var slot = slotOf(appliance);
+        var stripe = slot < 0 ? null : stripes[slot & (STRIPES - 1)];
+        if (stripe != null) {
+            stripe.lock();
+        }
+        try {
+            var on = slot >= 0 && status(slot) == ApplianceStatus.ON ? 1 : 0;
+            var previous = applianceGroups[appliance];
+            if (previous != null) {
+                var moved = previous.removeMember(groupPositions[appliance]);
+                if (moved >= 0) {
+                    groupPositions[moved] = groupPositions[appliance];
+                }
+                previous.adjust(-1, -on);
+            }
+            applianceGroups[appliance] = group;
+            if (group != null) {
+                groupPositions[appliance] = group.addMember(appliance);
+                group.adjust(1, on);
+            }
+        } finally {
+            if (stripe != null) {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Interns a new slot bound to {@code appliance}. Called with the write lock held.
+     */
+    private void link(String slotId, int appliance, ApplianceStatus status) {
+        var slot = slots.add(slotId);
+        if (slot == slotAppliances.length) {
+            slotAppliances = Arrays.copyOf(slotAppliances, slot * 2);
+        }
+        var chunk = slot >>> SLOTS_PER_CHUNK_SHIFT;
+        if (chunk == statusChunks.length) {
+            statusChunks = Arrays.copyOf(statusChunks, chunk * 2);
+        }
+        if (statusChunks[chunk] == null) {
+            statusChunks[chunk] = new long[CHUNK_WORDS];
+        }
+        var shift = (slot & ((1 << SLOTS_PER_WORD_SHIFT) - 1)) * STATUS_BITS;
+        WORDS.getAndBitwiseOr(statusChunk(slot), wordIndex(slot), (long) status.ordinal() << shift);
+        statusCounts.incrementAndGet(status.ordinal());
+        var group = groupOf(appliance);
+        if (group != null && status == ApplianceStatus.ON) {
+            group.countOn(1);
+        }
+        slotAppliances[slot] = appliance;
+        applianceSlots[appliance] = slot;
+        changed(slot);
+    }
+
+    /**
+     * Moves the hub to the next version. Called with the lock guarding the change of {@code slot}
+     * held, its stripe or the write lock.
+     */
+    private void changed(int slot) {
+        var next = version.incrementAndGet();
+        var journal = this.journal;
+        if (journal != null) {
+            journal.record(next, slot);
+        }
+    }
+
+    /**
+     * Creates the journal while no change is in flight, so every version after the one it starts
+     * at gets recorded.
+     */
+    private void startJournal() {
+        exclusively(() -> {
+            if (journal == null) {
+                journal = new ChangeJournal(version.get());
+            }
+        });
+    }
+
+    /**
+     * Fails every change to the hub from now on with a {@link HubMovingException}, and returns
+     * once the changes already in progress are done. Reads are not affected.
+     */
+    public void suspendWrites() {
+        writesSuspended = true;
+        exclusively(() -> {
+        });
+    }
+
+    /**
+     * Accepts changes again, e.g. after a handoff failed.
+     */
+    public void resumeWrites() {
+        writesSuspended = false;
+    }
+
+    /**
+     * Called inside the critical section of a change, or before any state is touched.
+     */
+    private void checkWritable() {
+        if (writesSuspended) {
+            throw new HubMovingException(hubId);
+        }
+    }
+
+    /**
+     * Runs {@code action} with the write lock and every stripe held, so no change is in flight.
+     */
+    private void exclusively(Runnable action) {
+        var stamp = lock.writeLock();
+        try {
+            for (var stripe : stripes) {
+                stripe.lock();
+            }
+            try {
+                action.run();
+            } finally {
+                for (var stripe : stripes) {
+                    stripe.unlock();
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the id of {@code applianceName}, interning it if needed. Called with the write lock held.
+     */
+    private int internAppliance(String applianceName) {
+        var appliance = appliances.find(applianceName);
+        if (appliance >= 0) {
+            return appliance;
+        }
+        appliance = appliances.add(applianceName);
+        if (appliance == applianceSlots.length) {
+            applianceSlots = Arrays.copyOf(applianceSlots, appliance * 2);
+        }
+        applianceSlots[appliance] = -1;
+        if (applianceGroups != null && appliance >= applianceGroups.length) {
+            applianceGroups = Arrays.copyOf(applianceGroups, applianceSlots.length);
+            groupPositions = Arrays.copyOf(groupPositions, applianceSlots.length);
+        }
+        if (appliance >>> 6 == registered.length) {
+            registered = Arrays.copyOf(registered, registered.length * 2);
+        }
+        return appliance;
+    }
+
+    /**
+     * Runs {@code reader} under an optimistic read, and again under the read lock if a write
+     * overlapped it. {@code reader} must tolerate the torn state an optimistic read can observe.
+     */
+    private <T> T read(Supplier<T> reader) {
+        var stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            var result = reader.get();
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 }
@@ -0,0 +1,162 @@
+package com.axcelerate.homehub.repository;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Partitions home hub state by tenant. Each hub id owns a separate {@link HomeHubRepository}, so
+ * hubs share no slot namespace, undo history or lock; the only shared structure is this map,
+ * which is itself lock-striped per bin.
+ * <p>
+ * Hubs are created lazily on their first write. A freshly created hub holds small, empty slot
+ * tables (see {@link HomeHubRepository}), which grow as appliances are registered and bound.
+ * Hubs another node owns are not created here, see {@link #setOwnedElsewhere}.
+ */
+@Repository
+public class HomeHubRepositoryRegistry {
+    private final ConcurrentMap<String, HomeHubRepository> hubs = new ConcurrentHashMap<>();
+    private final List<HubChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final HubChangeListener dispatcher = new HubChangeListener() {
+        @Override
+        public void applianceRegistered(String hubId, String applianceName) {
+            for (var listener : listeners) {
+                listener.applianceRegistered(hubId, applianceName);
+            }
+        }
+
+        @Override
+        public void slotBound(String hubId, String slotId, String applianceName) {
+            for (var listener : listeners) {
+                listener.slotBound(hubId, slotId, applianceName);
+            }
+        }
+
+        @Override
+        public void statusChanged(String hubId, String slotId, String applianceName, ApplianceStatus status) {
+            for (var listener : listeners) {
+                listener.statusChanged(hubId, slotId, applianceName, status);
+            }
+        }
+
+        @Override
+        public void hubRemoved(String hubId) {
+            for (var listener : listeners) {
+                listener.hubRemoved(hubId);
+            }
+        }
+    };
+    private final int historyDepth;
+    private final int maxRemotes;
+    private volatile Predicate<String> ownedElsewhere = hubId -> false;
+
+    public HomeHubRepositoryRegistry() {
+        this(HomeHubRepository.DEFAULT_HISTORY_DEPTH);
+    }
+
+    public HomeHubRepositoryRegistry(int historyDepth) {
+        this(historyDepth, HomeHubRepository.DEFAULT_MAX_REMOTES);
+    }
+
+    @Autowired
+    public HomeHubRepositoryRegistry(@Value("${home-hub.undo.history-depth:" + HomeHubRepository.DEFAULT_HISTORY_DEPTH + "}") int historyDepth,
+                                     @Value("${home-hub.undo.max-remotes:" + HomeHubRepository.DEFAULT_MAX_REMOTES + "}") int maxRemotes) {
+        if (historyDepth < 1) {
+            throw new IllegalArgumentException("home-hub.undo.history-depth must be at least 1 but was " + historyDepth);
+        }
+        if (maxRemotes < 1) {
+            throw new IllegalArgumentException("home-hub.undo.max-remotes must be at least 1 but was " + maxRemotes);
+        }
+        this.historyDepth = historyDepth;
+        this.maxRemotes = maxRemotes;
+    }
+
+    /**
+     * @return the repository of the hub, creating it if this is the first time the hub is used
+     * @throws HubMovingException if the hub is not here and another node owns it, e.g. because it
+     *                            was handed off while the request was on its way
+     */
+    public HomeHubRepository forHub(String hubId) {
+        return hubs.computeIfAbsent(hubId, id -> {
+            if (ownedElsewhere.test(id)) {
+                throw new HubMovingException(id);
+            }
+            return create(id);
+        });
+    }
+
+    /**
+     * Like {@link #forHub} but whoever owns the hub, for state recovered from disk.
+     */
+    public HomeHubRepository restoreHub(String hubId) {
+        return hubs.computeIfAbsent(hubId, this::create);
+    }
+
+    /**
+     * Tells {@link #forHub} which hubs another node owns, so a request that reaches this node after
+     * its hub was handed off fails instead of silently starting an empty copy. The check runs when
+     * the hub would be created, so a hub cannot be created after the predicate has started to
+     * match it.
+     */
+    public void setOwnedElsewhere(Predicate<String> ownedElsewhere) {
+        this.ownedElsewhere = ownedElsewhere;
+    }
+
+    /**
+     * Read-only lookup that does not create the hub, so queries for unknown hubs cost no memory.
+     */
+    public Optional<HomeHubRepository> findHub(String hubId) {
+        return Optional.ofNullable(hubs.get(hubId));
+    }
+
+    /**
+     * Forgets the hub, e.g. once it has been handed off to another node, and tells the listeners.
+     */
+    public void removeHub(String hubId) {
+        if (hubs.remove(hubId) != null) {
+            dispatcher.hubRemoved(hubId);
+        }
+    }
+
+    private HomeHubRepository create(String hubId) {
+        return new HomeHubRepository(hubId, historyDepth, maxRemotes, dispatcher);
+    }
+
+    public Set<String> getHubIds() {
+        return hubs.keySet();
+    }
+
+    public Collection<HomeHubRepository> getHubs() {
+        return Collections.unmodifiableCollection(hubs.values());
+    }
+
+    /**
+     * Registers a listener for the changes of every hub, including hubs created later.
+     */
+    public void addListener(HubChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Registers a listener that may reject changes by throwing. It is called before the listeners
+     * added with {@link #addListener}, so they never see a change that was rejected.
+     */
+    public void addVetoingListener(HubChangeListener listener) {
+        listeners.add(0, listener);
+    }
+
+    public void removeListener(HubChangeListener listener) {
+        listeners.remove(listener);
+    }
+}
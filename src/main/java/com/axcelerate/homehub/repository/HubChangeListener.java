@@ -0,0 +1,33 @@
+package com.axcelerate.homehub.repository;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+/**
+ * Receives every state change applied by a {@link HomeHubRepository}.
+ * <p>
+ * Binding and status callbacks run while the affected slot is locked inside the repository, so
+ * callbacks for one slot arrive in the order the changes were applied. Implementations must
+ * therefore be quick, must not block for long and must not call back into the repository.
+ * Registration, binding and status callbacks run just before the change is applied; a change a
+ * callback throws from is not applied.
+ */
+public interface HubChangeListener {
+    HubChangeListener NONE = new HubChangeListener() {
+    };
+
+    default void applianceRegistered(String hubId, String applianceName) {
+    }
+
+    default void slotBound(String hubId, String slotId, String applianceName) {
+    }
+
+    default void statusChanged(String hubId, String slotId, String applianceName, ApplianceStatus status) {
+    }
+
+    /**
+     * The hub was dropped from this node, e.g. after it was handed off to another one; state kept
+     * for it can be released. Runs after the hub has been removed from the registry.
+     */
+    default void hubRemoved(String hubId) {
+    }
+}
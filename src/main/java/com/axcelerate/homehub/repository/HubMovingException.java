@@ -0,0 +1,20 @@
+package com.axcelerate.homehub.repository;
+
+/**
+ * A change to a hub that is being handed off to another node. The change was not applied; sent
+ * again, it reaches the hub's new owner.
+ */
+public class HubMovingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String hubId;
+
+    public HubMovingException(String hubId) {
+        super("Hub " + hubId + " is being handed off to another node", null, false, false);
+        this.hubId = hubId;
+    }
+
+    public String getHubId() {
+        return hubId;
+    }
+}
@@ -0,0 +1,240 @@
+package com.axcelerate.homehub.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns names (slot ids, appliance names) to dense {@code int} ids: the n-th distinct name added
+ * gets id n. Ids are never reused and a name never changes its id.
+ * <p>
+ * Names are not kept as {@link String} objects but packed into one byte arena: a varint header
+ * holding the length and encoding, then one byte per character if every character is Latin-1,
+ * two otherwise. An open-addressing table of ids with the name hashes alongside finds a name
+ * without decoding it. Each name costs its characters plus about 15 bytes.
+ * <p>
+ * Not thread-safe. {@link HomeHubRepository} adds names under its write lock, and may call
+ * {@link #find} and {@link #name} under an optimistic read: while a writer runs concurrently they
+ * can return a wrong answer, but never throw or loop, so the caller only has to validate its stamp.
+ * Content is append-only, so a {@link View} taken under a lock stays valid without one.
+ */
+final class NameDictionary {
+    private static final int MAX_LOAD_PERCENT = 75;
+
+    private byte[] arena = new byte[64];
+    private int arenaSize;
+    private int[] offsets = new int[8];
+    private int[] hashes = new int[8];
+    private int size;
+    private int[] table = new int[16];
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the id of {@code name}, or {@code -1} if it was never added
+     */
+    int find(String name) {
+        var table = this.table;
+        var arena = this.arena;
+        var offsets = this.offsets;
+        var hashes = this.hashes;
+        var hash = hash(name);
+        var mask = table.length - 1;
+        for (int index = hash & mask, probes = 0; probes < table.length; index = (index + 1) & mask, probes++) {
+            var id = table[index] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (id < hashes.length && id < offsets.length && hashes[id] == hash && matches(arena, offsets[id], name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a name that is not in the dictionary yet.
+     *
+     * @return the id of the name
+     */
+    int add(String name) {
+        var id = size;
+        if (id == offsets.length) {
+            offsets = Arrays.copyOf(offsets, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        offsets[id] = append(name);
+        hashes[id] = hash(name);
+        if ((id + 1) * 100L > (long) table.length * MAX_LOAD_PERCENT) {
+            rehash(table.length * 2);
+        }
+        insert(table, id);
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * @return the name with the given id, or {@code null} if there is none
+     */
+    String name(int id) {
+        return name(arena, offsets, id);
+    }
+
+    /**
+     * The names added so far. Taken while holding the lock, the view can be read without it.
+     */
+    View view() {
+        return new View(arena, offsets, size);
+    }
+
+    record View(byte[] arena, int[] offsets, int size) {
+        String name(int id) {
+            return NameDictionary.name(arena, offsets, id);
+        }
+
+        /**
+         * Compares in place, without decoding the name.
+         */
+        boolean startsWith(int id, String prefix) {
+            if (id < 0 || id >= offsets.length) {
+                return false;
+            }
+            var header = header(arena, offsets[id]);
+            var length = prefix.length();
+            if (header < 0 || length(header) < length) {
+                return false;
+            }
+            return regionMatches(arena, (int) (header >>> 32), (header & 1) != 0, prefix, length);
+        }
+    }
+
+    private int append(String name) {
+        var length = name.length();
+        var latin1 = true;
+        for (int i = 0; i < length && latin1; i++) {
+            latin1 = name.charAt(i) <= 0xFF;
+        }
+        var header = (long) length << 1 | (latin1 ? 0 : 1);
+        var required = (long) arenaSize + 5 + (latin1 ? length : 2L * length);
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Name dictionary is full");
+        }
+        if (required > arena.length) {
+            arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, 2L * arena.length)));
+        }
+        var offset = arenaSize;
+        var position = offset;
+        while (header >= 0x80) {
+            arena[position++] = (byte) (header | 0x80);
+            header >>>= 7;
+        }
+        arena[position++] = (byte) header;
+        for (int i = 0; i < length; i++) {
+            var c = name.charAt(i);
+            if (latin1) {
+                arena[position++] = (byte) c;
+            } else {
+                arena[position++] = (byte) (c >>> 8);
+                arena[position++] = (byte) c;
+            }
+        }
+        arenaSize = position;
+        return offset;
+    }
+
+    private void rehash(int capacity) {
+        var rehashed = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            insert(rehashed, id);
+        }
+        table = rehashed;
+    }
+
+    private void insert(int[] table, int id) {
+        var mask = table.length - 1;
+        var index = hashes[id] & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = id + 1;
+    }
+
+    private static int hash(String name) {
+        var hash = name.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(byte[] arena, int offset, String name) {
+        var header = header(arena, offset);
+        if (header < 0 || length(header) != name.length()) {
+            return false;
+        }
+        return regionMatches(arena, (int) (header >>> 32), (header & 1) != 0, name, name.length());
+    }
+
+    /**
+     * @return whether the first {@code length} characters stored at {@code position} are those of {@code name}
+     */
+    private static boolean regionMatches(byte[] arena, int position, boolean utf16, String name, int length) {
+        if (position + (utf16 ? 2L * length : length) > arena.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            var c = utf16 ? (char) ((arena[position++] & 0xFF) << 8 | arena[position++] & 0xFF) : (char) (arena[position++] & 0xFF);
+            if (c != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String name(byte[] arena, int[] offsets, int id) {
+        if (id < 0 || id >= offsets.length) {
+            return null;
+        }
+        var header = header(arena, offsets[id]);
+        if (header < 0) {
+            return null;
+        }
+        var length = length(header);
+        var position = (int) (header >>> 32);
+        var utf16 = (header & 1) != 0;
+        if (position + (utf16 ? 2L * length : length) > arena.length) {
+            return null;
+        }
+        if (!utf16) {
+            return new String(arena, position, length, StandardCharsets.ISO_8859_1);
+        }
+        var chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((arena[position++] & 0xFF) << 8 | arena[position++] & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes the varint header at {@code offset}.
+     *
+     * @return the header value in the low 32 bits and the position of the first character in the
+     * high 32 bits, or {@code -1} if the header runs past the arena
+     */
+    private static long header(byte[] arena, int offset) {
+        long header = 0;
+        for (int shift = 0, position = offset; shift < 35; shift += 7) {
+            if (position < 0 || position >= arena.length) {
+                return -1;
+            }
+            var b = arena[position++];
+            header |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return header & 0xFFFF_FFFFL | (long) position << 32;
+            }
+        }
+        return -1;
+    }
+
+    private static int length(long header) {
+        return (int) ((header & 0xFFFF_FFFFL) >>> 1);
+    }
+}
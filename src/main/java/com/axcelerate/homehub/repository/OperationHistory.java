@@ -0,0 +1,99 @@
+package com.axcelerate.homehub.repository;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Undo/redo history of a single remote, kept in a fixed-capacity ring buffer.
+ * <p>
+ * Each record is an interned slot id plus the status before and after the operation, stored in parallel
+ * arrays that are allocated once, so recording, undoing and redoing never allocate. When the
+ * buffer is full the oldest record is overwritten. Recording a new operation discards anything
+ * that could still be redone.
+ * <p>
+ * Not thread-safe by itself; {@link HomeHubRepository} holds {@link #lock} around every access.
+ * A {@link ReentrantLock} rather than a monitor is used so a virtual thread waiting for the
+ * history of a busy remote does not pin its carrier thread.
+ */
+class OperationHistory {
+    private static final ApplianceStatus[] STATUSES = ApplianceStatus.values();
+
+    final ReentrantLock lock = new ReentrantLock();
+    /**
+     * {@link System#nanoTime()} of the last operation, written under {@link #lock}.
+     */
+    volatile long lastUsed = System.nanoTime();
+
+    private final int[] slotIds;
+    private final byte[] previousStatuses;
+    private final byte[] newStatuses;
+    private int head;
+    private int undoSize;
+    private int redoSize;
+
+    OperationHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("History capacity must be at least 1 but was " + capacity);
+        }
+        slotIds = new int[capacity];
+        previousStatuses = new byte[capacity];
+        newStatuses = new byte[capacity];
+    }
+
+    void record(int slotId, ApplianceStatus previousStatus, ApplianceStatus newStatus) {
+        slotIds[head] = slotId;
+        previousStatuses[head] = (byte) previousStatus.ordinal();
+        newStatuses[head] = (byte) newStatus.ordinal();
+        head = next(head);
+        undoSize = Math.min(undoSize + 1, slotIds.length);
+        redoSize = 0;
+    }
+
+    /**
+     * Steps back over the most recent record.
+     *
+     * @return the index of the record to undo, or {@code -1} if there is nothing to undo
+     */
+    int undo() {
+        if (undoSize == 0) {
+            return -1;
+        }
+        head = head == 0 ? slotIds.length - 1 : head - 1;
+        undoSize--;
+        redoSize++;
+        return head;
+    }
+
+    /**
+     * Steps forward over the most recently undone record.
+     *
+     * @return the index of the record to redo, or {@code -1} if there is nothing to redo
+     */
+    int redo() {
+        if (redoSize == 0) {
+            return -1;
+        }
+        var index = head;
+        head = next(head);
+        redoSize--;
+        undoSize++;
+        return index;
+    }
+
+    int slotId(int index) {
+        return slotIds[index];
+    }
+
+    ApplianceStatus previousStatus(int index) {
+        return STATUSES[previousStatuses[index]];
+    }
+
+    ApplianceStatus newStatus(int index) {
+        return STATUSES[newStatuses[index]];
+    }
+
+    private int next(int index) {
+        return index + 1 == slotIds.length ? 0 : index + 1;
+    }
+}
@@ -0,0 +1,171 @@
+package com.axcelerate.homehub.schedule;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel over abstract ticks: adding and cancelling a timer is O(1), and an
+ * expired timer costs O(1) per level it moves down, however many timers are pending.
+ * <p>
+ * Level {@code L} has {@value #SIZE} buckets, each spanning {@code SIZE^L} ticks. A timer is put on
+ * the lowest level whose bucket still separates its deadline from the current tick, i.e. the level
+ * of the highest bit group in which the two differ. Whenever the current tick crosses a bucket
+ * boundary of level {@code L}, the timers of the bucket it enters are moved down a level or more;
+ * on level 0 every bucket holds the timers of exactly one tick, which expire when it is reached.
+ * Eight levels of 256 buckets cover every {@code long} tick, so nothing overflows and no timer
+ * is ever looked at before its bucket is due.
+ * <p>
+ * Buckets are intrusive doubly linked lists of {@link Timer}s, so a timer needs no other
+ * allocation. Not thread-safe; callers synchronize.
+ */
+public final class TimingWheel<T> {
+    private static final int BITS = 8;
+    private static final int SIZE = 1 << BITS;
+    private static final int MASK = SIZE - 1;
+    private static final int LEVELS = Long.SIZE / BITS;
+
+    private final Timer<?>[] buckets = new Timer<?>[LEVELS * SIZE];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param startTick the current tick; timers are due at later ticks
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+    public static final class Timer<T> {
+        private final T value;
+        private final long deadline;
+        private Timer<T> previous;
+        private Timer<T> next;
+        private int bucket = -1;
+
+        private Timer(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public T value() {
+            return value;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        /**
+         * @return whether the timer has neither expired nor been cancelled
+         */
+        public boolean isPending() {
+            return bucket >= 0;
+        }
+    }
+
+    public long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return the number of pending timers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a timer that expires at {@code deadline}, or at the next tick if the deadline has passed.
+     */
+    public Timer<T> add(T value, long deadline) {
+        var timer = new Timer<>(value, Math.max(deadline, currentTick + 1));
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * @return whether the timer was pending, i.e. whether cancelling stopped it from expiring
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.bucket < 0) {
+            return false;
+        }
+        if (timer.previous == null) {
+            buckets[timer.bucket] = timer.next;
+        } else {
+            timer.previous.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.bucket = -1;
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to {@code tick}, passing every timer due by then to {@code expired} in
+     * deadline order. Going back is ignored.
+     */
+    public void advanceTo(long tick, Consumer<? super T> expired) {
+        while (currentTick < tick) {
+            if (size == 0) {
+                currentTick = tick;
+                return;
+            }
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (level * BITS)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            expire(expired);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        // -1 / BITS == 0: a timer due at the current tick goes to the level 0 bucket expiring now
+        var level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(timer.deadline ^ currentTick)) / BITS;
+        var index = level * SIZE + (int) (timer.deadline >>> (level * BITS) & MASK);
+        @SuppressWarnings("unchecked")
+        var head = (Timer<T>) buckets[index];
+        timer.bucket = index;
+        timer.previous = null;
+        timer.next = head;
+        if (head != null) {
+            head.previous = timer;
+        }
+        buckets[index] = timer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Timer<T> detach(int index) {
+        var timer = (Timer<T>) buckets[index];
+        buckets[index] = null;
+        return timer;
+    }
+
+    private void cascade(int level) {
+        var timer = detach(level * SIZE + (int) (currentTick >>> (level * BITS) & MASK));
+        while (timer != null) {
+            var next = timer.next;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    private void expire(Consumer<? super T> expired) {
+        var timer = detach((int) (currentTick & MASK));
+        while (timer != null) {
+            var next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            timer.bucket = -1;
+            size--;
+            expired.accept(timer.value);
+            timer = next;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Provisions appliances and slot bindings from CSV or NDJSON streams.
+ * <p>
+ * Input is read one line at a time and applied in batches of {@link #BATCH_SIZE} lines against
+ * a single hub repository. Each batch is checked and applied under one write lock of the hub, and
+ * a result per line is written to the output as soon as its batch is done, so neither the request
+ * nor the response is ever held in memory as a whole.
+ * <p>
+ * Appliance lines are a name ({@code lights}) or {@code {"name":"lights"}}; binding lines are
+ * {@code slotId,applianceName} or {@code {"slotId":"3","applianceName":"lights"}}. A first CSV
+ * line holding the column names is skipped.
+ */
+@Service
+public class BulkImportService {
+    static final int BATCH_SIZE = 1_000;
+
+    private static final String APPLIANCE_HEADER = "applianceName";
+    private static final String BINDING_HEADER = "slotId,applianceName";
+
+    private final MessageRenderer messages;
+    private final HomeHubRepositoryRegistry hubs;
+    private final ObjectMapper objectMapper;
+
+    public BulkImportService(MessageRenderer messages, HomeHubRepositoryRegistry hubs, ObjectMapper objectMapper) {
+        this.messages = messages;
+        this.hubs = hubs;
+        this.objectMapper = objectMapper;
+    }
+
+    public void importAppliances(String hubId, BufferedReader reader, boolean ndjson, JsonGenerator out) throws IOException {
+        var repository = hubs.forHub(hubId);
+        new BatchImport(reader, ndjson, APPLIANCE_HEADER, out) {
+            @Override
+            void apply(String[][] batch, int size, String[] errors) {
+                var names = new String[size];
+                for (int i = 0; i < size; i++) {
+                    names[i] = batch[i] == null ? null : batch[i][0];
+                }
+                var registered = repository.registerAppliances(names, size);
+                for (int i = 0; i < size; i++) {
+                    if (names[i] != null && !registered[i]) {
+                        errors[i] = messages.render("appliance_already_registered.message", names[i]);
+                    }
+                }
+            }
+
+            @Override
+            String[] parseJson(JsonNode node) {
+                return new String[]{text(node, "name")};
+            }
+        }.run();
+    }
+
+    public void importBindings(String hubId, BufferedReader reader, boolean ndjson, JsonGenerator out) throws IOException {
+        HomeHubRepository repository = hubs.forHub(hubId);
+        new BatchImport(reader, ndjson, BINDING_HEADER, out) {
+            @Override
+            void apply(String[][] batch, int size, String[] errors) {
+                var slotIds = new String[size];
+                var applianceNames = new String[size];
+                for (int i = 0; i < size; i++) {
+                    if (batch[i] != null) {
+                        slotIds[i] = batch[i][0];
+                        applianceNames[i] = batch[i][1];
+                    }
+                }
+                var outcomes = repository.bindSlots(slotIds, applianceNames, size);
+                for (int i = 0; i < size; i++) {
+                    if (outcomes[i] == null) {
+                        continue;
+                    }
+                    errors[i] = switch (outcomes[i]) {
+                        case BOUND -> null;
+                        case APPLIANCE_NOT_REGISTERED -> messages.render("appliance_not_registered.message", applianceNames[i]);
+                        case APPLIANCE_ALREADY_BOUND -> messages.render("appliance_already_bound.message", applianceNames[i]);
+                        case SLOT_ALREADY_USED -> messages.render("slot_already_used.message", slotIds[i]);
+                    };
+                }
+            }
+
+            @Override
+            String[] parseJson(JsonNode node) {
+                return new String[]{text(node, "slotId"), text(node, "applianceName")};
+            }
+        }.run();
+    }
+
+    private static String text(JsonNode node, String field) {
+        var value = node.get(field);
+        return value == null || !value.isTextual() ? null : value.asText();
+    }
+
+    /**
+     * Reads, parses and applies one stream. Parsed lines are buffered per batch only, and the
+     * results of a batch are flushed before the next batch is read.
+     */
+    private abstract class BatchImport {
+        private final BufferedReader reader;
+        private final boolean ndjson;
+        private final String header;
+        private final int columns;
+        private final JsonGenerator out;
+        private final int[] lineNumbers = new int[BATCH_SIZE];
+        private final String[][] batch = new String[BATCH_SIZE][];
+        private final String[] errors = new String[BATCH_SIZE];
+        private int batchSize;
+        private int succeeded;
+        private int failed;
+
+        BatchImport(BufferedReader reader, boolean ndjson, String header, JsonGenerator out) {
+            this.reader = reader;
+            this.ndjson = ndjson;
+            this.header = header;
+            this.columns = header.split(",").length;
+            this.out = out;
+        }
+
+        /**
+         * Applies the well-formed lines of the batch, the entries that are not {@code null}, and
+         * sets the error of each line that failed.
+         */
+        abstract void apply(String[][] batch, int size, String[] errors);
+
+        abstract String[] parseJson(JsonNode node);
+
+        void run() throws IOException {
+            out.writeStartObject();
+            out.writeArrayFieldStart("results");
+            String line;
+            var lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || (lineNumber == 1 && !ndjson && line.equals(header))) {
+                    continue;
+                }
+                lineNumbers[batchSize] = lineNumber;
+                batch[batchSize++] = parse(line);
+                if (batchSize == BATCH_SIZE) {
+                    applyBatch();
+                }
+            }
+            applyBatch();
+            out.writeEndArray();
+            out.writeNumberField("succeeded", succeeded);
+            out.writeNumberField("failed", failed);
+            out.writeEndObject();
+            out.flush();
+        }
+
+        private void applyBatch() throws IOException {
+            apply(batch, batchSize, errors);
+            for (int i = 0; i < batchSize; i++) {
+                if (batch[i] == null) {
+                    // a string, so line numbers are not rendered with grouping separators
+                    failed(lineNumbers[i], messages.render("bulk_line_malformed.message", Integer.toString(lineNumbers[i])));
+                } else if (errors[i] != null) {
+                    failed(lineNumbers[i], errors[i]);
+                } else {
+                    succeeded(lineNumbers[i]);
+                }
+                batch[i] = null;
+                errors[i] = null;
+            }
+            batchSize = 0;
+            out.flush();
+        }
+
+        /**
+         * @return the trimmed fields of the line, or {@code null} if the line is malformed
+         */
+        private String[] parse(String line) {
+            String[] fields;
+            if (ndjson) {
+                try {
+                    fields = parseJson(objectMapper.readTree(line));
+                } catch (IOException e) {
+                    return null;
+                }
+            } else {
+                fields = line.split(",", -1);
+            }
+            if (fields.length != columns) {
+                return null;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] == null || fields[i].isBlank()) {
+                    return null;
+                }
+                fields[i] = fields[i].strip();
+            }
+            return fields;
+        }
+
+        private void succeeded(int lineNumber) throws IOException {
+            succeeded++;
+            out.writeStartObject();
+            out.writeNumberField("line", lineNumber);
+            out.writeStringField("status", HttpStatus.CREATED.name());
+            out.writeEndObject();
+        }
+
+        private void failed(int lineNumber, String error) throws IOException {
+            failed++;
+            out.writeStartObject();
+            out.writeNumberField("line", lineNumber);
+            out.writeStringField("status", HttpStatus.BAD_REQUEST.name());
+            out.writeStringField("error", error);
+            out.writeEndObject();
+        }
+    }
+}
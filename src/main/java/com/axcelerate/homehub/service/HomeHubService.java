@@ -1,87 +1,722 @@
 package com.axcelerate.homehub.service;
 
+import com.axcelerate.homehub.dto.Appliance;
 import com.axcelerate.homehub.dto.ApplianceRegisterResponse;
+import com.axcelerate.homehub.dto.ApplianceSlotResponse;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
+import com.axcelerate.homehub.dto.GroupResponse;
 import com.axcelerate.homehub.dto.RemoteOperationResponse;
 import com.axcelerate.homehub.dto.RemoteSlotBindingResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.dto.SlotOperationResult;
 import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.enums.BindingOutcome;
+import com.axcelerate.homehub.enums.GroupOutcome;
+import com.axcelerate.homehub.enums.HubOperation;
 import com.axcelerate.homehub.exception.ApplianceAlreadyRegisteredException;
 import com.axcelerate.homehub.exception.ApplianceNotRegisteredException;
 import com.axcelerate.homehub.exception.BindException;
 import com.axcelerate.homehub.exception.NoLastOperationException;
+import com.axcelerate.homehub.metrics.HomeHubMetrics;
 import com.axcelerate.homehub.repository.HomeHubRepository;
-import org.springframework.context.MessageSource;
+import com.axcelerate.homehub.repository.GroupSnapshot;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 public class HomeHubService {
-    private final MessageSource messageSource;
+    public static final String DEFAULT_HUB = "default";
+    public static final String DEFAULT_REMOTE = "default";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1_000;
 
-    private final HomeHubRepository repository;
+    private static final JsonFactory JSON = new JsonFactory();
 
-    public HomeHubService(MessageSource messageSource, HomeHubRepository repository) {
-        this.messageSource = messageSource;
-        this.repository = repository;
+    private final MessageRenderer messages;
+
+    private final HomeHubRepositoryRegistry hubs;
+
+    private final Rejections rejections;
+
+    private final HomeHubMetrics metrics;
+
+    private final IdempotencyCache idempotency;
+
+    private final HubStateCache<String> slotLists = new HubStateCache<>((repository, version) -> joinSlots(repository));
+
+    private final HubStateCache<byte[]> hubStates = new HubStateCache<>(HomeHubService::writeHubState);
+
+    public HomeHubService(MessageRenderer messages, HomeHubRepositoryRegistry hubs, HomeHubMetrics metrics) {
+        this(messages, hubs, metrics, new IdempotencyCache());
+    }
+
+    @Autowired
+    public HomeHubService(MessageRenderer messages, HomeHubRepositoryRegistry hubs, HomeHubMetrics metrics, IdempotencyCache idempotency) {
+        this.messages = messages;
+        this.hubs = hubs;
+        this.rejections = new Rejections(messages);
+        this.metrics = metrics;
+        this.idempotency = idempotency;
+    }
+
+    /**
+     * Binds like {@link #bindRemoteSlotToAppliance(String, String, String)}, but a retry with the same
+     * {@code idempotencyKey} returns the original outcome without binding again.
+     */
+    public RemoteSlotBindingResponse bindRemoteSlotToAppliance(String hubId, String slotId, String applianceName, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return bindRemoteSlotToAppliance(hubId, slotId, applianceName);
+        }
+        return idempotent(hubId, idempotencyKey, "bind\0" + slotId + "\0" + applianceName,
+                () -> bindRemoteSlotToAppliance(hubId, slotId, applianceName));
+    }
+
+    public RemoteSlotBindingResponse bindRemoteSlotToAppliance(String hubId, String slotId, String applianceName) {
+        var start = metrics.start();
+        try {
+            var result = bind(hubId, slotId, applianceName);
+            metrics.succeeded(HubOperation.BIND, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.BIND, e, start);
+            throw e;
+        }
     }
 
-    public RemoteSlotBindingResponse bindRemoteSlotToAppliance(String slotId, String applianceName) {
+    private RemoteSlotBindingResponse bind(String hubId, String slotId, String applianceName) {
+        var repository = hubs.forHub(hubId);
         if(!repository.isApplianceRegistered(applianceName)) {
-            var msg = messageSource.getMessage("appliance_not_registered.message", new Object[]{applianceName}, Locale.US);
-            throw new ApplianceNotRegisteredException(HttpStatus.BAD_REQUEST, msg);
+            throw rejections.get("appliance_not_registered.message", applianceName, message -> new ApplianceNotRegisteredException(HttpStatus.BAD_REQUEST, message));
         }
-        if(repository.isApplianceAlreadyBound(applianceName)) {
-            var msg = messageSource.getMessage("appliance_already_bound.message", new Object[]{applianceName}, Locale.US);
-            throw new BindException(HttpStatus.BAD_REQUEST, msg);
+        var outcome = repository.bindSlot(slotId, applianceName);
+        if(outcome == BindingOutcome.APPLIANCE_ALREADY_BOUND) {
+            throw rejections.get("appliance_already_bound.message", applianceName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
 
         }
-        if(!repository.isSlotAvailable(slotId)) {
-            var msg = messageSource.getMessage("slot_already_used.message", new Object[]{slotId}, Locale.US);
-            throw new BindException(HttpStatus.BAD_REQUEST, msg);
+        if(outcome == BindingOutcome.SLOT_ALREADY_USED) {
+            throw rejections.get("slot_already_used.message", slotId, message -> new BindException(HttpStatus.BAD_REQUEST, message));
         }
-        repository.bindSlot(slotId, applianceName);
-        var msg = messageSource.getMessage("binding_successful.message", new Object[]{slotId, applianceName}, Locale.US);
+        var msg = messages.render("binding_successful.message", slotId, applianceName);
         return new RemoteSlotBindingResponse(HttpStatus.CREATED, msg);
     }
-    public ApplianceRegisterResponse registerAppliance(String applianceName) {
-        if (!repository.isApplianceRegistered(applianceName)) {
-            repository.registerAppliance(applianceName);
-            var msg = messageSource.getMessage("appliance_successfully_registered.message", new Object[]{applianceName}, Locale.US);
+    /**
+     * Registers like {@link #registerAppliance(String, String)}, but a retry with the same
+     * {@code idempotencyKey} returns the original outcome without registering again.
+     */
+    public ApplianceRegisterResponse registerAppliance(String hubId, String applianceName, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return registerAppliance(hubId, applianceName);
+        }
+        return idempotent(hubId, idempotencyKey, "register\0" + applianceName, () -> registerAppliance(hubId, applianceName));
+    }
+
+    public ApplianceRegisterResponse registerAppliance(String hubId, String applianceName) {
+        var start = metrics.start();
+        try {
+            var result = register(hubId, applianceName);
+            metrics.succeeded(HubOperation.REGISTER, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.REGISTER, e, start);
+            throw e;
+        }
+    }
+
+    private ApplianceRegisterResponse register(String hubId, String applianceName) {
+        var repository = hubs.forHub(hubId);
+        if (repository.registerAppliance(applianceName)) {
+            var msg = messages.render("appliance_successfully_registered.message", applianceName);
             return new ApplianceRegisterResponse(HttpStatus.CREATED, applianceName, msg);
         } else {
-            var msg = messageSource.getMessage("appliance_already_registered.message", new Object[]{applianceName}, Locale.US);
-            throw new ApplianceAlreadyRegisteredException(HttpStatus.BAD_REQUEST, msg);
+            throw rejections.get("appliance_already_registered.message", applianceName, message -> new ApplianceAlreadyRegisteredException(HttpStatus.BAD_REQUEST, message));
+        }
+
+    }
+
+    /**
+     * Operates like {@link #operateAppliance(String, String, String, int)}, but a retry with the same
+     * {@code idempotencyKey} returns the original outcome without touching the appliance or the
+     * remote's undo history again.
+     */
+    public RemoteOperationResponse operateAppliance(String hubId, String remoteId, String slotId, int operation, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return operateAppliance(hubId, remoteId, slotId, operation);
+        }
+        return idempotent(hubId, idempotencyKey, "operate\0" + remoteId + "\0" + slotId + "\0" + operation,
+                () -> operateAppliance(hubId, remoteId, slotId, operation));
+    }
+
+    public RemoteOperationResponse operateAppliance(String hubId, String remoteId, String slotId, int operation) {
+        var appliance = switchAppliance(hubId, remoteId, slotId, operation);
+        return messages.operationResponse(appliance.getName(), appliance.getStatus());
+    }
+
+    /**
+     * Operates like {@link #operateAppliance(String, String, String, int, String)}, but returns the
+     * appliance as switched instead of a message, for transports that answer without text.
+     */
+    public Appliance switchAppliance(String hubId, String remoteId, String slotId, int operation, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return switchAppliance(hubId, remoteId, slotId, operation);
+        }
+        return idempotent(hubId, idempotencyKey, "switch\0" + remoteId + "\0" + slotId + "\0" + operation,
+                () -> switchAppliance(hubId, remoteId, slotId, operation));
+    }
+
+    public Appliance switchAppliance(String hubId, String remoteId, String slotId, int operation) {
+        var start = metrics.start();
+        try {
+            var result = operate(hubId, remoteId, slotId, operation);
+            metrics.succeeded(HubOperation.OPERATE, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.OPERATE, e, start);
+            throw e;
+        }
+    }
+
+    private Appliance operate(String hubId, String remoteId, String slotId, int operation) {
+        if(operation < 0 || operation > 1) {
+            throw rejections.get("appliance_operation_not_allowed.message", slotId, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        // operating never creates the hub: on a hub that does not exist no slot is bound
+        var appliance = hubs.findHub(hubId).map(repository -> repository.updateApplianceStatus(remoteId, slotId, operation)).orElse(null);
+        if(appliance == null) {
+            throw rejections.get("slot_not_bound.message", slotId, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        return appliance;
+    }
+
+    /**
+     * Applies every operation in order and reports a result per slot. All operations are validated
+     * before any is applied; an unbound slot only fails its own item. Each applied item is recorded
+     * in the remote's undo history.
+     */
+    public BatchOperationResponse operateAppliances(String hubId, String remoteId, List<SlotOperation> operations) {
+        var start = metrics.start();
+        try {
+            var result = operateAll(hubId, remoteId, operations);
+            metrics.succeeded(HubOperation.BATCH, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.BATCH, e, start);
+            throw e;
+        }
+    }
+
+    private BatchOperationResponse operateAll(String hubId, String remoteId, List<SlotOperation> operations) {
+        validateOperations(operations);
+        return applyOperations(hubs.findHub(hubId).orElse(null), remoteId, operations);
+    }
+
+    public RemoteOperationResponse saveScene(String hubId, String sceneName, List<SlotOperation> operations) {
+        validateOperations(operations);
+        existingHub(hubId).saveScene(sceneName, operations);
+        var msg = messages.render("scene_saved.message", sceneName, operations.size());
+        return new RemoteOperationResponse(HttpStatus.CREATED, msg);
+    }
+
+    public BatchOperationResponse runScene(String hubId, String remoteId, String sceneName) {
+        var repository = hubs.findHub(hubId);
+        var operations = repository.flatMap(hub -> hub.findScene(sceneName)).orElseThrow(() -> {
+            return rejections.get("scene_not_found.message", sceneName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        });
+        return applyOperations(repository.get(), remoteId, operations);
+    }
+
+    private void validateOperations(List<SlotOperation> operations) {
+        if(operations == null || operations.isEmpty()) {
+            throw rejections.get("batch_empty.message", message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        for (var operation : operations) {
+            if(operation == null || operation.getSlotId() == null || operation.getSlotId().isBlank()) {
+                throw rejections.get("batch_slot_required.message", message -> new BindException(HttpStatus.BAD_REQUEST, message));
+            }
+            if(operation.getOperation() < 0 || operation.getOperation() > 1) {
+                throw rejections.get("appliance_operation_not_allowed.message", operation.getSlotId(), message -> new BindException(HttpStatus.BAD_REQUEST, message));
+            }
+        }
+    }
+
+    /**
+     * @param repository the hub, or {@code null} if it does not exist, in which case every item fails
+     */
+    private BatchOperationResponse applyOperations(HomeHubRepository repository, String remoteId, List<SlotOperation> operations) {
+        var results = new ArrayList<SlotOperationResult>(operations.size());
+        var failed = 0;
+        for (var operation : operations) {
+            var appliance = repository == null ? null : repository.updateApplianceStatus(remoteId, operation.getSlotId(), operation.getOperation());
+            if (appliance == null) {
+                failed++;
+                var msg = messages.render("slot_not_bound.message", operation.getSlotId());
+                results.add(new SlotOperationResult(operation.getSlotId(), null, null, msg));
+            } else {
+                results.add(new SlotOperationResult(operation.getSlotId(), appliance.getName(), appliance.getStatus(), null));
+            }
         }
+        var status = failed == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS;
+        return new BatchOperationResponse(status, operations.size() - failed, failed, results);
+    }
 
+    public GroupResponse createGroup(String hubId, String groupName, String parentName) {
+        var repository = existingHub(hubId);
+        var outcome = repository.createGroup(groupName, parentName);
+        if (outcome == GroupOutcome.PARENT_NOT_FOUND) {
+            throw rejections.get("group_not_found.message", parentName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        if (outcome == GroupOutcome.PARENT_CONFLICT) {
+            throw rejections.get("group_parent_conflict.message", groupName, message -> new BindException(HttpStatus.CONFLICT, message));
+        }
+        var created = outcome == GroupOutcome.CREATED;
+        return groupResponse(repository, groupName, created ? HttpStatus.CREATED : HttpStatus.OK,
+                messages.render(created ? "group_created.message" : "group_exists.message", groupName));
     }
 
-    public RemoteOperationResponse operateAppliance(String slotId, int operation) {
+    /**
+     * Makes the appliance a direct member of the group, moving it out of the group it was in.
+     */
+    public GroupResponse addToGroup(String hubId, String groupName, String applianceName) {
+        var repository = groupHub(hubId, groupName);
+        var outcome = repository.addToGroup(groupName, applianceName);
+        if (outcome == GroupOutcome.GROUP_NOT_FOUND) {
+            throw rejections.get("group_not_found.message", groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        if (outcome == GroupOutcome.APPLIANCE_NOT_REGISTERED) {
+            throw rejections.get("appliance_not_registered.message", applianceName, message -> new ApplianceNotRegisteredException(HttpStatus.BAD_REQUEST, message));
+        }
+        return groupResponse(repository, groupName, HttpStatus.OK, messages.render("group_member_added.message", applianceName, groupName));
+    }
+
+    public GroupResponse removeFromGroup(String hubId, String groupName, String applianceName) {
+        var repository = groupHub(hubId, groupName);
+        var outcome = repository.removeFromGroup(groupName, applianceName);
+        if (outcome == GroupOutcome.GROUP_NOT_FOUND) {
+            throw rejections.get("group_not_found.message", groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        if (outcome == GroupOutcome.NOT_A_MEMBER) {
+            throw rejections.get("group_not_a_member.message", applianceName, groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        return groupResponse(repository, groupName, HttpStatus.OK, messages.render("group_member_removed.message", applianceName, groupName));
+    }
+
+    public GroupResponse getGroup(String hubId, String groupName) {
+        return groupResponse(group(hubId, groupName), groupName, HttpStatus.OK, null);
+    }
+
+    /**
+     * Switches every bound appliance in the group and the groups below it. The group can undo this
+     * as one step; it is not recorded in any remote's undo history.
+     */
+    public GroupResponse operateGroup(String hubId, String groupName, int operation) {
+        var start = metrics.start();
+        try {
+            var result = operateAll(hubId, groupName, operation);
+            metrics.succeeded(HubOperation.GROUP, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.GROUP, e, start);
+            throw e;
+        }
+    }
+
+    private GroupResponse operateAll(String hubId, String groupName, int operation) {
         if(operation < 0 || operation > 1) {
-            var msg = messageSource.getMessage("appliance_operation_not_allowed.message", new Object[]{slotId}, Locale.US);
-            throw new BindException(HttpStatus.BAD_REQUEST, msg);
+            throw rejections.get("appliance_operation_not_allowed.message", groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
         }
-        if(repository.isSlotAvailable(slotId)) {
-            var msg = messageSource.getMessage("slot_not_bound.message", new Object[]{slotId}, Locale.US);
-            throw new BindException(HttpStatus.BAD_REQUEST, msg);
+        var repository = group(hubId, groupName);
+        var changed = repository.operateGroup(groupName, operation);
+        if (changed < 0) {
+            throw rejections.get("group_not_found.message", groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
         }
-        var appliance = repository.updateApplianceStatus(slotId, operation);
-        var op = ApplianceStatus.values()[operation].name();
-        var msg = messageSource.getMessage("appliance_operation_successful.message", new Object[]{appliance.getName(),op}, Locale.US);
-        return new RemoteOperationResponse(HttpStatus.OK, msg);
+        var status = ApplianceStatus.values()[operation];
+        return groupResponse(repository, groupName, HttpStatus.OK, messages.render("group_operation_successful.message", changed, groupName, status));
+    }
+
+    /**
+     * Restores the statuses the group's most recent group operation replaced.
+     */
+    public GroupResponse undoGroupOperation(String hubId, String groupName) {
+        var start = metrics.start();
+        try {
+            var result = undoGroup(hubId, groupName);
+            metrics.succeeded(HubOperation.GROUP, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.GROUP, e, start);
+            throw e;
+        }
+    }
+
+    private GroupResponse undoGroup(String hubId, String groupName) {
+        var repository = group(hubId, groupName);
+        var restored = repository.undoGroupOperation(groupName);
+        if (restored < 0) {
+            throw rejections.get("no_action_to_undo.message", message -> new NoLastOperationException(HttpStatus.BAD_REQUEST, message));
+        }
+        return groupResponse(repository, groupName, HttpStatus.OK, messages.render("group_undo_successful.message", restored, groupName));
+    }
+
+    /**
+     * Only registering and binding create a hub; everything else needs one that exists, so
+     * requests naming made-up hubs cannot grow the registry.
+     */
+    private HomeHubRepository existingHub(String hubId) {
+        return hubs.findHub(hubId).orElseThrow(() -> {
+            return rejections.get("hub_not_found.message", hubId, message -> new BindException(HttpStatus.NOT_FOUND, message));
+        });
     }
 
-    public Set<String> listAllSlots() {
-        return repository.getUsedSlots();
+    private HomeHubRepository groupHub(String hubId, String groupName) {
+        return hubs.findHub(hubId).orElseThrow(() -> {
+            return rejections.get("group_not_found.message", groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        });
     }
-    public RemoteOperationResponse undoOperation() {
-        if(HomeHubRepository.getLastOperatedSlot() == null) {
-            var msg = messageSource.getMessage("no_action_to_undo.message", new Object[]{}, Locale.US);
-            throw new NoLastOperationException(HttpStatus.BAD_REQUEST, msg);
+
+    /**
+     * @return the repository of the hub, if it has the group
+     */
+    private HomeHubRepository group(String hubId, String groupName) {
+        return hubs.findHub(hubId).filter(repository -> repository.hasGroup(groupName)).orElseThrow(() -> {
+            return rejections.get("group_not_found.message", groupName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        });
+    }
+
+    private GroupResponse groupResponse(HomeHubRepository repository, String groupName, HttpStatus status, String message) {
+        return groupResponse(repository.findGroup(groupName).orElseThrow(), status, message);
+    }
+
+    private static GroupResponse groupResponse(GroupSnapshot group, HttpStatus status, String message) {
+        return new GroupResponse(status, group.name(), group.parent(), group.groups(), group.appliances(),
+                group.applianceCount(), group.onCount(), message);
+    }
+
+    public ApplianceSlotResponse findSlotForAppliance(String hubId, String applianceName) {
+        var slotId = hubs.findHub(hubId).flatMap(repository -> repository.findSlotForAppliance(applianceName)).orElseThrow(() -> {
+            return rejections.get("appliance_not_bound.message", applianceName, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        });
+        return new ApplianceSlotResponse(HttpStatus.OK, applianceName, slotId);
+    }
+
+    public Set<String> listAllSlots(String hubId) {
+        var start = metrics.start();
+        try {
+            var result = usedSlots(hubId);
+            metrics.succeeded(HubOperation.LIST, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.LIST, e, start);
+            throw e;
+        }
+    }
+
+    private Set<String> usedSlots(String hubId) {
+        return hubs.findHub(hubId).map(HomeHubRepository::getUsedSlots).orElse(Set.of());
+    }
+
+    /**
+     * @return the version of the hub, see {@link HomeHubRepository#getVersion()}, or 0 for a hub that does not exist
+     */
+    public long getVersion(String hubId) {
+        return hubs.findHub(hubId).map(HomeHubRepository::getVersion).orElse(0L);
+    }
+
+    /**
+     * Lists the bound slots comma separated, in the order they were bound. The list is built again
+     * only once the hub has changed, and its version serves as entity tag.
+     */
+    public VersionedBody<String> getSlotList(String hubId) {
+        var start = metrics.start();
+        try {
+            var result = hubs.findHub(hubId).map(slotLists::get).orElse(new VersionedBody<>(0, ""));
+            metrics.succeeded(HubOperation.LIST, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.LIST, e, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns every binding of the hub as
+     * {@code {"bindings":[{"slotId":...,"applianceName":...,"status":...}],"version":...,"full":true}}.
+     * The JSON is built again only once the hub has changed.
+     */
+    public VersionedBody<byte[]> getHubState(String hubId) {
+        var start = metrics.start();
+        try {
+            var result = hubState(hubId);
+            metrics.succeeded(HubOperation.LIST, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.LIST, e, start);
+            throw e;
+        }
+    }
+
+    private VersionedBody<byte[]> hubState(String hubId) {
+        return hubs.findHub(hubId).map(hubStates::get).orElseGet(() -> new VersionedBody<>(0, writeHubState(null, 0)));
+    }
+
+    /**
+     * Returns the bindings made or changed after version {@code since}, shaped like
+     * {@link #getHubState} but with {@code "full":false}. If those changes are no longer known, or
+     * {@code since} is not a version of this hub, the full state is returned instead.
+     */
+    public VersionedBody<byte[]> getChangesSince(String hubId, long since) {
+        var start = metrics.start();
+        try {
+            var result = changesSince(hubId, since);
+            metrics.succeeded(HubOperation.LIST, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.LIST, e, start);
+            throw e;
+        }
+    }
+
+    private VersionedBody<byte[]> changesSince(String hubId, long since) {
+        var repository = hubs.findHub(hubId);
+        if (repository.isEmpty()) {
+            return hubState(hubId);
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = JSON.createGenerator(bytes, JsonEncoding.UTF8)) {
+            out.writeStartObject();
+            out.writeArrayFieldStart("bindings");
+            var version = repository.get().forEachChangeSince(since, (slotId, applianceName, status) -> writeBinding(out, slotId, applianceName, status));
+            if (version < 0) {
+                return hubStates.get(repository.get());
+            }
+            out.writeEndArray();
+            out.writeNumberField("version", version);
+            out.writeBooleanField("full", false);
+            out.writeEndObject();
+            out.flush();
+            return new VersionedBody<>(version, bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String joinSlots(HomeHubRepository repository) {
+        var slots = new StringBuilder();
+        repository.forEachBinding((slotId, applianceName, status) -> {
+            if (!slots.isEmpty()) {
+                slots.append(',');
+            }
+            slots.append(slotId);
+        });
+        return slots.toString();
+    }
+
+    /**
+     * @param repository the hub, or {@code null} for an unknown hub without bindings
+     */
+    private static byte[] writeHubState(HomeHubRepository repository, long version) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = JSON.createGenerator(bytes, JsonEncoding.UTF8)) {
+            out.writeStartObject();
+            out.writeArrayFieldStart("bindings");
+            if (repository != null) {
+                repository.forEachBinding((slotId, applianceName, status) -> writeBinding(out, slotId, applianceName, status));
+            }
+            out.writeEndArray();
+            out.writeNumberField("version", version);
+            out.writeBooleanField("full", true);
+            out.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeBinding(JsonGenerator out, String slotId, String applianceName, ApplianceStatus status) throws IOException {
+        out.writeStartObject();
+        out.writeStringField("slotId", slotId);
+        out.writeStringField("applianceName", applianceName);
+        out.writeStringField("status", status.name());
+        out.writeEndObject();
+    }
+
+    /**
+     * Writes one page of the hub's bindings, in the order they were made, as
+     * {@code {"bindings":[{"slotId":...,"applianceName":...,"status":...}],"nextCursor":...}}.
+     * Bindings are written as they are found, so a page never has to be held in memory.
+     * {@code nextCursor} is {@code null} on the last page.
+     *
+     * @param status          only list bindings with this status, or {@code null} for all
+     * @param appliancePrefix only list bindings whose appliance name starts with this, or {@code null} for all
+     * @param cursor          the {@code nextCursor} of the previous page, or {@code null} for the first page
+     * @see #validateBindingsPage
+     */
+    public void listBindings(String hubId, ApplianceStatus status, String appliancePrefix, String cursor, int limit,
+                             JsonGenerator out) throws IOException {
+        var start = metrics.start();
+        try {
+            writeBindings(hubId, status, appliancePrefix, cursor, limit, out);
+            metrics.succeeded(HubOperation.LIST, start);
+        } catch (IOException | RuntimeException e) {
+            metrics.failed(HubOperation.LIST, e, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Rejects the page request as {@link #listBindings} would, without writing anything. Callers
+     * streaming a page into a response call this first, while the response can still carry an error.
+     */
+    public void validateBindingsPage(String cursor, int limit) {
+        var start = metrics.start();
+        try {
+            checkLimit(limit);
+            parseCursor(cursor);
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.LIST, e, start);
+            throw e;
+        }
+    }
+
+    private void writeBindings(String hubId, ApplianceStatus status, String appliancePrefix, String cursor, int limit,
+                               JsonGenerator out) throws IOException {
+        checkLimit(limit);
+        var from = parseCursor(cursor);
+        var prefix = appliancePrefix == null || appliancePrefix.isEmpty() ? null : appliancePrefix;
+        out.writeStartObject();
+        out.writeArrayFieldStart("bindings");
+        var repository = hubs.findHub(hubId);
+        var next = repository.isEmpty() ? -1 : repository.get().forEachBinding(from, limit, status, prefix, (slotId, applianceName, slotStatus) -> {
+            out.writeStartObject();
+            out.writeStringField("slotId", slotId);
+            out.writeStringField("applianceName", applianceName);
+            out.writeStringField("status", slotStatus.name());
+            out.writeEndObject();
+        });
+        out.writeEndArray();
+        if (next < 0) {
+            out.writeNullField("nextCursor");
+        } else {
+            out.writeStringField("nextCursor", Integer.toString(next));
+        }
+        out.writeEndObject();
+        out.flush();
+    }
+
+    private void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw rejections.get("page_limit_invalid.message", String.valueOf(MAX_PAGE_SIZE), message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+    }
+
+    private int parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            var position = Integer.parseInt(cursor);
+            if (position >= 0) {
+                return position;
+            }
+        } catch (NumberFormatException e) {
+            // rejected below
+        }
+        throw rejections.get("page_cursor_invalid.message", cursor, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+    }
+
+    private <T> T idempotent(String hubId, String idempotencyKey, String fingerprint, Supplier<T> request) {
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyCache.MAX_KEY_LENGTH) {
+            throw rejections.get("idempotency_key_invalid.message", String.valueOf(IdempotencyCache.MAX_KEY_LENGTH),
+                    message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        return idempotency.execute(hubId, idempotencyKey, fingerprint, request, () -> rejections.get("idempotency_key_reused.message",
+                idempotencyKey, message -> new BindException(HttpStatus.UNPROCESSABLE_ENTITY, message)));
+    }
+
+    public RemoteOperationResponse undoOperation(String hubId, String remoteId) {
+        var appliance = undoSwitch(hubId, remoteId);
+        return messages.operationResponse(appliance.getName(), appliance.getStatus());
+    }
+
+    /**
+     * Same as {@link #undoSwitch(String, String)}, but a retry with the same {@code idempotencyKey}
+     * returns the original outcome without undoing a second step.
+     */
+    public Appliance undoSwitch(String hubId, String remoteId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return undoSwitch(hubId, remoteId);
+        }
+        return idempotent(hubId, idempotencyKey, "undo\0" + remoteId, () -> undoSwitch(hubId, remoteId));
+    }
+
+    /**
+     * Same as {@link #undoOperation}, but returns the appliance as switched instead of a message.
+     */
+    public Appliance undoSwitch(String hubId, String remoteId) {
+        var start = metrics.start();
+        try {
+            var result = undo(hubId, remoteId);
+            metrics.succeeded(HubOperation.UNDO, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.UNDO, e, start);
+            throw e;
+        }
+    }
+
+    private Appliance undo(String hubId, String remoteId) {
+        var unDoneAppliance = hubs.findHub(hubId).map(repository -> repository.undoPreviousAction(remoteId)).orElse(null);
+        if(unDoneAppliance == null) {
+            throw rejections.get("no_action_to_undo.message", message -> new NoLastOperationException(HttpStatus.BAD_REQUEST, message));
+        }
+        return unDoneAppliance;
+    }
+
+    public RemoteOperationResponse redoOperation(String hubId, String remoteId) {
+        var appliance = redoSwitch(hubId, remoteId);
+        return messages.operationResponse(appliance.getName(), appliance.getStatus());
+    }
+
+    /**
+     * Same as {@link #redoSwitch(String, String)}, but a retry with the same {@code idempotencyKey}
+     * returns the original outcome without redoing a second step.
+     */
+    public Appliance redoSwitch(String hubId, String remoteId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return redoSwitch(hubId, remoteId);
+        }
+        return idempotent(hubId, idempotencyKey, "redo\0" + remoteId, () -> redoSwitch(hubId, remoteId));
+    }
+
+    /**
+     * Same as {@link #redoOperation}, but returns the appliance as switched instead of a message.
+     */
+    public Appliance redoSwitch(String hubId, String remoteId) {
+        var start = metrics.start();
+        try {
+            var result = redo(hubId, remoteId);
+            metrics.succeeded(HubOperation.REDO, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(HubOperation.REDO, e, start);
+            throw e;
+        }
+    }
+
+    private Appliance redo(String hubId, String remoteId) {
+        var reDoneAppliance = hubs.findHub(hubId).map(repository -> repository.redoAction(remoteId)).orElse(null);
+        if(reDoneAppliance == null) {
+            throw rejections.get("no_action_to_redo.message", message -> new NoLastOperationException(HttpStatus.BAD_REQUEST, message));
         }
-        var unDoneAppliance = repository.undoPreviousAction();
-        var msg = messageSource.getMessage("appliance_operation_successful.message", new Object[]{unDoneAppliance.getName(),
-                    ApplianceStatus.values()[unDoneAppliance.getStatus().ordinal()].name()}, Locale.US);
-        return new RemoteOperationResponse(HttpStatus.OK, msg);
+        return reDoneAppliance;
     }
 }
@@ -0,0 +1,40 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.repository.HomeHubRepository;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps one response body per hub and rebuilds it only when the hub's version has moved on, so
+ * clients polling an unchanged hub are served the same bytes. Bodies are held weakly by hub, so a
+ * hub dropped from the registry takes its body with it.
+ */
+final class HubStateCache<T> {
+    private final Map<HomeHubRepository, VersionedBody<T>> bodies = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Builder<T> builder;
+
+    @FunctionalInterface
+    interface Builder<T> {
+        T build(HomeHubRepository repository, long version);
+    }
+
+    HubStateCache(Builder<T> builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * The version is read before the body is built, so a change made while building is at worst
+     * served again under the next version.
+     */
+    VersionedBody<T> get(HomeHubRepository repository) {
+        var version = repository.getVersion();
+        var cached = bodies.get(repository);
+        if (cached != null && cached.version() == version) {
+            return cached;
+        }
+        var built = new VersionedBody<>(version, builder.build(repository, version));
+        return bodies.merge(repository, built, (old, fresh) -> old.version() >= fresh.version() ? old : fresh);
+    }
+}
@@ -0,0 +1,163 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.exception.HomeHubException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of requests sent with an {@code Idempotency-Key}, so a remote retrying a
+ * request gets the original response and the request is applied once.
+ * <p>
+ * Keys are scoped per hub and remembered for at least {@code home-hub.idempotency.ttl}. Entries
+ * are kept in two generations of hash maps: new keys go to the current generation, and once it is
+ * {@code ttl} old, or holds half of {@code home-hub.idempotency.capacity} keys, it becomes the
+ * previous generation and the old previous one is dropped as a whole. Eviction is therefore a
+ * single reference swap instead of a scan or a per-entry timer; only when a burst of keys fills
+ * the capacity within one {@code ttl} are keys forgotten early.
+ * <p>
+ * Business rejections ({@link HomeHubException}) are remembered like responses, since retrying
+ * cannot change them. Any other failure forgets the key, so the retry runs the request again.
+ * A retry arriving while the original is still running waits for its outcome.
+ */
+@Component
+public class IdempotencyCache {
+    public static final String HEADER = "Idempotency-Key";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+    private static final int DEFAULT_CAPACITY = 100_000;
+
+    private final long ttlNanos;
+    private final int generationCapacity;
+    private final LongSupplier nanoTime;
+    private final AtomicReference<Generations> generations;
+
+    public IdempotencyCache() {
+        this(DEFAULT_TTL, DEFAULT_CAPACITY);
+    }
+
+    @Autowired
+    public IdempotencyCache(@Value("${home-hub.idempotency.ttl:PT10M}") Duration ttl,
+                            @Value("${home-hub.idempotency.capacity:100000}") int capacity) {
+        this(ttl, capacity, System::nanoTime);
+    }
+
+    IdempotencyCache(Duration ttl, int capacity, LongSupplier nanoTime) {
+        if (ttl.isNegative() || ttl.isZero() || capacity < 2) {
+            throw new IllegalArgumentException("home-hub.idempotency.ttl must be positive and capacity at least 2");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.generationCapacity = capacity / 2;
+        this.nanoTime = nanoTime;
+        this.generations = new AtomicReference<>(new Generations(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), nanoTime.getAsLong()));
+    }
+
+    /**
+     * Runs {@code request} unless a request with the same key ran before, in which case its outcome is returned.
+     *
+     * @param fingerprint what the request does; a key used before for a different fingerprint fails with {@code keyReused}
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String hubId, String key, String fingerprint, Supplier<T> request,
+                         Supplier<? extends RuntimeException> keyReused) {
+        var now = nanoTime.getAsLong();
+        var generation = rotateIfDue(now);
+        var id = new Key(hubId, key);
+        var created = new Entry(fingerprint, now);
+        var entry = claim(generation, id, created, now);
+        if (entry != created) {
+            if (!entry.fingerprint.equals(fingerprint)) {
+                throw keyReused.get();
+            }
+            try {
+                return (T) entry.outcome.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            var response = request.get();
+            created.outcome.complete(response);
+            return response;
+        } catch (HomeHubException e) {
+            created.outcome.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            generation.current.remove(id, created);
+            // the generation may have been rotated while the request ran
+            generations.get().previous.remove(id, created);
+            created.outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of keys held, expired ones included until their generation is dropped
+     */
+    public int size() {
+        var generation = generations.get();
+        return generation.current.size() + generation.previous.size();
+    }
+
+    /**
+     * @return the live entry of {@code id}, or {@code created} once it has been stored for it
+     */
+    private Entry claim(Generations generation, Key id, Entry created, long now) {
+        var previous = generation.previous.get(id);
+        if (previous != null && !expired(previous, now)) {
+            return previous;
+        }
+        while (true) {
+            var existing = generation.current.putIfAbsent(id, created);
+            if (existing == null) {
+                return created;
+            }
+            if (!expired(existing, now)) {
+                return existing;
+            }
+            if (generation.current.replace(id, existing, created)) {
+                return created;
+            }
+        }
+    }
+
+    private Generations rotateIfDue(long now) {
+        var generation = generations.get();
+        if (now - generation.started < ttlNanos && generation.current.size() < generationCapacity) {
+            return generation;
+        }
+        var rotated = new Generations(new ConcurrentHashMap<>(), generation.current, now);
+        return generations.compareAndSet(generation, rotated) ? rotated : generations.get();
+    }
+
+    private boolean expired(Entry entry, long now) {
+        return now - entry.created >= ttlNanos;
+    }
+
+    private record Generations(ConcurrentMap<Key, Entry> current, ConcurrentMap<Key, Entry> previous, long started) {
+    }
+
+    private record Key(String hubId, String key) {
+    }
+
+    private static final class Entry {
+        private final String fingerprint;
+        private final long created;
+        private final CompletableFuture<Object> outcome = new CompletableFuture<>();
+
+        private Entry(String fingerprint, long created) {
+            this.fingerprint = fingerprint;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.context.support.AbstractResourceBasedMessageSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders the response messages of {@code messages.properties}.
+ * <p>
+ * Templates are compiled once per locale into literal parts and argument positions, so rendering
+ * is a single sized {@link StringBuilder} instead of a {@link java.text.MessageFormat} run. The
+ * templates of the default locale are compiled at startup, other locales on first use. Templates
+ * using quotes or format types ({@code {0,number}}) and non-text arguments are rendered by the
+ * {@link MessageSource} as before, so the output is identical either way.
+ */
+@Component
+public class MessageRenderer {
+    static final String OPERATION_SUCCESSFUL = "appliance_operation_successful.message";
+
+    /**
+     * Marks codes whose template has to be rendered by the {@link MessageSource}.
+     */
+    private static final Template MESSAGE_FORMAT = new Template(new String[]{""}, new int[0]);
+
+    private final MessageSource messageSource;
+    private final Locale defaultLocale;
+    private final ConcurrentMap<Locale, ConcurrentMap<String, Template>> templates = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MessageRenderer(MessageSource messageSource, @Value("${home-hub.messages.locale:en-US}") Locale defaultLocale) {
+        this.messageSource = messageSource;
+        this.defaultLocale = defaultLocale;
+        precompile(defaultLocale);
+    }
+
+    public Locale getDefaultLocale() {
+        return defaultLocale;
+    }
+
+    public String render(String code, Object... args) {
+        return render(defaultLocale, code, args);
+    }
+
+    public String render(Locale locale, String code, Object... args) {
+        var template = templates(locale).computeIfAbsent(code, key -> compile(key, locale));
+        if (template == MESSAGE_FORMAT || !template.accepts(args)) {
+            return messageSource.getMessage(code, args, locale);
+        }
+        return template.render(args);
+    }
+
+    /**
+     * Response of a successful operation that left {@code applianceName} in {@code status}.
+     */
+    public RemoteOperationResponse operationResponse(String applianceName, ApplianceStatus status) {
+        return new RemoteOperationResponse(HttpStatus.OK, render(OPERATION_SUCCESSFUL, applianceName, status.name()));
+    }
+
+    private ConcurrentMap<String, Template> templates(Locale locale) {
+        return templates.computeIfAbsent(locale, key -> new ConcurrentHashMap<>());
+    }
+
+    private void precompile(Locale locale) {
+        if (!(messageSource instanceof AbstractResourceBasedMessageSource resourceBased)) {
+            return;
+        }
+        var compiled = templates(locale);
+        for (var basename : resourceBased.getBasenameSet()) {
+            try {
+                for (var code : ResourceBundle.getBundle(basename, locale).keySet()) {
+                    compiled.computeIfAbsent(code, key -> compile(key, locale));
+                }
+            } catch (MissingResourceException e) {
+                // the message source reports missing bundles when a message is looked up
+            }
+        }
+    }
+
+    /**
+     * Compiles the raw template of {@code code}, or returns {@link #MESSAGE_FORMAT} if it needs a full
+     * {@link java.text.MessageFormat}.
+     */
+    private Template compile(String code, Locale locale) {
+        var pattern = messageSource.getMessage(code, null, null, locale);
+        if (pattern == null || pattern.indexOf('\'') >= 0) {
+            return MESSAGE_FORMAT;
+        }
+        var literals = new ArrayList<String>();
+        var arguments = new ArrayList<Integer>();
+        var start = 0;
+        for (int open = pattern.indexOf('{'); open >= 0; open = pattern.indexOf('{', start)) {
+            var close = pattern.indexOf('}', open);
+            if (close < 0) {
+                return MESSAGE_FORMAT;
+            }
+            int argument;
+            try {
+                argument = Integer.parseInt(pattern, open + 1, close, 10);
+            } catch (NumberFormatException e) {
+                return MESSAGE_FORMAT;
+            }
+            literals.add(pattern.substring(start, open));
+            arguments.add(argument);
+            start = close + 1;
+        }
+        literals.add(pattern.substring(start));
+        return new Template(literals.toArray(String[]::new), arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * {@code literals[i]} precedes argument {@code arguments[i]}; the last literal follows the last argument.
+     */
+    private record Template(String[] literals, int[] arguments, int literalLength) {
+        Template(String[] literals, int[] arguments) {
+            this(literals, arguments, totalLength(literals));
+        }
+
+        private static int totalLength(String[] literals) {
+            var length = 0;
+            for (var literal : literals) {
+                length += literal.length();
+            }
+            return length;
+        }
+
+        boolean accepts(Object[] args) {
+            for (var argument : arguments) {
+                if (args == null || argument >= args.length || !(args[argument] instanceof CharSequence)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String render(Object[] args) {
+            if (arguments.length == 0) {
+                return literals[0];
+            }
+            var length = literalLength;
+            for (var argument : arguments) {
+                length += ((CharSequence) args[argument]).length();
+            }
+            var message = new StringBuilder(length);
+            for (int i = 0; i < arguments.length; i++) {
+                message.append(literals[i]).append((CharSequence) args[arguments[i]]);
+            }
+            return message.append(literals[arguments.length]).toString();
+        }
+    }
+}
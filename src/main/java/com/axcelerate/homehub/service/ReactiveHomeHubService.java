@@ -0,0 +1,98 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.dto.ApplianceRegisterResponse;
+import com.axcelerate.homehub.dto.ApplianceSlotResponse;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.dto.RemoteSlotBindingResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over {@link HomeHubService} for the WebFlux edition of the API.
+ * <p>
+ * Hub state is held in memory, but a call can still wait: for the hub's lock while another thread
+ * writes, and for room in the write-ahead log. Every call therefore runs on the bounded elastic
+ * scheduler, never on the event loop. Validation and error semantics are those of
+ * {@link HomeHubService}: its exceptions are emitted as error signals.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveHomeHubService {
+    private final HomeHubService service;
+    private final ObjectMapper objectMapper;
+
+    public ReactiveHomeHubService(HomeHubService service, ObjectMapper objectMapper) {
+        this.service = service;
+        this.objectMapper = objectMapper;
+    }
+
+    public Mono<RemoteSlotBindingResponse> bindRemoteSlotToAppliance(String hubId, String slotId, String applianceName, String idempotencyKey) {
+        return blocking(() -> service.bindRemoteSlotToAppliance(hubId, slotId, applianceName, idempotencyKey));
+    }
+
+    public Mono<ApplianceRegisterResponse> registerAppliance(String hubId, String applianceName, String idempotencyKey) {
+        return blocking(() -> service.registerAppliance(hubId, applianceName, idempotencyKey));
+    }
+
+    public Mono<RemoteOperationResponse> operateAppliance(String hubId, String remoteId, String slotId, int operation, String idempotencyKey) {
+        return blocking(() -> service.operateAppliance(hubId, remoteId, slotId, operation, idempotencyKey));
+    }
+
+    public Mono<BatchOperationResponse> operateAppliances(String hubId, String remoteId, List<SlotOperation> operations) {
+        return blocking(() -> service.operateAppliances(hubId, remoteId, operations));
+    }
+
+    public Mono<RemoteOperationResponse> saveScene(String hubId, String sceneName, List<SlotOperation> operations) {
+        return blocking(() -> service.saveScene(hubId, sceneName, operations));
+    }
+
+    public Mono<BatchOperationResponse> runScene(String hubId, String remoteId, String sceneName) {
+        return blocking(() -> service.runScene(hubId, remoteId, sceneName));
+    }
+
+    public Mono<ApplianceSlotResponse> findSlotForAppliance(String hubId, String applianceName) {
+        return blocking(() -> service.findSlotForAppliance(hubId, applianceName));
+    }
+
+    public Mono<Set<String>> listAllSlots(String hubId) {
+        return blocking(() -> service.listAllSlots(hubId));
+    }
+
+    /**
+     * One page of {@link HomeHubService#listBindings}, rendered to JSON. A page holds at most
+     * {@link HomeHubService#MAX_PAGE_SIZE} bindings, so it is buffered instead of streamed.
+     */
+    public Mono<byte[]> listBindings(String hubId, ApplianceStatus status, String appliancePrefix, String cursor, int limit) {
+        return Mono.fromCallable(() -> {
+            var page = new ByteArrayOutputStream();
+            try (var out = objectMapper.getFactory().createGenerator(page, JsonEncoding.UTF8)) {
+                service.listBindings(hubId, status, appliancePrefix, cursor, limit, out);
+            }
+            return page.toByteArray();
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<RemoteOperationResponse> undoOperation(String hubId, String remoteId) {
+        return blocking(() -> service.undoOperation(hubId, remoteId));
+    }
+
+    public Mono<RemoteOperationResponse> redoOperation(String hubId, String remoteId) {
+        return blocking(() -> service.redoOperation(hubId, remoteId));
+    }
+
+    private static <T> Mono<T> blocking(Supplier<T> call) {
+        return Mono.fromSupplier(call).subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,53 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.exception.HomeHubException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reuses the exception of a repeated rejection, e.g. a remote operating the same unbound slot
+ * over and over, so that the message is rendered and the error body built only once.
+ * <p>
+ * Exceptions are cached per message code and arguments. A code holding more than
+ * {@link #CAPACITY} arguments is cleared, so random arguments cannot grow the cache.
+ */
+final class Rejections {
+    static final int CAPACITY = 1_024;
+
+    private static final String NO_ARGUMENT = "";
+
+    private final MessageRenderer messages;
+    private final ConcurrentMap<String, ConcurrentMap<String, HomeHubException>> byCode = new ConcurrentHashMap<>();
+
+    Rejections(MessageRenderer messages) {
+        this.messages = messages;
+    }
+
+    <E extends HomeHubException> E get(String code, Function<String, E> exception) {
+        return get(code, NO_ARGUMENT, exception);
+    }
+
+    <E extends HomeHubException> E get(String code, String argument, Function<String, E> exception) {
+        return get(code, argument, () -> argument == NO_ARGUMENT ? messages.render(code) : messages.render(code, argument), exception);
+    }
+
+    <E extends HomeHubException> E get(String code, String first, String second, Function<String, E> exception) {
+        return get(code, first + '\0' + second, () -> messages.render(code, first, second), exception);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends HomeHubException> E get(String code, String key, Supplier<String> message, Function<String, E> exception) {
+        var cached = byCode.computeIfAbsent(code, ignored -> new ConcurrentHashMap<>());
+        var rejection = cached.get(key);
+        if (rejection == null) {
+            if (cached.size() >= CAPACITY) {
+                cached.clear();
+            }
+            rejection = cached.computeIfAbsent(key, ignored -> exception.apply(message.get()));
+        }
+        return (E) rejection;
+    }
+}
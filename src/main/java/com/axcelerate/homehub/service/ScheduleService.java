@@ -0,0 +1,295 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.dto.ScheduleRequest;
+import com.axcelerate.homehub.dto.ScheduleResponse;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.exception.HomeHubException;
+import com.axcelerate.homehub.schedule.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs operations at a later time: once at a date-time or after a delay, or daily at a time of day.
+ * <p>
+ * Pending schedules sit in one {@link TimingWheel} with a tick of {@code home-hub.schedule.tick},
+ * so creating and cancelling a schedule is O(1) and a single thread serves any number of them.
+ * Every tick that thread expires the due schedules and runs each through
+ * {@link HomeHubService#operateAppliance}, with the same validation as a remote; a rejected
+ * operation, e.g. of a slot that was never bound, is logged and the schedule is done. A daily
+ * schedule is added again for the next day. Times of day are in {@code home-hub.schedule.zone},
+ * the system zone by default. Schedules live in memory only.
+ */
+@Slf4j
+@Service
+public class ScheduleService {
+    private final HomeHubService service;
+    private final MessageRenderer messages;
+    private final Rejections rejections;
+    private final Clock clock;
+    private final long tickMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimingWheel<Schedule> wheel;
+    private final ConcurrentMap<String, ConcurrentMap<Long, Schedule>> schedules = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private ScheduledExecutorService ticker;
+
+    @Autowired
+    public ScheduleService(HomeHubService service, MessageRenderer messages,
+                           @Value("${home-hub.schedule.tick:PT0.1S}") Duration tick,
+                           @Value("${home-hub.schedule.zone:}") String zone) {
+        this(service, messages, tick, Clock.system(zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone)));
+    }
+
+    ScheduleService(HomeHubService service, MessageRenderer messages, Duration tick, Clock clock) {
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("home-hub.schedule.tick must be at least 1ms but was " + tick);
+        }
+        this.service = service;
+        this.messages = messages;
+        this.rejections = new Rejections(messages);
+        this.clock = clock;
+        this.tickMillis = tick.toMillis();
+        this.wheel = new TimingWheel<>(Math.floorDiv(clock.millis(), tickMillis));
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "home-hub-schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::runDueQuietly, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    public ScheduleResponse createSchedule(String hubId, String remoteId, ScheduleRequest request) {
+        if (request.getSlotId() == null || request.getSlotId().isBlank()) {
+            throw rejections.get("batch_slot_required.message", message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        if (request.getOperation() < 0 || request.getOperation() > 1) {
+            throw rejections.get("appliance_operation_not_allowed.message", request.getSlotId(), message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        var hasAt = request.getAt() != null && !request.getAt().isBlank();
+        var hasAfter = request.getAfter() != null && !request.getAfter().isBlank();
+        if (hasAt == hasAfter) {
+            throw rejections.get("schedule_time_required.message", message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        var now = clock.instant();
+        var text = hasAt ? request.getAt().trim() : request.getAfter().trim();
+        LocalTime dailyAt = null;
+        Instant fireAt;
+        try {
+            if (hasAfter) {
+                fireAt = now.plus(Duration.parse(text));
+            } else if (text.indexOf('T') < 0) {
+                dailyAt = LocalTime.parse(text);
+                fireAt = nextOccurrence(dailyAt, now);
+            } else {
+                fireAt = parseDateTime(text);
+            }
+            fireAt.toEpochMilli();
+        } catch (DateTimeException | ArithmeticException e) {
+            throw invalidTime(text);
+        }
+        if (!fireAt.isAfter(now)) {
+            throw invalidTime(text);
+        }
+        if (request.isDaily() && dailyAt == null) {
+            throw rejections.get("schedule_daily_invalid.message", message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        var schedule = new Schedule(ids.incrementAndGet(), hubId, remoteId, request.getSlotId(), request.getOperation(),
+                request.isDaily() ? dailyAt : null);
+        lock.lock();
+        try {
+            add(schedule, fireAt);
+            schedules.computeIfAbsent(hubId, id -> new ConcurrentHashMap<>()).put(schedule.id, schedule);
+        } finally {
+            lock.unlock();
+        }
+        return response(schedule, HttpStatus.CREATED);
+    }
+
+    /**
+     * @return the pending schedules of the hub, the next to fire first
+     */
+    public List<ScheduleResponse> listSchedules(String hubId) {
+        var hubSchedules = schedules.get(hubId);
+        if (hubSchedules == null) {
+            return List.of();
+        }
+        var responses = new ArrayList<ScheduleResponse>(hubSchedules.size());
+        for (var schedule : hubSchedules.values()) {
+            responses.add(response(schedule, HttpStatus.OK));
+        }
+        responses.sort(Comparator.comparing(ScheduleResponse::getFireAt).thenComparing(ScheduleResponse::getScheduleId));
+        return responses;
+    }
+
+    public RemoteOperationResponse cancelSchedule(String hubId, String scheduleId) {
+        var hubSchedules = schedules.get(hubId);
+        Schedule schedule = null;
+        try {
+            schedule = hubSchedules == null ? null : hubSchedules.remove(Long.parseLong(scheduleId));
+        } catch (NumberFormatException e) {
+            // not an id this service handed out
+        }
+        if (schedule == null) {
+            throw rejections.get("schedule_not_found.message", scheduleId, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        lock.lock();
+        try {
+            wheel.cancel(schedule.timer);
+        } finally {
+            lock.unlock();
+        }
+        return new RemoteOperationResponse(HttpStatus.OK, messages.render("schedule_cancelled.message", scheduleId));
+    }
+
+    /**
+     * @return the number of pending schedules of all hubs
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return wheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fires every schedule due by now.
+     */
+    void runDue() {
+        var now = clock.millis();
+        var due = new ArrayList<Schedule>();
+        lock.lock();
+        try {
+            wheel.advanceTo(Math.floorDiv(now, tickMillis), due::add);
+            // decide under the lock, so a schedule cancelled meanwhile neither fires nor comes back
+            for (int i = 0; i < due.size(); i++) {
+                var schedule = due.get(i);
+                var hubSchedules = schedules.get(schedule.hubId);
+                if (hubSchedules == null || hubSchedules.get(schedule.id) != schedule) {
+                    due.set(i, null);
+                } else if (schedule.dailyAt != null) {
+                    add(schedule, nextOccurrence(schedule.dailyAt, Instant.ofEpochMilli(now)));
+                } else {
+                    hubSchedules.remove(schedule.id);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (var schedule : due) {
+            if (schedule != null) {
+                fire(schedule);
+            }
+        }
+    }
+
+    private void runDueQuietly() {
+        try {
+            runDue();
+        } catch (RuntimeException e) {
+            log.error("Running due schedules failed", e);
+        }
+    }
+
+    private void fire(Schedule schedule) {
+        try {
+            service.operateAppliance(schedule.hubId, schedule.remoteId, schedule.slotId, schedule.operation);
+        } catch (HomeHubException e) {
+            log.info("Schedule {} of hub {} was rejected: {}", schedule.id, schedule.hubId, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Schedule {} of hub {} failed", schedule.id, schedule.hubId, e);
+        }
+    }
+
+    private void add(Schedule schedule, Instant fireAt) {
+        schedule.fireAt = fireAt;
+        schedule.timer = wheel.add(schedule, Math.ceilDiv(fireAt.toEpochMilli(), tickMillis));
+    }
+
+    private Instant nextOccurrence(LocalTime time, Instant after) {
+        var today = ZonedDateTime.ofInstant(after, clock.getZone()).with(time);
+        return (today.toInstant().isAfter(after) ? today : today.plusDays(1).with(time)).toInstant();
+    }
+
+    /**
+     * An ISO-8601 date-time, in {@code home-hub.schedule.zone} if it has no offset.
+     */
+    private Instant parseDateTime(String text) {
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(text).atZone(clock.getZone()).toInstant();
+        }
+    }
+
+    private BindException invalidTime(String text) {
+        return rejections.get("schedule_time_invalid.message", text, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+    }
+
+    private static ScheduleResponse response(Schedule schedule, HttpStatus status) {
+        return new ScheduleResponse(status, String.valueOf(schedule.id), schedule.slotId, schedule.operation, schedule.fireAt,
+                schedule.dailyAt != null, schedule.remoteId);
+    }
+
+    private static final class Schedule {
+        private final long id;
+        private final String hubId;
+        private final String remoteId;
+        private final String slotId;
+        private final int operation;
+        /**
+         * The time of day a daily schedule fires at, {@code null} for a one-off.
+         */
+        private final LocalTime dailyAt;
+        private volatile Instant fireAt;
+        private TimingWheel.Timer<Schedule> timer;
+
+        private Schedule(long id, String hubId, String remoteId, String slotId, int operation, LocalTime dailyAt) {
+            this.id = id;
+            this.hubId = hubId;
+            this.remoteId = remoteId;
+            this.slotId = slotId;
+            this.operation = operation;
+            this.dailyAt = dailyAt;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.dto.ApplianceHistoryResponse;
+import com.axcelerate.homehub.dto.ApplianceUsageResponse;
+import com.axcelerate.homehub.dto.StatusChange;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.history.StatusHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Answers status history questions over a time range: how long an appliance was ON and how often
+ * it was switched, or the changes themselves. A range defaults to the {@link #DEFAULT_RANGE} up
+ * to now; its ends are ISO-8601 instants, and changes exactly at {@code from} count as the status
+ * the range starts with.
+ */
+@Service
+@ConditionalOnProperty(prefix = "home-hub.history", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class StatusHistoryService {
+    public static final Duration DEFAULT_RANGE = Duration.ofDays(7);
+
+    private final StatusHistory history;
+    private final MessageRenderer messages;
+    private final Rejections rejections;
+    private final Clock clock;
+
+    @Autowired
+    public StatusHistoryService(StatusHistory history, MessageRenderer messages) {
+        this(history, messages, Clock.systemUTC());
+    }
+
+    StatusHistoryService(StatusHistory history, MessageRenderer messages, Clock clock) {
+        this.history = history;
+        this.messages = messages;
+        this.rejections = new Rejections(messages);
+        this.clock = clock;
+    }
+
+    public ApplianceUsageResponse getUsage(String hubId, String applianceName, String from, String to) {
+        var range = range(from, to);
+        return history.getUsage(hubId, applianceName, range[0].toEpochMilli(), range[1].toEpochMilli())
+                .map(usage -> new ApplianceUsageResponse(HttpStatus.OK, applianceName, range[0], range[1],
+                        Duration.ofMillis(usage.onMillis()), usage.toggles(), usage.changes(), usage.status(), null))
+                .orElseGet(() -> new ApplianceUsageResponse(HttpStatus.NOT_FOUND, applianceName, range[0], range[1],
+                        Duration.ZERO, 0, 0, null, messages.render("status_history_unknown.message", applianceName)));
+    }
+
+    public ApplianceHistoryResponse getHistory(String hubId, String applianceName, String from, String to, int limit) {
+        if (limit < 1 || limit > HomeHubService.MAX_PAGE_SIZE) {
+            throw rejections.get("page_limit_invalid.message", String.valueOf(HomeHubService.MAX_PAGE_SIZE), message -> new BindException(HttpStatus.BAD_REQUEST, message));
+        }
+        var range = range(from, to);
+        return history.getTransitions(hubId, applianceName, range[0].toEpochMilli(), range[1].toEpochMilli(), limit)
+                .map(transitions -> new ApplianceHistoryResponse(HttpStatus.OK, applianceName, range[0], range[1],
+                        transitions.stream()
+                                .map(transition -> new StatusChange(Instant.ofEpochMilli(transition.time()), transition.status()))
+                                .toList(), null))
+                .orElseGet(() -> new ApplianceHistoryResponse(HttpStatus.NOT_FOUND, applianceName, range[0], range[1],
+                        List.of(), messages.render("status_history_unknown.message", applianceName)));
+    }
+
+    /**
+     * @return {@code from} and {@code to}, defaulting to the {@link #DEFAULT_RANGE} up to now
+     */
+    private Instant[] range(String from, String to) {
+        var end = to == null || to.isBlank() ? clock.instant() : parse(to);
+        var start = from == null || from.isBlank() ? end.minus(DEFAULT_RANGE) : parse(from);
+        if (!start.isBefore(end)) {
+            throw invalidRange(from + ".." + to);
+        }
+        return new Instant[]{start, end};
+    }
+
+    private Instant parse(String text) {
+        try {
+            var instant = Instant.parse(text.trim());
+            instant.toEpochMilli();
+            return instant;
+        } catch (DateTimeException | ArithmeticException e) {
+            throw invalidRange(text);
+        }
+    }
+
+    private BindException invalidRange(String text) {
+        return rejections.get("history_range_invalid.message", text, message -> new BindException(HttpStatus.BAD_REQUEST, message));
+    }
+}
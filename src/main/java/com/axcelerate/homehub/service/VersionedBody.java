@@ -0,0 +1,14 @@
+package com.axcelerate.homehub.service;
+
+/**
+ * A response body built from the state of a hub at {@code version}.
+ */
+public record VersionedBody<T>(long version, T body) {
+
+    /**
+     * @return the entity tag of the body, the quoted version
+     */
+    public String etag() {
+        return "\"" + version + "\"";
+    }
+}
@@ -0,0 +1,131 @@
+package com.axcelerate.homehub.admission;
+
+import com.axcelerate.homehub.service.MessageRenderer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong();
+    private AdmissionFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        var idle = Duration.ofMinutes(1);
+        filter = new AdmissionFilter(meterRegistry, new MessageRenderer(messageSource, Locale.US), new ObjectMapper(),
+                new RateLimiter(10, 4, idle), new RateLimiter(1, 2, idle), idle, now::get);
+    }
+
+    @Test
+    void testStuckButton_LimitedPerSlot() throws Exception {
+        assertEquals(200, post("/home-hub/remote/1/1", "kitchen").getStatus());
+        assertEquals(200, post("/home-hub/remote/1/0", "kitchen").getStatus());
+
+        var response = post("/home-hub/remote/1/1", "kitchen");
+
+        assertEquals(429, response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+        assertTrue(response.getContentAsString().contains("Slot 1 is receiving too many commands"));
+        assertEquals(200, post("/home-hub/remote/2/1", "kitchen").getStatus());
+        assertEquals(1, rejected("slot"));
+    }
+
+    @Test
+    void testFloodingRemote_LimitedAcrossSlots() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, post("/home-hub/remote/" + i + "/1", "kitchen").getStatus());
+        }
+
+        assertEquals(429, post("/home-hub/remote/batch", "kitchen").getStatus());
+        assertEquals(200, post("/home-hub/remote/undo", "hall").getStatus());
+        assertEquals(1, rejected("remote"));
+    }
+
+    @Test
+    void testBuckets_PerHub() throws Exception {
+        post("/home-hub/hubs/home1/remote/1/1", null);
+        post("/home-hub/hubs/home1/remote/1/1", null);
+
+        assertEquals(429, post("/home-hub/hubs/home1/remote/1/1", null).getStatus());
+        assertEquals(200, post("/home-hub/hubs/home2/remote/1/1", null).getStatus());
+        assertEquals(200, post("/home-hub/remote/1/1", null).getStatus());
+    }
+
+    @Test
+    void testEncodedIds_SameBucketAsDecoded() throws Exception {
+        post("/home-hub/hubs/home%201/remote/lamp%201/1", null);
+        post("/home-hub/hubs/home 1/remote/lamp 1/1", null);
+
+        assertEquals(429, post("/home-hub/hubs/home%201/remote/lamp%201/0", null).getStatus());
+    }
+
+    @Test
+    void testDefaultRemote_LimitedPerClientAddress() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, post("/home-hub/remote/" + i + "/1", null, "10.0.0.1").getStatus());
+        }
+
+        assertEquals(429, post("/home-hub/remote/undo", null, "10.0.0.1").getStatus());
+        assertEquals(200, post("/home-hub/remote/undo", null, "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void testOtherRequests_NotLimited() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            assertEquals(200, post("/home-hub/remote/1/appliance/lights", null).getStatus());
+            assertEquals(200, post("/home-hub/appliances/lights", null).getStatus());
+            assertEquals(200, post("/home-hub/remote/schedules", null).getStatus());
+            var get = new MockHttpServletRequest("GET", "/home-hub/remote/slots");
+            var response = new MockHttpServletResponse();
+            filter.doFilter(get, response, new MockFilterChain());
+            assertEquals(200, response.getStatus());
+        }
+    }
+
+    @Test
+    void testIdleBuckets_Evicted() throws Exception {
+        post("/home-hub/remote/1/1", null);
+        post("/home-hub/remote/1/1", null);
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+
+        filter.evictIdle();
+
+        assertEquals(0, meterRegistry.get("home_hub.admission.buckets").tag("scope", "slot").gauge().value());
+        assertEquals(200, post("/home-hub/remote/1/1", null).getStatus());
+    }
+
+    private MockHttpServletResponse post(String uri, String remoteId) throws Exception {
+        return post(uri, remoteId, "127.0.0.1");
+    }
+
+    private MockHttpServletResponse post(String uri, String remoteId, String clientAddress) throws Exception {
+        var request = new MockHttpServletRequest("POST", uri);
+        request.setRemoteAddr(clientAddress);
+        if (remoteId != null) {
+            request.setParameter("remoteId", remoteId);
+        }
+        var response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private double rejected(String scope) {
+        return meterRegistry.get(AdmissionFilter.REJECTED).tag("scope", scope).counter().count();
+    }
+}
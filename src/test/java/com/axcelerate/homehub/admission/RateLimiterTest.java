@@ -0,0 +1,90 @@
+package com.axcelerate.homehub.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimiter limiter = new RateLimiter(10, 5, Duration.ofMinutes(1));
+
+    @Test
+    void testBurst_AdmittedThenLimited() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("remote1", 0));
+        }
+
+        assertEquals(SECOND / 10, limiter.acquire("remote1", 0));
+        assertEquals(0, limiter.acquire("remote2", 0));
+    }
+
+    @Test
+    void testTokens_RefillAtRate() {
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("remote1", 0);
+        }
+
+        assertTrue(limiter.acquire("remote1", SECOND / 20) > 0);
+        assertEquals(0, limiter.acquire("remote1", SECOND / 10));
+        assertTrue(limiter.acquire("remote1", SECOND / 10) > 0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("remote1", 10 * SECOND));
+        }
+    }
+
+    @Test
+    void testNanoTimeWrap_Handled() {
+        var now = Long.MAX_VALUE - SECOND / 20;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("remote1", now));
+        }
+
+        assertTrue(limiter.acquire("remote1", now) > 0);
+        assertEquals(0, limiter.acquire("remote1", now + SECOND / 10));
+    }
+
+    @Test
+    void testIdleBuckets_Evicted() {
+        limiter.acquire("remote1", 0);
+        limiter.acquire("remote2", 50 * SECOND);
+
+        assertEquals(1, limiter.evictIdle(61 * SECOND));
+        assertEquals(1, limiter.size());
+        assertEquals(1, limiter.evictIdle(111 * SECOND));
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void testConcurrentRequests_AdmitBurstOnly() throws Exception {
+        var admitted = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        if (limiter.acquire("remote1", 0) == 0) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(5, admitted.get());
+    }
+}
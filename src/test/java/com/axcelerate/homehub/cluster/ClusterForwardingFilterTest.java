@@ -0,0 +1,67 @@
+package com.axcelerate.homehub.cluster;
+
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.service.MessageRenderer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterForwardingFilterTest {
+
+    private ClusterMembership membership;
+    private ClusterForwardingFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        var messages = new MessageRenderer(messageSource, Locale.US);
+        membership = new ClusterMembership(new HomeHubRepositoryRegistry(), messages, new ObjectMapper(), "n1",
+                "n1=,n2=http://10.0.0.2:8080,n3=http://localhost:8083", 128, Duration.ofSeconds(1));
+        filter = new ClusterForwardingFilter(membership, messages, new ObjectMapper());
+    }
+
+    @Test
+    void testForwardedByMember_Kept() throws Exception {
+        var passed = filter("n2", "10.0.0.2");
+
+        assertEquals("n2", passed.getHeader(ClusterMembership.FORWARDED_BY));
+    }
+
+    @Test
+    void testForwardedByWrongAddressOrStranger_Dropped() throws Exception {
+        for (var passed : new HttpServletRequest[]{filter("n2", "10.0.0.9"), filter("intruder", "10.0.0.2"), filter("n1", "10.0.0.2")}) {
+            assertNull(passed.getHeader(ClusterMembership.FORWARDED_BY));
+            assertFalse(passed.getHeaders(ClusterMembership.FORWARDED_BY).hasMoreElements());
+            assertFalse(Collections.list(passed.getHeaderNames()).contains(ClusterMembership.FORWARDED_BY));
+            assertEquals("application/json", passed.getHeader("Content-Type"));
+        }
+    }
+
+    @Test
+    void testLoopback_MatchesMemberOnThisMachine() {
+        assertTrue(membership.isForwardedByMember("n3", "127.0.0.1"));
+        assertFalse(membership.isForwardedByMember("n2", "127.0.0.1"));
+    }
+
+    private HttpServletRequest filter(String forwardedBy, String remoteAddr) throws Exception {
+        var request = new MockHttpServletRequest("PUT", "/home-hub/cluster/members");
+        request.setRemoteAddr(remoteAddr);
+        request.addHeader("Content-Type", "application/json");
+        request.addHeader(ClusterMembership.FORWARDED_BY, forwardedBy);
+        var chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        return (HttpServletRequest) chain.getRequest();
+    }
+}
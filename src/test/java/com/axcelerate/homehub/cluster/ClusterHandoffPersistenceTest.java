@@ -0,0 +1,89 @@
+package com.axcelerate.homehub.cluster;
+
+import com.axcelerate.homehub.HomeHubApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs two persistent nodes in this JVM and restarts the one a hub was handed to.
+ */
+class ClusterHandoffPersistenceTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    public void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void testHandedOffHub_SurvivesReceiverRestart() throws Exception {
+        var ring = new HashRing(Set.of("p1", "p2"), 128);
+        var hubId = "hub0";
+        for (int i = 1; !"p2".equals(ring.owner(hubId)); i++) {
+            hubId = "hub" + i;
+        }
+        var urls = new LinkedHashMap<String, String>();
+        urls.put("p1", start("p1"));
+        urls.put("p2", start("p2"));
+        var p1 = urls.get("p1");
+        assertEquals(201, send("POST", p1 + "/home-hub/hubs/" + hubId + "/appliances/lights").statusCode());
+        assertEquals(201, send("POST", p1 + "/home-hub/hubs/" + hubId + "/remote/1/appliance/lights").statusCode());
+        assertEquals(200, send("POST", p1 + "/home-hub/hubs/" + hubId + "/remote/1/1").statusCode());
+
+        var members = HttpRequest.newBuilder(URI.create(p1 + "/home-hub/cluster/members"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(urls)))
+                .build();
+        assertEquals(200, client.send(members, HttpResponse.BodyHandlers.ofString()).statusCode());
+        var cluster = send("GET", urls.get("p2") + "/home-hub/cluster").body();
+        assertTrue(cluster.contains("\"" + hubId + "\""), cluster);
+
+        nodes.remove(1).close();
+        var restarted = start("p2");
+
+        var bindings = send("GET", restarted + "/home-hub/hubs/" + hubId + "/remote/bindings");
+        assertEquals(200, bindings.statusCode());
+        assertTrue(bindings.body().contains("\"status\":\"ON\""), bindings.body());
+    }
+
+    private String start(String nodeId) {
+        var node = new SpringApplicationBuilder(HomeHubApplication.class)
+                .run("--server.port=0", "--spring.jmx.enabled=false",
+                        "--home-hub.cluster.enabled=true", "--home-hub.cluster.node-id=" + nodeId,
+                        "--home-hub.admission.enabled=false", "--home-hub.dispatch.enabled=false",
+                        "--home-hub.persistence.enabled=true", "--home-hub.persistence.fsync=false",
+                        "--home-hub.persistence.directory=" + directory.resolve(nodeId));
+        nodes.add(node);
+        return "http://localhost:" + ((ServletWebServerApplicationContext) node).getWebServer().getPort();
+    }
+
+    private HttpResponse<String> send(String method, String url) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
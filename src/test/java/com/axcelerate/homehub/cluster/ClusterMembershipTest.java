@@ -0,0 +1,130 @@
+package com.axcelerate.homehub.cluster;
+
+import com.axcelerate.homehub.HomeHubApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs three nodes in this JVM, each on a free localhost port.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ClusterMembershipTest {
+
+    private static final int HUBS = 12;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final Map<String, String> urls = new LinkedHashMap<>();
+
+    @BeforeAll
+    public void startNodes() {
+        for (var nodeId : List.of("n1", "n2", "n3")) {
+            var node = new SpringApplicationBuilder(HomeHubApplication.class)
+                    .run("--server.port=0", "--spring.jmx.enabled=false",
+                            "--home-hub.cluster.enabled=true", "--home-hub.cluster.node-id=" + nodeId,
+                            "--home-hub.admission.enabled=false", "--home-hub.dispatch.enabled=false");
+            nodes.add(node);
+            urls.put(nodeId, "http://localhost:" + ((ServletWebServerApplicationContext) node).getWebServer().getPort());
+        }
+    }
+
+    @AfterAll
+    public void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void testJoiningAndLeaving_MovesHubsAndForwardsRequests() throws Exception {
+        var n1 = urls.get("n1");
+        for (int i = 0; i < HUBS; i++) {
+            assertEquals(201, send("POST", n1 + "/home-hub/hubs/hub" + i + "/appliances/lights", null).statusCode());
+            assertEquals(201, send("POST", n1 + "/home-hub/hubs/hub" + i + "/remote/1/appliance/lights", null).statusCode());
+            assertEquals(200, send("POST", n1 + "/home-hub/hubs/hub" + i + "/remote/1/1", null).statusCode());
+        }
+
+        send("PUT", n1 + "/home-hub/cluster/members", objectMapper.writeValueAsString(urls));
+
+        var held = new HashSet<String>();
+        for (var url : urls.values()) {
+            var cluster = json(send("GET", url + "/home-hub/cluster", null));
+            assertEquals(3, cluster.get("members").size());
+            var hubIds = cluster.get("hubIds");
+            assertTrue(hubIds.size() < HUBS, "Node at " + url + " kept every hub");
+            hubIds.forEach(hubId -> assertTrue(held.add(hubId.asText()), hubId + " is held twice"));
+        }
+        assertEquals(HUBS, held.size());
+
+        for (int i = 0; i < HUBS; i++) {
+            for (var url : urls.values()) {
+                var bindings = send("GET", url + "/home-hub/hubs/hub" + i + "/remote/bindings", null);
+                assertEquals(200, bindings.statusCode());
+                assertTrue(bindings.body().contains("\"status\":\"ON\""), bindings.body());
+            }
+        }
+        var n3 = urls.get("n3");
+        assertEquals(200, send("POST", n3 + "/home-hub/hubs/hub0/remote/1/0", null).statusCode());
+        assertTrue(send("GET", n1 + "/home-hub/hubs/hub0/remote/bindings", null).body().contains("\"status\":\"OFF\""));
+
+        var remaining = new LinkedHashMap<>(urls);
+        remaining.remove("n3");
+        send("PUT", urls.get("n2") + "/home-hub/cluster/members", objectMapper.writeValueAsString(remaining));
+
+        assertEquals(0, json(send("GET", n3 + "/home-hub/cluster", null)).get("hubIds").size());
+        var stillHeld = 0;
+        for (var url : remaining.values()) {
+            stillHeld += json(send("GET", url + "/home-hub/cluster", null)).get("hubIds").size();
+        }
+        assertEquals(HUBS, stillHeld);
+        assertTrue(send("GET", n1 + "/home-hub/hubs/hub0/remote/bindings", null).body().contains("\"status\":\"OFF\""));
+    }
+
+    @Test
+    void testInvalidMember_Rejected() throws Exception {
+        var response = send("PUT", urls.get("n1") + "/home-hub/cluster/members", "{\"n1\":\"\",\"n9\":\"ftp://elsewhere\"}");
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("Cluster member n9 needs an http or https base URL"));
+    }
+
+    @Test
+    void testHubId_FromPath() {
+        assertEquals("default", ClusterForwardingFilter.hubId("/home-hub/remote/1/1"));
+        assertEquals("home42", ClusterForwardingFilter.hubId("/home-hub/hubs/home42/remote/1/1"));
+        assertEquals("home 42", ClusterForwardingFilter.hubId("/home-hub/hubs/home%2042/remote/1/1"));
+        assertNull(ClusterForwardingFilter.hubId("/home-hub/cluster/members"));
+        assertNull(ClusterForwardingFilter.hubId("/actuator/health"));
+    }
+
+    private HttpResponse<String> send(String method, String url, String json) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private JsonNode json(HttpResponse<String> response) throws Exception {
+        assertEquals(200, response.statusCode(), response.body());
+        return objectMapper.readTree(response.body());
+    }
+}
@@ -0,0 +1,77 @@
+package com.axcelerate.homehub.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    void testOwner_SameForEveryRingOfSameNodes() {
+        var ring = new HashRing(List.of("n1", "n2", "n3"), 128);
+        var shuffled = new HashRing(List.of("n3", "n1", "n2"), 128);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(ring.owner("hub" + i), shuffled.owner("hub" + i));
+        }
+    }
+
+    @Test
+    void testKeys_SpreadEvenly() {
+        var ring = new HashRing(List.of("n1", "n2", "n3", "n4"), 128);
+        var counts = new HashMap<String, Integer>();
+
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.owner("hub" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        for (var count : counts.values()) {
+            assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2, "Uneven share " + counts);
+        }
+    }
+
+    @Test
+    void testAddingNode_OnlyMovesKeysToIt() {
+        var before = new HashRing(List.of("n1", "n2", "n3"), 128);
+        var after = new HashRing(List.of("n1", "n2", "n3", "n4"), 128);
+        var moved = 0;
+
+        for (int i = 0; i < KEYS; i++) {
+            var key = "hub" + i;
+            if (!before.owner(key).equals(after.owner(key))) {
+                assertEquals("n4", after.owner(key));
+                moved++;
+            }
+        }
+
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.2, "Moved " + moved);
+    }
+
+    @Test
+    void testRemovingNode_OnlyMovesItsKeys() {
+        var before = new HashRing(List.of("n1", "n2", "n3"), 128);
+        var after = new HashRing(List.of("n1", "n2"), 128);
+
+        for (int i = 0; i < KEYS; i++) {
+            var key = "hub" + i;
+            if (!before.owner(key).equals("n3")) {
+                assertEquals(before.owner(key), after.owner(key));
+            }
+        }
+    }
+
+    @Test
+    void testSingleNode_OwnsEverything() {
+        var ring = new HashRing(List.of("n1"), 1);
+
+        assertEquals("n1", ring.owner("hub1"));
+        assertEquals("n1", ring.owner(""));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of(), 128));
+    }
+}
@@ -0,0 +1,48 @@
+package com.axcelerate.homehub.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs requests through Tomcat and the real service, for behaviour that depends on when the
+ * servlet response is committed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class HomeHubControllerIntegrationTest {
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void testListBindings_InvalidPageRejected() throws Exception {
+        send("POST", "/home-hub/hubs/paging/appliances/lights");
+        send("POST", "/home-hub/hubs/paging/remote/1/appliance/lights");
+
+        var page = send("GET", "/home-hub/hubs/paging/remote/bindings?limit=1");
+        var zeroLimit = send("GET", "/home-hub/hubs/paging/remote/bindings?limit=0");
+        var badCursor = send("GET", "/home-hub/hubs/paging/remote/bindings?cursor=abc");
+
+        assertEquals(200, page.statusCode());
+        assertEquals("{\"bindings\":[{\"slotId\":\"1\",\"applianceName\":\"lights\",\"status\":\"OFF\"}],\"nextCursor\":null}", page.body());
+        assertEquals(400, zeroLimit.statusCode());
+        assertTrue(zeroLimit.body().contains("Page limit"), zeroLimit.body());
+        assertEquals(400, badCursor.statusCode());
+        assertTrue(badCursor.body().contains("abc"), badCursor.body());
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
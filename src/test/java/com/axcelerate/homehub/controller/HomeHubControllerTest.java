@@ -2,43 +2,73 @@ package com.axcelerate.homehub.controller;
 
 
 import com.axcelerate.homehub.dto.ApplianceRegisterResponse;
+import com.axcelerate.homehub.dto.ApplianceSlotResponse;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
 import com.axcelerate.homehub.dto.RemoteOperationResponse;
 import com.axcelerate.homehub.dto.RemoteSlotBindingResponse;
+import com.axcelerate.homehub.dto.ScheduleRequest;
+import com.axcelerate.homehub.dto.ScheduleResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.dto.SlotOperationResult;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.exception.BindException;
 
 import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.MessageRenderer;
+import com.axcelerate.homehub.service.ScheduleService;
+import com.axcelerate.homehub.service.VersionedBody;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.time.Instant;
+import java.util.List;
 
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@WebMvcTest(HomeHubController.class)
+@WebMvcTest(controllers = HomeHubController.class, properties = "home-hub.admission.enabled=true")
+@Import({MessageRenderer.class, HomeHubControllerTest.Metrics.class})
 public class HomeHubControllerTest {
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
     @Autowired
     private MockMvc mockMvc;
 
     @MockBean
     private HomeHubService service;
 
+    @MockBean
+    private ScheduleService scheduleService;
+
     @Test
     public void testBindRemoteSlotToAppliance_Success() throws Exception {
         // Mock the service response
         RemoteSlotBindingResponse response = new RemoteSlotBindingResponse(HttpStatus.CREATED, "Binding successful");
-        Mockito.when(service.bindRemoteSlotToAppliance(Mockito.anyString(), Mockito.anyString())).thenReturn(response);
+        Mockito.when(service.bindRemoteSlotToAppliance(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.isNull())).thenReturn(response);
 
         // Perform the POST request and assert the response
         mockMvc.perform(post("/home-hub/remote/slot1/appliance/device1"))
@@ -50,7 +80,7 @@ public class HomeHubControllerTest {
     public void testBindRemoteSlotToAppliance_BadRequest() throws Exception {
         String errorMessage = "Slot is not bound to any appliance. Please bind the slot first";
         RemoteSlotBindingResponse response = new RemoteSlotBindingResponse(HttpStatus.BAD_REQUEST, errorMessage);
-        Mockito.when(service.bindRemoteSlotToAppliance(Mockito.anyString(), Mockito.anyString())).thenReturn(response);
+        Mockito.when(service.bindRemoteSlotToAppliance(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.isNull())).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/remote/{slotId}/appliance/{applianceName}", "slot1", "appliance1")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -64,7 +94,7 @@ public class HomeHubControllerTest {
         String slotId = "slot1";
         int operation = 1;
         RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.OK, "Appliance turned ON");
-        Mockito.when(service.operateAppliance(slotId, operation)).thenReturn(response);
+        Mockito.when(service.operateAppliance("default", "default", slotId, operation, null)).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/remote/{slotId}/{operation}", slotId, operation)
                         .contentType(MediaType.APPLICATION_JSON))
@@ -78,7 +108,7 @@ public class HomeHubControllerTest {
         String slotId = "slot1";
         int operation = 2;
         RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.BAD_REQUEST, "Invalid operation");
-        Mockito.when(service.operateAppliance(slotId, operation)).thenReturn(response);
+        Mockito.when(service.operateAppliance("default", "default", slotId, operation, null)).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/remote/{slotId}/{operation}", slotId, operation)
                         .contentType(MediaType.APPLICATION_JSON))
@@ -90,7 +120,7 @@ public class HomeHubControllerTest {
     @Test
     public void testUndo_Success() throws Exception {
         RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.OK, "Previous operation undone");
-        Mockito.when(service.undoOperation()).thenReturn(response);
+        Mockito.when(service.undoOperation("default", "default")).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/remote/undo")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -102,7 +132,7 @@ public class HomeHubControllerTest {
     @Test
     public void testUndo_BadRequest() throws Exception {
         RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.BAD_REQUEST, "No previous action found");
-        Mockito.when(service.undoOperation()).thenReturn(response);
+        Mockito.when(service.undoOperation("default", "default")).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/remote/undo")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -111,11 +141,32 @@ public class HomeHubControllerTest {
                 .andExpect(jsonPath("$.operationResponse").value("No previous action found"));
     }
 
+    @Test
+    public void testUndo_PerRemote() throws Exception {
+        RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.OK, "Previous operation undone");
+        Mockito.when(service.undoOperation("default", "remote2")).thenReturn(response);
+
+        mockMvc.perform(post("/home-hub/remote/undo").param("remoteId", "remote2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationResponse").value("Previous operation undone"));
+    }
+
+    @Test
+    public void testRedo_Success() throws Exception {
+        RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.OK, "Appliance turned ON");
+        Mockito.when(service.redoOperation("default", "remote2")).thenReturn(response);
+
+        mockMvc.perform(post("/home-hub/remote/redo").param("remoteId", "remote2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationStatus").value("OK"))
+                .andExpect(jsonPath("$.operationResponse").value("Appliance turned ON"));
+    }
+
     @Test
     public void testRegisterAppliance_Success() throws Exception {
         String applianceName = "MyAppliance";
         ApplianceRegisterResponse response = new ApplianceRegisterResponse(HttpStatus.OK, applianceName, "Appliance registered successfully");
-        Mockito.when(service.registerAppliance(applianceName)).thenReturn(response);
+        Mockito.when(service.registerAppliance("default", applianceName, null)).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/appliances/{applianceName}", applianceName)
                         .contentType(MediaType.APPLICATION_JSON))
@@ -129,7 +180,7 @@ public class HomeHubControllerTest {
         String applianceName = "ExistingAppliance";
 
         ApplianceRegisterResponse response = new ApplianceRegisterResponse(HttpStatus.BAD_REQUEST, applianceName, "Appliance already registered");
-        Mockito.when(service.registerAppliance(applianceName)).thenReturn(response);
+        Mockito.when(service.registerAppliance("default", applianceName, null)).thenReturn(response);
 
         mockMvc.perform(post("/home-hub/appliances/{applianceName}", applianceName)
                         .contentType(MediaType.APPLICATION_JSON))
@@ -139,19 +190,206 @@ public class HomeHubControllerTest {
     }
 
     @Test
-    public void testGetUsedSlots() throws Exception {
+    public void testGetApplianceSlot_Success() throws Exception {
+        ApplianceSlotResponse response = new ApplianceSlotResponse(HttpStatus.OK, "lights", "slot1");
+        Mockito.when(service.findSlotForAppliance("default", "lights")).thenReturn(response);
 
-        // Define the sorted set to be returned
-        SortedSet<String> sortedSet = new TreeSet<>();
-        sortedSet.add("Slot1");
-        sortedSet.add("Slot2");
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/appliances/{applianceName}/slot", "lights"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.appliance").value("lights"))
+                .andExpect(jsonPath("$.slotId").value("slot1"));
+    }
 
-        Mockito.when(service.listAllSlots()).thenReturn(sortedSet);
+    @Test
+    public void testGetUsedSlots() throws Exception {
+
+        Mockito.when(service.getSlotList("default")).thenReturn(new VersionedBody<>(7, "Slot1,Slot2"));
 
         // Perform the GET request and assert the response
         mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/remote/slots"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7\""))
                 .andExpect(MockMvcResultMatchers.content().string("Slot1,Slot2"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/remote/slots").header("If-None-Match", "\"7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    public void testGetHubState_NotModifiedUntilVersionMoves() throws Exception {
+        Mockito.when(service.getHubState("default")).thenReturn(
+                new VersionedBody<>(3, "{\"bindings\":[],\"version\":3,\"full\":true}".getBytes()),
+                new VersionedBody<>(4, "{\"bindings\":[],\"version\":4,\"full\":true}".getBytes()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/remote/state").header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/remote/state").header("If-None-Match", "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(jsonPath("$.version").value(4));
+    }
+
+    @Test
+    public void testListBindings_StreamsServiceOutput() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            JsonGenerator out = invocation.getArgument(5);
+            out.writeStartObject();
+            out.writeArrayFieldStart("bindings");
+            out.writeEndArray();
+            out.writeStringField("nextCursor", "7");
+            out.writeEndObject();
+            return null;
+        }).when(service).listBindings(Mockito.eq("home42"), Mockito.eq(ApplianceStatus.ON),
+                Mockito.eq("lamp"), Mockito.eq("2"), Mockito.eq(5), Mockito.any(JsonGenerator.class));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/hubs/{hubId}/remote/bindings", "home42")
+                        .param("status", "ON").param("prefix", "lamp").param("cursor", "2").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.nextCursor").value("7"));
+    }
+
+    @Test
+    public void testListBindings_RejectedBeforeStreaming() throws Exception {
+        Mockito.doThrow(new BindException(HttpStatus.BAD_REQUEST, "Page limit must be between 1 and 1000"))
+                .when(service).listBindings(Mockito.eq("default"), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.eq(0), Mockito.any(JsonGenerator.class));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/remote/bindings").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Page limit must be between 1 and 1000"));
+    }
+
+    @Test
+    public void testHubScopedRoutes() throws Exception {
+        Mockito.when(service.registerAppliance("home42", "lights", null))
+                .thenReturn(new ApplianceRegisterResponse(HttpStatus.CREATED, "lights", "Appliance registered"));
+        Mockito.when(service.bindRemoteSlotToAppliance("home42", "slot1", "lights", null))
+                .thenReturn(new RemoteSlotBindingResponse(HttpStatus.CREATED, "Binding successful"));
+        Mockito.when(service.operateAppliance("home42", "remote1", "slot1", 1, null))
+                .thenReturn(new RemoteOperationResponse(HttpStatus.OK, "Appliance lights turned ON"));
+        Mockito.when(service.getSlotList("home42")).thenReturn(new VersionedBody<>(1, "slot1"));
+
+        mockMvc.perform(post("/home-hub/hubs/{hubId}/appliances/{applianceName}", "home42", "lights"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/home-hub/hubs/{hubId}/remote/{slotId}/appliance/{applianceName}", "home42", "slot1", "lights"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/home-hub/hubs/{hubId}/remote/{slotId}/{operation}", "home42", "slot1", 1).param("remoteId", "remote1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationResponse").value("Appliance lights turned ON"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/hubs/{hubId}/remote/slots", "home42"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("slot1"));
     }
 
+    @Test
+    public void testOperateAppliances_Batch() throws Exception {
+        var operations = List.of(new SlotOperation("slot1", 0), new SlotOperation("slot2", 0));
+        var response = new BatchOperationResponse(HttpStatus.MULTI_STATUS, 1, 1, List.of(
+                new SlotOperationResult("slot1", "lights", ApplianceStatus.OFF, null),
+                new SlotOperationResult("slot2", null, null, "Slot slot2 is not bound")));
+        Mockito.when(service.operateAppliances("default", "default", operations)).thenReturn(response);
+
+        mockMvc.perform(post("/home-hub/remote/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"slotId\":\"slot1\",\"operation\":0},{\"slotId\":\"slot2\",\"operation\":0}]"))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.results[0].status").value("OFF"))
+                .andExpect(jsonPath("$.results[0].error").doesNotExist())
+                .andExpect(jsonPath("$.results[1].error").value("Slot slot2 is not bound"));
+    }
+
+    @Test
+    public void testSaveAndRunScene() throws Exception {
+        var operations = List.of(new SlotOperation("slot1", 0));
+        Mockito.when(service.saveScene("home42", "leave-home", operations))
+                .thenReturn(new RemoteOperationResponse(HttpStatus.CREATED, "Scene saved"));
+        Mockito.when(service.runScene("home42", "default", "leave-home"))
+                .thenReturn(new BatchOperationResponse(HttpStatus.OK, 1, 0,
+                        List.of(new SlotOperationResult("slot1", "lights", ApplianceStatus.OFF, null))));
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/home-hub/hubs/{hubId}/scenes/{sceneName}", "home42", "leave-home")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"slotId\":\"slot1\",\"operation\":0}]"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.operationResponse").value("Scene saved"));
+        mockMvc.perform(post("/home-hub/hubs/{hubId}/scenes/{sceneName}", "home42", "leave-home"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].appliance").value("lights"));
+    }
+
+    @Test
+    public void testOperateAppliance_RejectedWithErrorBody() throws Exception {
+        Mockito.when(service.operateAppliance("default", "default", "slot9", 1, null))
+                .thenThrow(new BindException(HttpStatus.BAD_REQUEST, "Slot slot9 is not bound to any appliance. Please bind the slot first"));
+
+        mockMvc.perform(post("/home-hub/remote/slot9/1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.statusCode").value(400))
+                .andExpect(jsonPath("$.message").value("Slot slot9 is not bound to any appliance. Please bind the slot first"))
+                .andExpect(jsonPath("$.timestamp").exists());
+    }
+
+    @Test
+    public void testGetGroup_UnknownGroupIsBadRequest() throws Exception {
+        Mockito.when(service.getGroup("default", "garden"))
+                .thenThrow(new BindException(HttpStatus.BAD_REQUEST, "Group garden does not exist"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/groups/garden"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.statusCode").value(400))
+                .andExpect(jsonPath("$.message").value("Group garden does not exist"));
+    }
+
+    @Test
+    public void testCreateListAndCancelSchedule() throws Exception {
+        var fireAt = Instant.parse("2024-01-02T06:00:00Z");
+        Mockito.when(scheduleService.createSchedule("home42", "default", new ScheduleRequest("slot1", 1, "06:00", null, true)))
+                .thenReturn(new ScheduleResponse(HttpStatus.CREATED, "7", "slot1", 1, fireAt, true, "default"));
+        Mockito.when(scheduleService.listSchedules("home42"))
+                .thenReturn(List.of(new ScheduleResponse(HttpStatus.OK, "7", "slot1", 1, fireAt, true, "default")));
+        Mockito.when(scheduleService.cancelSchedule("home42", "7"))
+                .thenReturn(new RemoteOperationResponse(HttpStatus.OK, "Schedule 7 cancelled"));
+
+        mockMvc.perform(post("/home-hub/hubs/{hubId}/remote/schedules", "home42")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"slotId\":\"slot1\",\"operation\":1,\"at\":\"06:00\",\"daily\":true}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.scheduleId").value("7"))
+                .andExpect(jsonPath("$.fireAt").value("2024-01-02T06:00:00Z"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/home-hub/hubs/{hubId}/remote/schedules", "home42"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].slotId").value("slot1"));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/home-hub/hubs/{hubId}/remote/schedules/{scheduleId}", "home42", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationResponse").value("Schedule 7 cancelled"));
+    }
+
+    @Test
+    public void testCreateSchedule_RejectedWithErrorBody() throws Exception {
+        Mockito.when(scheduleService.createSchedule(Mockito.eq("default"), Mockito.eq("default"), Mockito.any()))
+                .thenThrow(new BindException(HttpStatus.BAD_REQUEST, "Schedule time PT0S is not valid, it must be in the future"));
+
+        mockMvc.perform(post("/home-hub/remote/schedules")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"slotId\":\"slot1\",\"operation\":1,\"after\":\"PT0S\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Schedule time PT0S is not valid, it must be in the future"));
+    }
+    @Test
+    public void testOperateAppliance_FloodIsRejectedBeforeService() throws Exception {
+        RemoteOperationResponse response = new RemoteOperationResponse(HttpStatus.OK, "Appliance turned ON");
+        Mockito.when(service.operateAppliance("default", "stuck", "slot7", 1, null)).thenReturn(response);
+
+        for (int i = 0; i < 10; i++) {
+            mockMvc.perform(post("/home-hub/remote/slot7/1").param("remoteId", "stuck"))
+                    .andExpect(status().isOk());
+        }
+        mockMvc.perform(post("/home-hub/remote/slot7/1").param("remoteId", "stuck"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.header().exists("Retry-After"))
+                .andExpect(jsonPath("$.statusCode").value(429));
+
+        Mockito.verify(service, Mockito.times(10)).operateAppliance("default", "stuck", "slot7", 1, null);
+    }
 }
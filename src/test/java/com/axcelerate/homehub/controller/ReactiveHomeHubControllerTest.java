@@ -0,0 +1,159 @@
+package com.axcelerate.homehub.controller;
+
+import com.axcelerate.homehub.dto.ApplianceStatusEvent;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
+import com.axcelerate.homehub.dto.RemoteOperationResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.dto.SlotOperationResult;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.exception.ApplianceNotRegisteredException;
+import com.axcelerate.homehub.push.EventSink;
+import com.axcelerate.homehub.push.StatusChangePublisher;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.ReactiveHomeHubService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WebFluxTest(ReactiveHomeHubController.class)
+@Import(ReactiveHomeHubService.class)
+public class ReactiveHomeHubControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private HomeHubService service;
+
+    @MockBean
+    private StatusChangePublisher publisher;
+
+    @Test
+    public void testOperateAppliance_Success() {
+        var response = new RemoteOperationResponse(HttpStatus.OK, "Appliance lights turned ON");
+        Mockito.when(service.operateAppliance("default", "default", "slot1", 1, null)).thenReturn(response);
+
+        webTestClient.post().uri("/home-hub/remote/slot1/1").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.operationResponse").isEqualTo("Appliance lights turned ON");
+    }
+
+    @Test
+    public void testOperateAppliance_HubRouteAndRemote() {
+        var response = new RemoteOperationResponse(HttpStatus.OK, "Appliance lights turned OFF");
+        Mockito.when(service.operateAppliance("hub1", "remote1", "slot1", 0, null)).thenReturn(response);
+
+        webTestClient.post().uri("/home-hub/hubs/hub1/remote/slot1/0?remoteId=remote1").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.operationResponse").isEqualTo("Appliance lights turned OFF");
+    }
+
+    @Test
+    public void testOperateAppliance_RunsOffTheEventLoop() {
+        var thread = new AtomicReference<String>();
+        Mockito.when(service.operateAppliance("default", "default", "slot1", 1, null)).thenAnswer(invocation -> {
+            thread.set(Thread.currentThread().getName());
+            return new RemoteOperationResponse(HttpStatus.OK, "Appliance lights turned ON");
+        });
+
+        webTestClient.post().uri("/home-hub/remote/slot1/1").exchange().expectStatus().isOk();
+
+        assertTrue(thread.get().startsWith("boundedElastic"), thread.get());
+    }
+
+    @Test
+    public void testListBindings() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            JsonGenerator out = invocation.getArgument(5);
+            out.writeStartObject();
+            out.writeArrayFieldStart("bindings");
+            out.writeStartObject();
+            out.writeStringField("slotId", "slot1");
+            out.writeEndObject();
+            out.writeEndArray();
+            out.writeNullField("nextCursor");
+            out.writeEndObject();
+            return null;
+        }).when(service).listBindings(Mockito.eq("default"), Mockito.eq(ApplianceStatus.ON), Mockito.isNull(),
+                Mockito.isNull(), Mockito.eq(HomeHubService.DEFAULT_PAGE_SIZE), Mockito.any(JsonGenerator.class));
+
+        webTestClient.get().uri("/home-hub/remote/bindings?status=ON").exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.bindings[0].slotId").isEqualTo("slot1")
+                .jsonPath("$.nextCursor").isEmpty();
+    }
+
+    @Test
+    public void testBindRemoteSlotToAppliance_NotRegistered() {
+        Mockito.when(service.bindRemoteSlotToAppliance("default", "slot1", "lights", null))
+                .thenThrow(new ApplianceNotRegisteredException(HttpStatus.BAD_REQUEST, "Appliance lights is not registered"));
+
+        webTestClient.post().uri("/home-hub/remote/slot1/appliance/lights").exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.statusCode").isEqualTo(400)
+                .jsonPath("$.message").isEqualTo("Appliance lights is not registered");
+    }
+
+    @Test
+    public void testGetUsedSlots() {
+        Mockito.when(service.listAllSlots("default")).thenReturn(new TreeSet<>(List.of("slot1", "slot2")));
+
+        webTestClient.get().uri("/home-hub/remote/slots").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("slot1,slot2");
+    }
+
+    @Test
+    public void testOperateAppliances_Batch() {
+        var operations = List.of(new SlotOperation("slot1", 0), new SlotOperation("slot2", 0));
+        var response = new BatchOperationResponse(HttpStatus.MULTI_STATUS, 1, 1, List.of(
+                new SlotOperationResult("slot1", "lights", ApplianceStatus.OFF, null),
+                new SlotOperationResult("slot2", null, null, "Slot slot2 is not bound")));
+        Mockito.when(service.operateAppliances("default", "default", operations)).thenReturn(response);
+
+        webTestClient.post().uri("/home-hub/remote/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"slotId\":\"slot1\",\"operation\":0},{\"slotId\":\"slot2\",\"operation\":0}]")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.MULTI_STATUS)
+                .expectBody()
+                .jsonPath("$.succeeded").isEqualTo(1)
+                .jsonPath("$.results[1].error").isEqualTo("Slot slot2 is not bound");
+    }
+
+    @Test
+    public void testStreamStatusChanges() {
+        Runnable cancel = Mockito.mock(Runnable.class);
+        Mockito.when(publisher.subscribe(Mockito.eq("hub1"), Mockito.any())).thenAnswer(invocation -> {
+            EventSink sink = invocation.getArgument(1);
+            sink.send("status", new ApplianceStatusEvent("slot1", "lights", ApplianceStatus.ON));
+            sink.close();
+            return cancel;
+        });
+
+        var body = webTestClient.get().uri("/home-hub/hubs/hub1/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assertTrue(body.contains("event:status"));
+        assertTrue(body.contains("\"slotId\":\"slot1\""));
+        Mockito.verify(cancel).run();
+    }
+}
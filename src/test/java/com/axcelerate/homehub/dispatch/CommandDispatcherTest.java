@@ -0,0 +1,259 @@
+package com.axcelerate.homehub.dispatch;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandDispatcherTest {
+
+    private static final String HUB = "home1";
+    private static final String REMOTE = "remote1";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ControlledDriver driver = new ControlledDriver();
+    private HomeHubRepositoryRegistry hubs;
+    private HomeHubRepository home;
+    private CommandDispatcher dispatcher;
+
+    @BeforeEach
+    public void setUp() {
+        hubs = new HomeHubRepositoryRegistry();
+        home = hubs.forHub(HUB);
+        for (int i = 1; i <= 4; i++) {
+            home.registerAppliance("appliance" + i);
+            home.bindSlot(String.valueOf(i), "appliance" + i);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void testOperation_SentAndAcknowledged() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        var batch = driver.next();
+        assertEquals(List.of(new DeviceCommand(HUB, "1", "appliance1", ApplianceStatus.ON, 1)), batch.commands);
+        assertEquals(new DeviceState(HUB, "1", "appliance1", ApplianceStatus.ON, null, true, 0, null), dispatcher.getState(HUB, "1").orElseThrow());
+
+        batch.acknowledge();
+        await(() -> !dispatcher.getState(HUB, "1").orElseThrow().pending());
+        assertEquals(ApplianceStatus.ON, dispatcher.getState(HUB, "1").orElseThrow().acknowledged());
+        assertTrue(dispatcher.getState(HUB, "2").isEmpty());
+    }
+
+    @Test
+    void testUndo_IsDispatched() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        driver.next().acknowledge();
+        home.undoPreviousAction(REMOTE);
+        var batch = driver.next();
+
+        assertEquals(ApplianceStatus.OFF, batch.commands.get(0).status());
+        batch.acknowledge();
+        await(() -> dispatcher.getState(HUB, "1").orElseThrow().acknowledged() == ApplianceStatus.OFF);
+    }
+
+    @Test
+    void testRapidToggles_CoalescedIntoLatestStatus() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        var first = driver.next();
+        home.updateApplianceStatus(REMOTE, "1", 0);
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        home.updateApplianceStatus(REMOTE, "1", 0);
+        first.acknowledge();
+        var second = driver.next();
+
+        assertEquals(List.of(new DeviceCommand(HUB, "1", "appliance1", ApplianceStatus.OFF, 4)), second.commands);
+        second.acknowledge();
+        await(() -> !dispatcher.getState(HUB, "1").orElseThrow().pending());
+        assertNull(driver.batches.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testTogglesBackToAcknowledgedStatus_SendNothing() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        driver.next().acknowledge();
+        await(() -> !dispatcher.getState(HUB, "1").orElseThrow().pending());
+        home.updateApplianceStatus(REMOTE, "2", 1);
+        var blocking = driver.next();
+        home.updateApplianceStatus(REMOTE, "1", 0);
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        blocking.acknowledge();
+
+        assertNull(driver.batches.poll(100, TimeUnit.MILLISECONDS));
+        assertFalse(dispatcher.getState(HUB, "1").orElseThrow().pending());
+    }
+
+    @Test
+    void testQueuedCommands_SentInOneBatch() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        var first = driver.next();
+        home.updateApplianceStatus(REMOTE, "2", 1);
+        home.updateApplianceStatus(REMOTE, "3", 1);
+        home.updateApplianceStatus(REMOTE, "4", 1);
+        first.acknowledge();
+
+        var second = driver.next();
+        assertEquals(List.of("2", "3", "4"), second.commands.stream().map(DeviceCommand::slotId).toList());
+    }
+
+    @Test
+    void testFailedCommand_RetriedUntilAcknowledged() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        driver.next().fail();
+        var retry = driver.next();
+        assertEquals(1, dispatcher.getState(HUB, "1").orElseThrow().attempts());
+        retry.acknowledge();
+
+        await(() -> !dispatcher.getState(HUB, "1").orElseThrow().pending());
+        var state = dispatcher.getState(HUB, "1").orElseThrow();
+        assertEquals(0, state.attempts());
+        assertNull(state.lastError());
+        assertEquals(1, count("retried"));
+    }
+
+    @Test
+    void testUnacknowledgedCommand_TimesOutAndIsRetried() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        driver.next();
+        var retry = driver.next();
+
+        assertTrue(dispatcher.getState(HUB, "1").orElseThrow().lastError().contains("TimeoutException"));
+        retry.acknowledge();
+        await(() -> !dispatcher.getState(HUB, "1").orElseThrow().pending());
+    }
+
+    @Test
+    void testFailingCommand_AbandonedAfterMaxAttempts() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        for (int i = 0; i < 3; i++) {
+            driver.next().fail();
+        }
+
+        await(() -> count("abandoned") == 1);
+        assertNull(driver.batches.poll(50, TimeUnit.MILLISECONDS));
+        var state = dispatcher.getState(HUB, "1").orElseThrow();
+        assertTrue(state.pending());
+        assertEquals(3, state.attempts());
+        assertTrue(state.lastError().contains("unreachable"));
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        driver.next().acknowledge();
+        await(() -> !dispatcher.getState(HUB, "1").orElseThrow().pending());
+    }
+
+    @Test
+    void testRemovedHub_ChannelsEvicted() throws Exception {
+        start(driver, 3);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        home.updateApplianceStatus(REMOTE, "2", 1);
+        var batch = driver.next();
+        hubs.removeHub(HUB);
+        batch.fail();
+
+        assertTrue(dispatcher.getState(HUB, "1").isEmpty());
+        assertTrue(dispatcher.getState(HUB, "2").isEmpty());
+        assertNull(driver.batches.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(0, count("retried"));
+    }
+
+    @Test
+    void testSimulatedDriver_ConvergesDespiteFailures() {
+        var simulated = new SimulatedDeviceDriver(Duration.ofMillis(1), 0.3);
+        start(simulated, 100);
+        var random = new Random(7);
+
+        for (int i = 0; i < 2_000; i++) {
+            home.updateApplianceStatus(REMOTE, String.valueOf(1 + random.nextInt(4)), random.nextInt(2));
+        }
+
+        for (int i = 1; i <= 4; i++) {
+            var slotId = String.valueOf(i);
+            var expected = home.getBindings().get(slotId).getStatus();
+            await(() -> simulated.getStatus(HUB, slotId).orElse(null) == expected
+                    && !dispatcher.getState(HUB, slotId).orElseThrow().pending());
+        }
+        assertTrue(simulated.getBatchCount() < 2_000);
+    }
+
+    private void start(DeviceDriver deviceDriver, int maxAttempts) {
+        dispatcher = new CommandDispatcher(hubs, deviceDriver, meterRegistry, 64, 1, Duration.ofMillis(200), maxAttempts, Duration.ofMillis(1));
+        dispatcher.start();
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get(CommandDispatcher.COMMANDS).tag("outcome", outcome).counter().count();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the dispatcher");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static final class ControlledDriver implements DeviceDriver {
+        private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+
+        @Override
+        public CompletableFuture<Void> send(List<DeviceCommand> commands) {
+            var batch = new Batch(List.copyOf(commands), new CompletableFuture<>());
+            batches.add(batch);
+            return batch.acknowledgement;
+        }
+
+        Batch next() throws InterruptedException {
+            var batch = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull(batch, "No batch was sent");
+            return batch;
+        }
+    }
+
+    private record Batch(List<DeviceCommand> commands, CompletableFuture<Void> acknowledgement) {
+        void acknowledge() {
+            acknowledgement.complete(null);
+        }
+
+        void fail() {
+            acknowledgement.completeExceptionally(new IOException("Appliance unreachable"));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.axcelerate.homehub.frame;
+
+import com.axcelerate.homehub.metrics.HomeHubMetrics;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.axcelerate.homehub.service.HomeHubService;
+import com.axcelerate.homehub.service.MessageRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameServerTest {
+
+    private static final int SESSION = 1;
+
+    private HomeHubRepositoryRegistry hubs;
+    private FrameServer server;
+    private DatagramChannel client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        hubs = new HomeHubRepositoryRegistry();
+        var service = new HomeHubService(new MessageRenderer(messageSource, Locale.US), hubs,
+                new HomeHubMetrics(new SimpleMeterRegistry(), hubs));
+        server = new FrameServer(service, "elsewhere"::equals, new InetSocketAddress("127.0.0.1", 0), 2);
+        server.start();
+        client = DatagramChannel.open().connect(server.getLocalAddress());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    void testRegisterBindOperateUndo_InOneDatagram() throws Exception {
+        var response = exchange(
+                frame(FrameHandler.REGISTER, 1, "", "lamp"),
+                frame(FrameHandler.BIND, 2, "", "1", "lamp"),
+                frame(FrameHandler.OPERATE, 3, "", "", "1", 1),
+                frame(FrameHandler.UNDO, 4, "", ""));
+
+        assertHeader(response, FrameHandler.REGISTER, 1, 201);
+        assertHeader(response, FrameHandler.BIND, 2, 201);
+        assertHeader(response, FrameHandler.OPERATE, 3, 200);
+        assertEquals(1, response.get());
+        assertEquals("lamp", string(response));
+        assertHeader(response, FrameHandler.UNDO, 4, 200);
+        assertEquals(0, response.get());
+        assertEquals("lamp", string(response));
+        assertFalse(response.hasRemaining());
+    }
+
+    @Test
+    void testRetriedOperate_AppliedOnce() throws Exception {
+        var version = hubs.forHub("home42").getVersion();
+        exchange(frame(FrameHandler.REGISTER, 1, "home42", "lamp"), frame(FrameHandler.BIND, 2, "home42", "1", "lamp"));
+        var operate = frame(FrameHandler.OPERATE, 3, "home42", "", "1", 1);
+
+        exchange(operate);
+        exchange(operate);
+        exchange(frame(FrameHandler.UNDO, 4, "home42", ""));
+        var undone = exchange(frame(FrameHandler.UNDO, 5, "home42", ""));
+        var versioned = exchange(frame(FrameHandler.VERSION, 6, "home42"));
+
+        assertHeader(undone, FrameHandler.UNDO, 5, 400);
+        assertFalse(undone.hasRemaining());
+        assertHeader(versioned, FrameHandler.VERSION, 6, 200);
+        assertEquals(version + 3, versioned.getLong());
+    }
+
+    @Test
+    void testRetriedUndo_UndoesOnce() throws Exception {
+        exchange(frame(FrameHandler.REGISTER, 1, "", "lamp"), frame(FrameHandler.BIND, 2, "", "1", "lamp"));
+        exchange(frame(FrameHandler.OPERATE, 3, "", "", "1", 1), frame(FrameHandler.OPERATE, 4, "", "", "1", 0));
+        var undo = frame(FrameHandler.UNDO, 5, "", "");
+
+        exchange(undo);
+        var retried = exchange(undo);
+        var status = exchange(frame(FrameHandler.REDO, 6, "", ""));
+
+        assertHeader(retried, FrameHandler.UNDO, 5, 200);
+        assertEquals(1, retried.get());
+        assertHeader(status, FrameHandler.REDO, 6, 200);
+        assertEquals(0, status.get());
+    }
+
+    @Test
+    void testRebootedRemote_ReusedRequestIdApplied() throws Exception {
+        exchange(frame(FrameHandler.REGISTER, 1, "", "lamp"), frame(FrameHandler.BIND, 2, "", "1", "lamp"));
+        exchange(frame(FrameHandler.OPERATE, 3, "", "", "1", 1));
+
+        var rebooted = exchange(sessionFrame(SESSION + 1, FrameHandler.OPERATE, 3, "", "", "1", 0));
+
+        assertHeader(rebooted, FrameHandler.OPERATE, 3, 200);
+        assertEquals(0, rebooted.get());
+        assertEquals("lamp", string(rebooted));
+    }
+
+    @Test
+    void testInvalidFrames_Answered() throws Exception {
+        var response = exchange(
+                frame(FrameHandler.OPERATE, 1, "", "", "9", 1),
+                frame(FrameHandler.OPERATE, 2, "", "", "9", 2),
+                frame(0x7F, 3),
+                frame(FrameHandler.BIND, 4, "", ""),
+                frame(FrameHandler.VERSION, 5, "elsewhere"));
+
+        assertHeader(response, FrameHandler.OPERATE, 1, 400);
+        assertHeader(response, FrameHandler.OPERATE, 2, 400);
+        assertHeader(response, 0x7F, 3, 400);
+        assertHeader(response, FrameHandler.BIND, 4, 400);
+        assertHeader(response, FrameHandler.VERSION, 5, 421);
+        assertFalse(response.hasRemaining());
+    }
+
+    /**
+     * Sends the frames in one datagram and returns the answer.
+     */
+    private ByteBuffer exchange(byte[]... frames) throws Exception {
+        var request = new ByteArrayOutputStream();
+        for (var frame : frames) {
+            request.write(frame);
+        }
+        client.write(ByteBuffer.wrap(request.toByteArray()));
+        var response = ByteBuffer.allocate(FrameServer.MAX_DATAGRAM);
+        client.read(response);
+        return response.flip();
+    }
+
+    private static byte[] frame(int opcode, int requestId, Object... fields) {
+        return sessionFrame(SESSION, opcode, requestId, fields);
+    }
+
+    /**
+     * @param fields strings, or integers written as one byte
+     */
+    private static byte[] sessionFrame(int session, int opcode, int requestId, Object... fields) {
+        var body = new ByteArrayOutputStream();
+        body.write(opcode);
+        body.write(requestId >>> 8);
+        body.write(requestId);
+        body.write(session >>> 8);
+        body.write(session);
+        for (var field : fields) {
+            if (field instanceof String text) {
+                var bytes = text.getBytes(StandardCharsets.UTF_8);
+                body.write(bytes.length);
+                body.writeBytes(bytes);
+            } else {
+                body.write((Integer) field);
+            }
+        }
+        var frame = new ByteArrayOutputStream();
+        frame.write(body.size() >>> 8);
+        frame.write(body.size());
+        frame.writeBytes(body.toByteArray());
+        return frame.toByteArray();
+    }
+
+    private static void assertHeader(ByteBuffer response, int opcode, int requestId, int status) {
+        var length = Short.toUnsignedInt(response.getShort());
+        assertTrue(length <= response.remaining());
+        assertEquals(opcode, Byte.toUnsignedInt(response.get()));
+        assertEquals(requestId, Short.toUnsignedInt(response.getShort()));
+        assertEquals(status, Short.toUnsignedInt(response.getShort()));
+    }
+
+    private static String string(ByteBuffer response) {
+        var bytes = new byte[Byte.toUnsignedInt(response.get())];
+        response.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
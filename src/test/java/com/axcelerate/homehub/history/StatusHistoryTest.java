@@ -0,0 +1,212 @@
+package com.axcelerate.homehub.history;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.axcelerate.homehub.enums.ApplianceStatus.OFF;
+import static com.axcelerate.homehub.enums.ApplianceStatus.ON;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusHistoryTest {
+
+    private static final String HUB = "home1";
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long START = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private final MutableClock clock = new MutableClock(START);
+    private HomeHubRepositoryRegistry hubs;
+    private StatusHistory history;
+
+    @BeforeEach
+    public void setUp() {
+        hubs = new HomeHubRepositoryRegistry();
+        history = new StatusHistory(hubs, Duration.ofDays(1), Duration.ofDays(3), clock);
+        history.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        history.stop();
+    }
+
+    @Test
+    void testOperateAndUndo_Recorded() {
+        var home = hubs.forHub(HUB);
+        home.registerAppliance("heater");
+        home.bindSlot("1", "heater");
+        clock.advance(1_000);
+        home.updateApplianceStatus("remote1", "1", 1);
+        clock.advance(60_000);
+        home.undoPreviousAction("remote1");
+
+        var transitions = history.getTransitions(HUB, "heater", START, START + DAY, 10).orElseThrow();
+        assertEquals(List.of(new StatusTransition(START + 1_000, ON), new StatusTransition(START + 61_000, OFF)), transitions);
+        var usage = history.getUsage(HUB, "heater", START, START + DAY).orElseThrow();
+        assertEquals(new StatusUsage(60_000, 1, 2, OFF), usage);
+        assertTrue(history.getUsage(HUB, "fan", START, START + DAY).isEmpty());
+        assertTrue(history.getUsage("home2", "heater", START, START + DAY).isEmpty());
+    }
+
+    @Test
+    void testUsage_StatusBeforeRangeCountsFromStart() {
+        change(ON, START + 1_000);
+        change(OFF, START + 5_000);
+        change(ON, START + 9_000);
+
+        assertEquals(new StatusUsage(1_000, 1, 1, OFF), history.getUsage(HUB, "heater", START + 4_000, START + 6_000).orElseThrow());
+        assertEquals(new StatusUsage(2_000, 0, 0, ON), history.getUsage(HUB, "heater", START + 9_000, START + 11_000).orElseThrow());
+        assertEquals(new StatusUsage(0, 0, 0, null), history.getUsage(HUB, "heater", START, START + 500).orElseThrow());
+        assertEquals(new StatusUsage(3_999, 0, 1, ON), history.getUsage(HUB, "heater", START, START + 5_000 - 1).orElseThrow());
+    }
+
+    @Test
+    void testUsage_SameAsDecodingEveryChange() {
+        var random = new Random(42);
+        var times = new ArrayList<Long>();
+        var statuses = new ArrayList<ApplianceStatus>();
+        var time = START;
+        for (int i = 0; i < 5_000; i++) {
+            time += random.nextInt(120_000);
+            var status = random.nextInt(3) == 0 ? statuses.isEmpty() ? OFF : statuses.get(statuses.size() - 1)
+                    : random.nextBoolean() ? ON : OFF;
+            change(status, time);
+            times.add(time);
+            statuses.add(status);
+        }
+        var end = time;
+        for (int i = 0; i < 200; i++) {
+            var from = START - 1_000 + (long) (random.nextDouble() * (end - START + 2_000));
+            var to = from + 1 + (long) (random.nextDouble() * (end + 1_000 - from));
+
+            assertEquals(naiveUsage(times, statuses, from, to), history.getUsage(HUB, "heater", from, to).orElseThrow(),
+                    "(" + from + ", " + to + "]");
+        }
+        var all = history.getTransitions(HUB, "heater", START - 1, end, Integer.MAX_VALUE).orElseThrow();
+        assertEquals(times.size(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(new StatusTransition(times.get(i), statuses.get(i)), all.get(i));
+        }
+    }
+
+    @Test
+    void testSeries_SealsPerPartitionAndCompresses() {
+        var series = new StatusSeries(DAY);
+        for (int i = 0; i < 300; i++) {
+            series.append(START + i * 1_000L, i % 2 == 0 ? ON : OFF);
+        }
+        series.append(START + DAY, ON);
+        var snapshot = series.snapshot();
+
+        assertEquals(301, series.size());
+        // the first block is full, the second holds the rest of the first day, the head holds the second day
+        assertEquals(new StatusUsage(150_000, 299, 300, OFF), snapshot.usage(START - 1, START + 300_000));
+        assertEquals(List.of(new StatusTransition(START + DAY, ON)), snapshot.transitions(START + 300_000, START + 2 * DAY, 10));
+        assertTrue(series.encodedSize() < 300 * 3, "Sealed blocks take " + series.encodedSize() + " bytes");
+    }
+
+    @Test
+    void testClockSetBack_KeepsTimeOrder() {
+        change(ON, START + 10_000);
+        change(OFF, START + 5_000);
+
+        assertEquals(List.of(new StatusTransition(START + 10_000, ON), new StatusTransition(START + 10_000, OFF)),
+                history.getTransitions(HUB, "heater", START, START + DAY, 10).orElseThrow());
+    }
+
+    @Test
+    void testDropExpired_KeepsStatusAtCutoff() {
+        change(ON, START + 1_000);
+        change(OFF, START + DAY + 1_000);
+        change(ON, START + 2 * DAY + 1_000);
+        change(ON, START + 5 * DAY);
+
+        clock.set(START + 4 * DAY + 1);
+        assertEquals(1, history.dropExpired());
+        clock.set(START + 5 * DAY + 1);
+        assertEquals(1, history.dropExpired());
+
+        assertEquals(List.of(new StatusTransition(START + 2 * DAY + 1_000, ON)),
+                history.getTransitions(HUB, "heater", START, START + 3 * DAY, 10).orElseThrow());
+        var usage = history.getUsage(HUB, "heater", START + 2 * DAY, START + 3 * DAY).orElseThrow();
+        assertEquals(new StatusUsage(DAY - 1_000, 1, 1, ON), usage);
+    }
+
+    private void change(ApplianceStatus status, long time) {
+        clock.set(time);
+        history.statusChanged(HUB, "1", "heater", status);
+    }
+
+    private static StatusUsage naiveUsage(List<Long> times, List<ApplianceStatus> statuses, long from, long to) {
+        ApplianceStatus current = null;
+        long since = 0;
+        long onMillis = 0;
+        int toggles = 0;
+        int changes = 0;
+        for (int i = 0; i < times.size() && times.get(i) <= to; i++) {
+            long time = times.get(i);
+            if (time > from) {
+                if (current == ON) {
+                    onMillis += time - Math.max(since, from);
+                }
+                if (current != null && current != statuses.get(i)) {
+                    toggles++;
+                }
+                changes++;
+            }
+            current = statuses.get(i);
+            since = time;
+        }
+        if (current == ON) {
+            onMillis += to - Math.max(since, from);
+        }
+        return new StatusUsage(onMillis, toggles, changes, current);
+    }
+
+    private static final class MutableClock extends Clock {
+        private long now;
+
+        MutableClock(long now) {
+            this.now = now;
+        }
+
+        void advance(long millis) {
+            now += millis;
+        }
+
+        void set(long millis) {
+            now = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return now;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(now);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.axcelerate.homehub.loadtest;
+
+import com.axcelerate.homehub.HomeHubApplication;
+import jakarta.servlet.Filter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the platform-thread and virtual-thread execution modes under load. Every request is
+ * delayed by {@link #DEVICE_LATENCY} in a filter to stand in for a blocking device call, and
+ * Tomcat is limited to {@link #WORKER_THREADS} platform workers.
+ * <p>
+ * Excluded from the default build; run with
+ * {@code mvn test -Dgroups=load -Dsurefire.excludedGroups= -Dtest=ExecutionModeLoadTest}.
+ */
+@Tag("load")
+class ExecutionModeLoadTest {
+
+    private static final Duration DEVICE_LATENCY = Duration.ofMillis(20);
+    private static final int WORKER_THREADS = 16;
+    private static final int CLIENTS = 256;
+    private static final Duration RUN_TIME = Duration.ofSeconds(10);
+    private static final int SLOTS = 64;
+
+    @Test
+    void compareExecutionModes() throws Exception {
+        var platform = run(false);
+        var virtual = run(true);
+
+        System.out.printf("%-10s %12s %10s %10s %10s%n", "mode", "requests/s", "p50 ms", "p99 ms", "errors");
+        System.out.println(platform.format("platform"));
+        System.out.println(virtual.format("virtual"));
+
+        assertEquals(0, platform.errors());
+        assertEquals(0, virtual.errors());
+        assertTrue(virtual.throughput() > platform.throughput());
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        var context = new SpringApplicationBuilder(HomeHubApplication.class, SimulatedDeviceLatency.class)
+                .properties("server.port=0",
+                        "server.tomcat.threads.max=" + WORKER_THREADS,
+                        "home-hub.threads.virtual=" + virtualThreads,
+                        "logging.level.root=WARN")
+                .run();
+        try {
+            var port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            var base = "http://localhost:" + port + "/home-hub/hubs/load";
+            var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            for (int slot = 0; slot < SLOTS; slot++) {
+                send(client, base + "/appliances/appliance" + slot);
+                send(client, base + "/remote/" + slot + "/appliance/appliance" + slot);
+            }
+            return drive(client, base);
+        } finally {
+            context.close();
+        }
+    }
+
+    private Result drive(HttpClient client, String base) throws InterruptedException {
+        var latencies = new AtomicLongArray(CLIENTS * 4_096);
+        var recorded = new AtomicLong();
+        var errors = new AtomicLong();
+        var deadline = System.nanoTime() + RUN_TIME.toNanos();
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                var slot = c % SLOTS;
+                clients.execute(() -> {
+                    var operation = 0;
+                    while (System.nanoTime() < deadline) {
+                        var started = System.nanoTime();
+                        try {
+                            var status = send(client, base + "/remote/" + slot + "/" + operation + "?remoteId=load" + slot);
+                            if (status != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        var index = recorded.getAndIncrement();
+                        if (index < latencies.length()) {
+                            latencies.set((int) index, System.nanoTime() - started);
+                        }
+                        operation ^= 1;
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(RUN_TIME.toSeconds() + 30, TimeUnit.SECONDS);
+        }
+        var count = (int) Math.min(recorded.get(), latencies.length());
+        var sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        return new Result(recorded.get() / (double) RUN_TIME.toSeconds(),
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99), errors.get());
+    }
+
+    private static int send(HttpClient client, String uri) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create(uri)).POST(HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)))] / 1_000_000.0;
+    }
+
+    private record Result(double throughput, double p50, double p99, long errors) {
+        String format(String mode) {
+            return String.format("%-10s %12.0f %10.1f %10.1f %10d", mode, throughput, p50, p99, errors);
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class SimulatedDeviceLatency {
+        @Bean
+        Filter simulatedDeviceLatencyFilter() {
+            return (request, response, chain) -> {
+                try {
+                    Thread.sleep(DEVICE_LATENCY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                chain.doFilter(request, response);
+            };
+        }
+    }
+}
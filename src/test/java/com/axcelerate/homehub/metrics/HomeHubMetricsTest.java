@@ -0,0 +1,76 @@
+package com.axcelerate.homehub.metrics;
+
+import com.axcelerate.homehub.enums.HubOperation;
+import com.axcelerate.homehub.exception.NoLastOperationException;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HomeHubMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private HomeHubRepositoryRegistry hubs;
+    private HomeHubMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        hubs = new HomeHubRepositoryRegistry();
+        metrics = new HomeHubMetrics(meterRegistry, hubs);
+    }
+
+    @Test
+    void testTimers_RegisteredForEveryOutcomeUpFront() {
+        var timers = meterRegistry.get(HomeHubMetrics.OPERATIONS).timers();
+
+        assertEquals(HubOperation.values().length * 6, timers.size());
+        assertEquals(0, timers.stream().mapToLong(timer -> timer.count()).sum());
+    }
+
+    @Test
+    void testPercentiles_PublishedWhenConfigured() {
+        var withPercentiles = new SimpleMeterRegistry();
+        var configured = new HomeHubMetrics(withPercentiles, hubs, new double[]{0.99});
+
+        configured.succeeded(HubOperation.OPERATE, configured.start());
+
+        var snapshot = withPercentiles.get(HomeHubMetrics.OPERATIONS).tags("operation", "operate", "outcome", "success").timer().takeSnapshot();
+        assertEquals(1, snapshot.percentileValues().length);
+        assertEquals(0.99, snapshot.percentileValues()[0].percentile());
+    }
+
+    @Test
+    void testFailed_TaggedByErrorType() {
+        metrics.failed(HubOperation.REDO, new NoLastOperationException(HttpStatus.BAD_REQUEST, "nothing to redo"), metrics.start());
+        metrics.failed(HubOperation.REDO, new IllegalStateException(), metrics.start());
+
+        assertEquals(1, meterRegistry.get(HomeHubMetrics.OPERATIONS)
+                .tags("operation", "redo", "outcome", "rejected", "error", "NoLastOperationException").timer().count());
+        assertEquals(1, meterRegistry.get(HomeHubMetrics.OPERATIONS)
+                .tags("operation", "redo", "outcome", "error", "error", "other").timer().count());
+    }
+
+    @Test
+    void testGauges_SumOverHubs() {
+        var home = hubs.forHub("home");
+        home.registerAppliance("lights");
+        home.registerAppliance("heater");
+        home.bindSlot("1", "lights");
+        home.bindSlot("2", "heater");
+        home.updateApplianceStatus("remote", "1", 1);
+        var office = hubs.forHub("office");
+        office.registerAppliance("fan");
+        office.bindSlot("1", "fan");
+        office.updateApplianceStatus("remote", "1", 1);
+        office.updateApplianceStatus("remote", "1", 0);
+
+        assertEquals(2, meterRegistry.get("home_hub.hubs").gauge().value());
+        assertEquals(3, meterRegistry.get("home_hub.appliances.registered").gauge().value());
+        assertEquals(3, meterRegistry.get("home_hub.slots.bound").gauge().value());
+        assertEquals(1, meterRegistry.get("home_hub.slots.on").gauge().value());
+    }
+}
@@ -0,0 +1,168 @@
+package com.axcelerate.homehub.persistence;
+
+import com.axcelerate.homehub.dto.Appliance;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HubStatePersistenceTest {
+
+    private static final String REMOTE = "remote1";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecoverFromLogOnly() throws Exception {
+        var hubs = new HomeHubRepositoryRegistry();
+        var persistence = start(hubs);
+        var home = hubs.forHub("home1");
+        home.registerAppliance("lights");
+        home.registerAppliance("heater");
+        home.bindSlot("1", "lights");
+        home.bindSlot("2", "heater");
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        home.updateApplianceStatus(REMOTE, "2", 1);
+        home.undoPreviousAction(REMOTE);
+        hubs.forHub("home2").registerAppliance("fan");
+        persistence.stop();
+
+        var recovered = new HomeHubRepositoryRegistry();
+        start(recovered).stop();
+
+        var recoveredHome = recovered.findHub("home1").orElseThrow();
+        assertTrue(recoveredHome.isApplianceRegistered("heater"));
+        assertEquals(new Appliance("lights", ApplianceStatus.ON), recoveredHome.getBindings().get("1"));
+        assertEquals(new Appliance("heater", ApplianceStatus.OFF), recoveredHome.getBindings().get("2"));
+        assertEquals("2", recoveredHome.findSlotForAppliance("heater").orElseThrow());
+        assertTrue(recovered.findHub("home2").orElseThrow().isApplianceRegistered("fan"));
+    }
+
+    @Test
+    void testRecoverFromSnapshotAndLogTail() throws Exception {
+        var hubs = new HomeHubRepositoryRegistry();
+        var persistence = start(hubs);
+        var home = hubs.forHub("home1");
+        for (int i = 0; i < 1_000; i++) {
+            home.registerAppliance("appliance" + i);
+            home.bindSlot("slot" + i, "appliance" + i);
+        }
+        var firstSnapshot = persistence.snapshot();
+        home.updateApplianceStatus(REMOTE, "slot1", 1);
+        var secondSnapshot = persistence.snapshot();
+        home.updateApplianceStatus(REMOTE, "slot2", 1);
+        persistence.stop();
+
+        assertEquals(List.of(secondSnapshot), SnapshotStore.generations(directory));
+        assertFalse(WriteAheadLog.generations(directory).contains(firstSnapshot - 1));
+
+        var recovered = new HomeHubRepositoryRegistry();
+        start(recovered).stop();
+
+        var recoveredHome = recovered.findHub("home1").orElseThrow();
+        assertEquals(1_000, recoveredHome.getBindings().size());
+        assertEquals(ApplianceStatus.ON, recoveredHome.getBindings().get("slot1").getStatus());
+        assertEquals(ApplianceStatus.ON, recoveredHome.getBindings().get("slot2").getStatus());
+        assertEquals(ApplianceStatus.OFF, recoveredHome.getBindings().get("slot3").getStatus());
+    }
+
+    @Test
+    void testRemovedHub_StaysRemovedAfterRecovery() throws Exception {
+        var hubs = new HomeHubRepositoryRegistry();
+        var persistence = start(hubs);
+        hubs.forHub("home1").registerAppliance("lights");
+        hubs.forHub("home2").registerAppliance("fan");
+        hubs.removeHub("home1");
+        persistence.stop();
+
+        var recovered = new HomeHubRepositoryRegistry();
+        start(recovered).stop();
+
+        assertTrue(recovered.findHub("home1").isEmpty());
+        assertTrue(recovered.findHub("home2").orElseThrow().isApplianceRegistered("fan"));
+    }
+
+    @Test
+    void testReplayStopsAtTornRecord() throws Exception {
+        var log = new WriteAheadLog(directory, 1, 4_096, 16, true);
+        log.append(LogRecord.register("home1", "lights"));
+        log.append(LogRecord.register("home1", "heater"));
+        log.close();
+        var file = WriteAheadLog.file(directory, 1);
+        var bytes = Files.readAllBytes(file);
+        var secondFrame = 8 + ByteBuffer.wrap(bytes).getInt(0);
+        bytes[secondFrame + 10] ^= 0x7F;
+        Files.write(file, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        var replayed = WriteAheadLog.replay(file, record -> assertEquals("lights", record.applianceName()));
+
+        assertEquals(1, replayed);
+    }
+
+    @Test
+    void testOverLongName_RejectedBeforeTheHubChanges() throws Exception {
+        var hubs = new HomeHubRepositoryRegistry();
+        var persistence = start(hubs);
+        var home = hubs.forHub("home1");
+        var tooLong = "x".repeat(LogRecord.MAX_STRING_BYTES + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> home.registerAppliance(tooLong));
+        home.registerAppliance("lights");
+        persistence.stop();
+
+        assertFalse(home.isApplianceRegistered(tooLong));
+        var recovered = new HomeHubRepositoryRegistry();
+        start(recovered).stop();
+        assertTrue(recovered.findHub("home1").orElseThrow().isApplianceRegistered("lights"));
+    }
+
+    @Test
+    void testFailedWriter_AppendsFailInsteadOfBlocking() throws Exception {
+        var log = new WriteAheadLog(directory, 1, 4_096, 1, true);
+        // a record the writer cannot encode kills it
+        log.append(new LogRecord(null, "home1", "", "lights", ApplianceStatus.OFF));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 3; i++) {
+                assertThrows(IllegalStateException.class, () -> {
+                    while (true) {
+                        try {
+                            log.append(LogRecord.register("home1", "heater"));
+                        } catch (LogFullException e) {
+                            // the writer has not reached the bad record yet
+                        }
+                    }
+                });
+            }
+        });
+        log.close();
+    }
+
+    @Test
+    void testFullQueue_AppendsFailWithoutWaiting() throws Exception {
+        var log = new WriteAheadLog(directory, 1, 4_096, 1, true);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(LogFullException.class, () -> {
+            while (true) {
+                log.append(LogRecord.register("home1", "heater"));
+            }
+        }));
+        log.close();
+    }
+
+    private HubStatePersistence start(HomeHubRepositoryRegistry hubs) throws Exception {
+        var persistence = new HubStatePersistence(hubs, directory, Duration.ofHours(1), 4_096, 65_536, true);
+        persistence.start();
+        return persistence;
+    }
+}
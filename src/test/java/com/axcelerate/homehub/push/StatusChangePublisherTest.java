@@ -0,0 +1,221 @@
+package com.axcelerate.homehub.push;
+
+import com.axcelerate.homehub.dto.ApplianceStatusEvent;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusChangePublisherTest {
+
+    private static final String HUB = "home1";
+    private static final String REMOTE = "remote1";
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private HomeHubRepositoryRegistry hubs;
+    private StatusChangePublisher publisher;
+
+    @BeforeEach
+    public void setUp() {
+        hubs = new HomeHubRepositoryRegistry();
+        publisher = new StatusChangePublisher(hubs, 2, executor);
+        publisher.start();
+        var home = hubs.forHub(HUB);
+        home.bindSlot("1", "lights");
+        home.bindSlot("2", "heater");
+        home.bindSlot("3", "fan");
+    }
+
+    @Test
+    void testStatusChange_DeliveredToHubSubscribersOnly() {
+        var sink = new RecordingSink();
+        var otherSink = new RecordingSink();
+        publisher.subscribe(HUB, sink);
+        publisher.subscribe("home2", otherSink);
+
+        hubs.forHub(HUB).updateApplianceStatus(REMOTE, "1", 1);
+        executor.runAll();
+
+        assertEquals(List.of("status:" + new ApplianceStatusEvent("1", "lights", ApplianceStatus.ON)), sink.events);
+        assertTrue(otherSink.events.isEmpty());
+    }
+
+    @Test
+    void testStatusChange_RapidFlipsAreCoalesced() {
+        var sink = new RecordingSink();
+        publisher.subscribe(HUB, sink);
+        var home = hubs.forHub(HUB);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        home.updateApplianceStatus(REMOTE, "1", 0);
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        executor.runAll();
+
+        assertEquals(List.of("status:" + new ApplianceStatusEvent("1", "lights", ApplianceStatus.ON)), sink.events);
+    }
+
+    @Test
+    void testStatusChange_FullBufferAsksForResync() {
+        var sink = new RecordingSink();
+        publisher.subscribe(HUB, sink);
+        var home = hubs.forHub(HUB);
+
+        home.updateApplianceStatus(REMOTE, "1", 1);
+        home.updateApplianceStatus(REMOTE, "2", 1);
+        home.updateApplianceStatus(REMOTE, "3", 1);
+        executor.runAll();
+
+        assertEquals("resync:" + HUB, sink.events.get(0));
+        assertEquals(3, sink.events.size());
+        assertFalse(sink.events.contains("status:" + new ApplianceStatusEvent("3", "fan", ApplianceStatus.ON)));
+    }
+
+    @Test
+    void testStatusChange_FailingSinkIsUnsubscribed() {
+        var sink = new RecordingSink();
+        sink.fail = true;
+        publisher.subscribe(HUB, sink);
+
+        hubs.forHub(HUB).updateApplianceStatus(REMOTE, "1", 1);
+        executor.runAll();
+
+        assertTrue(sink.closed);
+        assertEquals(0, publisher.getSubscriberCount(HUB));
+    }
+
+    @Test
+    void testSubscription_CloseRemovesSubscriber() {
+        var sink = new RecordingSink();
+        var subscription = publisher.subscribe(HUB, sink);
+        assertEquals(1, publisher.getSubscriberCount(HUB));
+
+        subscription.run();
+        hubs.forHub(HUB).updateApplianceStatus(REMOTE, "1", 1);
+
+        assertEquals(0, publisher.getSubscriberCount(HUB));
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    void testStatusChange_BlockedSinkDroppedAfterWriteTimeout() throws Exception {
+        var delivery = Executors.newFixedThreadPool(1);
+        var timed = new StatusChangePublisher(hubs, 2, delivery, Duration.ofMillis(100));
+        timed.start();
+        try {
+            var blocked = new BlockingSink();
+            var sink = new RecordingSink();
+            timed.subscribe(HUB, blocked);
+            hubs.forHub(HUB).updateApplianceStatus(REMOTE, "1", 1);
+            assertTrue(blocked.sending.await(5, TimeUnit.SECONDS));
+            timed.subscribe(HUB, sink);
+
+            hubs.forHub(HUB).updateApplianceStatus(REMOTE, "2", 1);
+
+            // the only delivery thread is stuck in the blocked send until the watchdog frees it
+            assertTrue(blocked.closed.await(5, TimeUnit.SECONDS));
+            assertEquals(1, timed.getSubscriberCount(HUB));
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sink.events.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of("status:" + new ApplianceStatusEvent("2", "heater", ApplianceStatus.ON)), sink.events);
+        } finally {
+            timed.stop();
+        }
+    }
+
+    /**
+     * A client that stopped reading: every send blocks until interrupted.
+     */
+    private static class BlockingSink implements EventSink {
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void send(String eventName, Object data) throws IOException {
+            sending.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new IOException("Write interrupted", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private static class RecordingSink implements EventSink {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private boolean fail;
+        private boolean closed;
+
+        @Override
+        public void send(String eventName, Object data) throws IOException {
+            if (fail) {
+                throw new IOException("Client went away");
+            }
+            events.add(eventName + ":" + data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class ManualExecutor extends AbstractExecutorService {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.axcelerate.homehub.repository;
+
+import com.axcelerate.homehub.dto.Appliance;
+import com.axcelerate.homehub.dto.SlotOperation;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.enums.BindingOutcome;
+import com.axcelerate.homehub.enums.GroupOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HomeHubRepositoryTest {
+
+    private static final int THREADS = 8;
+    private static final int SLOTS = 2_000;
+    private static final String REMOTE = "remote1";
+
+    private HomeHubRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        repository = new HomeHubRepository();
+    }
+
+    @Test
+    void testSuspendWrites_ReadsServedUntilResumed() {
+        repository.bindSlot("slot1", "lights");
+        repository.suspendWrites();
+
+        var moving = assertThrows(HubMovingException.class, () -> repository.updateApplianceStatus(REMOTE, "slot1", 1));
+        assertThrows(HubMovingException.class, () -> repository.bindSlot("slot2", "heater"));
+        assertThrows(HubMovingException.class, () -> repository.registerAppliance("fan"));
+        assertEquals(ApplianceStatus.OFF, repository.getBindings().get("slot1").getStatus());
+
+        repository.resumeWrites();
+        assertEquals(ApplianceStatus.ON, repository.updateApplianceStatus(REMOTE, "slot1", 1).getStatus());
+    }
+
+    @Test
+    void testBindSlot_FirstBindWins() {
+        assertEquals(BindingOutcome.BOUND, repository.bindSlot("slot1", "lights"));
+        assertEquals(BindingOutcome.SLOT_ALREADY_USED, repository.bindSlot("slot1", "heater"));
+        assertEquals("lights", repository.updateApplianceStatus(REMOTE, "slot1", 1).getName());
+        assertFalse(repository.isApplianceAlreadyBound("heater"));
+    }
+
+    @Test
+    void testBindSlot_ApplianceBoundOnlyOnce() {
+        assertEquals(BindingOutcome.BOUND, repository.bindSlot("slot1", "lights"));
+        assertEquals(BindingOutcome.APPLIANCE_ALREADY_BOUND, repository.bindSlot("slot2", "lights"));
+
+        assertTrue(repository.isApplianceAlreadyBound("lights"));
+        assertEquals(Optional.of("slot1"), repository.findSlotForAppliance("lights"));
+        assertTrue(repository.isSlotAvailable("slot2"));
+    }
+
+    @Test
+    void testUpdateApplianceStatus_UnboundSlot() {
+        assertNull(repository.updateApplianceStatus(REMOTE, "slot1", 1));
+    }
+
+    @Test
+    void testBindSlot_KeepsNamesAndStatusesAcrossGrowth() {
+        for (int i = 0; i < SLOTS * 10; i++) {
+            repository.bindSlot("slot" + i, "appliance" + i);
+            if (i % 3 == 0) {
+                repository.updateApplianceStatus(REMOTE, "slot" + i, 1);
+            }
+        }
+
+        var bindings = repository.getBindings();
+        assertEquals(SLOTS * 10, bindings.size());
+        for (int i = 0; i < SLOTS * 10; i++) {
+            var status = i % 3 == 0 ? ApplianceStatus.ON : ApplianceStatus.OFF;
+            assertEquals(new Appliance("appliance" + i, status), bindings.get("slot" + i));
+        }
+        assertEquals(Optional.of("slot12345"), repository.findSlotForAppliance("appliance12345"));
+    }
+
+    @Test
+    void testBindSlot_NonLatin1Names() {
+        repository.registerAppliance("Küche 灯");
+        assertEquals(BindingOutcome.BOUND, repository.bindSlot("слот-1", "Küche 灯"));
+
+        assertEquals(Optional.of("слот-1"), repository.findSlotForAppliance("Küche 灯"));
+        assertEquals(new Appliance("Küche 灯", ApplianceStatus.ON), repository.updateApplianceStatus(REMOTE, "слот-1", 1));
+        assertEquals(Map.of("слот-1", new Appliance("Küche 灯", ApplianceStatus.ON)), repository.getBindings());
+        assertTrue(repository.isApplianceRegistered("Küche 灯"));
+    }
+
+    @Test
+    void testBindSlot_BoundApplianceIsNotRegistered() {
+        repository.bindSlot("slot1", "lights");
+
+        assertFalse(repository.isApplianceRegistered("lights"));
+        assertTrue(repository.getRegisteredAppliances().isEmpty());
+        assertTrue(repository.registerAppliance("lights"));
+        assertEquals(Set.of("lights"), repository.getRegisteredAppliances());
+    }
+
+    @Test
+    void testForEachBinding_PagesThroughFilteredBindings() {
+        for (int i = 0; i < SLOTS * 10; i++) {
+            repository.bindSlot("slot" + i, (i % 2 == 0 ? "lamp" : "fan") + i);
+            if (i % 7 == 0) {
+                repository.updateApplianceStatus(REMOTE, "slot" + i, 1);
+            }
+        }
+
+        var listed = new ArrayList<String>();
+        var pages = 0;
+        for (int cursor = 0; cursor >= 0; pages++) {
+            var page = new ArrayList<String>();
+            cursor = repository.forEachBinding(cursor, 100, ApplianceStatus.ON, "lamp", (slotId, applianceName, status) -> {
+                assertEquals(ApplianceStatus.ON, status);
+                page.add(slotId);
+            });
+            assertTrue(page.size() <= 100);
+            listed.addAll(page);
+        }
+
+        var expected = new ArrayList<String>();
+        for (int i = 0; i < SLOTS * 10; i += 14) {
+            expected.add("slot" + i);
+        }
+        assertEquals(expected, listed);
+        assertEquals((expected.size() + 99) / 100, pages);
+    }
+
+    @Test
+    void testForEachBinding_StatusFilterCoversEverySlot() {
+        for (int i = 0; i < 300; i++) {
+            repository.bindSlot("slot" + i, "appliance" + i);
+            if (i % 3 == 0) {
+                repository.updateApplianceStatus(REMOTE, "slot" + i, 1);
+            }
+        }
+
+        var on = new ArrayList<String>();
+        var off = new ArrayList<String>();
+        assertEquals(-1, repository.forEachBinding(0, Integer.MAX_VALUE, ApplianceStatus.ON, null, (slotId, name, status) -> on.add(slotId)));
+        assertEquals(-1, repository.forEachBinding(0, Integer.MAX_VALUE, ApplianceStatus.OFF, null, (slotId, name, status) -> off.add(slotId)));
+
+        assertEquals(100, on.size());
+        assertEquals(200, off.size());
+        assertEquals("slot3", on.get(1));
+        assertEquals("slot299", off.get(199));
+        assertEquals(-1, repository.forEachBinding(300, 10, null, null, (slotId, name, status) -> fail(slotId)));
+    }
+
+    @Test
+    void testUndoPreviousAction_RestoresPreviousStatus() {
+        repository.bindSlot("slot1", "lights");
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+
+        Appliance undone = repository.undoPreviousAction(REMOTE);
+
+        assertEquals(ApplianceStatus.OFF, undone.getStatus());
+        assertNull(repository.undoPreviousAction(REMOTE));
+    }
+
+    @Test
+    void testUndoPreviousAction_MultiLevelUndoAndRedo() {
+        repository.bindSlot("slot1", "lights");
+        repository.bindSlot("slot2", "heater");
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+        repository.updateApplianceStatus(REMOTE, "slot2", 1);
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+
+        assertEquals(new Appliance("lights", ApplianceStatus.ON), repository.undoPreviousAction(REMOTE));
+        assertEquals(new Appliance("heater", ApplianceStatus.OFF), repository.undoPreviousAction(REMOTE));
+        assertEquals(new Appliance("lights", ApplianceStatus.OFF), repository.undoPreviousAction(REMOTE));
+        assertNull(repository.undoPreviousAction(REMOTE));
+
+        assertEquals(new Appliance("lights", ApplianceStatus.ON), repository.redoAction(REMOTE));
+        assertEquals(new Appliance("heater", ApplianceStatus.ON), repository.redoAction(REMOTE));
+
+        repository.updateApplianceStatus(REMOTE, "slot2", 0);
+        assertNull(repository.redoAction(REMOTE));
+    }
+
+    @Test
+    void testUndoPreviousAction_HistoriesAreIsolatedPerRemote() {
+        repository.bindSlot("slot1", "lights");
+        repository.updateApplianceStatus("remote1", "slot1", 1);
+
+        assertNull(repository.undoPreviousAction("remote2"));
+        assertEquals(ApplianceStatus.OFF, repository.undoPreviousAction("remote1").getStatus());
+    }
+
+    @Test
+    void testUndoPreviousAction_HistoryIsBounded() {
+        repository = new HomeHubRepository(2);
+        repository.bindSlot("slot1", "lights");
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+        repository.updateApplianceStatus(REMOTE, "slot1", 0);
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+
+        assertEquals(ApplianceStatus.OFF, repository.undoPreviousAction(REMOTE).getStatus());
+        assertEquals(ApplianceStatus.ON, repository.undoPreviousAction(REMOTE).getStatus());
+        assertNull(repository.undoPreviousAction(REMOTE));
+    }
+
+    @Test
+    void testSaveScene_StoresCopyOfOperations() {
+        var operation = new SlotOperation("slot1", 1);
+        repository.saveScene("evening", List.of(operation));
+        operation.setOperation(0);
+
+        assertEquals(List.of(new SlotOperation("slot1", 1)), repository.findScene("evening").orElseThrow());
+        assertTrue(repository.findScene("morning").isEmpty());
+    }
+
+    @Test
+    void testGroups_OnCountsFollowStatusChanges() {
+        assertEquals(GroupOutcome.CREATED, repository.createGroup("house", null));
+        assertEquals(GroupOutcome.CREATED, repository.createGroup("living", "house"));
+        assertEquals(GroupOutcome.ALREADY_EXISTS, repository.createGroup("living", "house"));
+        assertEquals(GroupOutcome.PARENT_CONFLICT, repository.createGroup("living", null));
+        assertEquals(GroupOutcome.PARENT_NOT_FOUND, repository.createGroup("attic", "roof"));
+        for (var name : List.of("lamp", "tv", "porch", "fan")) {
+            repository.registerAppliance(name);
+        }
+        repository.bindSlot("1", "lamp");
+        repository.bindSlot("2", "tv");
+        repository.bindSlot("3", "porch");
+        assertEquals(GroupOutcome.ADDED, repository.addToGroup("living", "lamp"));
+        assertEquals(GroupOutcome.ADDED, repository.addToGroup("living", "tv"));
+        assertEquals(GroupOutcome.ADDED, repository.addToGroup("house", "porch"));
+        assertEquals(GroupOutcome.ADDED, repository.addToGroup("living", "fan"));
+        assertEquals(GroupOutcome.APPLIANCE_NOT_REGISTERED, repository.addToGroup("living", "oven"));
+        assertEquals(GroupOutcome.GROUP_NOT_FOUND, repository.addToGroup("garden", "lamp"));
+
+        repository.updateApplianceStatus(REMOTE, "1", 1);
+        repository.updateApplianceStatus(REMOTE, "3", 1);
+        repository.updateApplianceStatus(REMOTE, "3", 1);
+
+        assertEquals(new GroupSnapshot("house", null, List.of("living"), List.of("porch"), 4, 2), repository.findGroup("house").orElseThrow());
+        assertEquals(new GroupSnapshot("living", "house", List.of(), List.of("lamp", "tv", "fan"), 3, 1), repository.findGroup("living").orElseThrow());
+
+        repository.undoPreviousAction(REMOTE);
+        repository.undoPreviousAction(REMOTE);
+        assertEquals(1, repository.findGroup("house").orElseThrow().onCount());
+
+        repository.bindSlot("4", "fan");
+        repository.restoreStatus("4", ApplianceStatus.ON);
+        assertEquals(2, repository.findGroup("living").orElseThrow().onCount());
+    }
+
+    @Test
+    void testGroups_MovingAnApplianceMovesItsCount() {
+        repository.createGroup("kitchen", null);
+        repository.createGroup("hall", null);
+        repository.registerAppliance("lamp");
+        repository.registerAppliance("kettle");
+        repository.bindSlot("1", "lamp");
+        repository.addToGroup("kitchen", "lamp");
+        repository.addToGroup("kitchen", "kettle");
+        repository.updateApplianceStatus(REMOTE, "1", 1);
+
+        assertEquals(GroupOutcome.ADDED, repository.addToGroup("hall", "lamp"));
+
+        assertEquals(new GroupSnapshot("kitchen", null, List.of(), List.of("kettle"), 1, 0), repository.findGroup("kitchen").orElseThrow());
+        assertEquals(new GroupSnapshot("hall", null, List.of(), List.of("lamp"), 1, 1), repository.findGroup("hall").orElseThrow());
+        assertEquals(GroupOutcome.NOT_A_MEMBER, repository.removeFromGroup("kitchen", "lamp"));
+        assertEquals(GroupOutcome.REMOVED, repository.removeFromGroup("hall", "lamp"));
+        repository.updateApplianceStatus(REMOTE, "1", 0);
+        assertEquals(0, repository.findGroup("hall").orElseThrow().onCount());
+        assertEquals(0, repository.findGroup("hall").orElseThrow().applianceCount());
+    }
+
+    @Test
+    void testOperateGroup_UndoRestoresEachStatus() {
+        repository.createGroup("house", null);
+        repository.createGroup("living", "house");
+        for (int i = 0; i < 5; i++) {
+            repository.registerAppliance("appliance" + i);
+            repository.bindSlot("slot" + i, "appliance" + i);
+            repository.addToGroup(i < 3 ? "living" : "house", "appliance" + i);
+        }
+        repository.registerAppliance("unbound");
+        repository.addToGroup("living", "unbound");
+        repository.updateApplianceStatus(REMOTE, "slot0", 1);
+        repository.updateApplianceStatus(REMOTE, "slot3", 1);
+
+        assertEquals(2, repository.operateGroup("living", 1));
+        assertEquals(4, repository.findGroup("house").orElseThrow().onCount());
+        assertEquals(1, repository.operateGroup("house", 1));
+        assertEquals(5, repository.operateGroup("house", 0));
+        assertEquals(0, repository.findGroup("house").orElseThrow().onCount());
+
+        assertEquals(5, repository.undoGroupOperation("house"));
+        assertEquals(1, repository.undoGroupOperation("house"));
+        assertEquals(4, repository.findGroup("house").orElseThrow().onCount());
+        assertEquals(-1, repository.undoGroupOperation("house"));
+        assertEquals(2, repository.undoGroupOperation("living"));
+        assertEquals(ApplianceStatus.ON, repository.getBindings().get("slot0").getStatus());
+        assertEquals(ApplianceStatus.OFF, repository.getBindings().get("slot1").getStatus());
+        assertEquals(ApplianceStatus.ON, repository.getBindings().get("slot3").getStatus());
+        assertEquals(2, repository.findGroup("house").orElseThrow().onCount());
+        assertEquals(-1, repository.operateGroup("garden", 1));
+    }
+
+    @Test
+    void testGroups_CountsStayExactUnderContention() throws Exception {
+        repository.createGroup("house", null);
+        repository.createGroup("even", "house");
+        repository.createGroup("odd", "house");
+        for (int i = 0; i < SLOTS; i++) {
+            repository.registerAppliance("appliance" + i);
+            repository.bindSlot("slot" + i, "appliance" + i);
+        }
+        runConcurrently(threadIndex -> {
+            for (int i = 0; i < SLOTS; i++) {
+                if (threadIndex == 0) {
+                    repository.addToGroup(i % 2 == 0 ? "even" : "odd", "appliance" + i);
+                } else if (threadIndex == 1 && i % 100 == 0) {
+                    repository.operateGroup("house", i / 100 % 2);
+                } else {
+                    repository.updateApplianceStatus("remote" + threadIndex, "slot" + i, (i + threadIndex) % 2);
+                }
+            }
+        });
+
+        var bindings = repository.getBindings();
+        var on = new int[2];
+        for (int i = 0; i < SLOTS; i++) {
+            if (bindings.get("slot" + i).getStatus() == ApplianceStatus.ON) {
+                on[i % 2]++;
+            }
+        }
+        assertEquals(on[0], repository.findGroup("even").orElseThrow().onCount());
+        assertEquals(on[1], repository.findGroup("odd").orElseThrow().onCount());
+        assertEquals(on[0] + on[1], repository.findGroup("house").orElseThrow().onCount());
+        assertEquals(repository.countWithStatus(ApplianceStatus.ON), repository.findGroup("house").orElseThrow().onCount());
+    }
+
+    @Test
+    void testRegistry_HubsHaveSeparateSlotNamespacesAndHistories() {
+        var registry = new HomeHubRepositoryRegistry();
+        var home1 = registry.forHub("home1");
+        var home2 = registry.forHub("home2");
+
+        assertSame(home1, registry.forHub("home1"));
+        assertEquals(BindingOutcome.BOUND, home1.bindSlot("slot1", "lights"));
+        assertEquals(BindingOutcome.BOUND, home2.bindSlot("slot1", "lights"));
+        home1.updateApplianceStatus(REMOTE, "slot1", 1);
+
+        assertNull(home2.undoPreviousAction(REMOTE));
+        assertEquals(ApplianceStatus.OFF, home1.undoPreviousAction(REMOTE).getStatus());
+    }
+
+    @Test
+    void testRegistry_HubOwnedElsewhereIsNotCreated() {
+        var registry = new HomeHubRepositoryRegistry();
+        var local = registry.forHub("home1");
+        registry.setOwnedElsewhere(hubId -> true);
+
+        assertSame(local, registry.forHub("home1"));
+        assertThrows(HubMovingException.class, () -> registry.forHub("home2"));
+        assertFalse(registry.findHub("home2").isPresent());
+        assertNotNull(registry.restoreHub("home2"));
+    }
+
+    @Test
+    void testRegistry_FindHubDoesNotCreateHub() {
+        var registry = new HomeHubRepositoryRegistry();
+
+        assertTrue(registry.findHub("home1").isEmpty());
+        assertTrue(registry.getHubIds().isEmpty());
+    }
+
+    @Test
+    void testRegisterAppliance_ConcurrentRegistrationHasSingleWinner() throws Exception {
+        var winners = new AtomicInteger();
+        runConcurrently(threadIndex -> {
+            for (int i = 0; i < SLOTS; i++) {
+                if (repository.registerAppliance("appliance" + i)) {
+                    winners.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(SLOTS, winners.get());
+        for (int i = 0; i < SLOTS; i++) {
+            assertTrue(repository.isApplianceRegistered("appliance" + i));
+        }
+    }
+
+    @Test
+    void testBindSlot_NoLostOrDuplicateBindingsUnderContention() throws Exception {
+        Map<String, String> winners = new ConcurrentHashMap<>();
+        var duplicates = new AtomicInteger();
+        runConcurrently(threadIndex -> {
+            for (int i = 0; i < SLOTS; i++) {
+                var slotId = "slot" + i;
+                var applianceName = "appliance" + threadIndex + "-" + i;
+                if (repository.bindSlot(slotId, applianceName) == BindingOutcome.BOUND && winners.put(slotId, applianceName) != null) {
+                    duplicates.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(0, duplicates.get());
+        assertEquals(SLOTS, winners.size());
+        assertEquals(SLOTS, repository.getUsedSlots().size());
+        winners.forEach((slotId, applianceName) -> {
+            assertEquals(applianceName, repository.updateApplianceStatus(REMOTE, slotId, 0).getName());
+            assertEquals(Optional.of(slotId), repository.findSlotForAppliance(applianceName));
+        });
+    }
+
+    @Test
+    void testUpdateApplianceStatus_ConcurrentOperationsKeepBindings() throws Exception {
+        for (int i = 0; i < SLOTS; i++) {
+            repository.bindSlot("slot" + i, "appliance" + i);
+        }
+        runConcurrently(threadIndex -> {
+            for (int i = 0; i < SLOTS; i++) {
+                var remoteId = "remote" + threadIndex;
+                assertNotNull(repository.updateApplianceStatus(remoteId, "slot" + i, (i + threadIndex) % 2));
+                assertNotNull(repository.undoPreviousAction(remoteId));
+                assertNotNull(repository.redoAction(remoteId));
+            }
+        });
+
+        assertEquals(SLOTS, repository.getUsedSlots().size());
+        for (int i = 0; i < SLOTS; i++) {
+            assertEquals("appliance" + i, repository.updateApplianceStatus(REMOTE, "slot" + i, 0).getName());
+        }
+    }
+
+    @Test
+    void testVersion_MovesOnlyOnRealChanges() {
+        repository.registerAppliance("lamp");
+        var registered = repository.getVersion();
+        repository.bindSlot("slot1", "lamp");
+        var bound = repository.getVersion();
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+        var on = repository.getVersion();
+        repository.updateApplianceStatus(REMOTE, "slot1", 1);
+
+        assertEquals(registered, bound - 1);
+        assertEquals(bound, on - 1);
+        assertEquals(on, repository.getVersion());
+    }
+
+    @Test
+    void testForEachChangeSince_JournalsAfterFirstAsk() {
+        repository.registerAppliance("lamp");
+        repository.registerAppliance("tv");
+        repository.bindSlot("slot1", "lamp");
+        repository.bindSlot("slot2", "tv");
+        var first = repository.getVersion();
+        Map<String, ApplianceStatus> changes = new ConcurrentHashMap<>();
+
+        assertEquals(-1, repository.forEachChangeSince(first - 1, (slotId, name, status) -> changes.put(slotId, status)));
+        assertEquals(first, repository.forEachChangeSince(first, (slotId, name, status) -> changes.put(slotId, status)));
+
+        repository.updateApplianceStatus(REMOTE, "slot2", 1);
+        repository.updateApplianceStatus(REMOTE, "slot2", 0);
+        repository.updateApplianceStatus(REMOTE, "slot2", 1);
+        var version = repository.forEachChangeSince(first, (slotId, name, status) -> changes.put(slotId, status));
+
+        assertEquals(repository.getVersion(), version);
+        assertEquals(first + 3, version);
+        assertEquals(Map.of("slot2", ApplianceStatus.ON), changes);
+        assertEquals(-1, repository.forEachChangeSince(first - 1, (slotId, name, status) -> changes.put(slotId, status)));
+        assertEquals(-1, repository.forEachChangeSince(version + 1, (slotId, name, status) -> changes.put(slotId, status)));
+    }
+
+    @Test
+    void testForEachChangeSince_TooFarBehind() {
+        repository.registerAppliance("lamp");
+        repository.bindSlot("slot1", "lamp");
+        var since = repository.getVersion();
+        repository.forEachChangeSince(since - 1, (slotId, name, status) -> { });
+        for (int i = 0; i < ChangeJournal.CAPACITY; i++) {
+            repository.updateApplianceStatus(REMOTE, "slot1", i % 2 == 0 ? 1 : 0);
+        }
+
+        assertEquals(-1, repository.forEachChangeSince(since, (slotId, name, status) -> { }));
+    }
+
+    @Test
+    void testForEachChangeSince_ConcurrentChangesAllSeen() throws Exception {
+        for (int i = 0; i < THREADS; i++) {
+            repository.registerAppliance("appliance" + i);
+            repository.bindSlot("slot" + i, "appliance" + i);
+        }
+        var since = new long[]{repository.getVersion()};
+        repository.forEachChangeSince(since[0] - 1, (slotId, name, status) -> { });
+        Map<String, ApplianceStatus> seen = new ConcurrentHashMap<>();
+
+        runConcurrently(threadIndex -> {
+            // fewer changes in all than a delta may span, so the last ask always gets one
+            for (int i = 0; i < 50; i++) {
+                repository.updateApplianceStatus(REMOTE, "slot" + threadIndex, i % 2 == 0 ? 1 : 0);
+                if (threadIndex == 0) {
+                    synchronized (since) {
+                        var version = repository.forEachChangeSince(since[0], (slotId, name, status) -> seen.put(slotId, status));
+                        if (version >= 0) {
+                            since[0] = version;
+                        }
+                    }
+                }
+            }
+        });
+        var version = repository.forEachChangeSince(since[0], (slotId, name, status) -> seen.put(slotId, status));
+
+        assertEquals(repository.getVersion(), version);
+        for (int i = 0; i < THREADS; i++) {
+            assertEquals(ApplianceStatus.OFF, seen.get("slot" + i), "slot" + i);
+        }
+    }
+
+    @Test
+    void testHistories_LeastRecentlyUsedRemotesDropped() {
+        repository = new HomeHubRepository(null, 4, 8, HubChangeListener.NONE);
+        repository.registerAppliance("lamp");
+        repository.bindSlot("slot1", "lamp");
+        repository.updateApplianceStatus("kept", "slot1", 1);
+        for (int i = 0; i < 100; i++) {
+            repository.updateApplianceStatus("remote" + i, "slot1", i % 2);
+            assertNotNull(repository.undoPreviousAction("kept"));
+            assertNotNull(repository.redoAction("kept"));
+        }
+
+        assertTrue(repository.rememberedRemotes() <= 8, "kept " + repository.rememberedRemotes());
+        assertNull(repository.undoPreviousAction("remote0"));
+        assertNotNull(repository.undoPreviousAction("remote99"));
+        assertNotNull(repository.undoPreviousAction("kept"));
+    }
+
+    private interface Worker {
+        void run(int threadIndex) throws Exception;
+    }
+
+    private static void runConcurrently(Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int threadIndex = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    worker.run(threadIndex);
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
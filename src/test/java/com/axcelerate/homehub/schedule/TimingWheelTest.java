@@ -0,0 +1,103 @@
+package com.axcelerate.homehub.schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void testTimerExpiresAtItsDeadline() {
+        var wheel = new TimingWheel<String>(100);
+        wheel.add("a", 105);
+        var expired = new ArrayList<String>();
+
+        wheel.advanceTo(104, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advanceTo(105, expired::add);
+
+        assertEquals(List.of("a"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testPastDeadlineExpiresOnNextTick() {
+        var wheel = new TimingWheel<String>(100);
+        var timer = wheel.add("late", 10);
+        var expired = new ArrayList<String>();
+
+        assertEquals(101, timer.deadline());
+        wheel.advanceTo(101, expired::add);
+
+        assertEquals(List.of("late"), expired);
+        assertFalse(timer.isPending());
+    }
+
+    @Test
+    void testCancelledTimerNeverExpires() {
+        var wheel = new TimingWheel<String>(0);
+        var cancelled = wheel.add("cancelled", 70_000);
+        wheel.add("kept", 70_000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        var expired = new ArrayList<String>();
+        wheel.advanceTo(80_000, expired::add);
+
+        assertEquals(List.of("kept"), expired);
+    }
+
+    @Test
+    void testEmptyWheelJumpsAhead() {
+        var wheel = new TimingWheel<String>(0);
+        wheel.advanceTo(Long.MAX_VALUE / 2, value -> fail());
+        wheel.add("a", Long.MAX_VALUE / 2 + 300);
+        var expired = new ArrayList<String>();
+
+        wheel.advanceTo(Long.MAX_VALUE / 2 + 300, expired::add);
+
+        assertEquals(List.of("a"), expired);
+    }
+
+    @Test
+    void testRandomTimersExpireExactlyOnTime() {
+        var random = new Random(42);
+        // start just below a boundary of level 2, so timers cascade across several levels
+        var start = (1L << 24) - 1_000;
+        var wheel = new TimingWheel<Long>(start);
+        var pending = new HashSet<TimingWheel.Timer<Long>>();
+        var expiredCount = new int[1];
+        for (int i = 0; i < 20_000; i++) {
+            var delay = switch (i % 4) {
+                case 0 -> 1 + random.nextInt(300);
+                case 1 -> 1 + random.nextInt(70_000);
+                case 2 -> 1 + random.nextInt(20_000_000);
+                default -> 1L << (16 + random.nextInt(8));
+            };
+            pending.add(wheel.add(start + delay, start + delay));
+        }
+        var cancelled = 0;
+        for (var timer : new ArrayList<>(pending)) {
+            if (random.nextInt(10) == 0) {
+                assertTrue(wheel.cancel(timer));
+                pending.remove(timer);
+                cancelled++;
+            }
+        }
+
+        while (wheel.size() > 0) {
+            wheel.advanceTo(wheel.currentTick() + 1 + random.nextInt(5_000), deadline -> {
+                assertEquals(deadline.longValue(), wheel.currentTick());
+                expiredCount[0]++;
+            });
+        }
+
+        assertEquals(20_000 - cancelled, expiredCount[0]);
+        assertTrue(pending.stream().noneMatch(TimingWheel.Timer::isPending));
+    }
+}
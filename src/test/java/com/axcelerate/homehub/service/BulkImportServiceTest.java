@@ -0,0 +1,127 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Locale;
+
+class BulkImportServiceTest {
+
+    private static final String HUB = "hub1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HomeHubRepositoryRegistry hubs;
+    private BulkImportService service;
+
+    @BeforeEach
+    public void setUp() {
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        hubs = new HomeHubRepositoryRegistry();
+        service = new BulkImportService(new MessageRenderer(messageSource, Locale.US), hubs, objectMapper);
+    }
+
+    @Test
+    void testImportAppliances_CsvWithHeaderAndDuplicates() throws Exception {
+        JsonNode result = importAppliances("applianceName\nlights\n\nheater\nlights\n", false);
+
+        assertEquals(2, result.get("succeeded").asInt());
+        assertEquals(1, result.get("failed").asInt());
+        assertEquals(2, result.get("results").get(0).get("line").asInt());
+        assertEquals("CREATED", result.get("results").get(0).get("status").asText());
+        assertEquals(5, result.get("results").get(2).get("line").asInt());
+        assertEquals("Appliance lights has been registered with Home Hub please use a difference name",
+                result.get("results").get(2).get("error").asText());
+        assertTrue(hubs.forHub(HUB).isApplianceRegistered("heater"));
+    }
+
+    @Test
+    void testImportBindings_NdjsonReportsEachLine() throws Exception {
+        importAppliances("lights\nheater\n", false);
+
+        JsonNode result = importBindings("""
+                {"slotId":"1","applianceName":"lights"}
+                {"slotId":"1","applianceName":"heater"}
+                {"slotId":"2","applianceName":"fan"}
+                not json
+                {"slotId":"3"}
+                """, true);
+
+        var results = result.get("results");
+        assertEquals(1, result.get("succeeded").asInt());
+        assertEquals(4, result.get("failed").asInt());
+        assertEquals("CREATED", results.get(0).get("status").asText());
+        assertEquals("Slot 1 already used please use other slot", results.get(1).get("error").asText());
+        assertEquals("Line 4 could not be parsed", findLine(results, 4).get("error").asText());
+        assertEquals("Line 5 could not be parsed", findLine(results, 5).get("error").asText());
+        assertTrue(findLine(results, 3).get("error").asText().startsWith("Appliance fan is not registered"));
+        assertEquals("1", hubs.forHub(HUB).findSlotForAppliance("lights").orElseThrow());
+    }
+
+    @Test
+    void testImportBindings_SpansSeveralBatches() throws Exception {
+        var lines = BulkImportService.BATCH_SIZE * 2 + 10;
+        var appliances = new StringBuilder();
+        var bindings = new StringBuilder("slotId,applianceName\n");
+        for (int i = 0; i < lines; i++) {
+            appliances.append("appliance").append(i).append('\n');
+            bindings.append("slot").append(i).append(",appliance").append(i).append('\n');
+        }
+        importAppliances(appliances.toString(), false);
+
+        JsonNode result = importBindings(bindings.toString(), false);
+
+        assertEquals(lines, result.get("succeeded").asInt());
+        assertEquals(0, result.get("failed").asInt());
+        assertEquals(lines, hubs.forHub(HUB).getUsedSlots().size());
+    }
+
+    @Test
+    void testImportAppliances_LineNumbersWithoutGrouping() throws Exception {
+        var body = new StringBuilder();
+        for (int i = 1; i < 1_234; i++) {
+            body.append("appliance").append(i).append('\n');
+        }
+        body.append("too,many\n");
+
+        JsonNode result = importAppliances(body.toString(), false);
+
+        assertEquals(1_233, result.get("succeeded").asInt());
+        assertEquals("Line 1234 could not be parsed", findLine(result.get("results"), 1_234).get("error").asText());
+    }
+
+    private JsonNode importAppliances(String body, boolean ndjson) throws Exception {
+        var out = new StringWriter();
+        try (var generator = objectMapper.getFactory().createGenerator(out)) {
+            service.importAppliances(HUB, new BufferedReader(new StringReader(body)), ndjson, generator);
+        }
+        return objectMapper.readTree(out.toString());
+    }
+
+    private JsonNode importBindings(String body, boolean ndjson) throws Exception {
+        var out = new StringWriter();
+        try (var generator = objectMapper.getFactory().createGenerator(out)) {
+            service.importBindings(HUB, new BufferedReader(new StringReader(body)), ndjson, generator);
+        }
+        return objectMapper.readTree(out.toString());
+    }
+
+    private static JsonNode findLine(JsonNode results, int line) {
+        for (JsonNode result : results) {
+            if (result.get("line").asInt() == line) {
+                return result;
+            }
+        }
+        throw new AssertionError("No result for line " + line);
+    }
+}
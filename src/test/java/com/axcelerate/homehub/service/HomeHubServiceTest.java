@@ -4,20 +4,35 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import com.axcelerate.homehub.dto.Appliance;
 import com.axcelerate.homehub.dto.ApplianceRegisterResponse;
+import com.axcelerate.homehub.dto.ApplianceSlotResponse;
+import com.axcelerate.homehub.dto.BatchOperationResponse;
 import com.axcelerate.homehub.dto.RemoteOperationResponse;
 import com.axcelerate.homehub.dto.RemoteSlotBindingResponse;
+import com.axcelerate.homehub.dto.SlotOperation;
 import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.enums.BindingOutcome;
+import com.axcelerate.homehub.enums.GroupOutcome;
 import com.axcelerate.homehub.exception.*;
+import com.axcelerate.homehub.metrics.HomeHubMetrics;
+import com.axcelerate.homehub.repository.GroupSnapshot;
 import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.context.MessageSource;
 import org.springframework.http.HttpStatus;
 
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
 
 
 import static org.mockito.Mockito.*;
@@ -26,18 +41,29 @@ import static org.mockito.Mockito.*;
 
 class HomeHubServiceTest {
 
+    private static final String HUB = "hub1";
+    private static final String REMOTE = "remote1";
+
     @Mock
     private MessageSource messageSource;
 
     @Mock
     private HomeHubRepository repository;
 
-    @InjectMocks
+    @Mock
+    private HomeHubRepositoryRegistry hubs;
+
     private HomeHubService service;
 
+    private MeterRegistry meterRegistry;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new HomeHubService(new MessageRenderer(messageSource, Locale.US), hubs, new HomeHubMetrics(meterRegistry, hubs));
+        when(hubs.forHub(HUB)).thenReturn(repository);
+        when(hubs.findHub(HUB)).thenReturn(Optional.of(repository));
 
     }
 
@@ -47,13 +73,12 @@ class HomeHubServiceTest {
         String applianceName = "appliance1";
 
         when(repository.isApplianceRegistered(applianceName)).thenReturn(true);
-        when(repository.isApplianceAlreadyBound(applianceName)).thenReturn(false);
-        when(repository.isSlotAvailable(slotId)).thenReturn(true);
+        when(repository.bindSlot(slotId, applianceName)).thenReturn(BindingOutcome.BOUND);
 
         String successMessage = "Binding successful.";
         when(messageSource.getMessage(eq("binding_successful.message"), any(), eq(Locale.US))).thenReturn(successMessage);
 
-        RemoteSlotBindingResponse response = service.bindRemoteSlotToAppliance(slotId, applianceName);
+        RemoteSlotBindingResponse response = service.bindRemoteSlotToAppliance(HUB, slotId, applianceName);
 
         assertEquals(HttpStatus.CREATED, response.getBindingStatus());
         assertEquals(successMessage, response.getBindingResponse());
@@ -70,7 +95,7 @@ class HomeHubServiceTest {
         String errorMessage = "Appliance not registered.";
         when(messageSource.getMessage(eq("appliance_not_registered.message"), any(), eq(Locale.US))).thenReturn(errorMessage);
 
-        assertThrows(ApplianceNotRegisteredException.class, () -> service.bindRemoteSlotToAppliance(slotId, applianceName));
+        assertThrows(ApplianceNotRegisteredException.class, () -> service.bindRemoteSlotToAppliance(HUB, slotId, applianceName));
         verify(repository, never()).bindSlot(slotId, applianceName);
     }
 
@@ -80,13 +105,13 @@ class HomeHubServiceTest {
         String applianceName = "appliance1";
 
         when(repository.isApplianceRegistered(applianceName)).thenReturn(true);
-        when(repository.isApplianceAlreadyBound(applianceName)).thenReturn(true);
+        when(repository.bindSlot(slotId, applianceName)).thenReturn(BindingOutcome.APPLIANCE_ALREADY_BOUND);
 
         String errorMessage = "Appliance already bound.";
         when(messageSource.getMessage(eq("appliance_already_bound.message"), any(), eq(Locale.US))).thenReturn(errorMessage);
 
-        assertThrows(BindException.class, () -> service.bindRemoteSlotToAppliance(slotId, applianceName));
-        verify(repository, never()).bindSlot(slotId, applianceName);
+        BindException exception = assertThrows(BindException.class, () -> service.bindRemoteSlotToAppliance(HUB, slotId, applianceName));
+        assertEquals(errorMessage, exception.getMessage());
     }
 
     @Test
@@ -95,24 +120,46 @@ class HomeHubServiceTest {
         String applianceName = "appliance1";
 
         when(repository.isApplianceRegistered(applianceName)).thenReturn(true);
-        when(repository.isApplianceAlreadyBound(applianceName)).thenReturn(false);
-        when(repository.isSlotAvailable(slotId)).thenReturn(false);
+        when(repository.bindSlot(slotId, applianceName)).thenReturn(BindingOutcome.SLOT_ALREADY_USED);
 
         String errorMessage = "Slot already used.";
         when(messageSource.getMessage(eq("slot_already_used.message"), any(), eq(Locale.US))).thenReturn(errorMessage);
 
-        assertThrows(BindException.class, () -> service.bindRemoteSlotToAppliance(slotId, applianceName));
-        verify(repository, never()).bindSlot(slotId, applianceName);
+        BindException exception = assertThrows(BindException.class, () -> service.bindRemoteSlotToAppliance(HUB, slotId, applianceName));
+        assertEquals(errorMessage, exception.getMessage());
+        verify(repository, times(1)).bindSlot(slotId, applianceName);
+    }
+
+    @Test
+    void testFindSlotForAppliance_Bound() {
+        when(repository.findSlotForAppliance("appliance1")).thenReturn(Optional.of("slot1"));
+
+        ApplianceSlotResponse response = service.findSlotForAppliance(HUB, "appliance1");
+
+        assertEquals(HttpStatus.OK, response.getHttpStatus());
+        assertEquals("appliance1", response.getAppliance());
+        assertEquals("slot1", response.getSlotId());
+    }
+
+    @Test
+    void testFindSlotForAppliance_NotBound() {
+        when(repository.findSlotForAppliance("appliance1")).thenReturn(Optional.empty());
+        when(messageSource.getMessage("appliance_not_bound.message", new Object[]{"appliance1"}, Locale.US))
+                .thenReturn("Appliance not bound");
+
+        BindException exception = assertThrows(BindException.class, () -> service.findSlotForAppliance(HUB, "appliance1"));
+
+        assertEquals("Appliance not bound", exception.getMessage());
     }
 
     @Test
     public void testRegisterAppliance_Success() {
         String applianceName = "MyAppliance";
-        when(repository.isApplianceRegistered(applianceName)).thenReturn(false);
+        when(repository.registerAppliance(applianceName)).thenReturn(true);
         when(messageSource.getMessage("appliance_successfully_registered.message", new Object[]{applianceName}, Locale.US))
                 .thenReturn("Appliance successfully registered");
 
-        ApplianceRegisterResponse response = service.registerAppliance(applianceName);
+        ApplianceRegisterResponse response = service.registerAppliance(HUB, applianceName);
 
         assertNotNull(response);
         assertEquals(HttpStatus.CREATED, response.getHttpStatus());
@@ -126,17 +173,17 @@ class HomeHubServiceTest {
     @Test
     public void testRegisterAppliance_AlreadyRegistered() {
         String applianceName = "MyAppliance";
-        when(repository.isApplianceRegistered(applianceName)).thenReturn(true);
+        when(repository.registerAppliance(applianceName)).thenReturn(false);
         when(messageSource.getMessage("appliance_already_registered.message", new Object[]{applianceName}, Locale.US))
                 .thenReturn("Appliance already registered");
 
         ApplianceAlreadyRegisteredException exception = assertThrows(ApplianceAlreadyRegisteredException.class,
-                () -> service.registerAppliance(applianceName));
+                () -> service.registerAppliance(HUB, applianceName));
 
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
         assertEquals("Appliance already registered", exception.getMessage());
 
-        verify(repository, never()).registerAppliance(any());
+        verify(repository).registerAppliance(applianceName);
         verify(messageSource).getMessage("appliance_already_registered.message", new Object[]{applianceName}, Locale.US);
     }
     @Test
@@ -146,20 +193,18 @@ class HomeHubServiceTest {
         String applianceName = "MyAppliance";
         ApplianceStatus applianceStatus = ApplianceStatus.ON;
 
-       when(repository.isSlotAvailable(slotId)).thenReturn(false);
-       when(repository.updateApplianceStatus(slotId, operation)).thenReturn(new Appliance(applianceName, applianceStatus));
+       when(repository.updateApplianceStatus(REMOTE, slotId, operation)).thenReturn(new Appliance(applianceName, applianceStatus));
        when(messageSource.getMessage("appliance_operation_successful.message",
                         new Object[]{applianceName, applianceStatus.name()}, Locale.US))
                 .thenReturn("Appliance operation successful");
 
-        RemoteOperationResponse response = service.operateAppliance(slotId, operation);
+        RemoteOperationResponse response = service.operateAppliance(HUB, REMOTE, slotId, operation);
 
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getOperationStatus());
         assertEquals("Appliance operation successful", response.getOperationResponse());
 
-       verify(repository).isSlotAvailable(slotId);
-       verify(repository).updateApplianceStatus(slotId, operation);
+       verify(repository).updateApplianceStatus(REMOTE, slotId, operation);
        verify(messageSource).getMessage("appliance_operation_successful.message",
                 new Object[]{applianceName, applianceStatus.name()}, Locale.US);
     }
@@ -174,13 +219,12 @@ class HomeHubServiceTest {
                 .thenReturn("Invalid appliance operation");
 
         BindException exception = assertThrows(BindException.class,
-                () -> service.operateAppliance(slotId, operation));
+                () -> service.operateAppliance(HUB, REMOTE, slotId, operation));
 
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
         assertEquals("Invalid appliance operation", exception.getMessage());
 
-       verify(repository,never()).isSlotAvailable(any());
-       verify(repository,never()).updateApplianceStatus(any(), anyInt());
+       verify(repository,never()).updateApplianceStatus(any(), any(), anyInt());
        verify(messageSource).getMessage("appliance_operation_not_allowed.message",
                 new Object[]{slotId}, Locale.US);
     }
@@ -190,68 +234,408 @@ class HomeHubServiceTest {
         String slotId = "123";
         int operation = 1;
 
-       when(repository.isSlotAvailable(slotId)).thenReturn(true);
+       when(repository.updateApplianceStatus(REMOTE, slotId, operation)).thenReturn(null);
        when(messageSource.getMessage("slot_not_bound.message",
                         new Object[]{slotId}, Locale.US))
                 .thenReturn("Slot not bound");
 
         BindException exception = assertThrows(BindException.class,
-                () -> service.operateAppliance(slotId, operation));
+                () -> service.operateAppliance(HUB, REMOTE, slotId, operation));
 
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
         assertEquals("Slot not bound", exception.getMessage());
 
-       verify(repository).isSlotAvailable(slotId);
-       verify(repository,never()).updateApplianceStatus(any(), anyInt());
+       verify(repository).updateApplianceStatus(REMOTE, slotId, operation);
        verify(messageSource).getMessage("slot_not_bound.message",
                 new Object[]{slotId}, Locale.US);
     }
     @Test
-    public void testUndoOperation_Success() throws Exception {
+    public void testOperateAppliance_RepeatedRejectionIsReused() {
+        when(repository.updateApplianceStatus(REMOTE, "123", 1)).thenReturn(null);
+        when(messageSource.getMessage("slot_not_bound.message", new Object[]{"123"}, Locale.US)).thenReturn("Slot not bound");
+
+        BindException first = assertThrows(BindException.class, () -> service.operateAppliance(HUB, REMOTE, "123", 1));
+        BindException second = assertThrows(BindException.class, () -> service.operateAppliance(HUB, REMOTE, "123", 1));
+
+        assertSame(first, second);
+        assertEquals(0, first.getStackTrace().length);
+        assertSame(first.toResponseEntity().getBody(), second.toResponseEntity().getBody());
+        verify(messageSource, times(1)).getMessage("slot_not_bound.message", new Object[]{"123"}, Locale.US);
+    }
+
+    @Test
+    public void testOperateAppliance_RetryWithIdempotencyKeyIsNotApplied() {
+        when(repository.updateApplianceStatus(REMOTE, "slot1", 1)).thenReturn(new Appliance("lights", ApplianceStatus.ON));
+
+        RemoteOperationResponse first = service.operateAppliance(HUB, REMOTE, "slot1", 1, "key1");
+        RemoteOperationResponse retry = service.operateAppliance(HUB, REMOTE, "slot1", 1, "key1");
+
+        assertSame(first, retry);
+        verify(repository, times(1)).updateApplianceStatus(REMOTE, "slot1", 1);
+    }
+
+    @Test
+    public void testOperateAppliance_IdempotencyKeyReusedForOtherRequest() {
+        when(repository.updateApplianceStatus(REMOTE, "slot1", 1)).thenReturn(new Appliance("lights", ApplianceStatus.ON));
+        when(messageSource.getMessage("idempotency_key_reused.message", new Object[]{"key1"}, Locale.US)).thenReturn("Key reused");
+
+        service.operateAppliance(HUB, REMOTE, "slot1", 1, "key1");
+        BindException exception = assertThrows(BindException.class, () -> service.operateAppliance(HUB, REMOTE, "slot1", 0, "key1"));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, exception.getStatus());
+        assertEquals("Key reused", exception.getMessage());
+        verify(repository, never()).updateApplianceStatus(REMOTE, "slot1", 0);
+    }
+
+    @Test
+    public void testOperateAppliance_InvalidIdempotencyKey() {
+        BindException exception = assertThrows(BindException.class, () -> service.operateAppliance(HUB, REMOTE, "slot1", 1, ""));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verify(repository, never()).updateApplianceStatus(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testUndoOperation_Success() {
         String applianceName = "MyAppliance";
         ApplianceStatus applianceStatus = ApplianceStatus.ON;
 
-        var mockedStatic = mockStatic(HomeHubRepository.class);
-        when(HomeHubRepository.getLastOperatedSlot()).thenReturn("123");
-        when(repository.undoPreviousAction()).thenReturn(new Appliance(applianceName, applianceStatus));
+        when(repository.undoPreviousAction(REMOTE)).thenReturn(new Appliance(applianceName, applianceStatus));
         when(messageSource.getMessage("appliance_operation_successful.message",
                         new Object[]{applianceName, applianceStatus.name()}, Locale.US))
                 .thenReturn("Appliance operation successful");
 
-        RemoteOperationResponse response = service.undoOperation();
+        RemoteOperationResponse response = service.undoOperation(HUB, REMOTE);
 
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getOperationStatus());
         assertEquals("Appliance operation successful", response.getOperationResponse());
 
-        verify(repository).undoPreviousAction();
+        verify(repository).undoPreviousAction(REMOTE);
         verify(messageSource).getMessage("appliance_operation_successful.message",
                 new Object[]{applianceName, applianceStatus.name()}, Locale.US);
-
-        verify(HomeHubRepository.class);
-        HomeHubRepository.getLastOperatedSlot();
-        mockedStatic.close();
-
     }
     @Test
     public void testUndoOperation_NoLastOperation() {
-        var mockedStatic = mockStatic(HomeHubRepository.class);
-        when(HomeHubRepository.getLastOperatedSlot()).thenReturn(null);
+        when(repository.undoPreviousAction(REMOTE)).thenReturn(null);
         when(messageSource.getMessage("no_action_to_undo.message",
                         new Object[]{}, Locale.US))
                 .thenReturn("No previous action to undo");
 
         NoLastOperationException exception = assertThrows(NoLastOperationException.class,
-                () -> service.undoOperation());
+                () -> service.undoOperation(HUB, REMOTE));
 
         assertEquals(HttpStatus.BAD_REQUEST, exception.getOperationStatus());
         assertEquals("No previous action to undo", exception.getMessage());
 
-        //verify(HomeHubRepository).getLastOperatedSlot();
-        verify(repository, never()).undoPreviousAction();
         verify(messageSource).getMessage("no_action_to_undo.message",
                 new Object[]{}, Locale.US);
-        mockedStatic.close();
+    }
+
+    @Test
+    public void testRedoOperation_Success() {
+        when(repository.redoAction(REMOTE)).thenReturn(new Appliance("MyAppliance", ApplianceStatus.OFF));
+        when(messageSource.getMessage("appliance_operation_successful.message",
+                        new Object[]{"MyAppliance", "OFF"}, Locale.US))
+                .thenReturn("Appliance MyAppliance turned OFF");
+
+        RemoteOperationResponse response = service.redoOperation(HUB, REMOTE);
+
+        assertEquals(HttpStatus.OK, response.getOperationStatus());
+        assertEquals("Appliance MyAppliance turned OFF", response.getOperationResponse());
+    }
+
+    @Test
+    public void testRedoOperation_NothingToRedo() {
+        when(repository.redoAction(REMOTE)).thenReturn(null);
+        when(messageSource.getMessage("no_action_to_redo.message", new Object[]{}, Locale.US))
+                .thenReturn("No undone action found to redo");
+
+        NoLastOperationException exception = assertThrows(NoLastOperationException.class,
+                () -> service.redoOperation(HUB, REMOTE));
+
+        assertEquals("No undone action found to redo", exception.getMessage());
+    }
+
+    @Test
+    public void testUndoOperation_UnknownHubHasNothingToUndo() {
+        when(hubs.findHub("other")).thenReturn(Optional.empty());
+        when(messageSource.getMessage("no_action_to_undo.message", new Object[]{}, Locale.US))
+                .thenReturn("No previous action to undo");
+
+        assertThrows(NoLastOperationException.class, () -> service.undoOperation("other", REMOTE));
+        verify(hubs, never()).forHub("other");
+    }
+
+    @Test
+    public void testListAllSlots_UnknownHubIsEmpty() {
+        when(hubs.findHub("other")).thenReturn(Optional.empty());
+
+        assertTrue(service.listAllSlots("other").isEmpty());
+        verify(hubs, never()).forHub("other");
+    }
+
+    @Test
+    public void testOperateAppliance_RecordsOutcome() {
+        when(repository.updateApplianceStatus(REMOTE, "slot1", 1)).thenReturn(new Appliance("lights", ApplianceStatus.ON));
+        when(messageSource.getMessage(eq("appliance_operation_successful.message"), any(), eq(Locale.US))).thenReturn("Appliance lights turned ON");
+        when(messageSource.getMessage(eq("slot_not_bound.message"), any(), eq(Locale.US))).thenReturn("Slot not bound");
+
+        service.operateAppliance(HUB, REMOTE, "slot1", 1);
+        assertThrows(BindException.class, () -> service.operateAppliance(HUB, REMOTE, "slot2", 1));
+        assertThrows(BindException.class, () -> service.operateAppliance(HUB, REMOTE, "slot2", 1));
+
+        assertEquals(1, operations("operate", "success", "none").count());
+        assertEquals(2, operations("operate", "rejected", "BindException").count());
+        assertEquals(0, operations("operate", "error", "other").count());
+    }
+
+    @Test
+    public void testUndoOperation_RecordsUnexpectedError() {
+        when(repository.undoPreviousAction(REMOTE)).thenThrow(new IllegalStateException("broken"));
+
+        assertThrows(IllegalStateException.class, () -> service.undoOperation(HUB, REMOTE));
+
+        assertEquals(1, operations("undo", "error", "other").count());
+    }
+
+    private Timer operations(String operation, String outcome, String error) {
+        return meterRegistry.get("home_hub.operations").tags("operation", operation, "outcome", outcome, "error", error).timer();
+    }
+
+    @Test
+    public void testListBindings_WritesPageWithNextCursor() throws Exception {
+        var hub = new HomeHubRepository();
+        hub.bindSlot("1", "lights");
+        hub.bindSlot("2", "heater");
+        hub.bindSlot("3", "lamp");
+        hub.updateApplianceStatus(REMOTE, "2", 1);
+        when(hubs.findHub("home")).thenReturn(Optional.of(hub));
+
+        assertEquals("{\"bindings\":[{\"slotId\":\"1\",\"applianceName\":\"lights\",\"status\":\"OFF\"}],\"nextCursor\":\"1\"}",
+                listBindings("home", null, "l", null, 1));
+        assertEquals("{\"bindings\":[{\"slotId\":\"3\",\"applianceName\":\"lamp\",\"status\":\"OFF\"}],\"nextCursor\":null}",
+                listBindings("home", null, "l", "1", 1));
+        assertEquals("{\"bindings\":[{\"slotId\":\"2\",\"applianceName\":\"heater\",\"status\":\"ON\"}],\"nextCursor\":null}",
+                listBindings("home", ApplianceStatus.ON, null, null, 10));
+    }
+
+    @Test
+    public void testListBindings_UnknownHubIsEmpty() throws Exception {
+        when(hubs.findHub("other")).thenReturn(Optional.empty());
+
+        assertEquals("{\"bindings\":[],\"nextCursor\":null}", listBindings("other", null, null, null, 10));
+        verify(hubs, never()).forHub("other");
+    }
+
+    @Test
+    public void testListBindings_RejectsInvalidLimitAndCursor() {
+        when(messageSource.getMessage("page_limit_invalid.message", new Object[]{"1000"}, Locale.US)).thenReturn("Page limit must be between 1 and 1000");
+
+        var exception = assertThrows(BindException.class, () -> listBindings(HUB, null, null, null, 0));
+        assertEquals("Page limit must be between 1 and 1000", exception.getMessage());
+        assertThrows(BindException.class, () -> listBindings(HUB, null, null, null, HomeHubService.MAX_PAGE_SIZE + 1));
+        assertThrows(BindException.class, () -> listBindings(HUB, null, null, "abc", 10));
+        assertThrows(BindException.class, () -> listBindings(HUB, null, null, "-1", 10));
+    }
+
+    private String listBindings(String hubId, ApplianceStatus status, String prefix, String cursor, int limit) throws Exception {
+        var json = new StringWriter();
+        try (var out = new JsonFactory().createGenerator(json)) {
+            service.listBindings(hubId, status, prefix, cursor, limit, out);
+        }
+        return json.toString();
+    }
+
+    @Test
+    public void testOperateAppliances_PerItemResults() {
+        when(repository.updateApplianceStatus(REMOTE, "slot1", 0)).thenReturn(new Appliance("lights", ApplianceStatus.OFF));
+        when(repository.updateApplianceStatus(REMOTE, "slot2", 0)).thenReturn(null);
+        when(messageSource.getMessage("slot_not_bound.message", new Object[]{"slot2"}, Locale.US)).thenReturn("Slot not bound");
+
+        BatchOperationResponse response = service.operateAppliances(HUB, REMOTE,
+                List.of(new SlotOperation("slot1", 0), new SlotOperation("slot2", 0)));
+
+        assertEquals(HttpStatus.MULTI_STATUS, response.getOperationStatus());
+        assertEquals(1, response.getSucceeded());
+        assertEquals(1, response.getFailed());
+        assertEquals("lights", response.getResults().get(0).getAppliance());
+        assertEquals(ApplianceStatus.OFF, response.getResults().get(0).getStatus());
+        assertNull(response.getResults().get(0).getError());
+        assertEquals("Slot not bound", response.getResults().get(1).getError());
+        verify(messageSource, never()).getMessage(eq("appliance_operation_successful.message"), any(), any(Locale.class));
+    }
+
+    @Test
+    public void testOperateAppliances_InvalidOperationRejectsWholeBatch() {
+        when(messageSource.getMessage("appliance_operation_not_allowed.message", new Object[]{"slot2"}, Locale.US))
+                .thenReturn("Invalid appliance operation");
+
+        BindException exception = assertThrows(BindException.class, () -> service.operateAppliances(HUB, REMOTE,
+                List.of(new SlotOperation("slot1", 1), new SlotOperation("slot2", 2))));
+
+        assertEquals("Invalid appliance operation", exception.getMessage());
+        verify(repository, never()).updateApplianceStatus(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testOperateAppliances_EmptyBatch() {
+        when(messageSource.getMessage("batch_empty.message", new Object[]{}, Locale.US)).thenReturn("Empty batch");
+
+        BindException exception = assertThrows(BindException.class, () -> service.operateAppliances(HUB, REMOTE, List.of()));
+
+        assertEquals("Empty batch", exception.getMessage());
+    }
+
+    @Test
+    public void testRunScene_AppliesSavedOperations() {
+        var operations = List.of(new SlotOperation("slot1", 0));
+        when(repository.findScene("leave-home")).thenReturn(Optional.of(operations));
+        when(repository.updateApplianceStatus(REMOTE, "slot1", 0)).thenReturn(new Appliance("lights", ApplianceStatus.OFF));
+
+        BatchOperationResponse response = service.runScene(HUB, REMOTE, "leave-home");
+
+        assertEquals(HttpStatus.OK, response.getOperationStatus());
+        assertEquals(1, response.getSucceeded());
+    }
+
+    @Test
+    public void testRunScene_UnknownScene() {
+        when(repository.findScene("leave-home")).thenReturn(Optional.empty());
+        when(messageSource.getMessage("scene_not_found.message", new Object[]{"leave-home"}, Locale.US)).thenReturn("Scene not found");
+
+        BindException exception = assertThrows(BindException.class, () -> service.runScene(HUB, REMOTE, "leave-home"));
+
+        assertEquals("Scene not found", exception.getMessage());
+    }
+
+    @Test
+    public void testSaveScene_Success() {
+        var operations = List.of(new SlotOperation("slot1", 0), new SlotOperation("slot2", 0));
+        when(messageSource.getMessage("scene_saved.message", new Object[]{"leave-home", 2}, Locale.US)).thenReturn("Scene saved");
+
+        RemoteOperationResponse response = service.saveScene(HUB, "leave-home", operations);
+
+        assertEquals(HttpStatus.CREATED, response.getOperationStatus());
+        verify(repository).saveScene("leave-home", operations);
+    }
+
+    @Test
+    public void testOperateGroup_ReportsChangedAndOnCount() {
+        when(repository.hasGroup("living")).thenReturn(true);
+        when(repository.operateGroup("living", 1)).thenReturn(3);
+        when(repository.findGroup("living")).thenReturn(Optional.of(new GroupSnapshot("living", "house", List.of(), List.of("lamp", "tv", "fan"), 3, 3)));
+        when(messageSource.getMessage("group_operation_successful.message", new Object[]{3, "living", ApplianceStatus.ON}, Locale.US))
+                .thenReturn("3 appliances turned ON");
+
+        var response = service.operateGroup(HUB, "living", 1);
+
+        assertEquals(HttpStatus.OK, response.getHttpStatus());
+        assertEquals(3, response.getOnCount());
+        assertEquals("house", response.getParent());
+        assertEquals("3 appliances turned ON", response.getMessage());
+    }
+
+    @Test
+    public void testOperateGroup_UnknownGroupAndInvalidOperation() {
+        when(repository.hasGroup("garden")).thenReturn(false);
+        when(messageSource.getMessage("group_not_found.message", new Object[]{"garden"}, Locale.US)).thenReturn("Group not found");
+
+        var unknown = assertThrows(BindException.class, () -> service.operateGroup(HUB, "garden", 1));
+        assertEquals("Group not found", unknown.getMessage());
+        assertThrows(BindException.class, () -> service.operateGroup(HUB, "garden", 2));
+        verify(repository, never()).operateGroup(any(), anyInt());
+    }
+
+    @Test
+    public void testGroupRejections_UnknownGroupAndNotAMember() {
+        when(repository.hasGroup("garden")).thenReturn(false);
+        when(repository.removeFromGroup("living", "lamp")).thenReturn(GroupOutcome.NOT_A_MEMBER);
+        when(messageSource.getMessage("group_not_found.message", new Object[]{"garden"}, Locale.US)).thenReturn("Group not found");
+        when(messageSource.getMessage("group_not_a_member.message", new Object[]{"lamp", "living"}, Locale.US)).thenReturn("lamp is not in living");
+
+        var unknown = assertThrows(BindException.class, () -> service.getGroup(HUB, "garden"));
+        var notAMember = assertThrows(BindException.class, () -> service.removeFromGroup(HUB, "living", "lamp"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, unknown.getStatus());
+        assertEquals("Group not found", unknown.getMessage());
+        assertEquals("lamp is not in living", notAMember.getMessage());
+        assertSame(notAMember, assertThrows(BindException.class, () -> service.removeFromGroup(HUB, "living", "lamp")));
+    }
+
+    @Test
+    public void testUndoGroupOperation_NothingToUndo() {
+        when(repository.hasGroup("living")).thenReturn(true);
+        when(repository.undoGroupOperation("living")).thenReturn(-1);
+
+        assertThrows(NoLastOperationException.class, () -> service.undoGroupOperation(HUB, "living"));
+    }
+
+    @Test
+    public void testCreateGroup_Outcomes() {
+        var living = new GroupSnapshot("living", "house", List.of(), List.of(), 0, 0);
+        when(repository.findGroup("living")).thenReturn(Optional.of(living));
+        when(repository.createGroup("living", "house")).thenReturn(GroupOutcome.CREATED, GroupOutcome.ALREADY_EXISTS);
+        when(repository.createGroup("living", null)).thenReturn(GroupOutcome.PARENT_CONFLICT);
+
+        assertEquals(HttpStatus.CREATED, service.createGroup(HUB, "living", "house").getHttpStatus());
+        assertEquals(HttpStatus.OK, service.createGroup(HUB, "living", "house").getHttpStatus());
+        assertEquals(HttpStatus.CONFLICT, assertThrows(BindException.class, () -> service.createGroup(HUB, "living", null)).getStatus());
+    }
+
+    @Test
+    public void testGetHubState_RebuiltOnlyWhenVersionMoves() {
+        var real = new HomeHubRepository();
+        when(hubs.findHub("real")).thenReturn(Optional.of(real));
+        real.registerAppliance("lamp");
+        real.bindSlot("slot1", "lamp");
+
+        var first = service.getHubState("real");
+        assertSame(first, service.getHubState("real"));
+        assertSame(service.getSlotList("real"), service.getSlotList("real"));
+        assertEquals("slot1", service.getSlotList("real").body());
+
+        real.updateApplianceStatus("remote1", "slot1", 1);
+        var second = service.getHubState("real");
+
+        assertEquals(first.version() + 1, second.version());
+        assertEquals("\"" + second.version() + "\"", second.etag());
+        assertEquals("{\"bindings\":[{\"slotId\":\"slot1\",\"applianceName\":\"lamp\",\"status\":\"ON\"}],\"version\":"
+                + second.version() + ",\"full\":true}", new String(second.body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGetChangesSince_DeltaOrFullState() {
+        var real = new HomeHubRepository();
+        when(hubs.findHub("real")).thenReturn(Optional.of(real));
+        real.registerAppliance("lamp");
+        real.registerAppliance("tv");
+        real.bindSlot("slot1", "lamp");
+        real.bindSlot("slot2", "tv");
+        var since = real.getVersion();
+
+        var full = new String(service.getChangesSince("real", since - 1).body(), StandardCharsets.UTF_8);
+        real.updateApplianceStatus("remote1", "slot2", 1);
+        var delta = service.getChangesSince("real", since);
+
+        assertTrue(full.contains("\"slot1\"") && full.endsWith("\"full\":true}"), full);
+        assertEquals(since + 1, delta.version());
+        assertEquals("{\"bindings\":[{\"slotId\":\"slot2\",\"applianceName\":\"tv\",\"status\":\"ON\"}],\"version\":"
+                + (since + 1) + ",\"full\":false}", new String(delta.body(), StandardCharsets.UTF_8));
+        assertEquals(0, service.getChangesSince("unknown", 5).version());
+    }
+
+    @Test
+    public void testUnknownHub_NotCreatedByOperatingOrScenes() {
+        when(messageSource.getMessage("slot_not_bound.message", new Object[]{"x"}, Locale.US)).thenReturn("Slot x is not bound");
+        when(messageSource.getMessage("hub_not_found.message", new Object[]{"nohub"}, Locale.US)).thenReturn("Hub nohub does not exist");
+
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(BindException.class, () -> service.operateAppliance("nohub", "remote1", "x", 1)).getStatus());
+        assertEquals(1, service.operateAppliances("nohub", "remote1", List.of(new SlotOperation("x", 1))).getFailed());
+        var scene = assertThrows(BindException.class, () -> service.saveScene("nohub", "night", List.of(new SlotOperation("x", 0))));
+        assertEquals(HttpStatus.NOT_FOUND, scene.getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, assertThrows(BindException.class, () -> service.createGroup("nohub", "living", null)).getStatus());
+        verify(hubs, never()).forHub("nohub");
     }
 
 }
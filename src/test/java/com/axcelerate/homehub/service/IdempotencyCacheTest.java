@@ -0,0 +1,139 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.exception.BindException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    private static final Supplier<RuntimeException> KEY_REUSED = () -> new IllegalStateException("reused");
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger runs = new AtomicInteger();
+    private final IdempotencyCache cache = new IdempotencyCache(Duration.ofSeconds(10), 8, now::get);
+
+    @Test
+    void testRetry_ReturnsOriginalOutcomeWithoutRunning() {
+        var first = cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+        var retry = cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+
+        assertSame(first, retry);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testKeys_ScopedPerHub() {
+        cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+        cache.execute("hub2", "key1", "operate", this::run, KEY_REUSED);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testKeyReusedForOtherRequest_Rejected() {
+        cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+
+        var exception = assertThrows(IllegalStateException.class,
+                () -> cache.execute("hub1", "key1", "register", this::run, KEY_REUSED));
+
+        assertEquals("reused", exception.getMessage());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testRejection_Remembered() {
+        Supplier<Object> rejected = () -> {
+            runs.incrementAndGet();
+            throw new BindException(HttpStatus.BAD_REQUEST, "Slot not bound");
+        };
+
+        var first = assertThrows(BindException.class, () -> cache.execute("hub1", "key1", "operate", rejected, KEY_REUSED));
+        var retry = assertThrows(BindException.class, () -> cache.execute("hub1", "key1", "operate", rejected, KEY_REUSED));
+
+        assertSame(first, retry);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testUnexpectedFailure_Forgotten() {
+        assertThrows(IllegalArgumentException.class, () -> cache.execute("hub1", "key1", "operate", () -> {
+            throw new IllegalArgumentException("boom");
+        }, KEY_REUSED));
+
+        cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testKey_ExpiresAfterTtl() {
+        cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+        assertEquals(1, runs.get());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testOldGeneration_DroppedAsWhole() {
+        for (int i = 0; i < 12; i++) {
+            cache.execute("hub1", "key" + i, "operate", this::run, KEY_REUSED);
+        }
+        assertTrue(cache.size() <= 8);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        cache.execute("hub1", "fresh1", "operate", this::run, KEY_REUSED);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        cache.execute("hub1", "fresh2", "operate", this::run, KEY_REUSED);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testConcurrentRetry_WaitsForOriginal() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var original = executor.submit(() -> cache.execute("hub1", "key1", "operate", () -> {
+                started.countDown();
+                await(release);
+                return run();
+            }, KEY_REUSED));
+            started.await();
+
+            var retry = executor.submit(() -> cache.execute("hub1", "key1", "operate", this::run, KEY_REUSED));
+            release.countDown();
+
+            assertSame(original.get(10, TimeUnit.SECONDS), retry.get(10, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Object run() {
+        runs.incrementAndGet();
+        return new Object();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.http.HttpStatus;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageRendererTest {
+
+    private ResourceBundleMessageSource messageSource;
+    private MessageRenderer messages;
+
+    @BeforeEach
+    public void setUp() {
+        messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        messages = new MessageRenderer(messageSource, Locale.US);
+    }
+
+    @Test
+    void testRendersLikeMessageSource() {
+        for (var code : ResourceBundle.getBundle("messages", Locale.US).keySet()) {
+            Object[] args = {"first", "second"};
+            assertEquals(messageSource.getMessage(code, args, Locale.US), messages.render(code, args), code);
+        }
+    }
+
+    @Test
+    void testNonTextArgumentsAreFormattedByMessageSource() {
+        assertEquals("Scene evening saved with 1,200 operations", messages.render("scene_saved.message", "evening", 1200));
+    }
+
+    @Test
+    void testOperationResponseIsNotShared() {
+        var on = messages.operationResponse("lights", ApplianceStatus.ON);
+        var off = messages.operationResponse("lights", ApplianceStatus.OFF);
+
+        assertEquals(HttpStatus.OK, on.getOperationStatus());
+        assertEquals("Appliance lights turned ON", on.getOperationResponse());
+        assertEquals("Appliance lights turned OFF", off.getOperationResponse());
+        on.setOperationResponse("changed by a caller");
+        assertEquals("Appliance lights turned ON", messages.operationResponse("lights", ApplianceStatus.ON).getOperationResponse());
+    }
+
+    @Test
+    void testOtherLocales() {
+        var localized = new StaticMessageSource();
+        localized.addMessage("slot_not_bound.message", Locale.US, "Slot {0} is not bound to any appliance");
+        localized.addMessage("slot_not_bound.message", Locale.GERMANY, "Steckplatz {0} ist keinem Gerät zugeordnet");
+        localized.addMessage("quoted.message", Locale.US, "Slot ''{0}''");
+        var renderer = new MessageRenderer(localized, Locale.GERMANY);
+
+        assertEquals("Steckplatz 3 ist keinem Gerät zugeordnet", renderer.render("slot_not_bound.message", "3"));
+        assertEquals("Slot 3 is not bound to any appliance", renderer.render(Locale.US, "slot_not_bound.message", "3"));
+        assertEquals("Slot '3'", renderer.render(Locale.US, "quoted.message", "3"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.dto.ScheduleRequest;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.metrics.HomeHubMetrics;
+import com.axcelerate.homehub.repository.HomeHubRepository;
+import com.axcelerate.homehub.repository.HomeHubRepositoryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.http.HttpStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleServiceTest {
+
+    private static final String HUB = "home1";
+    private static final String REMOTE = "remote1";
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T05:00:00Z"));
+    private HomeHubRepository home;
+    private ScheduleService schedules;
+
+    @BeforeEach
+    public void setUp() {
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        var messages = new MessageRenderer(messageSource, Locale.US);
+        var hubs = new HomeHubRepositoryRegistry();
+        var service = new HomeHubService(messages, hubs, new HomeHubMetrics(new SimpleMeterRegistry(), hubs));
+        schedules = new ScheduleService(service, messages, Duration.ofMillis(100), clock);
+        home = hubs.forHub(HUB);
+        home.registerAppliance("heater");
+        home.bindSlot("1", "heater");
+    }
+
+    @Test
+    void testScheduleAfterDelay_FiresOnce() {
+        var response = schedules.createSchedule(HUB, REMOTE, new ScheduleRequest("1", 1, null, "PT30M", false));
+        assertEquals(HttpStatus.CREATED, response.getHttpStatus());
+        assertEquals(Instant.parse("2024-01-01T05:30:00Z"), response.getFireAt());
+
+        clock.advance(Duration.ofMinutes(29));
+        schedules.runDue();
+        assertEquals(ApplianceStatus.OFF, status());
+        clock.advance(Duration.ofMinutes(1));
+        schedules.runDue();
+
+        assertEquals(ApplianceStatus.ON, status());
+        assertTrue(schedules.listSchedules(HUB).isEmpty());
+        assertEquals(0, schedules.getPendingCount());
+    }
+
+    @Test
+    void testDailySchedule_FiresEveryDay() {
+        schedules.createSchedule(HUB, REMOTE, new ScheduleRequest("1", 1, "06:00", null, true));
+
+        clock.advance(Duration.ofHours(1));
+        schedules.runDue();
+        assertEquals(ApplianceStatus.ON, status());
+        var pending = schedules.listSchedules(HUB);
+        assertEquals(1, pending.size());
+        assertEquals(Instant.parse("2024-01-02T06:00:00Z"), pending.get(0).getFireAt());
+
+        home.updateApplianceStatus(REMOTE, "1", 0);
+        clock.advance(Duration.ofDays(1));
+        schedules.runDue();
+        assertEquals(ApplianceStatus.ON, status());
+    }
+
+    @Test
+    void testTimeOfDayAlreadyPassed_FiresTomorrow() {
+        var response = schedules.createSchedule(HUB, REMOTE, new ScheduleRequest("1", 1, "04:00", null, false));
+
+        assertEquals(Instant.parse("2024-01-02T04:00:00Z"), response.getFireAt());
+        assertFalse(response.isDaily());
+    }
+
+    @Test
+    void testCancelledSchedule_DoesNotFire() {
+        var response = schedules.createSchedule(HUB, REMOTE, new ScheduleRequest("1", 1, "2024-01-01T05:10:00Z", null, false));
+
+        assertEquals(HttpStatus.OK, schedules.cancelSchedule(HUB, response.getScheduleId()).getOperationStatus());
+        clock.advance(Duration.ofHours(1));
+        schedules.runDue();
+
+        assertEquals(ApplianceStatus.OFF, status());
+        var exception = assertThrows(BindException.class, () -> schedules.cancelSchedule(HUB, response.getScheduleId()));
+        assertEquals("Schedule " + response.getScheduleId() + " does not exist", exception.getMessage());
+        assertThrows(BindException.class, () -> schedules.cancelSchedule("home2", "x"));
+    }
+
+    @Test
+    void testScheduleOfUnboundSlot_ValidatedWhenFired() {
+        schedules.createSchedule(HUB, REMOTE, new ScheduleRequest("9", 1, null, "PT1S", false));
+
+        clock.advance(Duration.ofSeconds(1));
+        schedules.runDue();
+
+        assertTrue(schedules.listSchedules(HUB).isEmpty());
+        assertEquals(ApplianceStatus.OFF, status());
+    }
+
+    @Test
+    void testFiredOperation_CanBeUndone() {
+        schedules.createSchedule(HUB, REMOTE, new ScheduleRequest("1", 1, null, "PT1S", false));
+        clock.advance(Duration.ofSeconds(1));
+        schedules.runDue();
+
+        assertEquals(ApplianceStatus.OFF, home.undoPreviousAction(REMOTE).getStatus());
+    }
+
+    @Test
+    void testInvalidSchedules_Rejected() {
+        assertRejected(new ScheduleRequest("1", 2, null, "PT1M", false), "Remote is configured to send 0/1 only please use correct selection");
+        assertRejected(new ScheduleRequest(" ", 1, null, "PT1M", false), "Every slot operation needs a slotId");
+        assertRejected(new ScheduleRequest("1", 1, "06:00", "PT1M", false), "Give either at (a time of day such as 06:00 or an ISO-8601 date-time) " +
+                "or after (an ISO-8601 duration such as PT30M)");
+        assertRejected(new ScheduleRequest("1", 1, null, null, false), "Give either at (a time of day such as 06:00 or an ISO-8601 date-time) " +
+                "or after (an ISO-8601 duration such as PT30M)");
+        assertRejected(new ScheduleRequest("1", 1, null, "PT-5M", false), "Schedule time PT-5M is not valid, it must be in the future");
+        assertRejected(new ScheduleRequest("1", 1, "25:00", null, false), "Schedule time 25:00 is not valid, it must be in the future");
+        assertRejected(new ScheduleRequest("1", 1, "2023-12-31T06:00:00Z", null, false), "Schedule time 2023-12-31T06:00:00Z is not valid, it must be in the future");
+        assertRejected(new ScheduleRequest("1", 1, null, "PT1M", true), "Only a schedule at a time of day such as 06:00 can repeat daily");
+        assertEquals(0, schedules.getPendingCount());
+    }
+
+    private void assertRejected(ScheduleRequest request, String message) {
+        var exception = assertThrows(BindException.class, () -> schedules.createSchedule(HUB, REMOTE, request));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        assertEquals(message, exception.getMessage());
+    }
+
+    private ApplianceStatus status() {
+        return home.getBindings().get("1").getStatus();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.axcelerate.homehub.service;
+
+import com.axcelerate.homehub.dto.StatusChange;
+import com.axcelerate.homehub.enums.ApplianceStatus;
+import com.axcelerate.homehub.exception.BindException;
+import com.axcelerate.homehub.history.StatusHistory;
+import com.axcelerate.homehub.history.StatusTransition;
+import com.axcelerate.homehub.history.StatusUsage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.http.HttpStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class StatusHistoryServiceTest {
+
+    private static final String HUB = "home1";
+    private static final Instant NOW = Instant.parse("2024-01-08T00:00:00Z");
+
+    @Mock
+    private StatusHistory history;
+    private StatusHistoryService service;
+    private AutoCloseable mocks;
+
+    @BeforeEach
+    public void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        var messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        service = new StatusHistoryService(history, new MessageRenderer(messageSource, Locale.US), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    void testUsage_DefaultsToLastWeek() {
+        var from = NOW.minus(StatusHistoryService.DEFAULT_RANGE);
+        when(history.getUsage(HUB, "heater", from.toEpochMilli(), NOW.toEpochMilli()))
+                .thenReturn(Optional.of(new StatusUsage(90_000, 3, 4, ApplianceStatus.ON)));
+
+        var response = service.getUsage(HUB, "heater", null, null);
+
+        assertEquals(HttpStatus.OK, response.getHttpStatus());
+        assertEquals(from, response.getFrom());
+        assertEquals(NOW, response.getTo());
+        assertEquals(Duration.ofSeconds(90), response.getOnDuration());
+        assertEquals(3, response.getToggles());
+        assertEquals(4, response.getChanges());
+        assertEquals(ApplianceStatus.ON, response.getStatus());
+    }
+
+    @Test
+    void testHistory_ReturnsChanges() {
+        var from = Instant.parse("2024-01-01T00:00:00Z");
+        var to = Instant.parse("2024-01-02T00:00:00Z");
+        when(history.getTransitions(HUB, "heater", from.toEpochMilli(), to.toEpochMilli(), 10))
+                .thenReturn(Optional.of(List.of(new StatusTransition(from.toEpochMilli() + 1_000, ApplianceStatus.ON))));
+
+        var response = service.getHistory(HUB, "heater", from.toString(), to.toString(), 10);
+
+        assertEquals(HttpStatus.OK, response.getHttpStatus());
+        assertEquals(List.of(new StatusChange(from.plusSeconds(1), ApplianceStatus.ON)), response.getChanges());
+    }
+
+    @Test
+    void testUnknownAppliance_NotFound() {
+        when(history.getUsage(anyString(), anyString(), anyLong(), anyLong())).thenReturn(Optional.empty());
+        when(history.getTransitions(anyString(), anyString(), anyLong(), anyLong(), anyInt())).thenReturn(Optional.empty());
+
+        var usage = service.getUsage(HUB, "fan", null, null);
+        var changes = service.getHistory(HUB, "fan", null, null, 10);
+
+        assertEquals(HttpStatus.NOT_FOUND, usage.getHttpStatus());
+        assertEquals("No status change of fan has been recorded", usage.getMessage());
+        assertEquals(HttpStatus.NOT_FOUND, changes.getHttpStatus());
+        assertTrue(changes.getChanges().isEmpty());
+    }
+
+    @Test
+    void testInvalidRange_Rejected() {
+        var notInstant = assertThrows(BindException.class, () -> service.getUsage(HUB, "heater", "yesterday", null));
+        assertEquals(HttpStatus.BAD_REQUEST, notInstant.getStatus());
+        assertTrue(notInstant.getMessage().contains("yesterday"));
+
+        assertThrows(BindException.class, () -> service.getUsage(HUB, "heater", NOW.toString(), NOW.toString()));
+        assertThrows(BindException.class, () -> service.getHistory(HUB, "heater", null, null, 0));
+        assertThrows(BindException.class, () -> service.getHistory(HUB, "heater", null, null, HomeHubService.MAX_PAGE_SIZE + 1));
+    }
+}